@@ -18,6 +18,12 @@ public class SyncConstants {
 	
 	public static final String PROP_COMPLEX_OBS_DIR = "openmrs.complex.obs.data.directory";
 	
+	public static final String PROP_SQL_ACCOUNTING_ENABLED = "openmrs.eip.dbsync.sql.accounting.enabled";
+	
+	public static final String PROP_HASH_WRITE_BEHIND_ENABLED = "openmrs.eip.dbsync.hash.write.behind.enabled";
+	
+	public static final String PROP_HASH_STORE = "openmrs.eip.dbsync.hash.store";
+	
 	public static final String DAEMON_USER_UUID = "A4F30A1B-5EB9-11DF-A648-37A07F9C90FB";
 	
 	public static final String PLACEHOLDER_CLASS = "[class]";
@@ -0,0 +1,78 @@
+package org.openmrs.eip.dbsync.camel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
+
+/**
+ * Holds the state of a sync message that is loaded as part of a group of messages applied in a
+ * single OpenMRS database transaction. Entity hashes can't be saved right away in this case because
+ * the management database transaction would be committed before that of the OpenMRS database, they
+ * are instead collected and saved by the caller after the OpenMRS transaction is committed.
+ */
+public final class BatchApplyContext {
+	
+	private static final ThreadLocal<BatchApplyContext> CURRENT = new ThreadLocal();
+	
+	private final Runnable flusher;
+	
+	private final List<BaseHashEntity> hashes = new ArrayList();
+	
+	private BatchApplyContext(Runnable flusher) {
+		this.flusher = flusher;
+	}
+	
+	/**
+	 * Starts a new context for the current thread
+	 *
+	 * @param flusher called to flush the changes made to the OpenMRS database for the message
+	 * @return the context
+	 */
+	public static BatchApplyContext begin(Runnable flusher) {
+		BatchApplyContext context = new BatchApplyContext(flusher);
+		CURRENT.set(context);
+		return context;
+	}
+	
+	/**
+	 * Gets the context of the current thread
+	 *
+	 * @return the context or null if the current thread is not applying a group of messages
+	 */
+	public static BatchApplyContext get() {
+		return CURRENT.get();
+	}
+	
+	/**
+	 * Removes the context of the current thread
+	 */
+	public static void end() {
+		CURRENT.remove();
+	}
+	
+	/**
+	 * Adds a hash to be saved after the OpenMRS transaction is committed
+	 *
+	 * @param hash the hash entity
+	 */
+	public void addHash(BaseHashEntity hash) {
+		hashes.add(hash);
+	}
+	
+	/**
+	 * @return the hashes to save after the OpenMRS transaction is committed
+	 */
+	public List<BaseHashEntity> getHashes() {
+		return hashes;
+	}
+	
+	/**
+	 * Flushes the changes made to the OpenMRS database for the message so that any failure is reported
+	 * against the message that caused it
+	 */
+	public void flush() {
+		flusher.run();
+	}
+	
+}
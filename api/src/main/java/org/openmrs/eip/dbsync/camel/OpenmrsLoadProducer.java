@@ -30,6 +30,7 @@ import org.openmrs.eip.dbsync.model.UserModel;
 import org.openmrs.eip.dbsync.model.module.datafilter.EntityBasisMapModel;
 import org.openmrs.eip.dbsync.service.TableToSyncEnum;
 import org.openmrs.eip.dbsync.service.facade.EntityServiceFacade;
+import org.openmrs.eip.dbsync.service.hash.SenderHashVerifier;
 import org.openmrs.eip.dbsync.utils.HashUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -103,7 +104,7 @@ public class OpenmrsLoadProducer extends AbstractOpenmrsProducer {
 					}
 				}
 				
-				producerTemplate.sendBody(QUERY_SAVE_HASH.replace(PLACEHOLDER_CLASS, hashClass.getSimpleName()), storedHash);
+				saveHash(producerTemplate, hashClass, storedHash);
 				
 				if (log.isDebugEnabled()) {
 					if (isNewHash) {
@@ -117,18 +118,23 @@ public class OpenmrsLoadProducer extends AbstractOpenmrsProducer {
 		} else {
 			BaseModel modelToSave = syncModel.getModel();
 			String siteId = syncModel.getMetadata().getSourceIdentifier();
+			//The hash computed by the sender can't be used if the incoming state is modified
+			boolean modelRewritten = false;
 			if (!isDeleteOperation) {
 				if (isUser) {
+					modelRewritten = true;
 					UserModel userModel = (UserModel) modelToSave;
 					userModel.setUsername(userModel.getUsername() + VALUE_SITE_SEPARATOR + siteId);
 					userModel.setSystemId(userModel.getSystemId() + VALUE_SITE_SEPARATOR + siteId);
 				} else if (isProvider) {
 					ProviderModel providerModel = (ProviderModel) syncModel.getModel();
 					if (StringUtils.isNotBlank(providerModel.getIdentifier())) {
+						modelRewritten = true;
 						providerModel.setIdentifier(providerModel.getIdentifier() + VALUE_SITE_SEPARATOR + siteId);
 					}
 				} else if (modelToSave instanceof EntityBasisMapModel) {
 					//We need to replace the entity and basis identifiers with local database ids
+					modelRewritten = true;
 					replaceUuidsWithIds((EntityBasisMapModel) modelToSave);
 				} else if (modelToSave instanceof PersonAttributeModel) {
 					PersonAttributeModel model = (PersonAttributeModel) syncModel.getModel();
@@ -138,6 +144,7 @@ public class OpenmrsLoadProducer extends AbstractOpenmrsProducer {
 							log.debug("Converting uuid " + model.getValue() + " for " + type.getFormat() + " to id");
 						}
 						
+						modelRewritten = true;
 						model.setValue(getId(type.getFormat(), model.getValue()).toString());
 					}
 				}
@@ -152,6 +159,7 @@ public class OpenmrsLoadProducer extends AbstractOpenmrsProducer {
 				modelToSave = existing;
 			}
 			
+			SenderHashVerifier hashVerifier = SyncContext.getBean(SenderHashVerifier.class);
 			if (dbModel == null) {
 				if (storedHash == null) {
 					if (log.isDebugEnabled()) {
@@ -183,11 +191,9 @@ public class OpenmrsLoadProducer extends AbstractOpenmrsProducer {
 					}
 				}
 				
-				storedHash.setHash(HashUtils.computeHash(syncModel.getModel()));
+				storedHash.setHash(hashVerifier.getHash(syncModel, modelRewritten));
 				
-				producerTemplate.sendBody(
-				    SyncConstants.QUERY_SAVE_HASH.replace(SyncConstants.PLACEHOLDER_CLASS, hashClass.getSimpleName()),
-				    storedHash);
+				saveHash(producerTemplate, hashClass, storedHash);
 				
 				if (log.isDebugEnabled()) {
 					log.debug("Successfully saved the hash for the incoming entity state");
@@ -228,7 +234,7 @@ public class OpenmrsLoadProducer extends AbstractOpenmrsProducer {
 					storedHash.setDateCreated(LocalDateTime.now());
 				}
 				
-				String newHash = HashUtils.computeHash(syncModel.getModel());
+				String newHash = hashVerifier.getHash(syncModel, modelRewritten);
 				if (!isEtyInDbPlaceHolder) {
 					String dbEntityHash = HashUtils.computeHash(dbModel);
 					if (!dbEntityHash.equals(storedHash.getHash())) {
@@ -259,13 +265,44 @@ public class OpenmrsLoadProducer extends AbstractOpenmrsProducer {
 					log.debug("Updating hash for the incoming entity state");
 				}
 				
-				producerTemplate.sendBody(QUERY_SAVE_HASH.replace(PLACEHOLDER_CLASS, hashClass.getSimpleName()), storedHash);
+				saveHash(producerTemplate, hashClass, storedHash);
 				
 				if (log.isDebugEnabled()) {
 					log.debug("Successfully updated the hash for the incoming entity state");
 				}
 			}
 		}
+		
+		BatchApplyContext batchContext = BatchApplyContext.get();
+		if (batchContext != null) {
+			batchContext.flush();
+		}
+	}
+	
+	/**
+	 * Saves the specified hash, if the message is applied as part of a group of messages in a single
+	 * OpenMRS transaction the hash is saved by the caller after the transaction is committed, if
+	 * write-behind of hashes is enabled or another hash store is used the hash is saved via
+	 * {@link HashUtils#saveHash(BaseHashEntity)}
+	 *
+	 * @param producerTemplate the {@link ProducerTemplate} object
+	 * @param hashClass the hash class
+	 * @param hash the hash entity to save
+	 */
+	private void saveHash(ProducerTemplate producerTemplate, Class<? extends BaseHashEntity> hashClass,
+	                      BaseHashEntity hash) {
+		BatchApplyContext batchContext = BatchApplyContext.get();
+		if (batchContext != null) {
+			batchContext.addHash(hash);
+			return;
+		}
+		
+		if (HashUtils.isDirectSaveEnabled()) {
+			HashUtils.saveHash(hash);
+			return;
+		}
+		
+		producerTemplate.sendBody(QUERY_SAVE_HASH.replace(PLACEHOLDER_CLASS, hashClass.getSimpleName()), hash);
 	}
 	
 	/**
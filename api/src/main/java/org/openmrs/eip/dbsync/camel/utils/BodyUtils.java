@@ -0,0 +1,33 @@
+package org.openmrs.eip.dbsync.camel.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.apache.camel.Exchange;
+
+/**
+ * Utility methods for reading exchange bodies
+ */
+public final class BodyUtils {
+
+    private BodyUtils() {
+    }
+
+    /**
+     * Gets the body of the exchange as bytes, String bodies are encoded with UTF-8, other types are
+     * converted with camel's type converters
+     * @param exchange the exchange
+     * @return the body bytes
+     */
+    public static byte[] getBodyAsBytes(final Exchange exchange) {
+        Object body = exchange.getIn().getBody();
+        if (body instanceof byte[]) {
+            return (byte[]) body;
+        }
+
+        if (body instanceof String) {
+            return ((String) body).getBytes(UTF_8);
+        }
+
+        return exchange.getIn().getBody(byte[].class);
+    }
+}
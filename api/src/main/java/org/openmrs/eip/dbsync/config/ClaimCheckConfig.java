@@ -0,0 +1,23 @@
+package org.openmrs.eip.dbsync.config;
+
+import org.openmrs.eip.dbsync.service.claimcheck.ClaimCheckStore;
+import org.openmrs.eip.dbsync.service.claimcheck.FileClaimCheckStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ClaimCheckConfig {
+
+    /**
+     * Creates the default directory backed claim check store, it is skipped if another bean implementing
+     * {@link ClaimCheckStore} is declared
+     */
+    @Bean
+    @ConditionalOnMissingBean(ClaimCheckStore.class)
+    public ClaimCheckStore claimCheckStore(
+            @Value("${openmrs.eip.dbsync.claim.check.dir:${eip.home:.}/claim-check}") final String directory) {
+        return new FileClaimCheckStore(directory);
+    }
+}
@@ -1,13 +1,18 @@
 package org.openmrs.eip.dbsync.config;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
 
 import org.openmrs.eip.Constants;
 import org.openmrs.eip.dbsync.SyncConstants;
+import org.openmrs.eip.dbsync.jdbc.SqlStatisticsInspector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -27,13 +32,30 @@ public class OpenmrsEntityManagerConfig {
 	
 	private static final Logger log = LoggerFactory.getLogger(OpenmrsEntityManagerConfig.class);
 	
+	private static final String HIBERNATE_BATCH_FETCH_SIZE = "hibernate.default_batch_fetch_size";
+	
+	private static final String HIBERNATE_STATEMENT_INSPECTOR = "hibernate.session_factory.statement_inspector";
+	
 	@Primary
 	@Bean(name = "openmrsEntityManager")
 	@DependsOn(Constants.COMMON_PROP_SOURCE_BEAN_NAME)
 	public LocalContainerEntityManagerFactoryBean entityManager(final EntityManagerFactoryBuilder builder,
-	                                                            @Qualifier(SyncConstants.OPENMRS_DATASOURCE_NAME) final DataSource dataSource) {
+	                                                            @Qualifier(SyncConstants.OPENMRS_DATASOURCE_NAME) final DataSource dataSource,
+	                                                            @Value("${openmrs.eip.dbsync.batch.fetch.size:50}") final int batchFetchSize,
+	                                                            @Value("${" + SyncConstants.PROP_SQL_ACCOUNTING_ENABLED
+	                                                                    + ":false}") final boolean sqlAccountingEnabled) {
+		
+		Map<String, Object> properties = new HashMap();
+		//Associations to light entities are lazy, pending proxies of the same type are loaded together in batches
+		properties.put(HIBERNATE_BATCH_FETCH_SIZE, batchFetchSize);
+		if (sqlAccountingEnabled) {
+			log.info("Enabling counting of the statements prepared by hibernate");
+			
+			properties.put(HIBERNATE_STATEMENT_INSPECTOR, new SqlStatisticsInspector());
+		}
 		
-		return builder.dataSource(dataSource).packages("org.openmrs.eip.dbsync.entity").persistenceUnit("openmrs").build();
+		return builder.dataSource(dataSource).packages("org.openmrs.eip.dbsync.entity").persistenceUnit("openmrs")
+		        .properties(properties).build();
 	}
 	
 	@Primary
@@ -13,6 +13,14 @@ public class SenderEncryptionProperties implements EncryptionProperties {
 
     private String receiverUserId;
 
+    private boolean sessionEnabled;
+
+    private boolean binaryOutput;
+
+    private long sessionMaxMessages = 10000;
+
+    private long sessionMaxAge = 3600000;
+
     /**
      * Path to the folder containing the private key and the public keys of the module
      * If the path starts with 'file:', the program will look in the absolute path following the prefix.
@@ -64,4 +72,54 @@ public class SenderEncryptionProperties implements EncryptionProperties {
     public void setReceiverUserId(final String receiverUserId) {
         this.receiverUserId = receiverUserId;
     }
+
+    /**
+     * Whether messages are encrypted with a symmetric session key that is exchanged with the receiver
+     * via PGP instead of running a PGP encryption for each message
+     * @return true if session mode is enabled otherwise false
+     */
+    public boolean isSessionEnabled() {
+        return sessionEnabled;
+    }
+
+    public void setSessionEnabled(final boolean sessionEnabled) {
+        this.sessionEnabled = sessionEnabled;
+    }
+
+    /**
+     * The maximum number of messages to encrypt with the same session key before it is rotated
+     * @return the maximum number of messages
+     */
+    public long getSessionMaxMessages() {
+        return sessionMaxMessages;
+    }
+
+    public void setSessionMaxMessages(final long sessionMaxMessages) {
+        this.sessionMaxMessages = sessionMaxMessages;
+    }
+
+    /**
+     * The maximum age in milliseconds of a session key before it is rotated
+     * @return the maximum age
+     */
+    public long getSessionMaxAge() {
+        return sessionMaxAge;
+    }
+
+    public void setSessionMaxAge(final long sessionMaxAge) {
+        this.sessionMaxAge = sessionMaxAge;
+    }
+
+    /**
+     * Whether messages are sent as raw binary OpenPGP messages with the sender userId in a message
+     * header instead of ASCII armored text, ignored if session mode is enabled
+     * @return true if binary mode is enabled otherwise false
+     */
+    public boolean isBinaryOutput() {
+        return binaryOutput;
+    }
+
+    public void setBinaryOutput(final boolean binaryOutput) {
+        this.binaryOutput = binaryOutput;
+    }
 }
@@ -3,6 +3,7 @@ package org.openmrs.eip.dbsync.entity;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -23,16 +24,16 @@ import lombok.EqualsAndHashCode;
 public class Allergy extends BaseChangeableDataEntity {
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "patient_id")
 	private PatientLight patient;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "severity_concept_id")
 	private ConceptLight severityConcept;
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "coded_allergen")
 	private ConceptLight codedAllergen;
 	
@@ -46,7 +47,7 @@ public class Allergy extends BaseChangeableDataEntity {
 	@Column(name = "comments")
 	private String comments;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "encounter_id")
 	private EncounterLight encounter;
 	
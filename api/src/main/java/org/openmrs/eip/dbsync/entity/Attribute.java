@@ -5,6 +5,7 @@ import lombok.EqualsAndHashCode;
 import org.openmrs.eip.dbsync.entity.light.AttributeTypeLight;
 
 import javax.persistence.Column;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.MappedSuperclass;
@@ -16,7 +17,7 @@ import javax.validation.constraints.NotNull;
 public abstract class Attribute<T extends AttributeTypeLight> extends BaseChangeableDataEntity {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "attribute_type_id")
     private T attributeType;
 
@@ -4,6 +4,7 @@ import org.openmrs.eip.dbsync.entity.light.UserLight;
 import org.openmrs.eip.dbsync.utils.DateUtils;
 
 import javax.persistence.Column;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.MappedSuperclass;
@@ -14,7 +15,7 @@ import java.util.List;
 @MappedSuperclass
 public abstract class BaseChangeableDataEntity extends BaseDataEntity {
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "changed_by")
     private UserLight changedBy;
 
@@ -3,6 +3,7 @@ package org.openmrs.eip.dbsync.entity;
 import org.openmrs.eip.dbsync.entity.light.UserLight;
 
 import javax.persistence.Column;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.MappedSuperclass;
@@ -13,7 +14,7 @@ import java.time.LocalDateTime;
 public abstract class BaseCreatableEntity extends BaseEntity {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "creator", nullable = false)
     private UserLight creator;
 
@@ -4,6 +4,7 @@ import org.openmrs.eip.dbsync.entity.light.UserLight;
 import org.openmrs.eip.dbsync.utils.DateUtils;
 
 import javax.persistence.Column;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.MappedSuperclass;
@@ -24,7 +25,7 @@ public abstract class BaseDataEntity extends BaseCreatableEntity {
     @Column(name = "voided")
     private boolean voided;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "voided_by")
     private UserLight voidedBy;
 
@@ -4,6 +4,7 @@ import org.openmrs.eip.dbsync.entity.light.UserLight;
 import org.openmrs.eip.dbsync.utils.DateUtils;
 
 import javax.persistence.Column;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.MappedSuperclass;
@@ -20,7 +21,7 @@ import static java.util.Collections.singleton;
 @MappedSuperclass
 public abstract class BaseMetaDataEntity extends BaseCreatableEntity {
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "retired_by")
     private UserLight retiredBy;
 
@@ -8,6 +8,7 @@ import org.openmrs.eip.dbsync.entity.light.ConceptDatatypeLight;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -21,12 +22,12 @@ import javax.validation.constraints.NotNull;
 public class Concept extends BaseChangeableMetaDataEntity {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "datatype_id")
     private ConceptDatatypeLight datatype;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "class_id")
     private ConceptClassLight conceptClass;
 
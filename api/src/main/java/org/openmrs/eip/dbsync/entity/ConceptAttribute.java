@@ -16,7 +16,7 @@ import javax.validation.constraints.NotNull;
 public class ConceptAttribute extends Attribute<ConceptAttributeTypeLight> {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "concept_id")
     private ConceptLight referencedEntity;
 }
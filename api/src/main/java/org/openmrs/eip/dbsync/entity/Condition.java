@@ -5,6 +5,7 @@ import java.time.LocalDateTime;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -29,18 +30,18 @@ public class Condition extends BaseChangeableDataEntity {
 	@Column(name = "additional_detail")
 	private String additionalDetail;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "previous_version")
 	private ConditionLight previousVersion;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "condition_coded")
 	private ConceptLight conditionCoded;
 	
 	@Column(name = "condition_non_coded")
 	private String conditionNonCoded;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "condition_coded_name")
 	private ConceptNameLight conditionCodedName;
 	
@@ -55,14 +56,14 @@ public class Condition extends BaseChangeableDataEntity {
 	private LocalDateTime onsetDate;
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "patient_id")
 	private PatientLight patient;
 	
 	@Column(name = "end_date")
 	private LocalDateTime endDate;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "encounter_id")
 	private EncounterLight encounter;
 	
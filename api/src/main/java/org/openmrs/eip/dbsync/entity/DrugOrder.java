@@ -6,6 +6,7 @@ import org.openmrs.eip.dbsync.entity.light.OrderFrequencyLight;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.PrimaryKeyJoinColumn;
@@ -20,7 +21,7 @@ public class DrugOrder extends Order {
     @Column(name = "dose")
     private Double dose;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "dose_units")
     private ConceptLight doseUnits;
 
@@ -30,11 +31,11 @@ public class DrugOrder extends Order {
     @Column(name = "quantity")
     private Double quantity;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "quantity_units")
     private ConceptLight quantityUnits;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "drug_inventory_id")
     private DrugLight drug;
 
@@ -50,11 +51,11 @@ public class DrugOrder extends Order {
     @Column(name = "duration")
     private Integer duration;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "duration_units")
     private ConceptLight durationUnits;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "route")
     private ConceptLight route;
 
@@ -68,7 +69,7 @@ public class DrugOrder extends Order {
     @Column(name = "drug_non_coded")
     private String drugNonCoded;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "frequency")
     private OrderFrequencyLight frequency;
 
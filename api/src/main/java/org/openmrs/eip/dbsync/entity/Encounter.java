@@ -11,6 +11,7 @@ import org.openmrs.eip.dbsync.entity.light.VisitLight;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -25,20 +26,20 @@ import java.time.LocalDateTime;
 public class Encounter extends BaseChangeableDataEntity {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "encounter_type")
     private EncounterTypeLight encounterType;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "patient_id")
     private PatientLight patient;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "location_id")
     private LocationLight location;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "form_id")
     private FormLight form;
 
@@ -46,7 +47,7 @@ public class Encounter extends BaseChangeableDataEntity {
     @Column(name = "encounter_datetime")
     private LocalDateTime encounterDatetime;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "visit_id")
     private VisitLight visit;
 }
@@ -3,6 +3,7 @@ package org.openmrs.eip.dbsync.entity;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -24,28 +25,28 @@ import lombok.EqualsAndHashCode;
 @AttributeOverride(name = "id", column = @Column(name = "diagnosis_id"))
 public class EncounterDiagnosis extends BaseChangeableDataEntity {
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "diagnosis_coded")
 	private ConceptLight diagnosisCoded;
 	
 	@Column(name = "diagnosis_non_coded")
 	private String diagnosisNonCoded;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "diagnosis_coded_name")
 	private ConceptNameLight diagnosisCodedName;
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "encounter_id")
 	private EncounterLight encounter;
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "patient_id")
 	private PatientLight patient;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "condition_id")
 	private ConditionLight condition;
 	
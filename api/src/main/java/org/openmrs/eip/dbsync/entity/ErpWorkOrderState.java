@@ -4,6 +4,7 @@ import lombok.EqualsAndHashCode;
 
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
+import javax.persistence.FetchType;
 import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 
@@ -15,7 +16,7 @@ import javax.validation.constraints.NotNull;
 public class ErpWorkOrderState extends BaseDataEntity {
 
     /*@NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "erp_work_order_id")
     private ErpWorkOrderLight erpWorkOrder;*/
 
@@ -16,7 +16,7 @@ import javax.validation.constraints.NotNull;
 public class LocationAttribute extends Attribute<LocationAttributeTypeLight> {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "location_id")
     private LocationLight referencedEntity;
 }
@@ -14,6 +14,7 @@ import org.openmrs.eip.dbsync.entity.light.PersonLight;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToOne;
@@ -29,20 +30,20 @@ import java.time.LocalDateTime;
 public class Observation extends BaseDataEntity {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "person_id")
     private PersonLight person;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "concept_id")
     private ConceptLight concept;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "encounter_id")
     private EncounterLight encounter;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "order_id")
     private OrderLight order;
 
@@ -50,11 +51,11 @@ public class Observation extends BaseDataEntity {
     @Column(name = "obs_datetime")
     private LocalDateTime obsDatetime;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "location_id")
     private LocationLight location;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "obs_group_id")
     private ObservationLight obsGroup;
 
@@ -64,15 +65,15 @@ public class Observation extends BaseDataEntity {
     @Column(name = "value_group_id")
     private Long valueGroupId;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "value_coded")
     private ConceptLight valueCoded;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "value_coded_name_id")
     private ConceptNameLight valueCodedName;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "value_drug")
     private DrugLight valueDrug;
 
@@ -94,7 +95,7 @@ public class Observation extends BaseDataEntity {
     @Column(name = "comments")
     private String comments;
 
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "previous_version")
     private ObservationLight previousVersion;
 
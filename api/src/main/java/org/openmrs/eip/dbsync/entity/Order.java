@@ -12,6 +12,7 @@ import org.openmrs.eip.dbsync.entity.light.ProviderLight;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
 import javax.persistence.JoinColumn;
@@ -28,17 +29,17 @@ import java.time.LocalDateTime;
 public class Order extends BaseDataEntity {
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "patient_id")
 	private PatientLight patient;
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "order_type_id")
 	private OrderTypeLight orderType;
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "concept_id")
 	private ConceptLight concept;
 	
@@ -51,19 +52,19 @@ public class Order extends BaseDataEntity {
 	private LocalDateTime autoExpireDate;
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "encounter_id")
 	private EncounterLight encounter;
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "orderer")
 	private ProviderLight orderer;
 	
 	@Column(name = "date_stopped")
 	private LocalDateTime dateStopped;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "order_reason")
 	private ConceptLight orderReason;
 	
@@ -84,7 +85,7 @@ public class Order extends BaseDataEntity {
 	private String commentToFulfiller;
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "care_setting")
 	private CareSettingLight careSetting;
 	
@@ -94,7 +95,7 @@ public class Order extends BaseDataEntity {
 	@Column(name = "sort_weight")
 	private Double sortWeight;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "previous_order_id")
 	private OrderLight previousOrder;
 	
@@ -102,7 +103,7 @@ public class Order extends BaseDataEntity {
 	@Column(name = "order_action")
 	private String action;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "order_group_id")
 	private OrderGroupLight orderGroup;
 	
@@ -3,6 +3,7 @@ package org.openmrs.eip.dbsync.entity;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -22,7 +23,7 @@ import lombok.EqualsAndHashCode;
 public class OrderAttribute extends Attribute<OrderAttributeTypeLight> {
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "order_id")
 	private OrderLight referencedEntity;
 }
@@ -5,6 +5,7 @@ import org.openmrs.eip.dbsync.entity.light.UserLight;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.PrimaryKeyJoinColumn;
@@ -23,7 +24,7 @@ public class Patient extends Person {
 	private String allergyStatus;
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "creator")
 	private UserLight patientCreator;
 	
@@ -31,7 +32,7 @@ public class Patient extends Person {
 	@Column(name = "date_created")
 	private LocalDateTime patientDateCreated;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "changed_by")
 	private UserLight patientChangedBy;
 	
@@ -42,7 +43,7 @@ public class Patient extends Person {
 	@Column(name = "voided")
 	private boolean patientVoided;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "voided_by")
 	private UserLight patientVoidedBy;
 	
@@ -9,6 +9,7 @@ import org.openmrs.eip.dbsync.entity.light.PatientLight;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -22,7 +23,7 @@ import javax.validation.constraints.NotNull;
 public class PatientIdentifier extends BaseChangeableDataEntity {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "patient_id")
     private PatientLight patient;
 
@@ -31,7 +32,7 @@ public class PatientIdentifier extends BaseChangeableDataEntity {
     private String identifier;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "identifier_type")
     private PatientIdentifierTypeLight patientIdentifierType;
 
@@ -39,7 +40,7 @@ public class PatientIdentifier extends BaseChangeableDataEntity {
     @Column(name = "preferred")
     private boolean preferred;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "location_id")
     private LocationLight location;
 }
@@ -10,6 +10,7 @@ import org.openmrs.eip.dbsync.entity.light.ProgramLight;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -24,12 +25,12 @@ import java.time.LocalDateTime;
 public class PatientProgram extends BaseChangeableDataEntity {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "patient_id")
     private PatientLight patient;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "program_id")
     private ProgramLight program;
 
@@ -39,11 +40,11 @@ public class PatientProgram extends BaseChangeableDataEntity {
     @Column(name = "date_completed")
     private LocalDateTime dateCompleted;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "location_id")
     private LocationLight location;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "outcome_concept_id")
     private ConceptLight outcomeConcept;
 }
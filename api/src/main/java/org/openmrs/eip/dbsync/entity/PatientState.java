@@ -5,6 +5,7 @@ import java.time.LocalDate;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -25,12 +26,12 @@ import lombok.EqualsAndHashCode;
 public class PatientState extends BaseChangeableDataEntity {
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "patient_program_id")
 	private PatientProgramLight patientProgram;
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "state")
 	private ProgramWorkflowStateLight state;
 	
@@ -40,7 +41,7 @@ public class PatientState extends BaseChangeableDataEntity {
 	@Column(name = "end_date")
 	private LocalDate endDate;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "encounter_id")
     private EncounterLight encounter;
 	
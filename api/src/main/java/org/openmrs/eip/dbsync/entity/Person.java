@@ -7,6 +7,7 @@ import java.time.LocalTime;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
 import javax.persistence.JoinColumn;
@@ -44,7 +45,7 @@ public class Person extends BaseChangeableDataEntity {
 	@Column(name = "death_date")
 	private LocalDateTime deathDate;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "cause_of_death")
 	private ConceptLight causeOfDeath;
 	
@@ -8,6 +8,7 @@ import org.openmrs.eip.dbsync.entity.light.PersonLight;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -25,12 +26,12 @@ public class PersonAttribute extends BaseChangeableDataEntity {
     private String value;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "person_id")
     private PersonLight person;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "person_attribute_type_id")
     private PersonAttributeTypeLight personAttributeType;
 }
@@ -7,6 +7,7 @@ import org.openmrs.eip.dbsync.entity.light.PersonLight;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
 import javax.persistence.JoinColumn;
@@ -27,7 +28,7 @@ public class PersonName extends BaseChangeableDataEntity {
     private boolean preferred;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "person_id")
     private PersonLight person;
 
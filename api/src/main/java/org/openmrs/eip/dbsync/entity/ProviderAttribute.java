@@ -16,7 +16,7 @@ import javax.validation.constraints.NotNull;
 public class ProviderAttribute extends Attribute<ProviderAttributeTypeLight> {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "provider_id")
     private ProviderLight referencedEntity;
 }
@@ -1,6 +1,7 @@
 package org.openmrs.eip.dbsync.entity;
 
 import javax.persistence.Column;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.MappedSuperclass;
@@ -16,7 +17,7 @@ import lombok.EqualsAndHashCode;
 @EqualsAndHashCode(callSuper = true)
 public abstract class ServiceOrder extends Order {
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "specimen_source")
 	private ConceptLight specimenSource;
 	
@@ -26,14 +27,14 @@ public abstract class ServiceOrder extends Order {
 	@Column(name = "clinical_history")
 	private String clinicalHistory;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "frequency")
 	private OrderFrequencyLight frequency;
 	
 	@Column(name = "number_of_repeats")
 	private Integer numberOfRepeats;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "location")
 	private ConceptLight location;
 	
@@ -10,6 +10,7 @@ import org.openmrs.eip.dbsync.entity.light.VisitTypeLight;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -24,12 +25,12 @@ import java.time.LocalDateTime;
 public class Visit extends BaseChangeableDataEntity {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "patient_id")
     private PatientLight patient;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "visit_type_id")
     private VisitTypeLight visitType;
 
@@ -40,11 +41,11 @@ public class Visit extends BaseChangeableDataEntity {
     @Column(name = "date_stopped")
     private LocalDateTime dateStopped;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "indication_concept_id")
     private ConceptLight indicationConcept;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "location_id")
     private LocationLight location;
 }
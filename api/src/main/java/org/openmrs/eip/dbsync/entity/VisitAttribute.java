@@ -16,7 +16,7 @@ import javax.validation.constraints.NotNull;
 public class VisitAttribute extends Attribute<VisitAttributeTypeLight> {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "visit_id")
     private VisitLight referencedEntity;
 }
@@ -6,6 +6,7 @@ import lombok.EqualsAndHashCode;
 import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -19,12 +20,12 @@ import javax.validation.constraints.NotNull;
 public class ConceptLight extends RetireableLightEntity {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "datatype_id")
     private ConceptDatatypeLight datatype;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "class_id")
     private ConceptClassLight conceptClass;
 
@@ -18,7 +18,7 @@ public class ConditionLight extends VoidableLightEntity {
     private String clinicalStatus;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "patient_id")
     private PatientLight patient;
 }
@@ -14,7 +14,7 @@ import javax.validation.constraints.NotNull;
 public class DrugLight extends RetireableLightEntity {
 	
 	@NotNull
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "concept_id")
 	private ConceptLight concept;
 	
@@ -19,12 +19,12 @@ public class EncounterLight extends VoidableLightEntity {
     private LocalDateTime encounterDatetime;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "patient_id")
     private PatientLight patient;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "encounter_type")
     private EncounterTypeLight encounterType;
 }
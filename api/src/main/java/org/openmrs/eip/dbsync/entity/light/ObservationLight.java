@@ -19,12 +19,12 @@ public class ObservationLight extends VoidableLightEntity {
     private LocalDateTime obsDatetime;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "concept_id")
     private ConceptLight concept;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "person_id")
     private PersonLight person;
 }
@@ -19,7 +19,7 @@ public class ProgramLight extends LightEntity {
     private String name;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "concept_id")
     private ConceptLight concept;
 
@@ -15,12 +15,12 @@ import java.time.LocalDateTime;
 public class ProgramWorkflowStateLight extends LightEntity {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "program_workflow_id")
     private ProgramWorkflowLight programWorkflow;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "concept_id")
     private ConceptLight concept;
 
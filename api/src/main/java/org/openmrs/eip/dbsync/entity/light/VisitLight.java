@@ -15,12 +15,12 @@ import java.time.LocalDateTime;
 public class VisitLight extends VoidableLightEntity {
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "patient_id")
     private PatientLight patient;
 
     @NotNull
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "visit_type_id")
     private VisitTypeLight visitType;
 
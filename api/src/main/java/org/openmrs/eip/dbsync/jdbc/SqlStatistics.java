@@ -0,0 +1,166 @@
+package org.openmrs.eip.dbsync.jdbc;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulates the SQL statements executed by the current thread while a unit of work e.g. a sync
+ * message is processed, statements, rows and database time are counted per datasource by
+ * {@link SqlStatisticsDataSource} and statements generated by Hibernate are counted by
+ * {@link SqlStatisticsInspector}. Nothing is recorded for a thread that has no current instance.
+ */
+public final class SqlStatistics {
+	
+	private static final ThreadLocal<SqlStatistics> CURRENT = new ThreadLocal();
+	
+	private final Map<String, Counts> counts = new LinkedHashMap();
+	
+	private final long startNanos = System.nanoTime();
+	
+	private long hibernateStatements;
+	
+	private SqlStatistics() {
+	}
+	
+	/**
+	 * Starts accumulating statistics for the current thread
+	 *
+	 * @return the statistics
+	 */
+	public static SqlStatistics begin() {
+		SqlStatistics stats = new SqlStatistics();
+		CURRENT.set(stats);
+		return stats;
+	}
+	
+	/**
+	 * Gets the statistics of the current thread
+	 *
+	 * @return the statistics or null if none are being accumulated by the current thread
+	 */
+	public static SqlStatistics get() {
+		return CURRENT.get();
+	}
+	
+	/**
+	 * Stops accumulating statistics for the current thread
+	 */
+	public static void end() {
+		CURRENT.remove();
+	}
+	
+	/**
+	 * Records a statement executed against the specified datasource by the current thread
+	 *
+	 * @param dataSourceName the datasource name
+	 * @param rows the number of rows changed by the statement
+	 * @param nanos the execution time in nanoseconds
+	 */
+	public static void recordStatement(String dataSourceName, long rows, long nanos) {
+		SqlStatistics stats = CURRENT.get();
+		if (stats != null) {
+			Counts c = stats.getOrCreateCounts(dataSourceName);
+			c.statements++;
+			c.rows += rows;
+			c.nanos += nanos;
+		}
+	}
+	
+	/**
+	 * Records rows read from a result set of a statement executed by the current thread
+	 *
+	 * @param dataSourceName the datasource name
+	 * @param rows the number of rows read
+	 */
+	public static void recordRows(String dataSourceName, long rows) {
+		SqlStatistics stats = CURRENT.get();
+		if (stats != null) {
+			stats.getOrCreateCounts(dataSourceName).rows += rows;
+		}
+	}
+	
+	/**
+	 * Records a statement prepared by Hibernate for the current thread
+	 */
+	public static void recordHibernateStatement() {
+		SqlStatistics stats = CURRENT.get();
+		if (stats != null) {
+			stats.hibernateStatements++;
+		}
+	}
+	
+	private Counts getOrCreateCounts(String dataSourceName) {
+		return counts.computeIfAbsent(dataSourceName, k -> new Counts());
+	}
+	
+	/**
+	 * @return the counts keyed by datasource name
+	 */
+	public Map<String, Counts> getCounts() {
+		return Collections.unmodifiableMap(counts);
+	}
+	
+	/**
+	 * @return the number of statements prepared by Hibernate
+	 */
+	public long getHibernateStatements() {
+		return hibernateStatements;
+	}
+	
+	/**
+	 * @return the time in nanoseconds elapsed since the statistics were started
+	 */
+	public long getElapsedNanos() {
+		return System.nanoTime() - startNanos;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{hibernateStatements=" + hibernateStatements);
+		counts.forEach((name, c) -> sb.append(", ").append(name).append(c));
+		return sb.append("}").toString();
+	}
+	
+	/**
+	 * The statement, row and time counts of a single datasource
+	 */
+	public static final class Counts {
+		
+		private long statements;
+		
+		private long rows;
+		
+		private long nanos;
+		
+		/**
+		 * @return the number of statements executed
+		 */
+		public long getStatements() {
+			return statements;
+		}
+		
+		/**
+		 * @return the number of rows read or changed
+		 */
+		public long getRows() {
+			return rows;
+		}
+		
+		/**
+		 * @return the time in nanoseconds spent executing the statements
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+		
+		@Override
+		public String toString() {
+			return "{statements=" + statements + ", rows=" + rows + ", dbTimeMs=" + TimeUnit.NANOSECONDS.toMillis(nanos)
+			        + "}";
+		}
+		
+	}
+	
+}
@@ -0,0 +1,137 @@
+package org.openmrs.eip.dbsync.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * A DataSource proxy that records every statement executed through its connections in the
+ * {@link SqlStatistics} of the current thread i.e. a round trip per execute call, the number of rows
+ * changed or read from the returned result sets and the execution time.
+ */
+public class SqlStatisticsDataSource extends DelegatingDataSource {
+	
+	private static final String EXECUTE_PREFIX = "execute";
+	
+	private final String name;
+	
+	/**
+	 * @param target the datasource to wrap
+	 * @param name the name under which the statements are recorded
+	 */
+	public SqlStatisticsDataSource(DataSource target, String name) {
+		super(target);
+		this.name = name;
+	}
+	
+	@Override
+	public Connection getConnection() throws SQLException {
+		return proxy(Connection.class, obtainTargetDataSource().getConnection());
+	}
+	
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return proxy(Connection.class, obtainTargetDataSource().getConnection(username, password));
+	}
+	
+	private <T> T proxy(Class<T> type, T target) {
+		return type.cast(Proxy.newProxyInstance(SqlStatisticsDataSource.class.getClassLoader(), new Class[] { type },
+		    new Handler(target)));
+	}
+	
+	private static long sumOfUpdateCounts(Object result) {
+		long rows = 0;
+		if (result instanceof int[]) {
+			for (int count : (int[]) result) {
+				rows += Math.max(count, 0);
+			}
+		} else if (result instanceof long[]) {
+			for (long count : (long[]) result) {
+				rows += Math.max(count, 0);
+			}
+		} else if (result instanceof Number) {
+			rows = Math.max(((Number) result).longValue(), 0);
+		}
+		
+		return rows;
+	}
+	
+	/**
+	 * Wraps the statements returned by a connection and the result sets returned by a statement,
+	 * equality is by identity since JDBC resources are tracked in hash based collections.
+	 */
+	private class Handler implements InvocationHandler {
+		
+		private final Object target;
+		
+		Handler(Object target) {
+			this.target = target;
+		}
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "unwrap":
+				case "isWrapperFor":
+					return doInvoke(method, args);
+			}
+			
+			if (target instanceof Statement && method.getName().startsWith(EXECUTE_PREFIX)) {
+				final long start = System.nanoTime();
+				Object result = doInvoke(method, args);
+				long nanos = System.nanoTime() - start;
+				SqlStatistics.recordStatement(name, sumOfUpdateCounts(result), nanos);
+				return wrap(method, result);
+			}
+			
+			if (target instanceof ResultSet && "next".equals(method.getName())) {
+				Object result = doInvoke(method, args);
+				if (Boolean.TRUE.equals(result)) {
+					SqlStatistics.recordRows(name, 1);
+				}
+				
+				return result;
+			}
+			
+			return wrap(method, doInvoke(method, args));
+		}
+		
+		private Object doInvoke(Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			}
+			catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+		
+		private Object wrap(Method method, Object result) {
+			Class<?> returnType = method.getReturnType();
+			if (result == null || !returnType.isInterface()) {
+				return result;
+			}
+			
+			if ((target instanceof Connection && Statement.class.isAssignableFrom(returnType))
+			        || (target instanceof Statement && ResultSet.class.isAssignableFrom(returnType))) {
+				return proxy((Class<Object>) returnType, result);
+			}
+			
+			return result;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,17 @@
+package org.openmrs.eip.dbsync.jdbc;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the statements prepared by Hibernate in the {@link SqlStatistics} of the current thread,
+ * the sql is returned unchanged.
+ */
+public class SqlStatisticsInspector implements StatementInspector {
+	
+	@Override
+	public String inspect(String sql) {
+		SqlStatistics.recordHibernateStatement();
+		return sql;
+	}
+	
+}
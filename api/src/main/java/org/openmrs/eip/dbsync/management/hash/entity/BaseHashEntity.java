@@ -9,6 +9,9 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.MappedSuperclass;
 
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.Type;
+
 import lombok.Data;
 
 @Data
@@ -20,9 +23,13 @@ public abstract class BaseHashEntity implements Serializable {
 	private Long id;
 	
 	@Column(nullable = false, unique = true, updatable = false)
+	@Type(type = HashColumnType.CLASS_NAME, parameters = @Parameter(name = HashColumnType.PARAM_KIND,
+	        value = HashColumnType.KIND_IDENTIFIER))
 	private String identifier;
 	
 	@Column(nullable = false)
+	@Type(type = HashColumnType.CLASS_NAME, parameters = @Parameter(name = HashColumnType.PARAM_KIND,
+	        value = HashColumnType.KIND_HASH))
 	private String hash;
 	
 	@Column(name = "date_created", nullable = false, updatable = false)
@@ -0,0 +1,214 @@
+package org.openmrs.eip.dbsync.management.hash.entity;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.ParameterizedType;
+import org.hibernate.usertype.UserType;
+import org.openmrs.eip.dbsync.exception.SyncException;
+
+/**
+ * Hibernate type for the identifier and hash columns of the hash tables, in binary storage mode a
+ * uuid identifier or an MD5 hex hash is stored as 16 bytes and any other value as its UTF-8 bytes
+ * followed by a NUL terminator so that it never has the length of a compact value. Values are always
+ * exposed as strings to the entities, reads accept both storage modes while writes use the mode set
+ * via {@link #setBinary(boolean)}. Note that uuids stored in binary form are read back in lower case.
+ */
+public class HashColumnType implements UserType, ParameterizedType {
+	
+	public static final String PARAM_KIND = "kind";
+	
+	public static final String KIND_IDENTIFIER = "identifier";
+	
+	public static final String KIND_HASH = "hash";
+	
+	public static final String CLASS_NAME = "org.openmrs.eip.dbsync.management.hash.entity.HashColumnType";
+	
+	private static final int COMPACT_LENGTH = 16;
+	
+	private static final Pattern UUID_PATTERN = Pattern
+	        .compile("^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
+	
+	private static final Pattern MD5_PATTERN = Pattern.compile("^[0-9a-fA-F]{32}$");
+	
+	private static volatile boolean binary;
+	
+	private boolean identifier = true;
+	
+	/**
+	 * Sets the storage mode used when writing identifiers and hashes
+	 *
+	 * @param binary true for binary storage otherwise false
+	 */
+	public static void setBinary(boolean binary) {
+		HashColumnType.binary = binary;
+	}
+	
+	/**
+	 * Checks if identifiers and hashes are written in binary storage mode
+	 *
+	 * @return true if binary storage mode is enabled otherwise false
+	 */
+	public static boolean isBinary() {
+		return binary;
+	}
+	
+	/**
+	 * Converts the specified identifier or hash to its binary form
+	 *
+	 * @param value the value to convert
+	 * @param identifier specifies if the value is an identifier or a hash
+	 * @return the bytes
+	 */
+	public static byte[] toBytes(String value, boolean identifier) {
+		if (identifier && UUID_PATTERN.matcher(value).matches()) {
+			UUID uuid = UUID.fromString(value);
+			return ByteBuffer.allocate(COMPACT_LENGTH).putLong(uuid.getMostSignificantBits())
+			        .putLong(uuid.getLeastSignificantBits()).array();
+		}
+		
+		if (!identifier && MD5_PATTERN.matcher(value).matches()) {
+			try {
+				return Hex.decodeHex(value);
+			}
+			catch (DecoderException e) {
+				throw new SyncException("Failed to decode hash " + value, e);
+			}
+		}
+		
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		int terminators = bytes.length + 1 == COMPACT_LENGTH ? 2 : 1;
+		
+		return Arrays.copyOf(bytes, bytes.length + terminators);
+	}
+	
+	/**
+	 * Converts the specified binary form of an identifier or hash back to a string
+	 *
+	 * @param bytes the bytes to convert
+	 * @param identifier specifies if the value is an identifier or a hash
+	 * @return the string value
+	 */
+	public static String fromBytes(byte[] bytes, boolean identifier) {
+		if (bytes.length == COMPACT_LENGTH) {
+			if (identifier) {
+				ByteBuffer buffer = ByteBuffer.wrap(bytes);
+				return new UUID(buffer.getLong(), buffer.getLong()).toString();
+			}
+			
+			return Hex.encodeHexString(bytes);
+		}
+		
+		int length = bytes.length;
+		while (length > 0 && bytes[length - 1] == 0) {
+			length--;
+		}
+		
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Converts a value read from an identifier or hash column in either storage mode to a string
+	 *
+	 * @param value the column value
+	 * @param identifier specifies if the value is an identifier or a hash
+	 * @return the string value
+	 */
+	public static String fromColumnValue(Object value, boolean identifier) {
+		if (value == null) {
+			return null;
+		}
+		
+		if (value instanceof byte[]) {
+			return fromBytes((byte[]) value, identifier);
+		}
+		
+		return value.toString();
+	}
+	
+	@Override
+	public void setParameterValues(Properties parameters) {
+		if (parameters != null) {
+			identifier = !KIND_HASH.equals(parameters.getProperty(PARAM_KIND));
+		}
+	}
+	
+	@Override
+	public int[] sqlTypes() {
+		return new int[] { binary ? Types.VARBINARY : Types.VARCHAR };
+	}
+	
+	@Override
+	public Class returnedClass() {
+		return String.class;
+	}
+	
+	@Override
+	public boolean equals(Object x, Object y) {
+		return Objects.equals(x, y);
+	}
+	
+	@Override
+	public int hashCode(Object x) {
+		return Objects.hashCode(x);
+	}
+	
+	@Override
+	public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner)
+	    throws SQLException {
+		
+		return fromColumnValue(rs.getObject(names[0]), identifier);
+	}
+	
+	@Override
+	public void nullSafeSet(PreparedStatement st, Object value, int index, SharedSessionContractImplementor session)
+	    throws SQLException {
+		
+		if (value == null) {
+			st.setNull(index, binary ? Types.VARBINARY : Types.VARCHAR);
+		} else if (binary) {
+			st.setBytes(index, toBytes(value.toString(), identifier));
+		} else {
+			st.setString(index, value.toString());
+		}
+	}
+	
+	@Override
+	public Object deepCopy(Object value) {
+		return value;
+	}
+	
+	@Override
+	public boolean isMutable() {
+		return false;
+	}
+	
+	@Override
+	public Serializable disassemble(Object value) {
+		return (Serializable) value;
+	}
+	
+	@Override
+	public Object assemble(Serializable cached, Object owner) {
+		return cached;
+	}
+	
+	@Override
+	public Object replace(Object original, Object target, Object owner) {
+		return original;
+	}
+	
+}
@@ -1,5 +1,6 @@
 package org.openmrs.eip.dbsync.mapper.operations;
 
+import org.hibernate.Hibernate;
 import org.openmrs.eip.dbsync.model.BaseModel;
 import org.openmrs.eip.dbsync.entity.BaseEntity;
 import org.springframework.stereotype.Component;
@@ -16,6 +17,9 @@ public class ExtractUuidConsumer<E extends BaseEntity, M extends BaseModel> impl
                        final String attributeName) {
         BaseEntity linkedEntity = (BaseEntity) context.getEntityBeanWrapper().getPropertyValue(attributeName);
         if (linkedEntity != null) {
+            //Linked entities are lazy, unproxy to get the actual subclass e.g. PatientLight for a PersonLight, the
+            //pending proxies of the same type are loaded together in a single batch
+            linkedEntity = (BaseEntity) Hibernate.unproxy(linkedEntity);
             String uuid = linkedEntity.getUuid();
             String entityClass = linkedEntity.getClass().getName();
             context.getModelBeanWrapper().setPropertyValue(attributeName + UUID_SUFFIX, entityClass + "(" +uuid + ")");
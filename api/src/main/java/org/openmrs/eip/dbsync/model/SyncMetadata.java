@@ -2,10 +2,14 @@ package org.openmrs.eip.dbsync.model;
 
 import java.time.LocalDateTime;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 /**
  * Encapsulates descriptive data about a sync payload i.e. the unique ID of the site sending the.
  * payload and the date it was sent.
  */
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class SyncMetadata {
 	
 	private String sourceIdentifier;
@@ -16,6 +20,13 @@ public class SyncMetadata {
 	
 	private String dbSyncVersion;
 	
+	//Left out of the payload when not set so that older receivers can still read it
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private String hash;
+	
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private String hashVersion;
+	
 	/**
 	 * Gets the sourceIdentifier
 	 *
@@ -88,10 +99,47 @@ public class SyncMetadata {
 		this.dbSyncVersion = dbSyncVersion;
 	}
 	
+	/**
+	 * Gets the hash
+	 *
+	 * @return the hash
+	 */
+	public String getHash() {
+		return hash;
+	}
+	
+	/**
+	 * Sets the hash
+	 *
+	 * @param hash the hash to set
+	 */
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+	
+	/**
+	 * Gets the hashVersion
+	 *
+	 * @return the hashVersion
+	 */
+	public String getHashVersion() {
+		return hashVersion;
+	}
+	
+	/**
+	 * Sets the hashVersion
+	 *
+	 * @param hashVersion the hashVersion to set
+	 */
+	public void setHashVersion(String hashVersion) {
+		this.hashVersion = hashVersion;
+	}
+	
 	@Override
 	public String toString() {
 		return getClass().getSimpleName() + "{sourceIdentifier=" + sourceIdentifier + ", operation=" + operation
-		        + ", dateSent=" + dateSent + ", dbSyncVersion=" + dbSyncVersion + "}";
+		        + ", dateSent=" + dateSent + ", dbSyncVersion=" + dbSyncVersion + ", hash=" + hash + ", hashVersion="
+		        + hashVersion + "}";
 	}
 	
 }
@@ -20,6 +20,8 @@ import org.openmrs.eip.dbsync.repository.PersonRepository;
 import org.openmrs.eip.dbsync.repository.SyncEntityRepository;
 import org.openmrs.eip.dbsync.repository.light.UserLightRepository;
 import org.openmrs.eip.dbsync.service.light.AbstractLightService;
+import org.openmrs.eip.dbsync.service.upsert.UpsertService;
+import org.springframework.transaction.annotation.Transactional;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -117,22 +119,43 @@ public abstract class AbstractEntityService<E extends BaseEntity, M extends Base
 		return modelToReturn;
 	}
 	
+	/**
+	 * Maps the model to an entity and writes it with a single upsert statement, references to other
+	 * entities are resolved and placeholders created for missing ones exactly as in
+	 * {@link #save(BaseModel)}, an existing row with the same uuid is updated.
+	 *
+	 * @param model the model to save
+	 * @param upsertService the upsert service
+	 */
+	public void upsert(final M model, final UpsertService upsertService) {
+		E ety = modelToEntityMapper.apply(model);
+		upsertService.upsert(ety);
+		log.info(getMsg(ety, ety.getUuid(), " upserted"));
+	}
+	
 	private M saveEntity(final E ety) {
-		return entityToModelMapper.apply(repository.save(ety));
+		repository.save(ety);
+		//Map the entity we passed in since its linked entities are already loaded unlike those of a merged copy which
+		//are lazy and can't be loaded after the transaction of the repository call has ended, the id is already set
+		//since it is either generated when the entity is persisted or copied from the existing row before a merge
+		return entityToModelMapper.apply(ety);
 	}
 	
 	@Override
+	@Transactional(readOnly = true)
 	public List<M> getAllModels() {
 		return mapEntities(repository.findAll());
 	}
 	
 	@Override
+	@Transactional(readOnly = true)
 	public M getModel(final String uuid) {
 		E entity = repository.findByUuid(uuid);
 		return entity != null ? entityToModelMapper.apply(entity) : null;
 	}
 	
 	@Override
+	@Transactional(readOnly = true)
 	public M getModel(final Long id) {
 		Optional<E> entity = repository.findById(id);
 		return entity.map(entityToModelMapper).orElse(null);
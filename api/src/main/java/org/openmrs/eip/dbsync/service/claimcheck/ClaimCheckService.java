@@ -0,0 +1,346 @@
+package org.openmrs.eip.dbsync.service.claimcheck;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.support.DefaultExchange;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.eip.dbsync.camel.utils.BodyUtils;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.service.compression.PayloadCompressionService;
+import org.openmrs.eip.dbsync.service.format.PayloadFormatService;
+import org.openmrs.eip.dbsync.service.security.AbstractSecurityService;
+import org.openmrs.eip.dbsync.service.security.PGPDecryptService;
+import org.openmrs.eip.dbsync.utils.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Implements the claim check pattern for entity payloads. An outgoing message body larger than the
+ * threshold is checked in AFTER it is compressed and encrypted, this implies the stored payload is
+ * exactly what would otherwise have been sent i.e. it is never stored in plain text when encryption
+ * is enabled. The message body is replaced with a reference that has the same structure as the
+ * payload i.e. the model class, the model uuid and the metadata and a {@link #FIELD_CLAIM_CHECK}
+ * field holding the digest and size of the stored payload and the message headers needed to decrypt,
+ * decompress and decode it, the reference is then encrypted like any other payload. The receiver
+ * routes and saves the reference like any other payload and only reads the stored payload when the
+ * entity is loaded, see {@link #unmarshalSyncModel(String)}.
+ * <p>
+ * By default the stored payload is relayed to the receiver through the broker in a message sent
+ * ahead of the reference and marked with the {@link #HEADER_CLAIM_CHECK} header, the receiver adds
+ * it to its own store, see {@link #accept(Exchange)}, so the store only needs to be reachable by the
+ * receiver. When relaying is disabled, the sender adds the payload directly to its store which then
+ * MUST be reachable from both the sender and the receiver e.g. a shared directory.
+ * <p>
+ * The same payload can be referenced by more than one message e.g. when the broker redelivers a
+ * reference, each saved reference is counted with {@link #retain(String)} and the stored payload is
+ * only deleted when all of them are released with {@link #release(String)}. A payload added to the
+ * store is held until its reference is saved so that releasing an earlier reference to the same
+ * payload in the meantime does not delete it, a reference that is not saved is dropped with
+ * {@link #discard(String)}.
+ */
+@Service("claimCheckService")
+public class ClaimCheckService {
+	
+	protected static final Logger log = LoggerFactory.getLogger(ClaimCheckService.class);
+	
+	public static final String EX_PROP_SYNC_MODEL = "syncModel";
+	
+	/**
+	 * Set to true on the exchange when the body was replaced with a reference
+	 */
+	public static final String EX_PROP_CHECKED_IN = "claimCheckedIn";
+	
+	/**
+	 * Marks a message holding a relayed payload, the value is the digest of the payload
+	 */
+	public static final String HEADER_CLAIM_CHECK = "dbSyncClaimCheck";
+	
+	public static final String FIELD_CLAIM_CHECK = "claimCheck";
+	
+	public static final String FIELD_DIGEST = "digest";
+	
+	public static final String FIELD_SIZE = "size";
+	
+	public static final String FIELD_ENCRYPTED = "encrypted";
+	
+	public static final String FIELD_HEADERS = "headers";
+	
+	/**
+	 * The headers of the stored payload that are moved to the reference
+	 */
+	private static final List<String> PAYLOAD_HEADERS = Collections.unmodifiableList(
+	    Arrays.asList(PayloadCompressionService.HEADER_COMPRESSION, PayloadFormatService.HEADER_FORMAT,
+	        PayloadFormatService.HEADER_SCHEMA, AbstractSecurityService.HEADER_SENDER_ID));
+	
+	private static final String MARKER = "\"" + FIELD_CLAIM_CHECK + "\"";
+	
+	//References hold no model fields so they are always small
+	private static final int MAX_REFERENCE_LENGTH = 4096;
+	
+	private static final int BUFFER_SIZE = 8192;
+	
+	private final ClaimCheckStore store;
+	
+	private final PayloadFormatService formatService;
+	
+	private final PayloadCompressionService compressionService;
+	
+	private final PGPDecryptService decryptService;
+	
+	private final ProducerTemplate producerTemplate;
+	
+	private final int threshold;
+	
+	private final boolean relay;
+	
+	private final boolean encryptionEnabled;
+	
+	private final String outputEndpoint;
+	
+	public ClaimCheckService(ClaimCheckStore store, PayloadFormatService formatService,
+	    PayloadCompressionService compressionService, PGPDecryptService decryptService,
+	    ProducerTemplate producerTemplate, @Value("${openmrs.eip.dbsync.claim.check.threshold:262144}") int threshold,
+	    @Value("${openmrs.eip.dbsync.claim.check.relay:true}") boolean relay,
+	    @Value("${openmrs.eip.dbsync.encryption.enabled:false}") boolean encryptionEnabled,
+	    @Value("${camel.output.endpoint:}") String outputEndpoint) {
+		this.store = store;
+		this.formatService = formatService;
+		this.compressionService = compressionService;
+		this.decryptService = decryptService;
+		this.producerTemplate = producerTemplate;
+		this.threshold = threshold;
+		this.relay = relay;
+		this.encryptionEnabled = encryptionEnabled;
+		this.outputEndpoint = outputEndpoint;
+	}
+	
+	/**
+	 * Checks in the outgoing message body if it is larger than the threshold and replaces it with a
+	 * reference JSON String, the payload headers are moved to the reference since they apply to the
+	 * stored payload and the {@link #EX_PROP_CHECKED_IN} exchange property is set to true. The body
+	 * MUST be compressed and encrypted as configured before calling this method and the
+	 * {@link SyncModel} MUST be set as the {@link #EX_PROP_SYNC_MODEL} exchange property.
+	 *
+	 * @param exchange the exchange
+	 */
+	public void checkIn(Exchange exchange) {
+		byte[] data = BodyUtils.getBodyAsBytes(exchange);
+		if (data.length <= threshold) {
+			return;
+		}
+		
+		SyncModel syncModel = exchange.getProperty(EX_PROP_SYNC_MODEL, SyncModel.class);
+		if (syncModel == null) {
+			throw new SyncException("No SyncModel found in the " + EX_PROP_SYNC_MODEL + " exchange property");
+		}
+		
+		final String digest;
+		if (relay) {
+			if (StringUtils.isBlank(outputEndpoint)) {
+				throw new SyncException("camel.output.endpoint is required to relay claim check payloads");
+			}
+			
+			digest = DigestUtils.sha256Hex(data);
+			producerTemplate.sendBodyAndHeader(outputEndpoint, data, HEADER_CLAIM_CHECK, digest);
+		} else {
+			digest = store.put(data);
+		}
+		
+		ObjectNode reference = JsonNodeFactory.instance.objectNode();
+		reference.put("tableToSyncModelClass", syncModel.getTableToSyncModelClass().getName());
+		reference.putObject("model").put("uuid", syncModel.getModel().getUuid());
+		reference.set("metadata", JsonUtils.toTree(syncModel.getMetadata()));
+		ObjectNode claimCheck = reference.putObject(FIELD_CLAIM_CHECK);
+		claimCheck.put(FIELD_DIGEST, digest);
+		claimCheck.put(FIELD_SIZE, data.length);
+		claimCheck.put(FIELD_ENCRYPTED, encryptionEnabled);
+		ObjectNode headers = claimCheck.putObject(FIELD_HEADERS);
+		for (String name : PAYLOAD_HEADERS) {
+			String value = exchange.getIn().getHeader(name, String.class);
+			if (value != null) {
+				headers.put(name, value);
+			}
+			
+			exchange.getIn().removeHeader(name);
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Replaced entity payload of " + data.length + " bytes with claim check reference " + digest);
+		}
+		
+		exchange.getIn().setBody(JsonUtils.treeToJson(reference));
+		exchange.setProperty(EX_PROP_CHECKED_IN, true);
+	}
+	
+	/**
+	 * Adds a payload relayed by a sender in a message marked with the {@link #HEADER_CLAIM_CHECK}
+	 * header to the store, the payload is verified against the digest in the header.
+	 *
+	 * @param exchange the exchange
+	 */
+	public void accept(Exchange exchange) {
+		final String digest = exchange.getIn().getHeader(HEADER_CLAIM_CHECK, String.class);
+		byte[] data = BodyUtils.getBodyAsBytes(exchange);
+		if (digest == null || !digest.equals(DigestUtils.sha256Hex(data))) {
+			throw new SyncException("Relayed claim check payload does not match its digest " + digest);
+		}
+		
+		store.put(data);
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Stored relayed claim check payload " + digest + " of " + data.length + " bytes");
+		}
+	}
+	
+	/**
+	 * Checks if the specified payload is a claim check reference
+	 *
+	 * @param payload the payload
+	 * @return true if the payload is a reference otherwise false
+	 */
+	public boolean isReference(String payload) {
+		return getClaimCheck(payload) != null;
+	}
+	
+	/**
+	 * Unmarshals the specified payload to a {@link SyncModel}, if it is a claim check reference the
+	 * stored payload is read, verified against its digest, decrypted, decompressed and decoded. Note
+	 * that the stored payload is read into memory like any other message body since decryption and
+	 * decompression are not streaming.
+	 *
+	 * @param payload the payload or reference
+	 * @return the SyncModel
+	 */
+	public SyncModel unmarshalSyncModel(String payload) {
+		JsonNode claimCheck = getClaimCheck(payload);
+		if (claimCheck == null) {
+			return JsonUtils.unmarshalSyncModel(payload);
+		}
+		
+		final String digest = claimCheck.path(FIELD_DIGEST).asText();
+		byte[] data = read(digest, claimCheck.path(FIELD_SIZE).asInt());
+		Exchange exchange = new DefaultExchange(producerTemplate.getCamelContext());
+		exchange.getIn().setBody(data);
+		Iterator<Map.Entry<String, JsonNode>> headers = claimCheck.path(FIELD_HEADERS).fields();
+		while (headers.hasNext()) {
+			Map.Entry<String, JsonNode> header = headers.next();
+			exchange.getIn().setHeader(header.getKey(), header.getValue().asText());
+		}
+		
+		if (claimCheck.path(FIELD_ENCRYPTED).asBoolean()) {
+			decryptService.process(exchange);
+		}
+		
+		if (exchange.getIn().getHeader(PayloadCompressionService.HEADER_COMPRESSION) != null) {
+			compressionService.decompress(exchange);
+		}
+		
+		formatService.decode(exchange);
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Read claim check payload " + digest + " of " + data.length + " bytes");
+		}
+		
+		Object body = exchange.getIn().getBody();
+		if (body instanceof SyncModel) {
+			return (SyncModel) body;
+		}
+		
+		return JsonUtils.unmarshalSyncModel(exchange.getIn().getBody(String.class));
+	}
+	
+	/**
+	 * Records that the specified payload is referenced by a saved message if it is a claim check
+	 * reference, should be called each time a reference is saved and only after the save has
+	 * succeeded.
+	 *
+	 * @param payload the payload or reference
+	 */
+	public void retain(String payload) {
+		JsonNode claimCheck = getClaimCheck(payload);
+		if (claimCheck != null) {
+			store.retain(claimCheck.path(FIELD_DIGEST).asText());
+		}
+	}
+	
+	/**
+	 * Releases a reference to the stored payload if the specified payload is a claim check reference,
+	 * should be called once the entity has been loaded, the stored payload is deleted when it is no
+	 * longer referenced.
+	 *
+	 * @param payload the payload or reference
+	 */
+	public void release(String payload) {
+		JsonNode claimCheck = getClaimCheck(payload);
+		if (claimCheck != null) {
+			store.release(claimCheck.path(FIELD_DIGEST).asText());
+		}
+	}
+	
+	/**
+	 * Drops the hold on the stored payload if the specified payload is a claim check reference that is
+	 * not saved e.g. when the entity is skipped, the stored payload is deleted if no saved message
+	 * references it.
+	 *
+	 * @param payload the payload or reference
+	 */
+	public void discard(String payload) {
+		JsonNode claimCheck = getClaimCheck(payload);
+		if (claimCheck != null) {
+			final String digest = claimCheck.path(FIELD_DIGEST).asText();
+			store.retain(digest);
+			store.release(digest);
+		}
+	}
+	
+	private JsonNode getClaimCheck(String payload) {
+		if (payload == null || payload.length() > MAX_REFERENCE_LENGTH || !payload.contains(MARKER)) {
+			return null;
+		}
+		
+		JsonNode claimCheck = JsonUtils.readTree(payload).get(FIELD_CLAIM_CHECK);
+		return claimCheck != null && claimCheck.isObject() ? claimCheck : null;
+	}
+	
+	private byte[] read(String digest, int size) {
+		MessageDigest md = DigestUtils.getSha256Digest();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+		try (InputStream in = store.get(digest)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				md.update(buffer, 0, count);
+				out.write(buffer, 0, count);
+			}
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to read claim check payload " + digest, e);
+		}
+		
+		if (out.size() != size || !digest.equals(Hex.encodeHexString(md.digest()))) {
+			throw new SyncException("Claim check payload " + digest + " does not match its digest or size");
+		}
+		
+		return out.toByteArray();
+	}
+	
+}
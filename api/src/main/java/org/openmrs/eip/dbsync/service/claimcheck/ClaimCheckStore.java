@@ -0,0 +1,54 @@
+package org.openmrs.eip.dbsync.service.claimcheck;
+
+import java.io.InputStream;
+
+/**
+ * Content addressed store for entity payloads that are too large to be saved with their message,
+ * payloads are keyed by the lowercase hex SHA-256 digest of their content and are reference counted
+ * since the same payload can be referenced by more than one message. When payloads are relayed
+ * through the broker, which is the default, the store is only used by the receiver, otherwise the
+ * sender and receiver MUST be configured with stores backed by the same storage reachable from both
+ * of them e.g. a shared directory. A custom store can be used by declaring a spring bean
+ * implementing this interface.
+ */
+public interface ClaimCheckStore {
+	
+	/**
+	 * Adds the specified payload to the store, adding a payload that is already stored has no
+	 * effect on its content. The payload is held until it is next retained i.e. releasing the other
+	 * references to it in the meantime MUST NOT remove it, this MUST be atomic with respect to
+	 * {@link #release(String)} so that a payload found to be already stored is not removed before it
+	 * is held.
+	 *
+	 * @param data the payload
+	 * @return the digest of the payload
+	 */
+	String put(byte[] data);
+	
+	/**
+	 * Opens a stream to read the payload matching the specified digest, callers are responsible for
+	 * closing the stream
+	 *
+	 * @param digest the payload digest
+	 * @return the input stream
+	 * @throws org.openmrs.eip.dbsync.exception.SyncException if no payload is found
+	 */
+	InputStream get(String digest);
+	
+	/**
+	 * Increments the reference count of the payload matching the specified digest and drops its hold,
+	 * does nothing if no payload is found
+	 *
+	 * @param digest the payload digest
+	 */
+	void retain(String digest);
+	
+	/**
+	 * Decrements the reference count of the payload matching the specified digest and removes the
+	 * payload when it is no longer referenced nor held, does nothing if no payload is found
+	 *
+	 * @param digest the payload digest
+	 */
+	void release(String digest);
+	
+}
@@ -0,0 +1,187 @@
+package org.openmrs.eip.dbsync.service.claimcheck;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ClaimCheckStore} that keeps each payload in a file named after its digest, files are
+ * spread across sub directories named after the first 2 characters of the digest. Payloads are
+ * written to a temporary file that is atomically moved into place so that a reader never sees a
+ * partially written payload. The reference count of a payload is kept in a file next to it and a
+ * stored payload is held with an empty marker file until it is retained. Adding, retaining and
+ * releasing payloads are only guarded against each other within this JVM which is fine when the
+ * payloads are relayed since the store is then only used by the receiver.
+ */
+public class FileClaimCheckStore implements ClaimCheckStore {
+	
+	protected static final Logger log = LoggerFactory.getLogger(FileClaimCheckStore.class);
+	
+	private static final String TEMP_SUFFIX = ".tmp";
+	
+	private static final String REFS_SUFFIX = ".refs";
+	
+	private static final String HOLD_SUFFIX = ".hold";
+	
+	private final Path directory;
+	
+	public FileClaimCheckStore(String directory) {
+		this.directory = Paths.get(directory);
+	}
+	
+	@Override
+	public synchronized String put(byte[] data) {
+		final String digest = DigestUtils.sha256Hex(data);
+		Path file = getFile(digest);
+		try {
+			if (Files.exists(file)) {
+				if (log.isDebugEnabled()) {
+					log.debug("Claim check payload already stored: " + digest);
+				}
+			} else {
+				Files.createDirectories(file.getParent());
+				Path tempFile = Files.createTempFile(file.getParent(), digest, TEMP_SUFFIX);
+				try {
+					Files.write(tempFile, data);
+					Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch (FileAlreadyExistsException e) {
+					//Stored concurrently by another process, the content is the same
+				}
+				finally {
+					Files.deleteIfExists(tempFile);
+				}
+			}
+			
+			//Checked under the same lock as the deletion in release so that the payload can't be deleted between
+			//the existence check and the hold
+			Files.write(getHoldFile(digest), new byte[0]);
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to store claim check payload " + digest + " in " + directory, e);
+		}
+		
+		return digest;
+	}
+	
+	@Override
+	public InputStream get(String digest) {
+		try {
+			return Files.newInputStream(getFile(digest));
+		}
+		catch (NoSuchFileException e) {
+			throw new SyncException("No claim check payload found with digest " + digest + " in " + directory, e);
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to read claim check payload " + digest + " from " + directory, e);
+		}
+	}
+	
+	@Override
+	public synchronized void retain(String digest) {
+		if (!Files.exists(getFile(digest))) {
+			//The saved message was already loaded and released it before it could be retained
+			if (log.isDebugEnabled()) {
+				log.debug("Ignoring retain of a claim check payload that is no longer stored: " + digest);
+			}
+			
+			return;
+		}
+		
+		Path refsFile = getRefsFile(digest);
+		writeCount(refsFile, readCount(refsFile) + 1);
+		try {
+			Files.deleteIfExists(getHoldFile(digest));
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to delete claim check hold of payload " + digest + " from " + directory, e);
+		}
+	}
+	
+	@Override
+	public synchronized void release(String digest) {
+		Path refsFile = getRefsFile(digest);
+		final int count = readCount(refsFile) - 1;
+		if (count > 0) {
+			writeCount(refsFile, count);
+			return;
+		}
+		
+		try {
+			Files.deleteIfExists(refsFile);
+			if (Files.exists(getHoldFile(digest))) {
+				//Stored again for a reference that is not yet saved
+				if (log.isDebugEnabled()) {
+					log.debug("Keeping held claim check payload: " + digest);
+				}
+				
+				return;
+			}
+			
+			Files.deleteIfExists(getFile(digest));
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to delete claim check payload " + digest + " from " + directory, e);
+		}
+	}
+	
+	private int readCount(Path refsFile) {
+		try {
+			if (!Files.exists(refsFile)) {
+				return 0;
+			}
+			
+			return Integer.parseInt(new String(Files.readAllBytes(refsFile), StandardCharsets.US_ASCII).trim());
+		}
+		catch (IOException | NumberFormatException e) {
+			throw new SyncException("Failed to read claim check reference count from " + refsFile, e);
+		}
+	}
+	
+	private void writeCount(Path refsFile, int count) {
+		try {
+			Files.createDirectories(refsFile.getParent());
+			Path tempFile = Files.createTempFile(refsFile.getParent(), refsFile.getFileName().toString(), TEMP_SUFFIX);
+			try {
+				Files.write(tempFile, String.valueOf(count).getBytes(StandardCharsets.US_ASCII));
+				Files.move(tempFile, refsFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				Files.deleteIfExists(tempFile);
+			}
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to write claim check reference count to " + refsFile, e);
+		}
+	}
+	
+	private Path getRefsFile(String digest) {
+		Path file = getFile(digest);
+		return file.resolveSibling(file.getFileName() + REFS_SUFFIX);
+	}
+	
+	private Path getHoldFile(String digest) {
+		Path file = getFile(digest);
+		return file.resolveSibling(file.getFileName() + HOLD_SUFFIX);
+	}
+	
+	private Path getFile(String digest) {
+		if (digest == null || digest.length() < 3 || !digest.matches("[0-9a-f]+")) {
+			throw new SyncException("Invalid claim check digest: " + digest);
+		}
+		
+		return directory.resolve(digest.substring(0, 2)).resolve(digest);
+	}
+	
+}
@@ -0,0 +1,196 @@
+package org.openmrs.eip.dbsync.service.compression;
+
+import java.beans.PropertyDescriptor;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.openmrs.eip.dbsync.entity.light.LightEntity;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.model.SyncMetadata;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+
+/**
+ * A preset dictionary for DEFLATE compression of sync payloads, the sender and receiver MUST use
+ * identical dictionaries, each dictionary is identified by a hash of its contents which is sent
+ * along with the compressed payloads. Because DEFLATE can only look back 32KB, the most valuable
+ * strings are placed at the end of the dictionary.
+ */
+public final class CompressionDictionary {
+	
+	public static final int MAX_SIZE = 32 * 1024;
+	
+	//Quoted strings including the trailing colon for field names and light entity class name prefixes
+	private static final Pattern TOKEN_PATTERN = Pattern.compile("\"[^\"]{1,256}\":?|[\\w.]+Light\\(");
+	
+	private static CompressionDictionary builtIn;
+	
+	private final String id;
+	
+	private final byte[] bytes;
+	
+	private CompressionDictionary(byte[] bytes) {
+		this.bytes = bytes;
+		this.id = DigestUtils.md5Hex(bytes).substring(0, 12);
+	}
+	
+	/**
+	 * Gets the identifier of the dictionary which is derived from its contents
+	 *
+	 * @return the id
+	 */
+	public String getId() {
+		return id;
+	}
+	
+	/**
+	 * Gets the dictionary bytes
+	 *
+	 * @return the bytes
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+	
+	/**
+	 * Creates a dictionary from the contents of the specified file, typically one generated by
+	 * {@link DictionaryTrainer}
+	 *
+	 * @param path the path to the dictionary file
+	 * @return the dictionary
+	 */
+	public static CompressionDictionary load(String path) {
+		try {
+			byte[] bytes = FileUtils.readFileToByteArray(new File(path));
+			if (bytes.length == 0 || bytes.length > MAX_SIZE) {
+				throw new SyncException("Compression dictionary size must be between 1 and " + MAX_SIZE + " bytes");
+			}
+			
+			return new CompressionDictionary(bytes);
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to read compression dictionary file: " + path, e);
+		}
+	}
+	
+	/**
+	 * Gets the built-in dictionary which is generated from the model class names, field names and
+	 * light entity class names, it only changes when the models change which implies the sender and
+	 * receiver must run the same version of the application to use it.
+	 *
+	 * @return the dictionary
+	 */
+	public static synchronized CompressionDictionary getBuiltIn() {
+		if (builtIn == null) {
+			TreeSet<String> strings = new TreeSet();
+			Arrays.stream(PropertyUtils.getPropertyDescriptors(SyncModel.class)).forEach(d -> addField(d, strings));
+			Arrays.stream(PropertyUtils.getPropertyDescriptors(SyncMetadata.class)).forEach(d -> addField(d, strings));
+			for (TableToSyncEnum e : TableToSyncEnum.values()) {
+				strings.add("\"" + e.getModelClass().getName() + "\"");
+				Arrays.stream(PropertyUtils.getPropertyDescriptors(e.getModelClass())).forEach(d -> addField(d, strings));
+				Class<?> clazz = e.getEntityClass();
+				while (clazz != null && clazz != Object.class) {
+					for (Field field : clazz.getDeclaredFields()) {
+						if (LightEntity.class.isAssignableFrom(field.getType())) {
+							strings.add(field.getType().getName() + "(");
+						}
+					}
+					
+					clazz = clazz.getSuperclass();
+				}
+			}
+			
+			byte[] bytes = String.join("", strings).getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > MAX_SIZE) {
+				bytes = Arrays.copyOfRange(bytes, bytes.length - MAX_SIZE, bytes.length);
+			}
+			
+			builtIn = new CompressionDictionary(bytes);
+		}
+		
+		return builtIn;
+	}
+	
+	private static void addField(PropertyDescriptor descriptor, Collection<String> strings) {
+		if (!"class".equals(descriptor.getName())) {
+			strings.add("\"" + descriptor.getName() + "\":");
+		}
+	}
+	
+	/**
+	 * Builds a dictionary from sample payloads, it counts the occurrences of field names, string
+	 * values and light entity class name prefixes across the samples and keeps those that save the
+	 * most bytes, strings that occur once are ignored since they are typically uuids.
+	 *
+	 * @param samples the sample payloads
+	 * @param maxSize the maximum size of the dictionary in bytes
+	 * @return the dictionary
+	 */
+	public static CompressionDictionary train(Collection<String> samples, int maxSize) {
+		if (maxSize <= 0 || maxSize > MAX_SIZE) {
+			throw new SyncException("Compression dictionary size must be between 1 and " + MAX_SIZE + " bytes");
+		}
+		
+		Map<String, Integer> counts = new HashMap();
+		for (String sample : samples) {
+			Matcher matcher = TOKEN_PATTERN.matcher(sample);
+			while (matcher.find()) {
+				counts.merge(matcher.group(), 1, Integer::sum);
+			}
+		}
+		
+		List<Map.Entry<String, Integer>> entries = new ArrayList(counts.entrySet());
+		entries.removeIf(e -> e.getValue() < 2);
+		//Highest savings first, ties are broken by the token itself so that the output is deterministic
+		entries.sort((e1, e2) -> {
+			int result = Long.compare(getScore(e2), getScore(e1));
+			return result != 0 ? result : e1.getKey().compareTo(e2.getKey());
+		});
+		
+		List<byte[]> selected = new ArrayList();
+		int size = 0;
+		for (Map.Entry<String, Integer> e : entries) {
+			byte[] token = e.getKey().getBytes(StandardCharsets.UTF_8);
+			if (size + token.length > maxSize) {
+				continue;
+			}
+			
+			selected.add(token);
+			size += token.length;
+		}
+		
+		if (selected.isEmpty()) {
+			throw new SyncException("No repeated strings found in the sample payloads to build a dictionary");
+		}
+		
+		Collections.reverse(selected);
+		byte[] bytes = new byte[size];
+		int offset = 0;
+		for (byte[] token : selected) {
+			System.arraycopy(token, 0, bytes, offset, token.length);
+			offset += token.length;
+		}
+		
+		return new CompressionDictionary(bytes);
+	}
+	
+	private static long getScore(Map.Entry<String, Integer> entry) {
+		return (long) (entry.getValue() - 1) * entry.getKey().length();
+	}
+	
+}
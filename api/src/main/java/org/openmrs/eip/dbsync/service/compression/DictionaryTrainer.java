@@ -0,0 +1,45 @@
+package org.openmrs.eip.dbsync.service.compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Command line tool that builds a compression dictionary file from sample sync payloads, each file in
+ * the samples directory is expected to contain a single JSON payload as produced by the sender, the
+ * generated file should be copied to both the sender and receiver, usage is as below,
+ *
+ * <pre>
+ * java -cp dbsync-api.jar org.openmrs.eip.dbsync.service.compression.DictionaryTrainer {samples dir} {output file} [max size]
+ * </pre>
+ */
+public class DictionaryTrainer {
+	
+	protected static final Logger log = LoggerFactory.getLogger(DictionaryTrainer.class);
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			log.error("Usage: DictionaryTrainer <samples directory> <output file> [max size in bytes]");
+			System.exit(1);
+		}
+		
+		int maxSize = args.length > 2 ? Integer.parseInt(args[2]) : CompressionDictionary.MAX_SIZE;
+		List<String> samples = new ArrayList();
+		for (File file : FileUtils.listFiles(new File(args[0]), null, true)) {
+			samples.add(FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+		}
+		
+		CompressionDictionary dictionary = CompressionDictionary.train(samples, maxSize);
+		FileUtils.writeByteArrayToFile(new File(args[1]), dictionary.getBytes());
+		
+		log.info("Generated dictionary with id " + dictionary.getId() + " and size "
+		        + dictionary.getBytes().length + " bytes from " + samples.size() + " sample(s)");
+	}
+	
+}
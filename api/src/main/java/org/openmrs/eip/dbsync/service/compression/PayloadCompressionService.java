@@ -0,0 +1,284 @@
+package org.openmrs.eip.dbsync.service.compression;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.camel.Exchange;
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.eip.dbsync.camel.utils.BodyUtils;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.service.format.PayloadFormatService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Compresses outgoing sync payloads with DEFLATE and a preset dictionary and decompresses incoming
+ * ones, the algorithm and dictionary used are declared in the {@link #HEADER_COMPRESSION} message
+ * header so that the receiver knows how to decompress each message, messages without the header are
+ * left untouched. Compression statistics are collected per payload type, see {@link #getStats()}. The
+ * compression header is not authenticated so the size of a decompressed payload is capped to protect
+ * the receiver against decompression bombs.
+ */
+@Service("payloadCompressionService")
+public class PayloadCompressionService {
+	
+	protected static final Logger log = LoggerFactory.getLogger(PayloadCompressionService.class);
+	
+	public static final String HEADER_COMPRESSION = "dbSyncCompression";
+	
+	public static final String ALGORITHM_DEFLATE = "deflate";
+	
+	public static final String DICTIONARY_SEPARATOR = ":";
+	
+	public static final String EX_PROP_PAYLOAD_TYPE = "payloadType";
+	
+	private static final String UNKNOWN_TYPE = "unknown";
+	
+	private static final int BUFFER_SIZE = 4096;
+	
+	public static final long DEFAULT_MAX_INFLATED_SIZE = 64 * 1024 * 1024;
+	
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+	
+	private final CompressionDictionary dictionary;
+	
+	private final Map<String, CompressionDictionary> dictionaries;
+	
+	private final int level;
+	
+	private final long maxInflatedSize;
+	
+	private final Map<String, CompressionStats> stats = new ConcurrentHashMap();
+	
+	public PayloadCompressionService(@Value("${openmrs.eip.dbsync.compression.dictionary:}") String dictionaryPath,
+	    @Value("${openmrs.eip.dbsync.compression.level:" + Deflater.BEST_COMPRESSION + "}") int level,
+	    @Value("${openmrs.eip.dbsync.compression.max.inflated.size:" + DEFAULT_MAX_INFLATED_SIZE + "}") long maxInflatedSize) {
+		Map<String, CompressionDictionary> temp = new HashMap();
+		CompressionDictionary builtIn = CompressionDictionary.getBuiltIn();
+		temp.put(builtIn.getId(), builtIn);
+		if (StringUtils.isNotBlank(dictionaryPath)) {
+			dictionary = CompressionDictionary.load(dictionaryPath);
+			temp.put(dictionary.getId(), dictionary);
+		} else {
+			dictionary = builtIn;
+		}
+		
+		dictionaries = Collections.unmodifiableMap(temp);
+		this.level = level;
+		this.maxInflatedSize = maxInflatedSize;
+	}
+	
+	/**
+	 * Compresses the exchange body and sets the {@link #HEADER_COMPRESSION} header, the body is
+	 * replaced with the compressed bytes
+	 *
+	 * @param exchange the exchange
+	 */
+	public void compress(Exchange exchange) {
+		final long startCpuTime = getCpuTime();
+		byte[] data = BodyUtils.getBodyAsBytes(exchange);
+		byte[] compressed = deflate(data, dictionary);
+		final long cpuTime = getCpuTime() - startCpuTime;
+		
+		String type = exchange.getProperty(EX_PROP_PAYLOAD_TYPE, UNKNOWN_TYPE, String.class);
+		getStats(type).record(data.length, compressed.length, cpuTime);
+		if (log.isDebugEnabled()) {
+			log.debug("Compressed " + type + " payload from " + data.length + " to " + compressed.length + " bytes in "
+			        + cpuTime / 1000 + "us");
+		}
+		
+		exchange.getIn().setHeader(HEADER_COMPRESSION, ALGORITHM_DEFLATE + DICTIONARY_SEPARATOR + dictionary.getId());
+		exchange.getIn().setBody(compressed);
+	}
+	
+	/**
+	 * Decompresses the exchange body if the {@link #HEADER_COMPRESSION} header is set, the body is
+	 * replaced with the decompressed String or bytes for a binary payload and the header is removed
+	 *
+	 * @param exchange the exchange
+	 */
+	public void decompress(Exchange exchange) {
+		String compression = exchange.getIn().getHeader(HEADER_COMPRESSION, String.class);
+		if (compression == null) {
+			return;
+		}
+		
+		String[] parts = compression.split(DICTIONARY_SEPARATOR, 2);
+		if (!ALGORITHM_DEFLATE.equals(parts[0])) {
+			throw new SyncException("Unsupported payload compression algorithm: " + parts[0]);
+		}
+		
+		CompressionDictionary dict = null;
+		if (parts.length > 1) {
+			dict = dictionaries.get(parts[1]);
+			if (dict == null) {
+				throw new SyncException("No compression dictionary found with id " + parts[1] + ", please make sure the "
+				        + "sender and receiver are configured with the same dictionary");
+			}
+		}
+		
+		byte[] data = inflate(BodyUtils.getBodyAsBytes(exchange), dict);
+		//Binary payloads are left as bytes for the decoding step
+		if (exchange.getIn().getHeader(PayloadFormatService.HEADER_FORMAT) != null) {
+			exchange.getIn().setBody(data);
+		} else {
+			exchange.getIn().setBody(new String(data, UTF_8));
+		}
+		
+		exchange.getIn().removeHeader(HEADER_COMPRESSION);
+	}
+	
+	/**
+	 * Gets the compression statistics per payload type
+	 *
+	 * @return map of payload types to statistics
+	 */
+	public Map<String, CompressionStats> getStats() {
+		return Collections.unmodifiableMap(stats);
+	}
+	
+	/**
+	 * Gets the compression statistics for the specified payload type
+	 *
+	 * @param type the payload type
+	 * @return the statistics
+	 */
+	public CompressionStats getStats(String type) {
+		return stats.computeIfAbsent(type, k -> new CompressionStats());
+	}
+	
+	protected byte[] deflate(byte[] data, CompressionDictionary dict) {
+		Deflater deflater = new Deflater(level);
+		try {
+			if (dict != null) {
+				deflater.setDictionary(dict.getBytes());
+			}
+			
+			deflater.setInput(data);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(data.length / 2, 64));
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (!deflater.finished()) {
+				int count = deflater.deflate(buffer);
+				out.write(buffer, 0, count);
+			}
+			
+			return out.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+	
+	protected byte[] inflate(byte[] data, CompressionDictionary dict) {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(data.length * 4L, maxInflatedSize));
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long total = 0;
+			while (!inflater.finished()) {
+				int count = inflater.inflate(buffer);
+				if (count == 0) {
+					if (inflater.needsDictionary()) {
+						if (dict == null) {
+							throw new SyncException("Compressed payload requires a dictionary but none was specified");
+						}
+						
+						inflater.setDictionary(dict.getBytes());
+					} else if (inflater.needsInput()) {
+						throw new SyncException("Compressed payload is truncated");
+					}
+				}
+				
+				total += count;
+				if (total > maxInflatedSize) {
+					throw new SyncException("Decompressed payload exceeds the maximum allowed size of " + maxInflatedSize
+					        + " bytes");
+				}
+				
+				out.write(buffer, 0, count);
+			}
+			
+			return out.toByteArray();
+		}
+		catch (DataFormatException e) {
+			throw new SyncException("Failed to decompress payload", e);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+	
+	private static long getCpuTime() {
+		if (THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()) {
+			return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+		}
+		
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Compression statistics for a payload type
+	 */
+	public static class CompressionStats {
+		
+		private final AtomicLong count = new AtomicLong();
+		
+		private final AtomicLong uncompressedBytes = new AtomicLong();
+		
+		private final AtomicLong compressedBytes = new AtomicLong();
+		
+		private final AtomicLong cpuNanos = new AtomicLong();
+		
+		void record(long uncompressed, long compressed, long nanos) {
+			count.incrementAndGet();
+			uncompressedBytes.addAndGet(uncompressed);
+			compressedBytes.addAndGet(compressed);
+			cpuNanos.addAndGet(nanos);
+		}
+		
+		/**
+		 * @return the number of compressed payloads
+		 */
+		public long getCount() {
+			return count.get();
+		}
+		
+		/**
+		 * @return the total size in bytes of the payloads before compression
+		 */
+		public long getUncompressedBytes() {
+			return uncompressedBytes.get();
+		}
+		
+		/**
+		 * @return the total size in bytes of the payloads after compression
+		 */
+		public long getCompressedBytes() {
+			return compressedBytes.get();
+		}
+		
+		/**
+		 * @return the total CPU time in nanoseconds spent compressing payloads
+		 */
+		public long getCpuNanos() {
+			return cpuNanos.get();
+		}
+		
+	}
+	
+}
@@ -6,6 +6,7 @@ import org.openmrs.eip.dbsync.entity.BaseEntity;
 import org.openmrs.eip.dbsync.model.BaseModel;
 import org.openmrs.eip.dbsync.service.AbstractEntityService;
 import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.openmrs.eip.dbsync.service.upsert.UpsertService;
 import org.openmrs.eip.dbsync.utils.SyncUtils;
 import org.springframework.stereotype.Component;
 
@@ -17,8 +18,12 @@ public class EntityServiceFacade {
 	
 	private List<AbstractEntityService<? extends BaseEntity, ? extends BaseModel>> services;
 	
-	public EntityServiceFacade(final List<AbstractEntityService<? extends BaseEntity, ? extends BaseModel>> services) {
+	private UpsertService upsertService;
+	
+	public EntityServiceFacade(final List<AbstractEntityService<? extends BaseEntity, ? extends BaseModel>> services,
+	    final UpsertService upsertService) {
 		this.services = services;
+		this.upsertService = upsertService;
 	}
 	
 	/**
@@ -57,14 +62,20 @@ public class EntityServiceFacade {
 	}
 	
 	/**
-	 * save the model of type in parameter
+	 * save the model of type in parameter, the model is written with a single upsert statement if the
+	 * upsert fast path is enabled for the type
 	 *
 	 * @param tableToSync the type of model to save
 	 * @param model the model to save
 	 * @param <M>
 	 */
 	public <M extends BaseModel> void saveModel(final TableToSyncEnum tableToSync, final M model) {
-		getService(tableToSync).save(model);
+		AbstractEntityService<BaseEntity, M> service = getService(tableToSync);
+		if (upsertService.isEnabled(tableToSync)) {
+			service.upsert(model, upsertService);
+		} else {
+			service.save(model);
+		}
 	}
 	
 	/**
@@ -0,0 +1,215 @@
+package org.openmrs.eip.dbsync.service.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openmrs.eip.dbsync.exception.SyncException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Converts the tree of a marshalled {@link org.openmrs.eip.dbsync.model.SyncModel} to and from the
+ * compact payload schema, version {@link #VERSION}. In the compact schema:
+ * <ul>
+ * <li>The tableToSyncModelClass is replaced with its code in the {@link PayloadTypeRegistry}</li>
+ * <li>References to light entities e.g. <code>org.openmrs.eip.dbsync.entity.light.ConceptLight(uuid)</code>
+ * are replaced with an array holding the code of the light entity class and the uuid</li>
+ * <li>uuids are encoded as 16 bytes when binary values are supported by the output format and the
+ * uuid is in the canonical format, other uuids are left as text</li>
+ * <li>Null fields are omitted except for those in {@link #KEPT_NULL_FIELDS} which are read by the
+ * receiver route e.g. the uuid of a deleted entity with no identifier</li>
+ * </ul>
+ * Values that can't be encoded are left as is, decoding a compact tree produces the original tree
+ * less the null fields, a missing model uuid is restored as null.
+ */
+public class CompactPayloadCodec {
+	
+	public static final int VERSION = 1;
+	
+	private static final String FIELD_MODEL_CLASS = "tableToSyncModelClass";
+	
+	private static final String FIELD_MODEL = "model";
+	
+	private static final String FIELD_UUID = "uuid";
+	
+	private static final Set<String> KEPT_NULL_FIELDS = Collections
+	        .unmodifiableSet(new HashSet<>(Arrays.asList(FIELD_UUID, "operation", "sourceIdentifier", "dbSyncVersion")));
+	
+	private static final Pattern REFERENCE_PATTERN = Pattern.compile("^([\\w.$]+)\\((.+)\\)$");
+	
+	private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+	
+	private final PayloadTypeRegistry registry;
+	
+	private final boolean binaryUuids;
+	
+	/**
+	 * @param registry the payload type registry
+	 * @param binaryUuids specifies if uuids should be encoded as binary values
+	 */
+	public CompactPayloadCodec(PayloadTypeRegistry registry, boolean binaryUuids) {
+		this.registry = registry;
+		this.binaryUuids = binaryUuids;
+	}
+	
+	/**
+	 * Converts the specified SyncModel tree to the compact schema
+	 *
+	 * @param syncModel the SyncModel tree
+	 * @return the compact tree
+	 */
+	public ObjectNode encode(JsonNode syncModel) {
+		ObjectNode compact = encodeObject(syncModel);
+		JsonNode modelClass = syncModel.get(FIELD_MODEL_CLASS);
+		if (modelClass != null && modelClass.isTextual()) {
+			Integer code = registry.getCode(modelClass.textValue());
+			if (code != null) {
+				compact.put(FIELD_MODEL_CLASS, code);
+			}
+		}
+		
+		return compact;
+	}
+	
+	/**
+	 * Converts the specified compact tree back to a SyncModel tree
+	 *
+	 * @param compact the compact tree
+	 * @return the SyncModel tree
+	 */
+	public ObjectNode decode(JsonNode compact) {
+		ObjectNode syncModel = decodeObject(compact);
+		JsonNode modelClass = compact.get(FIELD_MODEL_CLASS);
+		if (modelClass != null && modelClass.isInt()) {
+			syncModel.put(FIELD_MODEL_CLASS, registry.getClassName(modelClass.intValue()));
+		}
+		
+		//Payloads from older senders omit a null uuid which is required by the receiver route
+		JsonNode model = syncModel.get(FIELD_MODEL);
+		if (model != null && model.isObject() && !model.has(FIELD_UUID)) {
+			((ObjectNode) model).putNull(FIELD_UUID);
+		}
+		
+		return syncModel;
+	}
+	
+	private ObjectNode encodeObject(JsonNode node) {
+		ObjectNode result = FACTORY.objectNode();
+		Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+		while (it.hasNext()) {
+			Map.Entry<String, JsonNode> field = it.next();
+			JsonNode value = field.getValue();
+			if (value.isNull() && !KEPT_NULL_FIELDS.contains(field.getKey())) {
+				continue;
+			}
+			
+			if (value.isObject()) {
+				result.set(field.getKey(), encodeObject(value));
+			} else if (value.isTextual()) {
+				result.set(field.getKey(), encodeText(field.getKey(), value));
+			} else {
+				result.set(field.getKey(), value);
+			}
+		}
+		
+		return result;
+	}
+	
+	private JsonNode encodeText(String fieldName, JsonNode value) {
+		if (FIELD_UUID.equals(fieldName)) {
+			return encodeUuid(value.textValue());
+		}
+		
+		Matcher matcher = REFERENCE_PATTERN.matcher(value.textValue());
+		if (matcher.matches()) {
+			Integer code = registry.getCode(matcher.group(1));
+			if (code != null) {
+				ArrayNode reference = FACTORY.arrayNode(2);
+				reference.add(code);
+				reference.add(encodeUuid(matcher.group(2)));
+				return reference;
+			}
+		}
+		
+		return value;
+	}
+	
+	private JsonNode encodeUuid(String uuid) {
+		if (binaryUuids) {
+			try {
+				UUID parsed = UUID.fromString(uuid);
+				//Only canonical uuids can be restored exactly
+				if (parsed.toString().equals(uuid)) {
+					ByteBuffer buffer = ByteBuffer.allocate(16);
+					buffer.putLong(parsed.getMostSignificantBits());
+					buffer.putLong(parsed.getLeastSignificantBits());
+					return FACTORY.binaryNode(buffer.array());
+				}
+			}
+			catch (IllegalArgumentException e) {
+				//Not a uuid, keep it as text
+			}
+		}
+		
+		return FACTORY.textNode(uuid);
+	}
+	
+	private ObjectNode decodeObject(JsonNode node) {
+		ObjectNode result = FACTORY.objectNode();
+		Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+		while (it.hasNext()) {
+			Map.Entry<String, JsonNode> field = it.next();
+			JsonNode value = field.getValue();
+			if (value.isObject()) {
+				result.set(field.getKey(), decodeObject(value));
+			} else if (value.isArray()) {
+				if (value.size() != 2 || !value.get(0).isInt()) {
+					throw new SyncException("Invalid reference found in compact payload for field " + field.getKey());
+				}
+				
+				String className = registry.getClassName(value.get(0).intValue());
+				result.put(field.getKey(), className + "(" + decodeUuid(value.get(1)) + ")");
+			} else if (value.isBinary()) {
+				result.put(field.getKey(), decodeUuid(value));
+			} else {
+				result.set(field.getKey(), value);
+			}
+		}
+		
+		return result;
+	}
+	
+	private static String decodeUuid(JsonNode node) {
+		if (!node.isBinary()) {
+			return node.asText();
+		}
+		
+		byte[] bytes;
+		try {
+			bytes = node.binaryValue();
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to read binary uuid in compact payload", e);
+		}
+		
+		if (bytes.length != 16) {
+			throw new SyncException("Invalid binary uuid length in compact payload: " + bytes.length);
+		}
+		
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		return new UUID(buffer.getLong(), buffer.getLong()).toString();
+	}
+	
+}
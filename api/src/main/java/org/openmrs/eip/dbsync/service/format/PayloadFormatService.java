@@ -0,0 +1,197 @@
+package org.openmrs.eip.dbsync.service.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.apache.camel.Exchange;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.utils.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Encodes outgoing {@link SyncModel} payloads in the configured format and decodes incoming ones,
+ * payloads in a format other than JSON are marked with the {@link #HEADER_FORMAT} message header so
+ * that a receiver can accept both JSON and binary payloads e.g. while sites are being upgraded.
+ * Payloads can also be encoded with the compact schema, see {@link CompactPayloadCodec}, in which
+ * case the schema version and payload type registry are declared in the {@link #HEADER_SCHEMA}
+ * message header. Payloads are decoded straight to a {@link SyncModel} without going through JSON,
+ * the receiver only marshals the decoded model to JSON once when it stores the message.
+ */
+@Service("payloadFormatService")
+public class PayloadFormatService {
+	
+	protected static final Logger log = LoggerFactory.getLogger(PayloadFormatService.class);
+	
+	public static final String HEADER_FORMAT = "dbSyncFormat";
+	
+	public static final String HEADER_SCHEMA = "dbSyncSchema";
+	
+	public static final String SCHEMA_COMPACT = "compact";
+	
+	public static final String SCHEMA_SEPARATOR = ":";
+	
+	private final PayloadFormat format;
+	
+	private final boolean compact;
+	
+	private final PayloadTypeRegistry registry;
+	
+	public PayloadFormatService(@Value("${openmrs.eip.dbsync.payload.format:json}") String format,
+	    @Value("${openmrs.eip.dbsync.payload.compact:false}") boolean compact) {
+		this.format = PayloadFormat.fromName(format);
+		this.compact = compact;
+		this.registry = PayloadTypeRegistry.getInstance();
+	}
+	
+	/**
+	 * Encodes the {@link SyncModel} in the exchange body in the configured format, the body is
+	 * replaced with a String for JSON otherwise with bytes and the {@link #HEADER_FORMAT} header is
+	 * set, the {@link #HEADER_SCHEMA} header is set if the compact schema is used.
+	 *
+	 * @param exchange the exchange
+	 */
+	public void encode(Exchange exchange) {
+		SyncModel syncModel = exchange.getIn().getBody(SyncModel.class);
+		Object body;
+		if (compact) {
+			JsonNode syncModelTree = format.isBinary() ? JsonUtils.toCborTree(syncModel) : JsonUtils.toTree(syncModel);
+			JsonNode tree = new CompactPayloadCodec(registry, format.isBinary()).encode(syncModelTree);
+			body = format == PayloadFormat.JSON ? JsonUtils.treeToJson(tree) : JsonUtils.marshallToCbor(tree);
+			exchange.getIn().setHeader(HEADER_SCHEMA,
+			    SCHEMA_COMPACT + SCHEMA_SEPARATOR + CompactPayloadCodec.VERSION + SCHEMA_SEPARATOR + registry.getId());
+		} else {
+			body = format == PayloadFormat.JSON ? JsonUtils.marshall(syncModel) : JsonUtils.marshallToCbor(syncModel);
+		}
+		
+		exchange.getIn().setBody(body);
+		if (format != PayloadFormat.JSON) {
+			exchange.getIn().setHeader(HEADER_FORMAT, format.getName());
+		}
+	}
+	
+	/**
+	 * Decodes the exchange body to a {@link SyncModel} if the {@link #HEADER_FORMAT} or
+	 * {@link #HEADER_SCHEMA} header is set and the headers are removed, payloads without the headers
+	 * are left untouched
+	 *
+	 * @param exchange the exchange
+	 */
+	public void decode(Exchange exchange) {
+		String name = exchange.getIn().getHeader(HEADER_FORMAT, String.class);
+		String schema = exchange.getIn().getHeader(HEADER_SCHEMA, String.class);
+		if (name == null && schema == null) {
+			return;
+		}
+		
+		exchange.getIn().setBody(toSyncModel(exchange.getIn().getBody(InputStream.class), name, schema));
+		exchange.getIn().removeHeader(HEADER_FORMAT);
+		exchange.getIn().removeHeader(HEADER_SCHEMA);
+	}
+	
+	/**
+	 * Decodes the specified encoded payload to a {@link SyncModel}
+	 *
+	 * @param data the encoded payload
+	 * @param name the payload format name, null for JSON
+	 * @param schema the value of the {@link #HEADER_SCHEMA} header, null if no schema was used
+	 * @return the SyncModel
+	 */
+	public SyncModel toSyncModel(byte[] data, String name, String schema) {
+		return toSyncModel(new ByteArrayInputStream(data), name, schema);
+	}
+	
+	/**
+	 * Decodes the encoded payload read from the specified stream to a {@link SyncModel}, a payload
+	 * without a schema is bound as it is read while a compact payload is first read into a tree.
+	 *
+	 * @param in the stream to read the encoded payload from
+	 * @param name the payload format name, null for JSON
+	 * @param schema the value of the {@link #HEADER_SCHEMA} header, null if no schema was used
+	 * @return the SyncModel
+	 */
+	public SyncModel toSyncModel(InputStream in, String name, String schema) {
+		PayloadFormat payloadFormat = name == null ? PayloadFormat.JSON : PayloadFormat.fromName(name);
+		SyncModel syncModel;
+		if (schema == null) {
+			if (payloadFormat == PayloadFormat.CBOR) {
+				syncModel = JsonUtils.unmarshalCbor(in, SyncModel.class);
+			} else {
+				syncModel = JsonUtils.unmarshal(in, SyncModel.class);
+			}
+		} else {
+			validateSchema(schema);
+			JsonNode tree;
+			if (payloadFormat == PayloadFormat.CBOR) {
+				tree = JsonUtils.readCborTree(in);
+			} else {
+				tree = JsonUtils.readTree(in);
+			}
+			
+			syncModel = JsonUtils.treeToSyncModel(new CompactPayloadCodec(registry, false).decode(tree));
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Decoded " + payloadFormat.getName() + " payload" + (schema != null ? " with schema " + schema : ""));
+		}
+		
+		return syncModel;
+	}
+	
+	private void validateSchema(String schema) {
+		String[] parts = schema.split(SCHEMA_SEPARATOR);
+		if (parts.length != 3 || !SCHEMA_COMPACT.equals(parts[0])
+		        || !String.valueOf(CompactPayloadCodec.VERSION).equals(parts[1])) {
+			throw new SyncException("Unsupported payload schema: " + schema);
+		}
+		
+		if (!registry.getId().equals(parts[2])) {
+			throw new SyncException("Payload type registry mismatch, expected " + registry.getId() + " but found "
+			        + parts[2] + ", please make sure the sender and receiver run the same version of the application");
+		}
+	}
+	
+	/**
+	 * Supported payload formats
+	 */
+	public enum PayloadFormat {
+		
+		JSON,
+		
+		CBOR;
+		
+		public String getName() {
+			return name().toLowerCase();
+		}
+		
+		/**
+		 * @return true if the format supports binary values otherwise false
+		 */
+		public boolean isBinary() {
+			return this != JSON;
+		}
+		
+		/**
+		 * Gets the format matching the specified name ignoring case
+		 *
+		 * @param name the format name
+		 * @return the format
+		 */
+		public static PayloadFormat fromName(String name) {
+			for (PayloadFormat f : values()) {
+				if (f.name().equalsIgnoreCase(name.trim())) {
+					return f;
+				}
+			}
+			
+			throw new SyncException("Unsupported payload format: " + name);
+		}
+		
+	}
+	
+}
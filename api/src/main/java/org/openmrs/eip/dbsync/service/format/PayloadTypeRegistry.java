@@ -0,0 +1,118 @@
+package org.openmrs.eip.dbsync.service.format;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openmrs.eip.dbsync.entity.light.LightEntity;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+
+/**
+ * Maps the model classes in {@link TableToSyncEnum} and the light entity classes to short numeric
+ * codes used in compact payloads, codes are assigned in the alphabetical order of the class names
+ * which implies they change when classes are added or removed, each registry is therefore
+ * identified by a hash of its class names which is sent along with compact payloads so that a
+ * receiver can reject payloads encoded with a different registry.
+ */
+public final class PayloadTypeRegistry {
+	
+	private static final String LIGHT_ENTITY_PACKAGE = LightEntity.class.getPackage().getName();
+	
+	private static PayloadTypeRegistry instance;
+	
+	private final String id;
+	
+	private final List<String> classNames;
+	
+	private final Map<String, Integer> codes;
+	
+	PayloadTypeRegistry(Iterable<String> names) {
+		TreeSet<String> sorted = new TreeSet();
+		names.forEach(sorted::add);
+		classNames = Collections.unmodifiableList(new ArrayList(sorted));
+		Map<String, Integer> temp = new HashMap(classNames.size());
+		for (int i = 0; i < classNames.size(); i++) {
+			temp.put(classNames.get(i), i);
+		}
+		
+		codes = Collections.unmodifiableMap(temp);
+		id = DigestUtils.md5Hex(String.join(",", classNames).getBytes(UTF_8)).substring(0, 12);
+	}
+	
+	/**
+	 * Gets the registry built from the model classes and the light entity classes
+	 *
+	 * @return the registry
+	 */
+	public static synchronized PayloadTypeRegistry getInstance() {
+		if (instance == null) {
+			List<String> names = new ArrayList();
+			for (TableToSyncEnum e : TableToSyncEnum.values()) {
+				names.add(e.getModelClass().getName());
+			}
+			
+			ClassPathScanningCandidateComponentProvider provider = new ClassPathScanningCandidateComponentProvider(false);
+			provider.addIncludeFilter(new AssignableTypeFilter(LightEntity.class));
+			for (BeanDefinition def : provider.findCandidateComponents(LIGHT_ENTITY_PACKAGE)) {
+				names.add(def.getBeanClassName());
+			}
+			
+			instance = new PayloadTypeRegistry(names);
+		}
+		
+		return instance;
+	}
+	
+	/**
+	 * Gets the identifier of the registry which is derived from its class names
+	 *
+	 * @return the id
+	 */
+	public String getId() {
+		return id;
+	}
+	
+	/**
+	 * Gets the code of the specified class name
+	 *
+	 * @param className the class name
+	 * @return the code or null if the class is not registered
+	 */
+	public Integer getCode(String className) {
+		return codes.get(className);
+	}
+	
+	/**
+	 * Gets the class name matching the specified code
+	 *
+	 * @param code the code
+	 * @return the class name
+	 */
+	public String getClassName(int code) {
+		if (code < 0 || code >= classNames.size()) {
+			throw new SyncException("No class found in the payload type registry with code " + code);
+		}
+		
+		return classNames.get(code);
+	}
+	
+	/**
+	 * Gets the number of registered classes
+	 *
+	 * @return the count
+	 */
+	public int size() {
+		return classNames.size();
+	}
+	
+}
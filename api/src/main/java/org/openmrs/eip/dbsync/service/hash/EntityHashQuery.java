@@ -0,0 +1,326 @@
+package org.openmrs.eip.dbsync.service.hash;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Modifier;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import javax.persistence.PrimaryKeyJoinColumn;
+import javax.persistence.Table;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+import org.openmrs.eip.dbsync.entity.BaseEntity;
+import org.openmrs.eip.dbsync.entity.light.LightEntity;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.model.BaseModel;
+import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+import org.openmrs.eip.dbsync.utils.JsonUtils;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ClassUtils;
+
+/**
+ * A SELECT statement generated from the JPA mapping of an entity type that computes the hash of each
+ * row inside MySQL and returns it along with the uuid, the hash is the same as that computed by
+ * {@link HashUtils#computeHash(BaseModel)} for the model of the entity i.e. null values are ignored,
+ * linked entities are replaced with their uuids, datetimes are converted to milliseconds since the
+ * epoch, values are trimmed and concatenated in the order of the model property names and the result
+ * is hashed with MD5.
+ * <p>
+ * Only rows of the exact entity type are returned, rows of a subclass e.g. patients for the person
+ * type are returned by the statement of the subclass. The hash of a row is null if a value can't be
+ * normalized in SQL exactly like in java e.g. a double that java would format in scientific notation
+ * or a string with leading or trailing control characters, the caller is expected to compute the
+ * hash of such a row in java.
+ */
+public final class EntityHashQuery {
+	
+	private static final String ALIAS = "e";
+	
+	private static final String REF_ALIAS = "r";
+	
+	private static final String UUID_SUFFIX = "Uuid";
+	
+	private static final String PROP_UUID = "uuid";
+	
+	private static final String EPOCH = "'1970-01-01 00:00:00'";
+	
+	private final String sql;
+	
+	private final String uuidColumn;
+	
+	private final boolean hasWhereClause;
+	
+	private EntityHashQuery(String sql, String uuidColumn, boolean hasWhereClause) {
+		this.sql = sql;
+		this.uuidColumn = uuidColumn;
+		this.hasWhereClause = hasWhereClause;
+	}
+	
+	/**
+	 * Creates the statement for the specified entity type
+	 *
+	 * @param sessionFactory the OpenMRS session factory
+	 * @param entityClass the entity type
+	 * @param zone the time zone used by java to convert datetimes to milliseconds since the epoch
+	 * @return the statement
+	 * @throws SyncException if the hash of the entity type can't be computed in SQL
+	 */
+	public static EntityHashQuery create(SessionFactoryImplementor sessionFactory,
+	    Class<? extends BaseEntity> entityClass, ZoneId zone) {
+		
+		AbstractEntityPersister persister = getPersister(sessionFactory, entityClass.getName());
+		Class<? extends BaseModel> modelClass = TableToSyncEnum.getTableToSyncEnumForType(entityClass).getModelClass();
+		Map<String, Value> values = new TreeMap();
+		for (PropertyDescriptor modelDesc : BeanUtils.getPropertyDescriptors(modelClass)) {
+			final String name = modelDesc.getName();
+			if (modelDesc.getReadMethod() == null || modelDesc.getWriteMethod() == null) {
+				continue;
+			}
+			
+			Value value;
+			if (name.endsWith(UUID_SUFFIX)) {
+				value = createReferenceValue(sessionFactory, persister, entityClass,
+				    name.substring(0, name.length() - UUID_SUFFIX.length()), values.size());
+			} else {
+				value = createValue(persister, entityClass, modelDesc, zone);
+			}
+			
+			//Properties that are not copied from the entity are always null
+			if (value != null) {
+				values.put(name, value);
+			}
+		}
+		
+		String uuidColumn = toColumn(persister, entityClass, PROP_UUID);
+		String idColumn = toColumn(persister, entityClass, persister.getIdentifierPropertyName());
+		List<String> conditions = new ArrayList();
+		for (TableToSyncEnum e : TableToSyncEnum.values()) {
+			Class<?> subclass = e.getEntityClass();
+			if (subclass != entityClass && entityClass.isAssignableFrom(subclass)) {
+				conditions.add("NOT EXISTS (SELECT 1 FROM " + getSubclassTable(subclass) + " s WHERE s."
+				        + getSubclassKeyColumn(subclass) + " = " + idColumn + ")");
+			}
+		}
+		
+		List<String> unsafe = values.values().stream().filter(v -> v.unsafe != null).map(v -> v.unsafe)
+		        .collect(Collectors.toList());
+		String md5 = "MD5(CONCAT_WS(''"
+		        + values.values().stream().map(v -> ", CONVERT(" + v.expression + " USING utf8mb4)").collect(Collectors.joining())
+		        + "))";
+		String hash = unsafe.isEmpty() ? md5 : "IF(" + String.join(" OR ", unsafe) + ", NULL, " + md5 + ")";
+		StringBuilder sql = new StringBuilder("SELECT " + uuidColumn + " AS identifier, " + hash + " AS hash FROM "
+		        + persister.fromTableFragment(ALIAS) + persister.fromJoinFragment(ALIAS, true, false));
+		if (!conditions.isEmpty()) {
+			sql.append(" WHERE ").append(String.join(" AND ", conditions));
+		}
+		
+		return new EntityHashQuery(sql.toString(), uuidColumn, !conditions.isEmpty());
+	}
+	
+	private static Value createReferenceValue(SessionFactoryImplementor sessionFactory, AbstractEntityPersister persister,
+	    Class<? extends BaseEntity> entityClass, String name, int index) {
+		
+		PropertyDescriptor desc = BeanUtils.getPropertyDescriptor(entityClass, name);
+		if (desc == null || desc.getReadMethod() == null
+		        || !LightEntity.class.isAssignableFrom(desc.getReadMethod().getReturnType())) {
+			return null;
+		}
+		
+		Type type = persister.getPropertyType(name);
+		if (!(type instanceof EntityType)) {
+			throw new SyncException("Can't compute hashes for " + entityClass + " in the database, " + name
+			        + " is not mapped as an association");
+		}
+		
+		AbstractEntityPersister refPersister = getPersister(sessionFactory,
+		    ((EntityType) type).getAssociatedEntityName());
+		final String alias = REF_ALIAS + index;
+		String refUuid = refPersister.toColumns(alias, PROP_UUID)[0];
+		String refId = refPersister.toColumns(alias, refPersister.getIdentifierPropertyName())[0];
+		String foreignKey = toColumn(persister, entityClass, name);
+		
+		return new Value("(SELECT TRIM(" + refUuid + ") FROM " + refPersister.fromTableFragment(alias)
+		        + refPersister.fromJoinFragment(alias, true, false) + " WHERE " + refId + " = " + foreignKey + ")",
+		        null);
+	}
+	
+	private static Value createValue(AbstractEntityPersister persister, Class<? extends BaseEntity> entityClass,
+	    PropertyDescriptor modelDesc, ZoneId zone) {
+		
+		final String name = modelDesc.getName();
+		final Class<?> type = modelDesc.getPropertyType();
+		PropertyDescriptor entityDesc = BeanUtils.getPropertyDescriptor(entityClass, name);
+		//Same rule as BeanUtils.copyProperties used to map entities to models
+		if (entityDesc == null || entityDesc.getReadMethod() == null
+		        || !ClassUtils.isAssignable(modelDesc.getWriteMethod().getParameterTypes()[0],
+		            entityDesc.getReadMethod().getReturnType())) {
+			return null;
+		}
+		
+		if (type == String.class) {
+			String c = toColumn(persister, entityClass, name);
+			return new Value("TRIM(" + c + ")", "TRIM(" + c + ") REGEXP '^[[:cntrl:]]|[[:cntrl:]]$'");
+		} else if (type == Boolean.class || type == boolean.class) {
+			String c = toColumn(persister, entityClass, name);
+			String value = "IF(" + c + ", 'true', 'false')";
+			return new Value(type.isPrimitive() ? value : "IF(" + c + " IS NULL, NULL, " + value + ")", null);
+		} else if (type == Integer.class || type == int.class || type == Long.class || type == long.class) {
+			return new Value("CAST(" + toColumn(persister, entityClass, name) + " AS CHAR)", null);
+		} else if (type == Double.class || type == double.class) {
+			String c = toColumn(persister, entityClass, name);
+			//Double.toString uses the scientific notation outside of this range
+			String value = "CASE WHEN " + c + " = FLOOR(" + c + ") AND ABS(" + c + ") < 1e7 THEN CONCAT(CAST(" + c
+			        + " AS SIGNED), '.0') WHEN ABS(" + c + ") >= 1e-3 AND ABS(" + c + ") < 1e7 THEN CAST(" + c
+			        + " AS CHAR) END";
+			return new Value(value, c + " IS NOT NULL AND (" + value + ") IS NULL");
+		} else if (type == LocalDateTime.class) {
+			String c = toColumn(persister, entityClass, name);
+			String value = "CAST(" + toEpochMillis(c, zone) + " AS CHAR)";
+			return new Value(value, c + " IS NOT NULL AND " + value + " IS NULL");
+		} else if (type == LocalDate.class) {
+			return new Value("DATE_FORMAT(" + toColumn(persister, entityClass, name) + ", '%Y-%m-%d')", null);
+		} else if (type == LocalTime.class) {
+			String c = toColumn(persister, entityClass, name);
+			return new Value("TIME_FORMAT(" + c + ", '%H:%i:%s')", "MICROSECOND(" + c + ") <> 0");
+		} else if (!type.isPrimitive() && !Modifier.isAbstract(type.getModifiers())) {
+			return createComponentValue(persister, entityClass, name, type);
+		}
+		
+		throw new SyncException("Can't compute hashes for " + entityClass + " in the database, unsupported type " + type
+		        + " of " + name);
+	}
+	
+	/**
+	 * An embedded object is hashed as the string form of the map it is unmarshalled into from JSON,
+	 * e.g. {address1=x, address2=null}
+	 */
+	private static Value createComponentValue(AbstractEntityPersister persister, Class<? extends BaseEntity> entityClass,
+	    String name, Class<?> type) {
+		
+		Map<String, Object> template;
+		try {
+			template = JsonUtils.unmarshal(JsonUtils.marshall(type.newInstance()), Map.class);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new SyncException("Can't compute hashes for " + entityClass + " in the database, failed to create "
+			        + type, e);
+		}
+		
+		List<String> columns = new ArrayList(template.size());
+		List<String> entries = new ArrayList(template.size());
+		for (String key : template.keySet()) {
+			PropertyDescriptor desc = BeanUtils.getPropertyDescriptor(type, key);
+			if (desc == null || desc.getPropertyType() != String.class) {
+				throw new SyncException("Can't compute hashes for " + entityClass + " in the database, unsupported "
+				        + "property " + key + " of " + type);
+			}
+			
+			String c = toColumn(persister, entityClass, name + "." + key);
+			columns.add(c);
+			entries.add("'" + key + "=', IFNULL(" + c + ", 'null')");
+		}
+		
+		//Hibernate sets the embedded object to null when all its columns are null
+		return new Value("IF(COALESCE(" + String.join(", ", columns) + ") IS NULL, NULL, CONCAT('{', "
+		        + String.join(", ', ', ", entries) + ", '}'))",
+		        null);
+	}
+	
+	private static String toEpochMillis(String column, ZoneId zone) {
+		String millis = " * 1000 + FLOOR(MICROSECOND(" + column + ") / 1000)";
+		if (zone.getRules().isFixedOffset()) {
+			int offset = zone.getRules().getOffset(Instant.EPOCH).getTotalSeconds();
+			return "(TIMESTAMPDIFF(SECOND, " + EPOCH + ", " + column + ") - " + offset + ")" + millis;
+		}
+		
+		//Requires the MySQL time zone tables, the conversion returns null if they are not loaded
+		return "TIMESTAMPDIFF(SECOND, " + EPOCH + ", CONVERT_TZ(" + column + ", '" + zone.getId() + "', '+00:00'))"
+		        + millis;
+	}
+	
+	private static String toColumn(AbstractEntityPersister persister, Class<?> entityClass, String property) {
+		String[] columns;
+		try {
+			columns = persister.toColumns(ALIAS, property);
+		}
+		catch (HibernateException e) {
+			throw new SyncException("Can't compute hashes for " + entityClass + " in the database, " + property
+			        + " is not mapped",
+			        e);
+		}
+		
+		if (columns.length != 1) {
+			throw new SyncException("Can't compute hashes for " + entityClass + " in the database, " + property
+			        + " is mapped to " + columns.length + " columns");
+		}
+		
+		return columns[0];
+	}
+	
+	private static AbstractEntityPersister getPersister(SessionFactoryImplementor sessionFactory, String entityName) {
+		return (AbstractEntityPersister) sessionFactory.getMetamodel().entityPersister(entityName);
+	}
+	
+	private static String getSubclassTable(Class<?> subclass) {
+		Table table = subclass.getAnnotation(Table.class);
+		if (table == null) {
+			throw new SyncException("No table mapping found for " + subclass);
+		}
+		
+		return table.name();
+	}
+	
+	private static String getSubclassKeyColumn(Class<?> subclass) {
+		PrimaryKeyJoinColumn column = subclass.getAnnotation(PrimaryKeyJoinColumn.class);
+		if (column == null) {
+			throw new SyncException("No primary key join column found for " + subclass);
+		}
+		
+		return column.name();
+	}
+	
+	/**
+	 * @return the statement returning the uuid and hash of all the rows
+	 */
+	public String getSql() {
+		return sql;
+	}
+	
+	/**
+	 * @return the statement returning the uuid and hash of the row matching the uuid parameter
+	 */
+	public String getSqlForIdentifier() {
+		return sql + (hasWhereClause ? " AND " : " WHERE ") + uuidColumn + " = ?";
+	}
+	
+	/**
+	 * The SQL expression of a single model property value and an optional condition that is true when
+	 * the value can't be normalized in SQL exactly like in java
+	 */
+	private static final class Value {
+		
+		private final String expression;
+		
+		private final String unsafe;
+		
+		private Value(String expression, String unsafe) {
+			this.expression = expression;
+			this.unsafe = unsafe;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,112 @@
+package org.openmrs.eip.dbsync.service.hash;
+
+import static org.openmrs.eip.dbsync.SyncConstants.OPENMRS_DATASOURCE_NAME;
+
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.openmrs.eip.dbsync.entity.BaseEntity;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+/**
+ * Computes entity hashes inside the OpenMRS database with the statements generated by
+ * {@link EntityHashQuery} so that hashes for a large number of rows can be computed without loading
+ * and mapping the entities.
+ */
+@Service("entityHashService")
+public class EntityHashService {
+	
+	protected static final Logger log = LoggerFactory.getLogger(EntityHashService.class);
+	
+	private final JdbcTemplate jdbcTemplate;
+	
+	private final JdbcTemplate streamingJdbcTemplate;
+	
+	private final SessionFactoryImplementor sessionFactory;
+	
+	private final Map<Class<? extends BaseEntity>, Optional<EntityHashQuery>> queries = new ConcurrentHashMap();
+	
+	public EntityHashService(@Qualifier(OPENMRS_DATASOURCE_NAME) DataSource dataSource,
+	    @Qualifier("openmrsEntityManager") EntityManagerFactory entityManagerFactory) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+		//Tells the MySQL driver to stream the rows instead of reading the entire result set into memory
+		this.streamingJdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+		this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+	}
+	
+	/**
+	 * Checks whether the hashes of the specified entity type can be computed in the database
+	 *
+	 * @param entityClass the entity type
+	 * @return true if supported otherwise false
+	 */
+	public boolean isSupported(Class<? extends BaseEntity> entityClass) {
+		return getQuery(entityClass).isPresent();
+	}
+	
+	/**
+	 * Computes the hashes of all the rows of the specified entity type, rows of subclasses are excluded,
+	 * the rows are streamed so the callback MUST not use the OpenMRS database connection of the current
+	 * transaction if any.
+	 *
+	 * @param entityClass the entity type
+	 * @param callback called with the uuid and hash of each row, the hash is null if it has to be
+	 *            computed in java
+	 */
+	public void forEachHash(Class<? extends BaseEntity> entityClass, BiConsumer<String, String> callback) {
+		streamingJdbcTemplate.query(getRequiredQuery(entityClass).getSql(),
+		    (RowCallbackHandler) rs -> callback.accept(rs.getString(1), rs.getString(2)));
+	}
+	
+	/**
+	 * Computes the hash of the entity with the specified uuid
+	 *
+	 * @param entityClass the entity type
+	 * @param uuid the uuid of the entity
+	 * @return the hash or null if no row is found or it has to be computed in java
+	 */
+	public String getHash(Class<? extends BaseEntity> entityClass, String uuid) {
+		List<String> hashes = jdbcTemplate.query(getRequiredQuery(entityClass).getSqlForIdentifier(),
+		    (rs, rowNum) -> rs.getString(2), uuid);
+		
+		return hashes.isEmpty() ? null : hashes.get(0);
+	}
+	
+	private EntityHashQuery getRequiredQuery(Class<? extends BaseEntity> entityClass) {
+		return getQuery(entityClass).orElseThrow(
+		    () -> new SyncException("Hashes for " + entityClass.getSimpleName() + " can't be computed in the database"));
+	}
+	
+	private Optional<EntityHashQuery> getQuery(Class<? extends BaseEntity> entityClass) {
+		return queries.computeIfAbsent(entityClass, clazz -> {
+			try {
+				EntityHashQuery query = EntityHashQuery.create(sessionFactory, clazz, ZoneId.systemDefault());
+				if (log.isDebugEnabled()) {
+					log.debug("Hash query for " + clazz.getSimpleName() + ": " + query.getSql());
+				}
+				
+				return Optional.of(query);
+			}
+			catch (SyncException e) {
+				log.warn(e.getMessage());
+				return Optional.empty();
+			}
+		});
+	}
+	
+}
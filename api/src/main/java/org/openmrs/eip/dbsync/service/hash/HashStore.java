@@ -0,0 +1,40 @@
+package org.openmrs.eip.dbsync.service.hash;
+
+import java.util.List;
+
+import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+
+/**
+ * Storage of entity hashes used by {@link HashUtils#getStoredHash(String, Class)} and
+ * {@link HashUtils#saveHash(BaseHashEntity)}, the default implementation is {@link JpaHashStore}
+ * which stores the hashes in the hash tables of the management database.
+ */
+public interface HashStore {
+	
+	/**
+	 * Looks up the stored hash for the entity with the specified identifier
+	 *
+	 * @param identifier the unique identifier of the entity
+	 * @param hashClass entity hash class
+	 * @return the stored hash entity object otherwise null
+	 */
+	BaseHashEntity findByIdentifier(String identifier, Class<? extends BaseHashEntity> hashClass);
+	
+	/**
+	 * Saves the specified hash, any existing hash for the same entity is replaced
+	 *
+	 * @param hash the hash entity to save
+	 */
+	void save(BaseHashEntity hash);
+	
+	/**
+	 * Saves the specified hashes
+	 *
+	 * @param hashes the hash entities to save
+	 */
+	default void saveAll(List<BaseHashEntity> hashes) {
+		hashes.forEach(this::save);
+	}
+	
+}
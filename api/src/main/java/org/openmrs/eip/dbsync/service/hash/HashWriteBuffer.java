@@ -0,0 +1,547 @@
+package org.openmrs.eip.dbsync.service.hash;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.openmrs.eip.dbsync.SyncConstants;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
+import org.openmrs.eip.dbsync.management.hash.repository.BaseHashRepository;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+import org.openmrs.eip.dbsync.utils.SyncUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Write-behind buffer for entity hashes, a saved hash is appended to a local journal file and kept in
+ * memory until it is written to the management database by a background thread that saves all the
+ * pending hashes in a single transaction, either periodically or as soon as the configured number of
+ * hashes are pending. Reads of a stored hash are served from memory while it is pending so callers
+ * always see their latest writes.
+ * <p>
+ * The journal is append-only, it is rotated to a numbered segment each time the pending hashes are
+ * handed over for saving and the segments are deleted once the hashes are committed, hashes found in
+ * the journal when the application starts are pending again and saved before any new hash is
+ * accepted so that a crash can't lose a hash.
+ */
+@Component("hashWriteBuffer")
+@ConditionalOnProperty(name = SyncConstants.PROP_HASH_WRITE_BEHIND_ENABLED, havingValue = "true")
+public class HashWriteBuffer {
+	
+	protected static final Logger log = LoggerFactory.getLogger(HashWriteBuffer.class);
+	
+	private static final String FIELD_TYPE = "type";
+	
+	private static final String FIELD_ID = "id";
+	
+	private static final String FIELD_IDENTIFIER = "identifier";
+	
+	private static final String FIELD_HASH = "hash";
+	
+	private static final String FIELD_DATE_CREATED = "dateCreated";
+	
+	private static final String FIELD_DATE_CHANGED = "dateChanged";
+	
+	private static final int MAX_KNOWN_IDS = 100000;
+	
+	private static final long SHUTDOWN_TIMEOUT = 30;
+	
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	
+	private final TransactionTemplate txTemplate;
+	
+	private final Path journalFile;
+	
+	private final int batchSize;
+	
+	private final long flushInterval;
+	
+	private final boolean fsync;
+	
+	private final Object flushLock = new Object();
+	
+	private final AtomicLong commitCount = new AtomicLong();
+	
+	private final AtomicLong savedCount = new AtomicLong();
+	
+	private Map<String, BaseHashEntity> pending = new LinkedHashMap();
+	
+	private Map<String, BaseHashEntity> flushing = Collections.emptyMap();
+	
+	/**
+	 * Database ids of recently inserted hashes, a caller can read a pending hash before it is inserted
+	 * and write it back after it is inserted in which case it has no id
+	 */
+	private final Map<String, Long> knownIds = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > MAX_KNOWN_IDS;
+		}
+		
+	};
+	
+	private FileChannel channel;
+	
+	private long nextSegment = 1;
+	
+	private ScheduledExecutorService executor;
+	
+	public HashWriteBuffer(@Qualifier("mngtTransactionManager") PlatformTransactionManager txManager,
+	    @Value("${openmrs.eip.dbsync.hash.write.behind.journal:${eip.home:.}/hash-journal.log}") String journalFile,
+	    @Value("${openmrs.eip.dbsync.hash.write.behind.batch.size:500}") int batchSize,
+	    @Value("${openmrs.eip.dbsync.hash.write.behind.flush.interval:1000}") long flushInterval,
+	    @Value("${openmrs.eip.dbsync.hash.write.behind.fsync:true}") boolean fsync) {
+		this.txTemplate = new TransactionTemplate(txManager);
+		this.journalFile = Paths.get(journalFile);
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.fsync = fsync;
+	}
+	
+	/**
+	 * Saves the hashes found in the journal and starts the background thread
+	 */
+	@PostConstruct
+	public void start() {
+		recover();
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "hash-write-buffer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		executor.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		HashUtils.setWriteBuffer(this);
+		
+		log.info("Started hash write buffer with journal " + journalFile);
+	}
+	
+	/**
+	 * Journals the specified hash and queues it for saving
+	 *
+	 * @param hash the hash entity to save
+	 */
+	public void write(BaseHashEntity hash) {
+		final String key = getKey(hash.getClass(), hash.getIdentifier());
+		BaseHashEntity copy = copy(hash);
+		final int size;
+		synchronized (this) {
+			append(toJson(copy));
+			pending.put(key, copy);
+			size = pending.size();
+		}
+		
+		if (size == batchSize && executor != null) {
+			executor.execute(this::flushQuietly);
+		}
+	}
+	
+	/**
+	 * Gets the pending hash for the entity with the specified identifier
+	 *
+	 * @param identifier the unique identifier of the entity
+	 * @param hashClass entity hash class
+	 * @return a copy of the pending hash entity or null if none is pending
+	 */
+	public BaseHashEntity getPendingHash(String identifier, Class<? extends BaseHashEntity> hashClass) {
+		final String key = getKey(hashClass, identifier);
+		BaseHashEntity hash;
+		synchronized (this) {
+			hash = pending.get(key);
+			if (hash == null) {
+				hash = flushing.get(key);
+			}
+		}
+		
+		return hash == null ? null : copy(hash);
+	}
+	
+	/**
+	 * Saves all the pending hashes to the database in a single transaction
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			final long segment;
+			final List<BaseHashEntity> hashes;
+			synchronized (this) {
+				if (pending.isEmpty()) {
+					return;
+				}
+				
+				segment = rotate();
+				flushing = pending;
+				pending = new LinkedHashMap();
+				hashes = new ArrayList(flushing.values());
+			}
+			
+			try {
+				save(hashes);
+			}
+			catch (RuntimeException e) {
+				synchronized (this) {
+					//Put back the hashes that were not overwritten while saving, they are still in the journal
+					flushing.forEach(pending::putIfAbsent);
+					flushing = Collections.emptyMap();
+				}
+				
+				throw e;
+			}
+			
+			synchronized (this) {
+				flushing = Collections.emptyMap();
+			}
+			
+			deleteSegments(segment);
+		}
+	}
+	
+	/**
+	 * Gets the number of transactions committed to save hashes
+	 *
+	 * @return the count
+	 */
+	public long getCommitCount() {
+		return commitCount.get();
+	}
+	
+	/**
+	 * Gets the number of hashes saved to the database
+	 *
+	 * @return the count
+	 */
+	public long getSavedCount() {
+		return savedCount.get();
+	}
+	
+	/**
+	 * Gets the number of hashes waiting to be saved
+	 *
+	 * @return the count
+	 */
+	public synchronized int getPendingCount() {
+		return pending.size() + flushing.size();
+	}
+	
+	private void flushQuietly() {
+		try {
+			flush();
+		}
+		catch (Throwable t) {
+			//The hashes stay pending and in the journal, they are saved by the next flush
+			log.error("Failed to save pending hashes, will retry", t);
+		}
+	}
+	
+	private void save(List<BaseHashEntity> hashes) {
+		Map<Class<? extends BaseHashEntity>, List<BaseHashEntity>> hashesByType = new LinkedHashMap();
+		synchronized (knownIds) {
+			for (BaseHashEntity hash : hashes) {
+				if (hash.getId() == null) {
+					hash.setId(knownIds.get(getKey(hash.getClass(), hash.getIdentifier())));
+				}
+				
+				hashesByType.computeIfAbsent(hash.getClass(), c -> new ArrayList()).add(hash);
+			}
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Saving " + hashes.size() + " pending hash(es)");
+		}
+		
+		List<BaseHashEntity> saved = new ArrayList(hashes.size());
+		txTemplate.execute(status -> {
+			hashesByType.forEach((type, typeHashes) -> saved.addAll(getRepository(type).saveAll(typeHashes)));
+			return null;
+		});
+		
+		commitCount.incrementAndGet();
+		savedCount.addAndGet(saved.size());
+		synchronized (knownIds) {
+			saved.forEach(h -> knownIds.put(getKey(h.getClass(), h.getIdentifier()), h.getId()));
+		}
+	}
+	
+	/**
+	 * Loads the hashes from the journal segments and the journal and saves them, the files are deleted
+	 * once the hashes are saved
+	 */
+	private void recover() {
+		List<Path> segments = getSegments();
+		Map<String, BaseHashEntity> hashes = new LinkedHashMap();
+		for (Path segment : segments) {
+			load(segment, hashes);
+		}
+		
+		load(journalFile, hashes);
+		if (!segments.isEmpty()) {
+			String name = segments.get(segments.size() - 1).getFileName().toString();
+			nextSegment = Long.parseLong(name.substring(name.lastIndexOf('.') + 1)) + 1;
+		}
+		
+		if (hashes.isEmpty()) {
+			return;
+		}
+		
+		log.info("Saving " + hashes.size() + " hash(es) found in the journal");
+		
+		//Some of the hashes could have been inserted before the application stopped
+		for (BaseHashEntity hash : hashes.values()) {
+			if (hash.getId() == null) {
+				BaseHashEntity existing = getRepository(hash.getClass()).findByIdentifier(hash.getIdentifier());
+				if (existing != null) {
+					hash.setId(existing.getId());
+				}
+			}
+		}
+		
+		pending.putAll(hashes);
+		flushQuietly();
+	}
+	
+	private void load(Path file, Map<String, BaseHashEntity> hashes) {
+		if (!Files.exists(file)) {
+			return;
+		}
+		
+		try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				try {
+					BaseHashEntity hash = fromJson(line);
+					hashes.put(getKey(hash.getClass(), hash.getIdentifier()), hash);
+				}
+				catch (IOException | RuntimeException | ReflectiveOperationException e) {
+					//Typically a partially written last line after a crash
+					log.warn("Ignoring invalid line in hash journal: " + line);
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to load hash journal " + file, e);
+		}
+	}
+	
+	private void append(String line) {
+		try {
+			if (channel == null) {
+				if (journalFile.getParent() != null) {
+					Files.createDirectories(journalFile.getParent());
+				}
+				
+				channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				    StandardOpenOption.APPEND);
+			}
+			
+			ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(UTF_8));
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			
+			if (fsync) {
+				channel.force(false);
+			}
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to write to hash journal " + journalFile, e);
+		}
+	}
+	
+	/**
+	 * Renames the journal to the next numbered segment, new hashes are appended to a new journal
+	 *
+	 * @return the number of the segment
+	 */
+	private long rotate() {
+		final long segment = nextSegment++;
+		try {
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+			
+			if (Files.exists(journalFile)) {
+				Files.move(journalFile, getSegment(segment));
+			}
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to rotate hash journal " + journalFile, e);
+		}
+		
+		return segment;
+	}
+	
+	/**
+	 * Deletes the segments up to the specified number, the hashes in them have all been committed since
+	 * the hashes of a failed save are put back and saved with those of the following segments
+	 *
+	 * @param lastSegment the number of the last segment to delete
+	 */
+	private void deleteSegments(long lastSegment) {
+		for (Path segment : getSegments()) {
+			String name = segment.getFileName().toString();
+			if (Long.parseLong(name.substring(name.lastIndexOf('.') + 1)) <= lastSegment) {
+				try {
+					Files.deleteIfExists(segment);
+				}
+				catch (IOException e) {
+					log.warn("Failed to delete hash journal segment " + segment, e);
+				}
+			}
+		}
+	}
+	
+	private List<Path> getSegments() {
+		Path dir = journalFile.toAbsolutePath().getParent();
+		final String prefix = journalFile.getFileName() + ".";
+		Map<Long, Path> segments = new TreeMap();
+		if (dir != null && Files.isDirectory(dir)) {
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*")) {
+				for (Path path : stream) {
+					try {
+						segments.put(Long.parseLong(path.getFileName().toString().substring(prefix.length())), path);
+					}
+					catch (NumberFormatException e) {
+						//Not a segment
+					}
+				}
+			}
+			catch (IOException e) {
+				throw new SyncException("Failed to list hash journal segments in " + dir, e);
+			}
+		}
+		
+		return new ArrayList(segments.values());
+	}
+	
+	private Path getSegment(long segment) {
+		return journalFile.resolveSibling(journalFile.getFileName() + "." + segment);
+	}
+	
+	private static String getKey(Class<?> hashClass, String identifier) {
+		return hashClass.getSimpleName() + ":" + identifier;
+	}
+	
+	private static BaseHashRepository getRepository(Class<? extends BaseHashEntity> hashClass) {
+		return SyncUtils.getJpaRepository((Class) hashClass, BaseHashRepository.class);
+	}
+	
+	private static BaseHashEntity copy(BaseHashEntity hash) {
+		BaseHashEntity copy;
+		try {
+			copy = HashUtils.instantiateHashEntity(hash.getClass());
+		}
+		catch (Exception e) {
+			throw new SyncException("Failed to create an instance of " + hash.getClass(), e);
+		}
+		
+		copy.setId(hash.getId());
+		copy.setIdentifier(hash.getIdentifier());
+		copy.setHash(hash.getHash());
+		copy.setDateCreated(hash.getDateCreated());
+		copy.setDateChanged(hash.getDateChanged());
+		
+		return copy;
+	}
+	
+	private static String toJson(BaseHashEntity hash) {
+		Map<String, Object> data = new HashMap();
+		data.put(FIELD_TYPE, hash.getClass().getName());
+		data.put(FIELD_ID, hash.getId());
+		data.put(FIELD_IDENTIFIER, hash.getIdentifier());
+		data.put(FIELD_HASH, hash.getHash());
+		data.put(FIELD_DATE_CREATED, hash.getDateCreated() == null ? null : hash.getDateCreated().toString());
+		data.put(FIELD_DATE_CHANGED, hash.getDateChanged() == null ? null : hash.getDateChanged().toString());
+		try {
+			return MAPPER.writeValueAsString(data);
+		}
+		catch (JsonProcessingException e) {
+			throw new SyncException("Failed to serialize hash: " + hash, e);
+		}
+	}
+	
+	private static BaseHashEntity fromJson(String line) throws IOException, ReflectiveOperationException {
+		Map<String, Object> data = MAPPER.readValue(line, Map.class);
+		BaseHashEntity hash = HashUtils.instantiateHashEntity(
+		    Class.forName(data.get(FIELD_TYPE).toString()).asSubclass(BaseHashEntity.class));
+		Object id = data.get(FIELD_ID);
+		hash.setId(id == null ? null : ((Number) id).longValue());
+		hash.setIdentifier((String) data.get(FIELD_IDENTIFIER));
+		hash.setHash((String) data.get(FIELD_HASH));
+		Object dateCreated = data.get(FIELD_DATE_CREATED);
+		hash.setDateCreated(dateCreated == null ? null : LocalDateTime.parse(dateCreated.toString()));
+		Object dateChanged = data.get(FIELD_DATE_CHANGED);
+		hash.setDateChanged(dateChanged == null ? null : LocalDateTime.parse(dateChanged.toString()));
+		
+		return hash;
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		HashUtils.setWriteBuffer(null);
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+					log.warn("Timed out waiting for the hash write buffer thread to stop");
+				}
+			}
+			catch (InterruptedException e) {
+				log.warn("Interrupted while waiting for the hash write buffer thread to stop");
+			}
+		}
+		
+		try {
+			flush();
+		}
+		catch (RuntimeException e) {
+			log.warn("Failed to save pending hashes, they will be saved from the journal after a restart", e);
+		}
+		
+		synchronized (this) {
+			try {
+				if (channel != null) {
+					channel.close();
+					channel = null;
+				}
+			}
+			catch (IOException e) {
+				log.warn("Failed to close hash journal " + journalFile, e);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,27 @@
+package org.openmrs.eip.dbsync.service.hash;
+
+import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
+import org.openmrs.eip.dbsync.management.hash.repository.BaseHashRepository;
+import org.openmrs.eip.dbsync.utils.SyncUtils;
+
+/**
+ * {@link HashStore} that stores the hashes in the hash tables of the management database via the
+ * {@link BaseHashRepository} of each hash entity class.
+ */
+public class JpaHashStore implements HashStore {
+	
+	@Override
+	public BaseHashEntity findByIdentifier(String identifier, Class<? extends BaseHashEntity> hashClass) {
+		return getRepository(hashClass).findByIdentifier(identifier);
+	}
+	
+	@Override
+	public void save(BaseHashEntity hash) {
+		getRepository(hash.getClass()).save(hash);
+	}
+	
+	private static BaseHashRepository getRepository(Class<? extends BaseHashEntity> hashClass) {
+		return SyncUtils.getJpaRepository((Class) hashClass, BaseHashRepository.class);
+	}
+	
+}
@@ -0,0 +1,797 @@
+package org.openmrs.eip.dbsync.service.hash;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.openmrs.eip.dbsync.SyncConstants;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
+import org.openmrs.eip.dbsync.management.hash.entity.HashColumnType;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link HashStore} that keeps the hashes in an embedded ordered key-value store in a local directory
+ * instead of the management database. A key is a one byte code of the hash class followed by the
+ * binary form of the identifier as stored by {@link HashColumnType} i.e. 17 bytes for a uuid, a
+ * value holds the binary form of the hash and the creation and change dates.
+ * <p>
+ * Saved hashes are appended to a write-ahead log and kept in a sorted in-memory table which is
+ * written to an immutable sorted segment file once it reaches the configured size, segments are
+ * memory mapped and searched newest first with a binary search and they are merged into a single
+ * segment when there are more than the configured number. The write-ahead log is replayed when the
+ * store is opened so that a crash can't lose a hash.
+ */
+@Component("mappedHashStore")
+@ConditionalOnProperty(name = SyncConstants.PROP_HASH_STORE, havingValue = MappedHashStore.NAME)
+public class MappedHashStore implements HashStore {
+	
+	protected static final Logger log = LoggerFactory.getLogger(MappedHashStore.class);
+	
+	public static final String NAME = "mapped";
+	
+	private static final String WAL_FILE = "hash-store.wal";
+	
+	private static final String TYPES_FILE = "types.properties";
+	
+	private static final String SEGMENT_PREFIX = "segment-";
+	
+	private static final String SEGMENT_SUFFIX = ".dat";
+	
+	private static final int SEGMENT_MAGIC = 0x48534547;
+	
+	private static final int MAX_CODE = 255;
+	
+	private static final long NO_DATE = Long.MIN_VALUE;
+	
+	private static final Comparator<byte[]> KEY_COMPARATOR = MappedHashStore::compareKeys;
+	
+	private final Path dir;
+	
+	private final Path walFile;
+	
+	private final int memtableSize;
+	
+	private final int maxSegments;
+	
+	private final boolean fsync;
+	
+	private final boolean writeBehindEnabled;
+	
+	private final Object writeLock = new Object();
+	
+	private final Properties typeCodes = new Properties();
+	
+	private final Map<Class<? extends BaseHashEntity>, Byte> codes = new ConcurrentHashMap();
+	
+	private volatile ConcurrentSkipListMap<byte[], byte[]> memtable = new ConcurrentSkipListMap(KEY_COMPARATOR);
+	
+	//Newest first, replaced and never modified so that readers can use it without locking
+	private volatile List<Segment> segments = Collections.emptyList();
+	
+	private long nextSegment = 1;
+	
+	private FileChannel wal;
+	
+	public MappedHashStore(@Value("${openmrs.eip.dbsync.hash.store.dir:${eip.home:.}/hash-store}") String dir,
+	    @Value("${openmrs.eip.dbsync.hash.store.memtable.size:100000}") int memtableSize,
+	    @Value("${openmrs.eip.dbsync.hash.store.max.segments:8}") int maxSegments,
+	    @Value("${openmrs.eip.dbsync.hash.store.fsync:true}") boolean fsync,
+	    @Value("${" + SyncConstants.PROP_HASH_WRITE_BEHIND_ENABLED + ":false}") boolean writeBehindEnabled) {
+		this.dir = Paths.get(dir);
+		this.walFile = this.dir.resolve(WAL_FILE);
+		this.memtableSize = memtableSize;
+		this.maxSegments = maxSegments;
+		this.fsync = fsync;
+		this.writeBehindEnabled = writeBehindEnabled;
+	}
+	
+	/**
+	 * Opens the store and makes it the {@link HashStore} used by {@link HashUtils}
+	 */
+	@PostConstruct
+	public void start() {
+		if (writeBehindEnabled) {
+			throw new SyncException("Hash write-behind can't be enabled when using the " + NAME + " hash store");
+		}
+		
+		open();
+		HashUtils.setHashStore(this);
+		
+		log.info("Started " + NAME + " hash store in " + dir + " with " + segments.size() + " segment(s)");
+	}
+	
+	/**
+	 * Writes the in-memory table to a segment and closes the store
+	 */
+	@PreDestroy
+	public void shutdown() {
+		HashUtils.setHashStore(null);
+		synchronized (writeLock) {
+			try {
+				flush();
+			}
+			finally {
+				closeWal();
+			}
+		}
+	}
+	
+	@Override
+	public BaseHashEntity findByIdentifier(String identifier, Class<? extends BaseHashEntity> hashClass) {
+		Byte code = getCode(hashClass, false);
+		if (code == null) {
+			return null;
+		}
+		
+		byte[] value = get(toKey(code, identifier));
+		
+		return value == null ? null : toEntity(hashClass, identifier, value);
+	}
+	
+	@Override
+	public void save(BaseHashEntity hash) {
+		saveAll(Collections.singletonList(hash));
+	}
+	
+	@Override
+	public void saveAll(List<BaseHashEntity> hashes) {
+		List<byte[][]> entries = new ArrayList(hashes.size());
+		for (BaseHashEntity hash : hashes) {
+			entries.add(new byte[][] { toKey(getCode(hash.getClass(), true), hash.getIdentifier()), toValue(hash) });
+		}
+		
+		synchronized (writeLock) {
+			appendToWal(entries);
+			entries.forEach(e -> memtable.put(e[0], e[1]));
+			if (memtable.size() >= memtableSize) {
+				flush();
+			}
+		}
+	}
+	
+	/**
+	 * Writes the in-memory table to a new segment and merges the segments if there are too many
+	 */
+	public void flush() {
+		synchronized (writeLock) {
+			if (memtable.isEmpty()) {
+				return;
+			}
+			
+			Segment segment = writeSegment(nextSegment++, writer -> memtable.forEach(writer::write));
+			List<Segment> newSegments = new ArrayList(segments.size() + 1);
+			newSegments.add(segment);
+			newSegments.addAll(segments);
+			//Segments are published before the in-memory table is replaced so readers always find the entries
+			segments = Collections.unmodifiableList(newSegments);
+			memtable = new ConcurrentSkipListMap(KEY_COMPARATOR);
+			truncateWal();
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Wrote hash store segment " + segment.path.getFileName() + " with " + segment.count + " hashes");
+			}
+			
+			if (segments.size() > maxSegments) {
+				compact();
+			}
+		}
+	}
+	
+	/**
+	 * Merges all the segments into a single segment
+	 */
+	public void compact() {
+		synchronized (writeLock) {
+			List<Segment> oldSegments = segments;
+			if (oldSegments.size() < 2) {
+				return;
+			}
+			
+			long size = oldSegments.stream().mapToLong(s -> s.buffer.capacity()).sum();
+			if (size >= Integer.MAX_VALUE) {
+				log.warn("Not merging hash store segments because their total size exceeds the maximum segment size");
+				return;
+			}
+			
+			final long start = System.currentTimeMillis();
+			Segment merged = writeSegment(nextSegment++, writer -> merge(oldSegments, null, writer::write));
+			segments = Collections.singletonList(merged);
+			for (Segment segment : oldSegments) {
+				try {
+					Files.deleteIfExists(segment.path);
+				}
+				catch (IOException e) {
+					log.warn("Failed to delete merged hash store segment " + segment.path, e);
+				}
+			}
+			
+			log.info("Merged " + oldSegments.size() + " hash store segments into one with " + merged.count + " hashes in "
+			        + (System.currentTimeMillis() - start) + "ms");
+		}
+	}
+	
+	/**
+	 * Calls the specified consumer with each stored hash of the specified type in key order
+	 *
+	 * @param hashClass entity hash class
+	 * @param consumer the consumer to call
+	 */
+	public void forEach(Class<? extends BaseHashEntity> hashClass, Consumer<BaseHashEntity> consumer) {
+		Byte code = getCode(hashClass, false);
+		if (code == null) {
+			return;
+		}
+		
+		flush();
+		merge(segments, code, (key, value) -> {
+			String identifier = HashColumnType.fromBytes(Arrays.copyOfRange(key, 1, key.length), true);
+			consumer.accept(toEntity(hashClass, identifier, value));
+		});
+	}
+	
+	/**
+	 * Gets the number of segments
+	 *
+	 * @return the count
+	 */
+	public int getSegmentCount() {
+		return segments.size();
+	}
+	
+	private byte[] get(byte[] key) {
+		byte[] value = memtable.get(key);
+		if (value != null) {
+			return value;
+		}
+		
+		for (Segment segment : segments) {
+			value = segment.get(key);
+			if (value != null) {
+				return value;
+			}
+		}
+		
+		return null;
+	}
+	
+	private void open() {
+		try {
+			Files.createDirectories(dir);
+			Path typesFile = dir.resolve(TYPES_FILE);
+			if (Files.exists(typesFile)) {
+				try (InputStream in = Files.newInputStream(typesFile)) {
+					typeCodes.load(in);
+				}
+			}
+			
+			//Left behind by a segment write that was interrupted
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*.tmp")) {
+				for (Path path : stream) {
+					Files.delete(path);
+				}
+			}
+			
+			Map<Long, Path> segmentFiles = new TreeMap(Comparator.reverseOrder());
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+				for (Path path : stream) {
+					String name = path.getFileName().toString();
+					segmentFiles.put(
+					    Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())),
+					    path);
+				}
+			}
+			
+			List<Segment> openSegments = new ArrayList(segmentFiles.size());
+			for (Map.Entry<Long, Path> entry : segmentFiles.entrySet()) {
+				openSegments.add(Segment.open(entry.getValue()));
+				nextSegment = Math.max(nextSegment, entry.getKey() + 1);
+			}
+			
+			segments = Collections.unmodifiableList(openSegments);
+			replayWal();
+			wal = FileChannel.open(walFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			    StandardOpenOption.APPEND);
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to open hash store in " + dir, e);
+		}
+	}
+	
+	/**
+	 * Loads the entries in the write-ahead log into the in-memory table, the log is truncated after the
+	 * last valid entry which is typically followed by a partially written entry after a crash
+	 */
+	private void replayWal() throws IOException {
+		if (!Files.exists(walFile)) {
+			return;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(walFile));
+		int validLength = 0;
+		int count = 0;
+		while (buffer.remaining() >= 8) {
+			final int length = buffer.getInt();
+			final int checksum = buffer.getInt();
+			if (length < 0 || length > buffer.remaining()) {
+				break;
+			}
+			
+			byte[] payload = new byte[length];
+			buffer.get(payload);
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			
+			ByteBuffer record = ByteBuffer.wrap(payload);
+			while (record.hasRemaining()) {
+				byte[] key = new byte[record.getShort() & 0xFFFF];
+				record.get(key);
+				byte[] value = new byte[record.getShort() & 0xFFFF];
+				record.get(value);
+				memtable.put(key, value);
+				count++;
+			}
+			
+			validLength = buffer.position();
+		}
+		
+		if (validLength < buffer.capacity()) {
+			log.warn("Ignoring " + (buffer.capacity() - validLength) + " invalid trailing bytes in " + walFile);
+			try (FileChannel channel = FileChannel.open(walFile, StandardOpenOption.WRITE)) {
+				channel.truncate(validLength);
+			}
+		}
+		
+		if (count > 0) {
+			log.info("Loaded " + count + " hash(es) from the hash store write-ahead log");
+		}
+	}
+	
+	private void appendToWal(List<byte[][]> entries) {
+		int length = 0;
+		for (byte[][] entry : entries) {
+			length += 4 + entry[0].length + entry[1].length;
+		}
+		
+		ByteBuffer payload = ByteBuffer.allocate(length);
+		for (byte[][] entry : entries) {
+			payload.putShort((short) entry[0].length).put(entry[0]).putShort((short) entry[1].length).put(entry[1]);
+		}
+		
+		CRC32 crc = new CRC32();
+		crc.update(payload.array());
+		ByteBuffer buffer = ByteBuffer.allocate(8 + length);
+		buffer.putInt(length).putInt((int) crc.getValue()).put(payload.array()).flip();
+		try {
+			while (buffer.hasRemaining()) {
+				wal.write(buffer);
+			}
+			
+			if (fsync) {
+				wal.force(false);
+			}
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to write to hash store write-ahead log " + walFile, e);
+		}
+	}
+	
+	private void truncateWal() {
+		try {
+			wal.truncate(0);
+			if (fsync) {
+				wal.force(false);
+			}
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to truncate hash store write-ahead log " + walFile, e);
+		}
+	}
+	
+	private void closeWal() {
+		if (wal != null) {
+			try {
+				wal.close();
+			}
+			catch (IOException e) {
+				log.warn("Failed to close hash store write-ahead log", e);
+			}
+			
+			wal = null;
+		}
+	}
+	
+	private Segment writeSegment(long number, Consumer<SegmentWriter> content) {
+		final Path path = dir.resolve(String.format(SEGMENT_PREFIX + "%010d" + SEGMENT_SUFFIX, number));
+		final Path tmpPath = dir.resolve(path.getFileName() + ".tmp");
+		try {
+			try (FileOutputStream out = new FileOutputStream(tmpPath.toFile())) {
+				SegmentWriter writer = new SegmentWriter(new BufferedOutputStream(out, 64 * 1024));
+				content.accept(writer);
+				writer.finish();
+				out.getChannel().force(true);
+			}
+			
+			Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE);
+			
+			return Segment.open(path);
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to write hash store segment " + path, e);
+		}
+	}
+	
+	/**
+	 * Calls the specified consumer with the entries of the specified segments in key order, for a key
+	 * found in multiple segments only the entry in the newest segment is used
+	 *
+	 * @param segments the segments to merge, newest first
+	 * @param code the hash class code of the keys to include or null to include all keys
+	 * @param consumer the consumer to call with each key and value
+	 */
+	private static void merge(List<Segment> segments, Byte code, BiConsumer<byte[], byte[]> consumer) {
+		PriorityQueue<Cursor> queue = new PriorityQueue();
+		for (int i = 0; i < segments.size(); i++) {
+			Segment segment = segments.get(i);
+			Cursor cursor = new Cursor(segment, i, code == null ? 0 : segment.lowerBound(new byte[] { code }));
+			if (cursor.load(code)) {
+				queue.add(cursor);
+			}
+		}
+		
+		while (!queue.isEmpty()) {
+			Cursor newest = queue.poll();
+			consumer.accept(newest.key, newest.segment.valueAt(newest.index));
+			while (!queue.isEmpty() && compareKeys(queue.peek().key, newest.key) == 0) {
+				Cursor older = queue.poll();
+				older.index++;
+				if (older.load(code)) {
+					queue.add(older);
+				}
+			}
+			
+			newest.index++;
+			if (newest.load(code)) {
+				queue.add(newest);
+			}
+		}
+	}
+	
+	private Byte getCode(Class<? extends BaseHashEntity> hashClass, boolean create) {
+		Byte code = codes.get(hashClass);
+		if (code != null) {
+			return code;
+		}
+		
+		synchronized (typeCodes) {
+			String value = typeCodes.getProperty(hashClass.getSimpleName());
+			if (value == null) {
+				if (!create) {
+					return null;
+				}
+				
+				final int next = typeCodes.size() + 1;
+				if (next > MAX_CODE) {
+					throw new SyncException("The hash store supports at most " + MAX_CODE + " hash types");
+				}
+				
+				value = String.valueOf(next);
+				typeCodes.setProperty(hashClass.getSimpleName(), value);
+				saveTypeCodes();
+			}
+			
+			code = (byte) Integer.parseInt(value);
+			codes.put(hashClass, code);
+			
+			return code;
+		}
+	}
+	
+	private void saveTypeCodes() {
+		final Path typesFile = dir.resolve(TYPES_FILE);
+		final Path tmpFile = dir.resolve(TYPES_FILE + ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(tmpFile)) {
+				typeCodes.store(out, "Codes of the hash types in the hash store keys, DO NOT EDIT");
+			}
+			
+			Files.move(tmpFile, typesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to save hash store type codes", e);
+		}
+	}
+	
+	private static byte[] toKey(byte code, String identifier) {
+		byte[] identifierBytes = HashColumnType.toBytes(identifier, true);
+		byte[] key = new byte[identifierBytes.length + 1];
+		key[0] = code;
+		System.arraycopy(identifierBytes, 0, key, 1, identifierBytes.length);
+		return key;
+	}
+	
+	private static byte[] toValue(BaseHashEntity hash) {
+		byte[] hashBytes = HashColumnType.toBytes(hash.getHash(), false);
+		return ByteBuffer.allocate(1 + hashBytes.length + 16).put((byte) hashBytes.length).put(hashBytes)
+		        .putLong(toMillis(hash.getDateCreated())).putLong(toMillis(hash.getDateChanged())).array();
+	}
+	
+	private static BaseHashEntity toEntity(Class<? extends BaseHashEntity> hashClass, String identifier, byte[] value) {
+		BaseHashEntity hash;
+		try {
+			hash = HashUtils.instantiateHashEntity(hashClass);
+		}
+		catch (Exception e) {
+			throw new SyncException("Failed to create an instance of " + hashClass, e);
+		}
+		
+		ByteBuffer buffer = ByteBuffer.wrap(value);
+		byte[] hashBytes = new byte[buffer.get() & 0xFF];
+		buffer.get(hashBytes);
+		hash.setIdentifier(identifier);
+		hash.setHash(HashColumnType.fromBytes(hashBytes, false));
+		hash.setDateCreated(toDate(buffer.getLong()));
+		hash.setDateChanged(toDate(buffer.getLong()));
+		
+		return hash;
+	}
+	
+	private static long toMillis(LocalDateTime date) {
+		return date == null ? NO_DATE : date.toInstant(ZoneOffset.UTC).toEpochMilli();
+	}
+	
+	private static LocalDateTime toDate(long millis) {
+		return millis == NO_DATE ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+	}
+	
+	private static int compareKeys(byte[] a, byte[] b) {
+		final int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			int result = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (result != 0) {
+				return result;
+			}
+		}
+		
+		return a.length - b.length;
+	}
+	
+	/**
+	 * Writes the entries of a segment in key order followed by their offsets, their count and the magic
+	 * number
+	 */
+	private static class SegmentWriter {
+		
+		private final DataOutputStream out;
+		
+		private int[] offsets = new int[1024];
+		
+		private int count;
+		
+		SegmentWriter(OutputStream out) {
+			this.out = new DataOutputStream(out);
+		}
+		
+		void write(byte[] key, byte[] value) {
+			try {
+				if (count == offsets.length) {
+					offsets = Arrays.copyOf(offsets, count * 2);
+				}
+				
+				offsets[count++] = out.size();
+				out.writeShort(key.length);
+				out.write(key);
+				out.writeShort(value.length);
+				out.write(value);
+			}
+			catch (IOException e) {
+				throw new SyncException("Failed to write hash store segment entry", e);
+			}
+		}
+		
+		void finish() throws IOException {
+			for (int i = 0; i < count; i++) {
+				out.writeInt(offsets[i]);
+			}
+			
+			out.writeInt(count);
+			out.writeInt(SEGMENT_MAGIC);
+			out.flush();
+		}
+		
+	}
+	
+	/**
+	 * An immutable memory mapped segment file
+	 */
+	private static class Segment {
+		
+		private final Path path;
+		
+		private final MappedByteBuffer buffer;
+		
+		private final int count;
+		
+		private final int offsetsStart;
+		
+		private Segment(Path path, MappedByteBuffer buffer) {
+			this.path = path;
+			this.buffer = buffer;
+			final int size = buffer.capacity();
+			if (size < 8 || buffer.getInt(size - 4) != SEGMENT_MAGIC) {
+				throw new SyncException("Invalid hash store segment " + path);
+			}
+			
+			this.count = buffer.getInt(size - 8);
+			this.offsetsStart = size - 8 - count * 4;
+		}
+		
+		static Segment open(Path path) throws IOException {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				return new Segment(path, channel.map(MapMode.READ_ONLY, 0, channel.size()));
+			}
+		}
+		
+		byte[] get(byte[] key) {
+			int low = 0;
+			int high = count - 1;
+			while (low <= high) {
+				final int mid = (low + high) >>> 1;
+				final int result = compareAt(mid, key);
+				if (result < 0) {
+					low = mid + 1;
+				} else if (result > 0) {
+					high = mid - 1;
+				} else {
+					return valueAt(mid);
+				}
+			}
+			
+			return null;
+		}
+		
+		/**
+		 * Gets the index of the first entry with a key that is greater than or equal to the specified key
+		 */
+		int lowerBound(byte[] key) {
+			int low = 0;
+			int high = count;
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (compareAt(mid, key) < 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			
+			return low;
+		}
+		
+		private int offsetAt(int index) {
+			return buffer.getInt(offsetsStart + index * 4);
+		}
+		
+		private int compareAt(int index, byte[] key) {
+			final int offset = offsetAt(index);
+			final int keyLength = buffer.getShort(offset) & 0xFFFF;
+			final int length = Math.min(keyLength, key.length);
+			for (int i = 0; i < length; i++) {
+				int result = (buffer.get(offset + 2 + i) & 0xFF) - (key[i] & 0xFF);
+				if (result != 0) {
+					return result;
+				}
+			}
+			
+			return keyLength - key.length;
+		}
+		
+		byte[] keyAt(int index) {
+			final int offset = offsetAt(index);
+			byte[] key = new byte[buffer.getShort(offset) & 0xFFFF];
+			for (int i = 0; i < key.length; i++) {
+				key[i] = buffer.get(offset + 2 + i);
+			}
+			
+			return key;
+		}
+		
+		byte[] valueAt(int index) {
+			final int offset = offsetAt(index);
+			final int valueOffset = offset + 2 + (buffer.getShort(offset) & 0xFFFF);
+			byte[] value = new byte[buffer.getShort(valueOffset) & 0xFFFF];
+			for (int i = 0; i < value.length; i++) {
+				value[i] = buffer.get(valueOffset + 2 + i);
+			}
+			
+			return value;
+		}
+		
+	}
+	
+	/**
+	 * Position in a segment while merging segments, cursors are ordered by key and then by the age of
+	 * their segment
+	 */
+	private static class Cursor implements Comparable<Cursor> {
+		
+		private final Segment segment;
+		
+		private final int rank;
+		
+		private int index;
+		
+		private byte[] key;
+		
+		Cursor(Segment segment, int rank, int index) {
+			this.segment = segment;
+			this.rank = rank;
+			this.index = index;
+		}
+		
+		/**
+		 * Loads the key at the current index
+		 *
+		 * @param code the hash class code of the keys to include or null to include all keys
+		 * @return true if there is a key to include otherwise false
+		 */
+		boolean load(Byte code) {
+			if (index >= segment.count) {
+				return false;
+			}
+			
+			key = segment.keyAt(index);
+			
+			return code == null || key[0] == code;
+		}
+		
+		@Override
+		public int compareTo(Cursor other) {
+			final int result = compareKeys(key, other.key);
+			return result != 0 ? result : Integer.compare(rank, other.rank);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,107 @@
+package org.openmrs.eip.dbsync.service.hash;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openmrs.eip.dbsync.model.SyncMetadata;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolves the hash of an incoming entity state, the hash computed by the sender at extraction time
+ * and shipped in the {@link SyncMetadata} is used as long as it was computed with the same hash
+ * version, a configured fraction of the messages is rehashed to verify the sender hashes and after a
+ * mismatch the hashes of the sending site are no longer trusted until the application is restarted.
+ */
+@Component("senderHashVerifier")
+public class SenderHashVerifier {
+	
+	protected static final Logger log = LoggerFactory.getLogger(SenderHashVerifier.class);
+	
+	private final double verificationRate;
+	
+	private final Set<String> untrustedSites = ConcurrentHashMap.newKeySet();
+	
+	private final AtomicLong trustedCount = new AtomicLong();
+	
+	private final AtomicLong verifiedCount = new AtomicLong();
+	
+	private final AtomicLong mismatchCount = new AtomicLong();
+	
+	public SenderHashVerifier(@Value("${receiver.sender.hash.verification.rate:0.05}") double verificationRate) {
+		this.verificationRate = verificationRate;
+	}
+	
+	/**
+	 * Gets the hash of the entity state in the specified {@link SyncModel}
+	 *
+	 * @param syncModel the {@link SyncModel} object
+	 * @param modelRewritten specifies if the model was modified after it was received in which case the
+	 *            sender hash is ignored
+	 * @return the hash
+	 */
+	public String getHash(SyncModel syncModel, boolean modelRewritten) {
+		SyncMetadata metadata = syncModel.getMetadata();
+		String senderHash = metadata != null ? metadata.getHash() : null;
+		if (modelRewritten || senderHash == null || !HashUtils.getHashVersion().equals(metadata.getHashVersion())) {
+			return HashUtils.computeHash(syncModel.getModel());
+		}
+		
+		final String siteId = String.valueOf(metadata.getSourceIdentifier());
+		if (untrustedSites.contains(siteId)) {
+			return HashUtils.computeHash(syncModel.getModel());
+		}
+		
+		if (verificationRate > 0 && ThreadLocalRandom.current().nextDouble() < verificationRate) {
+			verifiedCount.incrementAndGet();
+			String hash = HashUtils.computeHash(syncModel.getModel());
+			if (!hash.equals(senderHash)) {
+				mismatchCount.incrementAndGet();
+				untrustedSites.add(siteId);
+				log.warn("Hash sent by site " + siteId + " for " + syncModel.getModel().getClass().getSimpleName()
+				        + " with uuid " + syncModel.getModel().getUuid() + " does not match the computed hash, hashes "
+				        + "sent by the site will no longer be trusted");
+			}
+			
+			return hash;
+		}
+		
+		trustedCount.incrementAndGet();
+		
+		return senderHash;
+	}
+	
+	/**
+	 * Gets the number of sender hashes used without rehashing the entity state
+	 *
+	 * @return the count
+	 */
+	public long getTrustedCount() {
+		return trustedCount.get();
+	}
+	
+	/**
+	 * Gets the number of sender hashes that were verified
+	 *
+	 * @return the count
+	 */
+	public long getVerifiedCount() {
+		return verifiedCount.get();
+	}
+	
+	/**
+	 * Gets the number of sender hashes that did not match the computed hash
+	 *
+	 * @return the count
+	 */
+	public long getMismatchCount() {
+		return mismatchCount.get();
+	}
+	
+}
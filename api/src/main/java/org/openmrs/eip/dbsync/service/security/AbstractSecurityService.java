@@ -21,6 +21,15 @@ public abstract class AbstractSecurityService {
 
     protected static final String HEADER_USER_KEY_PROP = "sender:";
 
+    protected static final String HEADER_SESSION_PROP = "session:";
+
+    /**
+     * Name of the message header carrying the sender's userId for messages encrypted in binary mode
+     */
+    public static final String HEADER_SENDER_ID = "dbSyncSenderId";
+
+    protected static final String LINE_SEPARATOR_REGEX = "\r\n|\r|\n";
+
     private InMemoryKeyring keyRing;
 
     /**
@@ -10,10 +10,17 @@ import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.util.io.Streams;
 import org.openmrs.eip.dbsync.config.ReceiverEncryptionProperties;
 import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.service.compression.PayloadCompressionService;
+import org.openmrs.eip.dbsync.service.format.PayloadFormatService;
+import org.openmrs.eip.dbsync.utils.FileChunkUtils;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.SecretKey;
 import java.io.*;
 import java.security.NoSuchProviderException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -26,7 +33,15 @@ public class PGPDecryptService extends AbstractSecurityService implements Proces
 
     private ReceiverEncryptionProperties props;
 
-    private static final String LINE_SEPARATOR_REGEX = "\r\n|\r|\n";
+    private static final int MAX_CACHED_SESSIONS = 100;
+
+    private final Map<String, SecretKey> sessionKeys = new LinkedHashMap<String, SecretKey>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, SecretKey> eldest) {
+            return size() > MAX_CACHED_SESSIONS;
+        }
+    };
 
     public PGPDecryptService(final ReceiverEncryptionProperties props) {
         this.props = props;
@@ -39,27 +54,96 @@ public class PGPDecryptService extends AbstractSecurityService implements Proces
      * @return the encrypted message
      */
     public String verifyAndDecrypt(final String encryptedMessage) {
+        return new String(verifyAndDecryptToBytes(encryptedMessage), UTF_8);
+    }
+
+    /**
+     * Same as {@link #verifyAndDecrypt(String)} except that the decrypted data is returned as is
+     * @param encryptedMessage the message to decrypt
+     * @return the decrypted data
+     */
+    public byte[] verifyAndDecryptToBytes(final String encryptedMessage) {
+        String[] lines = encryptedMessage.split(LINE_SEPARATOR_REGEX, 4);
+        if (lines.length == 4 && lines[1].startsWith(HEADER_SESSION_PROP)) {
+            return decryptWithSession(lines);
+        }
 
         String senderUserId = extractSenderUserId(encryptedMessage);
 
+        ByteArrayOutputStream unencryptedOutputStream = new ByteArrayOutputStream();
+        try (BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(unencryptedOutputStream)) {
+            verifyAndDecrypt(senderUserId, IOUtils.toInputStream(encryptedMessage, UTF_8), bufferedOutputStream);
+        } catch (IOException e) {
+            throw new SyncException("Error during decryption process", e);
+        }
+
+        return unencryptedOutputStream.toByteArray();
+    }
+
+    /**
+     * Verifies the signature and decrypts the OpenPGP message read from the input stream, the data is
+     * streamed through the PGP decryption and written to the output stream, both binary and ASCII
+     * armored messages are supported.
+     * @param senderUserId the userId of the sender whose signature is required
+     * @param in the stream to read the encrypted message from
+     * @param out the stream to write the decrypted data to
+     */
+    public void verifyAndDecrypt(final String senderUserId, final InputStream in, final OutputStream out) {
         InMemoryKeyring keyRing = getKeyRing(props);
 
-        ByteArrayOutputStream unencryptedOutputStream = new ByteArrayOutputStream();
         try (
-                BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(unencryptedOutputStream);
                 InputStream bouncyGPGInputStream = BouncyGPG
                         .decryptAndVerifyStream()
                         .withConfig(keyRing)
                         .andRequireSignatureFromAllKeys(senderUserId)
-                        .fromEncryptedInputStream(IOUtils.toInputStream(encryptedMessage, UTF_8))
+                        .fromEncryptedInputStream(in)
         ) {
-            Streams.pipeAll(bouncyGPGInputStream, bufferedOutputStream);
+            Streams.pipeAll(bouncyGPGInputStream, out);
 
         } catch (IOException | PGPException | NoSuchProviderException e) {
             throw new SyncException("Error during decryption process", e);
         }
+    }
+
+    /**
+     * Decrypts a message that was encrypted with a session key, the session key is decrypted and its
+     * signature verified only the first time the session is encountered, see
+     * {@link PGPEncryptService#encryptWithSession(byte[])} for the message layout
+     * @param lines the message lines
+     * @return the decrypted data
+     */
+    private byte[] decryptWithSession(final String[] lines) {
+        String senderUserId = extractSenderUserId(lines[0]);
+        String sessionId = lines[1].substring(HEADER_SESSION_PROP.length());
+        String cacheKey = senderUserId + ":" + sessionId;
+        SecretKey key;
+        synchronized (sessionKeys) {
+            key = sessionKeys.get(cacheKey);
+        }
+
+        if (key == null) {
+            key = unwrapSessionKey(senderUserId, sessionId, lines[3]);
+            synchronized (sessionKeys) {
+                sessionKeys.put(cacheKey, key);
+            }
+
+            log.info("Registered encryption session with id: " + sessionId + " for sender: " + senderUserId);
+        }
+
+        String header = lines[0] + "\n" + lines[1];
+        return SessionCipher.decrypt(key, Base64.getDecoder().decode(lines[2].trim()), header.getBytes(UTF_8));
+    }
+
+    private SecretKey unwrapSessionKey(final String senderUserId, final String sessionId, final String wrappedKey) {
+        //The signature is verified against the sender's public key, this is what authenticates the session
+        String payload = verifyAndDecrypt(HEADER_USER_KEY_PROP + senderUserId + "\n" + wrappedKey);
+        String[] parts = payload.split(LINE_SEPARATOR_REGEX, 3);
+        if (parts.length != 3 || !parts[0].equals(HEADER_SESSION_PROP + sessionId)
+                || !parts[1].equals(HEADER_USER_KEY_PROP + senderUserId)) {
+            throw new SyncException("Session key does not match the session and sender of the message");
+        }
 
-        return toString(unencryptedOutputStream);
+        return SessionCipher.toKey(Base64.getDecoder().decode(parts[2].trim()));
     }
 
     private String extractSenderUserId(final String encryptedMessage) {
@@ -75,11 +159,32 @@ public class PGPDecryptService extends AbstractSecurityService implements Proces
     /**
      * Verifies and decrypts the message and puts it in the body with the senders
      * public key userId from the header
-     * to know with which public key to decrypt the message
+     * to know with which public key to decrypt the message, if the {@link #HEADER_SENDER_ID} message
+     * header is set, the body is expected to be a binary OpenPGP message. The decrypted data is
+     * buffered in memory in both modes since the next steps need the complete payload and the signature
+     * is only verified once the whole message has been read.
      * @param exchange the Camel exchange object
      */
     @Override
     public void process(final Exchange exchange) {
-        exchange.getIn().setBody(verifyAndDecrypt((String) exchange.getIn().getBody()));
+        byte[] decrypted;
+        String senderUserId = exchange.getIn().getHeader(HEADER_SENDER_ID, String.class);
+        if (senderUserId != null) {
+            //Binary mode, the body is the raw OpenPGP message
+            ByteArrayOutputStream unencryptedOutputStream = new ByteArrayOutputStream();
+            verifyAndDecrypt(senderUserId, exchange.getIn().getBody(InputStream.class), unencryptedOutputStream);
+            decrypted = unencryptedOutputStream.toByteArray();
+        } else {
+            decrypted = verifyAndDecryptToBytes(exchange.getIn().getBody(String.class));
+        }
+
+        //Compressed and binary payloads including file chunks are left as bytes for the next steps
+        if (exchange.getIn().getHeader(PayloadCompressionService.HEADER_COMPRESSION) != null
+                || exchange.getIn().getHeader(PayloadFormatService.HEADER_FORMAT) != null
+                || exchange.getIn().getHeader(FileChunkUtils.HEADER_CHUNK) != null) {
+            exchange.getIn().setBody(decrypted);
+        } else {
+            exchange.getIn().setBody(new String(decrypted, UTF_8));
+        }
     }
 }
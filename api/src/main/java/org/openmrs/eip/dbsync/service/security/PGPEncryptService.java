@@ -7,14 +7,20 @@ import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.util.io.Streams;
+import org.openmrs.eip.dbsync.camel.utils.BodyUtils;
 import org.openmrs.eip.dbsync.config.SenderEncryptionProperties;
 import org.openmrs.eip.dbsync.exception.SyncException;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.SecretKey;
 import java.io.*;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SignatureException;
+import java.util.Base64;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * The service to encrypt outgoing messages
@@ -25,6 +31,8 @@ public class PGPEncryptService extends AbstractSecurityService implements Proces
 
     private SenderEncryptionProperties props;
 
+    private Session session;
+
     public PGPEncryptService(final SenderEncryptionProperties props) {
         this.props = props;
     }
@@ -35,40 +43,169 @@ public class PGPEncryptService extends AbstractSecurityService implements Proces
      * @return the encrypted message
      */
     public String encryptAndSign(final String unencryptedMessage) {
+        ByteArrayOutputStream encryptedOutputStream = new ByteArrayOutputStream();
+        try (BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(encryptedOutputStream)) {
+            encryptAndSign(new ByteArrayInputStream(unencryptedMessage.getBytes()), bufferedOutputStream, true);
+        } catch (IOException e) {
+            throw new SyncException("Error during encryption process", e);
+        }
+
+        return toString(encryptedOutputStream);
+    }
+
+    /**
+     * Encrypts and signs the data read from the input stream and writes the raw binary OpenPGP
+     * message to the output stream without ASCII armoring or intermediary String conversions
+     * @param in the stream to read the data to encrypt from
+     * @param out the stream to write the encrypted data to
+     */
+    public void encryptAndSignBinary(final InputStream in, final OutputStream out) {
+        encryptAndSign(in, out, false);
+    }
+
+    private void encryptAndSign(final InputStream in, final OutputStream out, final boolean armor) {
         InMemoryKeyring keyRing = getKeyRing(props);
 
-        ByteArrayOutputStream encryptedOutputStream = new ByteArrayOutputStream();
-        try (
-                BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(encryptedOutputStream);
-                OutputStream bouncyGPGOutputStream = BouncyGPG.encryptToStream()
+        try {
+            final OutputStream bouncyGPGOutputStream;
+            if (armor) {
+                bouncyGPGOutputStream = BouncyGPG.encryptToStream()
                         .withConfig(keyRing)
                         .withStrongAlgorithms()
                         .toRecipient(props.getReceiverUserId())
                         .andSignWith(props.getUserId())
                         .armorAsciiOutput()
-                        .andWriteTo(bufferedOutputStream)
-        ) {
-            Streams.pipeAll(new ByteArrayInputStream(unencryptedMessage.getBytes()), bouncyGPGOutputStream);
+                        .andWriteTo(out);
+            } else {
+                bouncyGPGOutputStream = BouncyGPG.encryptToStream()
+                        .withConfig(keyRing)
+                        .withStrongAlgorithms()
+                        .toRecipient(props.getReceiverUserId())
+                        .andSignWith(props.getUserId())
+                        .binaryOutput()
+                        .andWriteTo(out);
+            }
+
+            try (OutputStream encryptingStream = bouncyGPGOutputStream) {
+                Streams.pipeAll(in, encryptingStream);
+            }
 
             log.info("Successfully encrypted the message");
 
         } catch (IOException | PGPException | NoSuchAlgorithmException | SignatureException | NoSuchProviderException e) {
             throw new SyncException("Error during encryption process", e);
         }
-        return toString(encryptedOutputStream);
+    }
+
+    /**
+     * Encrypts the message with the current session key, the session key is generated, encrypted and
+     * signed with PGP only when a new session is started, the message is laid out as below,
+     * <pre>
+     * sender:{sender userId}
+     * session:{session id}
+     * {base64 encoded AES-GCM nonce, cipher text and tag}
+     * {PGP encrypted and signed session key}
+     * </pre>
+     * The first 2 lines are authenticated as associated data, the receiver only needs to decrypt the
+     * PGP part the first time it encounters the session.
+     * @param unencryptedMessage the message to encrypt
+     * @return the encrypted message
+     */
+    public String encryptWithSession(final String unencryptedMessage) {
+        return encryptWithSession(unencryptedMessage.getBytes(UTF_8));
+    }
+
+    /**
+     * Same as {@link #encryptWithSession(String)} except that it takes the raw data to encrypt
+     * @param data the data to encrypt
+     * @return the encrypted message
+     */
+    public String encryptWithSession(final byte[] data) {
+        Session current = getSession();
+        String header = HEADER_USER_KEY_PROP + props.getUserId() + "\n" + HEADER_SESSION_PROP + current.id;
+        byte[] encrypted = SessionCipher.encrypt(current.key, data, header.getBytes(UTF_8));
+
+        return header + "\n" + Base64.getEncoder().encodeToString(encrypted) + "\n" + current.wrappedKey;
+    }
+
+    private synchronized Session getSession() {
+        if (session != null) {
+            if (session.count < props.getSessionMaxMessages()
+                    && System.currentTimeMillis() - session.createdAt < props.getSessionMaxAge()) {
+                session.count++;
+                return session;
+            }
+
+            log.info("Rotating session key after " + session.count + " message(s)");
+        }
+
+        String id = UUID.randomUUID().toString();
+        SecretKey key = SessionCipher.generateKey();
+        String payload = HEADER_SESSION_PROP + id + "\n" + HEADER_USER_KEY_PROP + props.getUserId() + "\n"
+                + Base64.getEncoder().encodeToString(key.getEncoded());
+
+        session = new Session(id, key, encryptAndSign(payload));
+        session.count++;
+
+        log.info("Started new encryption session with id: " + id);
+
+        return session;
     }
 
     /**
      * Encrypts and sign the message and puts it in the body
      * Also puts the sender's private key userId in the header for the reveiving part
-     * to know with which public key to decrypt the message
+     * to know with which public key to decrypt the message, in binary mode the userId is set as the
+     * {@link #HEADER_SENDER_ID} message header and the body is the raw OpenPGP message. Note that
+     * binary mode is not a streaming mode, the encrypted message is buffered in memory because the JMS
+     * component needs the complete body to build the BytesMessage.
      *
      * @param exchange the Camel exchange object
      */
     @Override
     public void process(final Exchange exchange) {
-        String body = HEADER_USER_KEY_PROP + props.getUserId() + "\n";
-        body += encryptAndSign(exchange.getIn().getBody(String.class));
-        exchange.getIn().setBody(body);
+        if (props.isSessionEnabled()) {
+            exchange.getIn().setBody(encryptWithSession(BodyUtils.getBodyAsBytes(exchange)));
+            return;
+        }
+
+        if (props.isBinaryOutput()) {
+            //The body is set as a byte array so that the JMS component sends it as a BytesMessage
+            ByteArrayOutputStream encryptedOutputStream = new ByteArrayOutputStream();
+            encryptAndSignBinary(exchange.getIn().getBody(InputStream.class), encryptedOutputStream);
+            exchange.getIn().setHeader(HEADER_SENDER_ID, props.getUserId());
+            exchange.getIn().setBody(encryptedOutputStream.toByteArray());
+            return;
+        }
+
+        //The body is read as bytes since it can be a compressed payload
+        ByteArrayOutputStream encryptedOutputStream = new ByteArrayOutputStream();
+        try (BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(encryptedOutputStream)) {
+            bufferedOutputStream.write((HEADER_USER_KEY_PROP + props.getUserId() + "\n").getBytes(UTF_8));
+            encryptAndSign(new ByteArrayInputStream(BodyUtils.getBodyAsBytes(exchange)), bufferedOutputStream, true);
+        } catch (IOException e) {
+            throw new SyncException("Error during encryption process", e);
+        }
+
+        exchange.getIn().setBody(toString(encryptedOutputStream));
+    }
+
+    private static class Session {
+
+        private final String id;
+
+        private final SecretKey key;
+
+        private final String wrappedKey;
+
+        private final long createdAt = System.currentTimeMillis();
+
+        private long count;
+
+        Session(final String id, final SecretKey key, final String wrappedKey) {
+            this.id = id;
+            this.key = key;
+            this.wrappedKey = wrappedKey;
+        }
     }
 }
@@ -0,0 +1,107 @@
+package org.openmrs.eip.dbsync.service.security;
+
+import org.openmrs.eip.dbsync.exception.SyncException;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * Symmetric AEAD (AES-GCM) operations used to encrypt individual messages with a session key that
+ * was exchanged via PGP, the encrypted output is made of the random nonce followed by the cipher
+ * text and the authentication tag.
+ */
+public final class SessionCipher {
+
+    private static final String KEY_ALGORITHM = "AES";
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final int KEY_SIZE_BITS = 256;
+
+    private static final int NONCE_SIZE_BYTES = 12;
+
+    private static final int TAG_SIZE_BITS = 128;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private SessionCipher() {
+    }
+
+    /**
+     * Generates a new random session key
+     * @return the key
+     */
+    public static SecretKey generateKey() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance(KEY_ALGORITHM);
+            generator.init(KEY_SIZE_BITS, RANDOM);
+            return generator.generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new SyncException("Failed to generate a session key", e);
+        }
+    }
+
+    /**
+     * Creates a session key from the encoded key bytes
+     * @param encoded the encoded key
+     * @return the key
+     */
+    public static SecretKey toKey(final byte[] encoded) {
+        if (encoded.length * 8 != KEY_SIZE_BITS) {
+            throw new SyncException("Invalid session key length");
+        }
+
+        return new SecretKeySpec(encoded, KEY_ALGORITHM);
+    }
+
+    /**
+     * Encrypts the data with the session key
+     * @param key the session key
+     * @param data the data to encrypt
+     * @param associatedData the data to authenticate without encrypting it
+     * @return the nonce followed by the cipher text and tag
+     */
+    public static byte[] encrypt(final SecretKey key, final byte[] data, final byte[] associatedData) {
+        byte[] nonce = new byte[NONCE_SIZE_BYTES];
+        RANDOM.nextBytes(nonce);
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE_BITS, nonce));
+            cipher.updateAAD(associatedData);
+            byte[] cipherText = cipher.doFinal(data);
+
+            return ByteBuffer.allocate(nonce.length + cipherText.length).put(nonce).put(cipherText).array();
+        } catch (GeneralSecurityException e) {
+            throw new SyncException("Error while encrypting with the session key", e);
+        }
+    }
+
+    /**
+     * Decrypts and authenticates data that was encrypted with {@link #encrypt(SecretKey, byte[], byte[])}
+     * @param key the session key
+     * @param encrypted the nonce followed by the cipher text and tag
+     * @param associatedData the authenticated data that was passed at encryption time
+     * @return the decrypted data
+     */
+    public static byte[] decrypt(final SecretKey key, final byte[] encrypted, final byte[] associatedData) {
+        if (encrypted.length < NONCE_SIZE_BYTES + TAG_SIZE_BITS / 8) {
+            throw new SyncException("Session encrypted message is too short");
+        }
+
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE_BITS, encrypted, 0, NONCE_SIZE_BYTES));
+            cipher.updateAAD(associatedData);
+
+            return cipher.doFinal(encrypted, NONCE_SIZE_BYTES, encrypted.length - NONCE_SIZE_BYTES);
+        } catch (GeneralSecurityException e) {
+            throw new SyncException("Error while decrypting with the session key", e);
+        }
+    }
+}
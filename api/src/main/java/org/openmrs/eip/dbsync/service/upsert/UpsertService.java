@@ -0,0 +1,109 @@
+package org.openmrs.eip.dbsync.service.upsert;
+
+import static org.openmrs.eip.dbsync.SyncConstants.OPENMRS_DATASOURCE_NAME;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.eip.dbsync.entity.BaseEntity;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Fast path for high volume entity types that writes received entities to the OpenMRS database with
+ * an INSERT ... ON DUPLICATE KEY UPDATE statement instead of loading and merging them through
+ * Hibernate, see {@link UpsertStatement}. The statements are executed on the connection of the
+ * current OpenMRS transaction if any so that they are part of a group of messages applied in a
+ * single transaction.
+ * <p>
+ * This only replaces the lookup of the existing row, the merge and the mapping of the saved entity
+ * back to a model, each entity is written with its own statement and the referenced entities e.g.
+ * the person and concept of an obs are still resolved by the model to entity mapper with a lookup
+ * per reference exactly like in the generic path since they are also where placeholders are created
+ * for missing entities.
+ */
+@Service("upsertService")
+public class UpsertService {
+	
+	protected static final Logger log = LoggerFactory.getLogger(UpsertService.class);
+	
+	protected static final Set<TableToSyncEnum> SUPPORTED_TABLES = Collections.unmodifiableSet(
+	    EnumSet.of(TableToSyncEnum.OBS, TableToSyncEnum.PERSON_NAME, TableToSyncEnum.PATIENT_IDENTIFIER));
+	
+	private final Set<TableToSyncEnum> tables;
+	
+	private final JdbcTemplate jdbcTemplate;
+	
+	private final Map<Class<? extends BaseEntity>, UpsertStatement> statements = new ConcurrentHashMap();
+	
+	public UpsertService(@Qualifier(OPENMRS_DATASOURCE_NAME) DataSource dataSource,
+	    @Value("${openmrs.eip.dbsync.upsert.tables:}") String tables) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.tables = parseTables(tables);
+		if (!this.tables.isEmpty()) {
+			log.info("Upsert enabled for tables: " + this.tables);
+		}
+	}
+	
+	private static Set<TableToSyncEnum> parseTables(String tables) {
+		if (StringUtils.isBlank(tables)) {
+			return Collections.emptySet();
+		}
+		
+		Set<TableToSyncEnum> result = EnumSet.noneOf(TableToSyncEnum.class);
+		List<String> names = Arrays.stream(tables.split(",")).map(String::trim).filter(StringUtils::isNotBlank)
+		        .collect(Collectors.toList());
+		for (String name : names) {
+			TableToSyncEnum table = TableToSyncEnum.getTableToSyncEnum(name);
+			if (!SUPPORTED_TABLES.contains(table)) {
+				throw new SyncException("Upsert is not supported for table " + name + ", supported tables are "
+				        + SUPPORTED_TABLES);
+			}
+			
+			result.add(table);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Checks whether the fast path is enabled for the specified entity type
+	 *
+	 * @param tableToSync the entity type
+	 * @return true if enabled otherwise false
+	 */
+	public boolean isEnabled(TableToSyncEnum tableToSync) {
+		return tables.contains(tableToSync);
+	}
+	
+	/**
+	 * Inserts or updates the specified entity, an existing row with the same uuid e.g. a placeholder is
+	 * updated, the references of the entity MUST already be resolved
+	 *
+	 * @param entity the entity to write
+	 */
+	public void upsert(BaseEntity entity) {
+		UpsertStatement statement = statements.computeIfAbsent(entity.getClass(), UpsertStatement::create);
+		if (log.isDebugEnabled()) {
+			log.debug("Upserting row with: " + statement.getSql());
+		}
+		
+		jdbcTemplate.update(statement.getSql(), ps -> statement.bind(ps, entity));
+	}
+	
+}
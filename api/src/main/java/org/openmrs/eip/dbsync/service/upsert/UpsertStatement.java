@@ -0,0 +1,129 @@
+package org.openmrs.eip.dbsync.service.upsert;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.persistence.Column;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+import org.openmrs.eip.dbsync.entity.BaseEntity;
+import org.openmrs.eip.dbsync.exception.SyncException;
+
+/**
+ * An INSERT ... ON DUPLICATE KEY UPDATE statement for an entity type generated from its JPA mapping,
+ * all mapped columns except the primary key are written and the row is matched by the unique uuid
+ * column, columns of associations are set to the id of the associated entity.
+ */
+public final class UpsertStatement {
+	
+	private static final String COLUMN_UUID = "uuid";
+	
+	private final String sql;
+	
+	private final List<Field> fields;
+	
+	private UpsertStatement(String sql, List<Field> fields) {
+		this.sql = sql;
+		this.fields = fields;
+	}
+	
+	/**
+	 * Creates the statement for the specified entity type
+	 *
+	 * @param entityClass the entity type
+	 * @return the statement
+	 */
+	public static UpsertStatement create(Class<? extends BaseEntity> entityClass) {
+		Table table = entityClass.getAnnotation(Table.class);
+		if (table == null) {
+			throw new SyncException("No table mapping found for " + entityClass);
+		}
+		
+		//Superclass columns first to keep the statement readable
+		LinkedList<Class<?>> hierarchy = new LinkedList();
+		for (Class<?> clazz = entityClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+			hierarchy.addFirst(clazz);
+		}
+		
+		List<Field> fields = new ArrayList();
+		List<String> columns = new ArrayList();
+		for (Class<?> clazz : hierarchy) {
+			for (Field field : clazz.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers()) || field.isAnnotationPresent(Id.class)
+				        || field.isAnnotationPresent(Transient.class)) {
+					continue;
+				}
+				
+				String column = null;
+				if (field.isAnnotationPresent(Column.class)) {
+					column = field.getAnnotation(Column.class).name();
+				} else if (field.isAnnotationPresent(JoinColumn.class)) {
+					column = field.getAnnotation(JoinColumn.class).name();
+				}
+				
+				if (column == null || column.isEmpty()) {
+					continue;
+				}
+				
+				field.setAccessible(true);
+				fields.add(field);
+				columns.add(column);
+			}
+		}
+		
+		String updates = columns.stream().filter(c -> !COLUMN_UUID.equals(c)).map(c -> c + " = VALUES(" + c + ")")
+		        .collect(Collectors.joining(", "));
+		
+		String sql = "INSERT INTO " + table.name() + " (" + String.join(", ", columns) + ") VALUES ("
+		        + columns.stream().map(c -> "?").collect(Collectors.joining(", ")) + ") ON DUPLICATE KEY UPDATE "
+		        + updates;
+		
+		return new UpsertStatement(sql, fields);
+	}
+	
+	/**
+	 * Sets the column values of the specified entity as the parameters of the prepared statement
+	 *
+	 * @param statement the prepared statement
+	 * @param entity the entity
+	 * @throws SQLException
+	 */
+	public void bind(PreparedStatement statement, BaseEntity entity) throws SQLException {
+		for (int i = 0; i < fields.size(); i++) {
+			Object value;
+			try {
+				value = fields.get(i).get(entity);
+			}
+			catch (IllegalAccessException e) {
+				throw new SyncException("Failed to read " + fields.get(i).getName() + " of " + entity.getClass(), e);
+			}
+			
+			if (value instanceof BaseEntity) {
+				value = ((BaseEntity) value).getId();
+			} else if (value instanceof LocalDateTime) {
+				value = Timestamp.valueOf((LocalDateTime) value);
+			}
+			
+			statement.setObject(i + 1, value);
+		}
+	}
+	
+	/**
+	 * @return the sql
+	 */
+	public String getSql() {
+		return sql;
+	}
+	
+}
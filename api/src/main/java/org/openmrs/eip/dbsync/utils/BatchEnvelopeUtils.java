@@ -0,0 +1,99 @@
+package org.openmrs.eip.dbsync.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openmrs.eip.dbsync.exception.SyncException;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+/**
+ * Utility methods for batch envelopes, a batch envelope carries an ordered list of marshalled
+ * {@link org.openmrs.eip.dbsync.model.SyncModel} payloads in a single message, it is a JSON object
+ * with a single field holding the payloads as an array i.e. <code>{"syncBatch":[{...},{...}]}</code>.
+ * Payloads are embedded as is so the envelope can be built without parsing them, a single entity
+ * message never starts with the envelope prefix which makes it cheap to tell the two apart.
+ */
+public final class BatchEnvelopeUtils {
+	
+	public static final String FIELD_BATCH = "syncBatch";
+	
+	public static final String PREFIX = "{\"" + FIELD_BATCH + "\":[";
+	
+	public static final String SUFFIX = "]}";
+	
+	//Keep decimal values exactly as they were written by the sender
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+	        .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+	        .setNodeFactory(JsonNodeFactory.withExactBigDecimals(true));
+	
+	private BatchEnvelopeUtils() {
+	}
+	
+	/**
+	 * Wraps the specified payloads in a batch envelope preserving their order
+	 *
+	 * @param payloads the marshalled sync models
+	 * @return the batch envelope
+	 */
+	public static String wrap(Collection<String> payloads) {
+		int size = PREFIX.length() + SUFFIX.length() + payloads.size();
+		for (String payload : payloads) {
+			size += payload.length();
+		}
+		
+		StringBuilder sb = new StringBuilder(size).append(PREFIX);
+		boolean first = true;
+		for (String payload : payloads) {
+			if (!first) {
+				sb.append(',');
+			}
+			
+			sb.append(payload);
+			first = false;
+		}
+		
+		return sb.append(SUFFIX).toString();
+	}
+	
+	/**
+	 * Checks if the specified message body is a batch envelope
+	 *
+	 * @param body the message body
+	 * @return true if the body is a batch envelope otherwise false
+	 */
+	public static boolean isBatch(String body) {
+		return body != null && body.startsWith(PREFIX);
+	}
+	
+	/**
+	 * Extracts the payloads from the specified batch envelope in the order in which they were added
+	 *
+	 * @param envelope the batch envelope
+	 * @return list of the marshalled sync models
+	 */
+	public static List<String> unwrap(String envelope) {
+		JsonNode batch;
+		try {
+			batch = MAPPER.readTree(envelope).get(FIELD_BATCH);
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to parse batch envelope", e);
+		}
+		
+		if (batch == null || !batch.isArray()) {
+			throw new SyncException("Invalid batch envelope, no " + FIELD_BATCH + " array found");
+		}
+		
+		List<String> payloads = new ArrayList(batch.size());
+		batch.forEach(node -> payloads.add(node.toString()));
+		
+		return payloads;
+	}
+	
+}
@@ -0,0 +1,38 @@
+package org.openmrs.eip.dbsync.utils;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Custom {@link com.fasterxml.jackson.databind.JsonSerializer} from {@link LocalDateTime} to a number
+ * of milliseconds since the epoch for binary payloads, values with a sub millisecond precision can't
+ * be represented exactly and are written as a String like {@link LocalDateTimeSerializer} does,
+ * {@link LocalDateTimeDeserializer} reads both forms.
+ */
+public class CborLocalDateTimeSerializer extends StdSerializer<LocalDateTime> {
+	
+	private static final int NANOS_PER_MILLI = 1000000;
+	
+	public CborLocalDateTimeSerializer() {
+		this(LocalDateTime.class);
+	}
+	
+	public CborLocalDateTimeSerializer(Class<LocalDateTime> ldt) {
+		super(ldt);
+	}
+	
+	@Override
+	public void serialize(LocalDateTime value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+		if (value.getNano() % NANOS_PER_MILLI == 0) {
+			gen.writeNumber(value.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+		} else {
+			gen.writeString(DateUtils.serialize(value));
+		}
+	}
+	
+}
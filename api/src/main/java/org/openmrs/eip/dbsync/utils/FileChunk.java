@@ -0,0 +1,79 @@
+package org.openmrs.eip.dbsync.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Properties;
+
+import org.openmrs.eip.dbsync.exception.SyncException;
+
+/**
+ * A file chunk read from a message body with {@link FileChunkUtils#parse(byte[])}, the getters for
+ * the metadata fail with a {@link SyncException} when a value is missing or invalid.
+ */
+public class FileChunk {
+	
+	private final Properties metadata;
+	
+	private final ByteBuffer data;
+	
+	FileChunk(Properties metadata, ByteBuffer data) {
+		this.metadata = metadata;
+		this.data = data;
+	}
+	
+	/**
+	 * Gets the value of the specified metadata key
+	 *
+	 * @param key the metadata key
+	 * @return the value
+	 */
+	public String getString(String key) {
+		String value = metadata.getProperty(key);
+		if (value == null) {
+			throw new SyncException("Missing file chunk metadata: " + key);
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Gets the value of the specified metadata key as a long
+	 *
+	 * @param key the metadata key
+	 * @return the value
+	 */
+	public long getLong(String key) {
+		String value = getString(key);
+		try {
+			return Long.parseLong(value);
+		}
+		catch (NumberFormatException e) {
+			throw new SyncException("Invalid file chunk metadata " + key + ": " + value);
+		}
+	}
+	
+	/**
+	 * Gets the value of the specified metadata key as an int
+	 *
+	 * @param key the metadata key
+	 * @return the value
+	 */
+	public int getInt(String key) {
+		String value = getString(key);
+		try {
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e) {
+			throw new SyncException("Invalid file chunk metadata " + key + ": " + value);
+		}
+	}
+	
+	/**
+	 * Gets a read only view of the chunk data
+	 *
+	 * @return the data
+	 */
+	public ByteBuffer getData() {
+		return data.asReadOnlyBuffer();
+	}
+	
+}
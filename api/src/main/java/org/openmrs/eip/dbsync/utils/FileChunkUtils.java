@@ -0,0 +1,138 @@
+package org.openmrs.eip.dbsync.utils;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Properties;
+
+import org.openmrs.eip.dbsync.exception.SyncException;
+
+/**
+ * Constants and helpers for the chunked transfer of complex obs files, a file is sent as a sequence
+ * of binary chunks of a fixed size except for the last one. The metadata that identifies the file
+ * and the position of each chunk in it is framed together with the chunk data in the message body
+ * so that it is signed and encrypted along with it, the only message header is
+ * {@link #HEADER_CHUNK} which marks the body as a framed chunk. A framed chunk is made of the
+ * length of the metadata as a 4 byte integer followed by the metadata in the
+ * {@link Properties#store(java.io.Writer, String)} format and the chunk data.
+ */
+public final class FileChunkUtils {
+	
+	/**
+	 * Marks a message body as a framed file chunk, the value is the frame version
+	 */
+	public static final String HEADER_CHUNK = "dbSyncFileChunk";
+	
+	public static final int FRAME_VERSION = 1;
+	
+	/**
+	 * Uniquely identifies a version of a file, made of the file name and last modified timestamp
+	 */
+	public static final String KEY_FILE_ID = "fileId";
+	
+	public static final String KEY_FILE_NAME = "fileName";
+	
+	public static final String KEY_FILE_SIZE = "fileSize";
+	
+	/**
+	 * The md5 hash of the entire file contents
+	 */
+	public static final String KEY_FILE_DIGEST = "fileDigest";
+	
+	public static final String KEY_CHUNK_INDEX = "chunkIndex";
+	
+	public static final String KEY_CHUNK_COUNT = "chunkCount";
+	
+	public static final String KEY_CHUNK_SIZE = "chunkSize";
+	
+	public static final String KEY_CHUNK_OFFSET = "chunkOffset";
+	
+	private FileChunkUtils() {
+	}
+	
+	/**
+	 * Gets the number of chunks for a file of the specified size, an empty file is sent as a single
+	 * empty chunk
+	 *
+	 * @param fileSize the file size
+	 * @param chunkSize the chunk size
+	 * @return the chunk count
+	 */
+	public static int getChunkCount(long fileSize, int chunkSize) {
+		if (fileSize == 0) {
+			return 1;
+		}
+		
+		return (int) ((fileSize + chunkSize - 1) / chunkSize);
+	}
+	
+	/**
+	 * Gets the length of the chunk at the specified index
+	 *
+	 * @param fileSize the file size
+	 * @param chunkSize the chunk size
+	 * @param index the chunk index
+	 * @return the chunk length
+	 */
+	public static int getChunkLength(long fileSize, int chunkSize, int index) {
+		return (int) Math.min(chunkSize, fileSize - (long) index * chunkSize);
+	}
+	
+	/**
+	 * Frames the specified chunk metadata and data into a single message body
+	 *
+	 * @param metadata the chunk metadata
+	 * @param data the buffer holding the chunk data
+	 * @param length the length of the chunk data in the buffer
+	 * @return the framed chunk
+	 */
+	public static byte[] frame(Properties metadata, byte[] data, int length) {
+		StringWriter writer = new StringWriter();
+		try {
+			metadata.store(writer, null);
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to write file chunk metadata", e);
+		}
+		
+		//Non ASCII characters are escaped by Properties.store
+		byte[] header = writer.toString().getBytes(ISO_8859_1);
+		ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + header.length + length);
+		buffer.putInt(header.length);
+		buffer.put(header);
+		buffer.put(data, 0, length);
+		return buffer.array();
+	}
+	
+	/**
+	 * Reads a chunk framed with {@link #frame(Properties, byte[], int)}
+	 *
+	 * @param body the framed chunk
+	 * @return the chunk
+	 */
+	public static FileChunk parse(byte[] body) {
+		if (body == null || body.length < Integer.BYTES) {
+			throw new SyncException("Invalid file chunk, the body is too short");
+		}
+		
+		final int headerLength = ByteBuffer.wrap(body).getInt();
+		if (headerLength < 0 || headerLength > body.length - Integer.BYTES) {
+			throw new SyncException("Invalid file chunk metadata length: " + headerLength);
+		}
+		
+		Properties metadata = new Properties();
+		try {
+			metadata.load(new ByteArrayInputStream(body, Integer.BYTES, headerLength));
+		}
+		catch (IOException | IllegalArgumentException e) {
+			throw new SyncException("Failed to read file chunk metadata", e);
+		}
+		
+		final int dataOffset = Integer.BYTES + headerLength;
+		return new FileChunk(metadata, ByteBuffer.wrap(body, dataOffset, body.length - dataOffset).slice());
+	}
+	
+}
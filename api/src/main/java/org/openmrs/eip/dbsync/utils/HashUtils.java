@@ -2,9 +2,16 @@ package org.openmrs.eip.dbsync.utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -18,15 +25,17 @@ import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.FileUtils;
 import org.openmrs.eip.dbsync.SyncConstants;
 import org.openmrs.eip.dbsync.SyncContext;
 import org.openmrs.eip.dbsync.exception.SyncException;
 import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
-import org.openmrs.eip.dbsync.management.hash.repository.BaseHashRepository;
 import org.openmrs.eip.dbsync.model.BaseModel;
 import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.openmrs.eip.dbsync.service.hash.HashStore;
+import org.openmrs.eip.dbsync.service.hash.HashWriteBuffer;
+import org.openmrs.eip.dbsync.service.hash.JpaHashStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
@@ -35,8 +44,30 @@ public class HashUtils {
 	
 	protected static final Logger log = LoggerFactory.getLogger(HashUtils.class);
 	
+	/**
+	 * The minimum size in bytes of files that are memory mapped when their hash is computed
+	 */
+	protected static final long MAPPED_HASH_THRESHOLD = 8 * 1024 * 1024;
+	
+	protected static final int MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+	
+	private static final int HASH_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * The version of the normalization applied by {@link #computeHash(BaseModel)}, it MUST be changed
+	 * whenever the normalization changes so that hashes computed by sites running different versions
+	 * are never compared.
+	 */
+	public static final String HASH_VERSION = "1";
+	
 	private static Map<Class<? extends BaseModel>, Set<String>> modelClassDatetimePropsMap;
 	
+	private static volatile HashWriteBuffer writeBuffer;
+	
+	private static final HashStore DEFAULT_STORE = new JpaHashStore();
+	
+	private static volatile HashStore hashStore = DEFAULT_STORE;
+	
 	/**
 	 * Computes the hash of the specified model, the logic is such that it removes null values, extracts
 	 * uuids for all light entity fields, converts datetime fields to milliseconds since the epoch,
@@ -85,6 +116,16 @@ public class HashUtils {
 		return DigestUtils.md5Hex(val.getBytes(StandardCharsets.UTF_8));
 	}
 	
+	/**
+	 * Gets the version of the hashes computed by {@link #computeHash(BaseModel)} in this JVM, datetimes
+	 * are normalized in the system time zone so the zone is part of the version.
+	 *
+	 * @return the hash version
+	 */
+	public static String getHashVersion() {
+		return HASH_VERSION + "/" + ZoneId.systemDefault().getId();
+	}
+	
 	/**
 	 * Gets a set of property names of the specified model class object that are of type LocalDateTime
 	 *
@@ -130,24 +171,76 @@ public class HashUtils {
 	}
 	
 	/**
-	 * Looks up the stored hash for the entity with the specified identifier from the management DB
+	 * Looks up the stored hash for the entity with the specified identifier from the {@link HashStore}
 	 * 
 	 * @param identifier the unique identifier of the entity
 	 * @param hashClass entity hash class
 	 * @return the saved hash entity object otherwise null
 	 */
 	public static BaseHashEntity getStoredHash(String identifier, Class<? extends BaseHashEntity> hashClass) {
-		return getHashRepository(hashClass).findByIdentifier(identifier);
+		HashWriteBuffer buffer = writeBuffer;
+		if (buffer != null) {
+			BaseHashEntity pendingHash = buffer.getPendingHash(identifier, hashClass);
+			if (pendingHash != null) {
+				return pendingHash;
+			}
+		}
+		
+		return hashStore.findByIdentifier(identifier, hashClass);
 	}
 	
 	/**
-	 * Saves the specified hash to the database
+	 * Saves the specified hash to the {@link HashStore}, the hash is handed over to the
+	 * {@link HashWriteBuffer} if write-behind of hashes is enabled
 	 * 
 	 * @param hashEntity the hash entity to save
 	 */
 	public static void saveHash(BaseHashEntity hashEntity) {
-		BaseHashRepository repo = getHashRepository(hashEntity.getClass());
-		repo.save(hashEntity);
+		HashWriteBuffer buffer = writeBuffer;
+		if (buffer != null) {
+			buffer.write(hashEntity);
+			return;
+		}
+		
+		hashStore.save(hashEntity);
+	}
+	
+	/**
+	 * Checks if hashes are saved via the {@link HashWriteBuffer}
+	 *
+	 * @return true if write-behind of hashes is enabled otherwise false
+	 */
+	public static boolean isWriteBehindEnabled() {
+		return writeBuffer != null;
+	}
+	
+	/**
+	 * Sets the {@link HashWriteBuffer} to which hashes are handed over when saved
+	 *
+	 * @param buffer the buffer to set or null to save hashes directly
+	 */
+	public static void setWriteBuffer(HashWriteBuffer buffer) {
+		writeBuffer = buffer;
+	}
+	
+	/**
+	 * Sets the {@link HashStore} where hashes are looked up and saved
+	 *
+	 * @param store the store to set or null to use the default {@link JpaHashStore}
+	 */
+	public static void setHashStore(HashStore store) {
+		hashStore = store != null ? store : DEFAULT_STORE;
+	}
+	
+	/**
+	 * Checks if hashes must be saved via {@link #saveHash(BaseHashEntity)} rather than the camel jpa
+	 * endpoint i.e. when write-behind of hashes is enabled or hashes are not stored in the management
+	 * database
+	 *
+	 * @return true if hashes must be saved via this class otherwise false
+	 */
+	public static boolean isDirectSaveEnabled() {
+		return writeBuffer != null || hashStore != DEFAULT_STORE;
 	}
 	
 	/**
@@ -176,14 +269,59 @@ public class HashUtils {
 	}
 	
 	/**
-	 * Computes the hash of the contents of the specified file
+	 * Computes the hash of the contents of the specified file, the file is read in a streaming
+	 * fashion, files of at least {@link #MAPPED_HASH_THRESHOLD} bytes are memory mapped in regions so
+	 * that their contents are never copied to the heap.
 	 * 
 	 * @param file the file object
 	 * @return md5 hash
 	 * @throws IOException
 	 */
 	public static String computeHashForFile(File file) throws IOException {
-		return DigestUtils.md5Hex(FileUtils.readFileToByteArray(file));
+		return computeHashForFile(file, MAPPED_HASH_THRESHOLD, MAPPED_REGION_SIZE);
+	}
+	
+	protected static String computeHashForFile(File file, long mappedThreshold, int regionSize) throws IOException {
+		MessageDigest digest = createDigest();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size >= mappedThreshold) {
+				for (long position = 0; position < size; position += regionSize) {
+					digest.update(channel.map(MapMode.READ_ONLY, position, Math.min(regionSize, size - position)));
+				}
+			} else {
+				ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+				while (channel.read(buffer) != -1) {
+					buffer.flip();
+					digest.update(buffer);
+					buffer.clear();
+				}
+			}
+		}
+		
+		return Hex.encodeHexString(digest.digest());
+	}
+	
+	/**
+	 * Computes the hash of the data read from the specified stream, the stream is not closed
+	 * 
+	 * @param in the stream to read
+	 * @return md5 hash
+	 * @throws IOException
+	 */
+	public static String computeHashForStream(InputStream in) throws IOException {
+		return Hex.encodeHexString(DigestUtils.updateDigest(createDigest(), in).digest());
+	}
+	
+	/**
+	 * Creates a new message digest for the algorithm used to hash complex obs file contents, it can
+	 * be used to compute the hash of data as it is written e.g. when a file is received in chunks,
+	 * the hex encoded result matches that of {@link #computeHashForBytes(byte[])}
+	 * 
+	 * @return the message digest
+	 */
+	public static MessageDigest createDigest() {
+		return DigestUtils.getMd5Digest();
 	}
 	
 	/**
@@ -208,10 +346,25 @@ public class HashUtils {
 			hashClass = TableToSyncEnum.getTableToSyncEnum(model.getClass()).getHashClass();
 		}
 		
-		BaseHashEntity hashEntity = getStoredHash(model.getUuid(), hashClass);
+		return createOrUpdateHash(model.getUuid(), computeHash(model), hashClass);
+	}
+	
+	/**
+	 * Updates or inserts the specified hash for the entity with the specified identifier, this is used
+	 * when the hash is computed without loading the entity e.g. by the database
+	 *
+	 * @param identifier the unique identifier of the entity
+	 * @param hash the hash to save
+	 * @param hashClass the hash class object
+	 * @return return the created or updated {@link BaseHashEntity} object
+	 */
+	public static BaseHashEntity createOrUpdateHash(String identifier, String hash,
+	                                                Class<? extends BaseHashEntity> hashClass) {
+		
+		BaseHashEntity hashEntity = getStoredHash(identifier, hashClass);
 		if (hashEntity == null) {
 			if (log.isDebugEnabled()) {
-				log.debug("Inserting hash for " + model.getClass().getSimpleName() + " with uuid " + model.getUuid());
+				log.debug("Inserting " + hashClass.getSimpleName() + " for entity with uuid " + identifier);
 			}
 			
 			try {
@@ -221,17 +374,17 @@ public class HashUtils {
 				throw new SyncException("Failed to create an instance of " + hashClass, e);
 			}
 			
-			hashEntity.setIdentifier(model.getUuid());
+			hashEntity.setIdentifier(identifier);
 			hashEntity.setDateCreated(LocalDateTime.now());
 		} else {
 			if (log.isDebugEnabled()) {
-				log.debug("Updating hash for " + model.getClass().getSimpleName() + " with uuid " + model.getUuid());
+				log.debug("Updating " + hashClass.getSimpleName() + " for entity with uuid " + identifier);
 			}
 			
 			hashEntity.setDateChanged(LocalDateTime.now());
 		}
 		
-		hashEntity.setHash(computeHash(model));
+		hashEntity.setHash(hash);
 		
 		if (log.isDebugEnabled()) {
 			log.debug("Saving the hash");
@@ -246,14 +399,4 @@ public class HashUtils {
 		return hashEntity;
 	}
 	
-	/**
-	 * Gets the repository object for the specified hash class
-	 *
-	 * @param hashClass type of the hash class to match
-	 * @return BaseHashRepository instance
-	 */
-	private static <T extends BaseHashEntity> BaseHashRepository<T> getHashRepository(Class<T> hashClass) {
-		return SyncUtils.getJpaRepository(hashClass, BaseHashRepository.class);
-	}
-	
 }
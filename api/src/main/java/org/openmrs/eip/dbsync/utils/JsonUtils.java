@@ -1,6 +1,7 @@
 package org.openmrs.eip.dbsync.utils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -10,17 +11,24 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.openmrs.eip.dbsync.exception.SyncException;
 import org.openmrs.eip.dbsync.model.BaseModel;
+import org.openmrs.eip.dbsync.model.SyncMetadata;
 import org.openmrs.eip.dbsync.model.SyncModel;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public final class JsonUtils {
 	
+	private static final ObjectMapper CBOR_MAPPER = createCborMapper();
+	
+	private static final ObjectMapper TREE_MAPPER = createTreeMapper();
+	
 	private JsonUtils() {
 	}
 	
@@ -73,6 +81,221 @@ public final class JsonUtils {
 		}
 	}
 	
+	/**
+	 * Utility method to unmarshal JSON read from a stream
+	 *
+	 * @param in
+	 * @param objectClass
+	 * @param <C>
+	 * @return the object
+	 */
+	public static <C> C unmarshal(final InputStream in, final Class<C> objectClass) {
+		try {
+			return TREE_MAPPER.readValue(in, objectClass);
+		}
+		catch (IOException e) {
+			log.error("Error while unmarshalling object", e);
+			throw new SyncException("Error while unmarshalling object", e);
+		}
+	}
+	
+	/**
+	 * Utility method to marshal an object to CBOR, the binary equivalent of JSON, date times are
+	 * written as numbers, see {@link CborLocalDateTimeSerializer}, other values use the same custom
+	 * serializers as {@link #marshall(Object)}
+	 *
+	 * @param object
+	 * @return the object as CBOR bytes
+	 */
+	public static byte[] marshallToCbor(final Object object) {
+		try {
+			return CBOR_MAPPER.writeValueAsBytes(object);
+		}
+		catch (JsonProcessingException e) {
+			log.error("Error while marshalling object to CBOR", e);
+			throw new SyncException("Error while marshalling object to CBOR", e);
+		}
+	}
+	
+	/**
+	 * Utility method to unmarshal CBOR bytes
+	 *
+	 * @param data
+	 * @param objectClass
+	 * @param <C>
+	 * @return the object
+	 */
+	public static <C> C unmarshalCbor(final byte[] data, final Class<C> objectClass) {
+		try {
+			return CBOR_MAPPER.readValue(data, objectClass);
+		}
+		catch (IOException e) {
+			log.error("Error while unmarshalling CBOR object", e);
+			throw new SyncException("Error while unmarshalling CBOR object", e);
+		}
+	}
+	
+	/**
+	 * Utility method to unmarshal CBOR read from a stream
+	 *
+	 * @param in
+	 * @param objectClass
+	 * @param <C>
+	 * @return the object
+	 */
+	public static <C> C unmarshalCbor(final InputStream in, final Class<C> objectClass) {
+		try {
+			return CBOR_MAPPER.readValue(in, objectClass);
+		}
+		catch (IOException e) {
+			log.error("Error while unmarshalling CBOR object", e);
+			throw new SyncException("Error while unmarshalling CBOR object", e);
+		}
+	}
+	
+	/**
+	 * Utility method to convert a tree to a JSON string
+	 *
+	 * @param tree
+	 * @return the JSON string
+	 */
+	public static String treeToJson(final JsonNode tree) {
+		try {
+			return TREE_MAPPER.writeValueAsString(tree);
+		}
+		catch (JsonProcessingException e) {
+			log.error("Error while converting tree to JSON", e);
+			throw new SyncException("Error while converting tree to JSON", e);
+		}
+	}
+	
+	/**
+	 * Utility method to convert an object to a JSON tree, the same custom serializers as
+	 * {@link #marshall(Object)} are used
+	 *
+	 * @param object
+	 * @return the tree
+	 */
+	public static JsonNode toTree(final Object object) {
+		return TREE_MAPPER.valueToTree(object);
+	}
+	
+	/**
+	 * Utility method to convert an object to a tree to be written as CBOR, the same custom serializers
+	 * as {@link #marshallToCbor(Object)} are used
+	 *
+	 * @param object
+	 * @return the tree
+	 */
+	public static JsonNode toCborTree(final Object object) {
+		return CBOR_MAPPER.valueToTree(object);
+	}
+	
+	/**
+	 * Utility method to bind a tree produced by {@link #toTree(Object)} or {@link #toCborTree(Object)}
+	 * to a {@link SyncModel}, the model is bound directly to its class since the deserializer for
+	 * {@link BaseModel} fields needs a parser positioned inside the parent SyncModel
+	 *
+	 * @param tree
+	 * @return the SyncModel object
+	 */
+	public static SyncModel treeToSyncModel(final JsonNode tree) {
+		try {
+			SyncModel syncModel = new SyncModel();
+			syncModel.setTableToSyncModelClass(CBOR_MAPPER.treeToValue(tree.get("tableToSyncModelClass"), Class.class));
+			JsonNode model = tree.get("model");
+			if (model != null && !model.isNull()) {
+				syncModel.setModel(CBOR_MAPPER.treeToValue(model, syncModel.getTableToSyncModelClass()));
+			}
+			
+			JsonNode metadata = tree.get("metadata");
+			if (metadata != null && !metadata.isNull()) {
+				syncModel.setMetadata(CBOR_MAPPER.treeToValue(metadata, SyncMetadata.class));
+			}
+			
+			return syncModel;
+		}
+		catch (IOException e) {
+			log.error("Error while binding tree to SyncModel", e);
+			throw new SyncException("Error while binding tree to SyncModel", e);
+		}
+	}
+	
+	/**
+	 * Utility method to parse a JSON string into a tree
+	 *
+	 * @param json
+	 * @return the tree
+	 */
+	public static JsonNode readTree(final String json) {
+		try {
+			return TREE_MAPPER.readTree(json);
+		}
+		catch (IOException e) {
+			log.error("Error while parsing JSON", e);
+			throw new SyncException("Error while parsing JSON", e);
+		}
+	}
+	
+	/**
+	 * Utility method to parse JSON read from a stream into a tree
+	 *
+	 * @param in
+	 * @return the tree
+	 */
+	public static JsonNode readTree(final InputStream in) {
+		try {
+			return TREE_MAPPER.readTree(in);
+		}
+		catch (IOException e) {
+			log.error("Error while parsing JSON", e);
+			throw new SyncException("Error while parsing JSON", e);
+		}
+	}
+	
+	/**
+	 * Utility method to parse CBOR read from a stream into a tree
+	 *
+	 * @param in
+	 * @return the tree
+	 */
+	public static JsonNode readCborTree(final InputStream in) {
+		try {
+			return CBOR_MAPPER.readTree(in);
+		}
+		catch (IOException e) {
+			log.error("Error while parsing CBOR", e);
+			throw new SyncException("Error while parsing CBOR", e);
+		}
+	}
+	
+	private static ObjectMapper createCborMapper() {
+		SimpleModule module = new SimpleModule();
+		module.addSerializer(new LocalDateSerializer());
+		module.addSerializer(new CborLocalDateTimeSerializer());
+		module.addSerializer(new LocalTimeSerializer());
+		addDeserializers(module);
+		
+		return new CBORMapper().registerModule(module);
+	}
+	
+	private static ObjectMapper createTreeMapper() {
+		SimpleModule module = new SimpleModule();
+		module.addSerializer(new LocalDateSerializer());
+		module.addSerializer(new LocalDateTimeSerializer());
+		module.addSerializer(new LocalTimeSerializer());
+		addDeserializers(module);
+		
+		return new ObjectMapper().registerModule(module);
+	}
+	
+	private static void addDeserializers(SimpleModule module) {
+		module.addDeserializer(BaseModel.class, new BaseModelDeserializer());
+		module.addDeserializer(LocalDate.class, new LocalDateDeserializer());
+		module.addDeserializer(LocalDateTime.class, new LocalDateTimeDeserializer());
+		module.addDeserializer(LocalTime.class, new LocalTimeDeserializer());
+	}
+	
 	/**
 	 * Utility method to extract and concatenate json array key values
 	 * 
@@ -1,15 +1,19 @@
 package org.openmrs.eip.dbsync.utils;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 
 /**
- * Custom {@link com.fasterxml.jackson.databind.JsonDeserializer} from String {@link LocalDateTime}
+ * Custom {@link com.fasterxml.jackson.databind.JsonDeserializer} from String {@link LocalDateTime}, a
+ * number is read as milliseconds since the epoch as written by {@link CborLocalDateTimeSerializer}
  */
 public class LocalDateTimeDeserializer extends StdDeserializer<LocalDateTime> {
 	
@@ -23,6 +27,10 @@ public class LocalDateTimeDeserializer extends StdDeserializer<LocalDateTime> {
 	
 	@Override
 	public LocalDateTime deserialize(JsonParser p, DeserializationContext ctxt) throws IOException, JsonProcessingException {
+		if (p.hasToken(JsonToken.VALUE_NUMBER_INT)) {
+			return Instant.ofEpochMilli(p.getLongValue()).atZone(ZoneId.systemDefault()).toLocalDateTime();
+		}
+		
 		return DateUtils.parse(p.getText());
 	}
 	
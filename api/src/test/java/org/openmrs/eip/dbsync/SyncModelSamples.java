@@ -0,0 +1,120 @@
+package org.openmrs.eip.dbsync;
+
+import java.beans.PropertyDescriptor;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.openmrs.eip.dbsync.entity.light.LightEntity;
+import org.openmrs.eip.dbsync.model.BaseModel;
+import org.openmrs.eip.dbsync.model.SyncMetadata;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+
+/**
+ * Creates sample {@link SyncModel} instances for payload size measurements, date times have the
+ * precision of the values read from the database, and sample models to save in the database
+ */
+public final class SyncModelSamples {
+	
+	private static final String UUID_SUFFIX = "Uuid";
+	
+	private SyncModelSamples() {
+	}
+	
+	/**
+	 * Creates a sample SyncModel with all the model fields of supported types set
+	 *
+	 * @param tableToSync the type of model to create
+	 * @return the SyncModel
+	 */
+	public static SyncModel create(TableToSyncEnum tableToSync) throws Exception {
+		BaseModel model = tableToSync.getModelClass().newInstance();
+		for (PropertyDescriptor d : PropertyUtils.getPropertyDescriptors(model)) {
+			if (d.getWriteMethod() == null) {
+				continue;
+			}
+			
+			final Class<?> type = d.getPropertyType();
+			if (d.getName().endsWith("Uuid")) {
+				PropertyUtils.setProperty(model, d.getName(),
+				    "org.openmrs.eip.dbsync.entity.light.UserLight(" + UUID.randomUUID() + ")");
+			} else if (String.class.equals(type)) {
+				PropertyUtils.setProperty(model, d.getName(), d.getName().equals("uuid") ? UUID.randomUUID().toString()
+				        : "value");
+			} else if (LocalDateTime.class.equals(type)) {
+				PropertyUtils.setProperty(model, d.getName(), LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+			} else if (LocalDate.class.equals(type)) {
+				PropertyUtils.setProperty(model, d.getName(), LocalDate.now());
+			} else if (Boolean.class.equals(type) || boolean.class.equals(type)) {
+				PropertyUtils.setProperty(model, d.getName(), true);
+			} else if (Integer.class.equals(type)) {
+				PropertyUtils.setProperty(model, d.getName(), 7);
+			} else if (Double.class.equals(type)) {
+				PropertyUtils.setProperty(model, d.getName(), 98.6);
+			}
+		}
+		
+		SyncMetadata metadata = new SyncMetadata();
+		metadata.setSourceIdentifier("remote-1");
+		metadata.setOperation("c");
+		metadata.setDateSent(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+		metadata.setDbSyncVersion("3.1.0");
+		
+		return SyncModel.builder().tableToSyncModelClass(tableToSync.getModelClass()).model(model).metadata(metadata)
+		        .build();
+	}
+	
+	/**
+	 * Creates a model of the specified type that can be saved, the uuid is random, fields referencing
+	 * light entities are set to a random uuid of the linked type so that the linked entities are
+	 * created as placeholders when the model is saved and all the other fields are set to the value
+	 * returned for their type.
+	 *
+	 * @param tableToSync the entity type
+	 * @param values returns the value for a field of the specified type or null to leave it unset
+	 * @param linkedTypes receives the type of each linked entity
+	 * @return the model
+	 */
+	public static BaseModel createModel(TableToSyncEnum tableToSync, Function<Class<?>, Object> values,
+	        Consumer<Class<?>> linkedTypes) throws Exception {
+		BaseModel model = tableToSync.getModelClass().newInstance();
+		BeanWrapper modelWrapper = new BeanWrapperImpl(model);
+		BeanWrapper entityWrapper = new BeanWrapperImpl(tableToSync.getEntityClass());
+		for (PropertyDescriptor desc : modelWrapper.getPropertyDescriptors()) {
+			String name = desc.getName();
+			if (!modelWrapper.isWritableProperty(name)) {
+				continue;
+			}
+			
+			Object value = null;
+			if ("uuid".equals(name)) {
+				value = UUID.randomUUID().toString();
+			} else if (name.endsWith(UUID_SUFFIX)) {
+				String entityName = name.substring(0, name.length() - UUID_SUFFIX.length());
+				if (entityWrapper.isReadableProperty(entityName)) {
+					Class<?> linkedType = entityWrapper.getPropertyType(entityName);
+					if (LightEntity.class.isAssignableFrom(linkedType)) {
+						value = linkedType.getName() + "(" + UUID.randomUUID() + ")";
+						linkedTypes.accept(linkedType);
+					}
+				}
+			} else {
+				value = values.apply(desc.getPropertyType());
+			}
+			
+			if (value != null) {
+				modelWrapper.setPropertyValue(name, value);
+			}
+		}
+		
+		return model;
+	}
+	
+}
@@ -38,6 +38,7 @@ import org.openmrs.eip.dbsync.model.module.datafilter.EntityBasisMapModel;
 import org.openmrs.eip.dbsync.repository.OpenmrsRepository;
 import org.openmrs.eip.dbsync.service.TableToSyncEnum;
 import org.openmrs.eip.dbsync.service.facade.EntityServiceFacade;
+import org.openmrs.eip.dbsync.service.hash.SenderHashVerifier;
 import org.openmrs.eip.dbsync.service.light.AbstractLightService;
 import org.openmrs.eip.dbsync.utils.HashUtils;
 import org.powermock.api.mockito.PowerMockito;
@@ -85,6 +86,7 @@ public class OpenmrsLoadProducerTest {
 		exchange = new DefaultExchange(new DefaultCamelContext());
 		producer = new OpenmrsLoadProducer(endpoint, applicationContext, ProducerParams.builder().build());
 		when(SyncContext.getBean(ProducerTemplate.class)).thenReturn(mockProducerTemplate);
+		when(SyncContext.getBean(SenderHashVerifier.class)).thenReturn(new SenderHashVerifier(0));
 		Whitebox.setInternalState(OpenmrsLoadProducer.class, Logger.class, mockLogger);
 	}
 	
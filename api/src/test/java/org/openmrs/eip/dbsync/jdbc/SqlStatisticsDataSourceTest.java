@@ -0,0 +1,116 @@
+package org.openmrs.eip.dbsync.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SqlStatisticsDataSourceTest {
+	
+	private static final String NAME = "test";
+	
+	private Connection mockConnection;
+	
+	private SqlStatisticsDataSource dataSource;
+	
+	@Before
+	public void setup() throws Exception {
+		DataSource mockDataSource = mock(DataSource.class);
+		mockConnection = mock(Connection.class);
+		when(mockDataSource.getConnection()).thenReturn(mockConnection);
+		dataSource = new SqlStatisticsDataSource(mockDataSource, NAME);
+	}
+	
+	@After
+	public void tearDown() {
+		SqlStatistics.end();
+	}
+	
+	@Test
+	public void getConnection_shouldCountExecutedStatementsAndChangedRows() throws Exception {
+		final String sql = "UPDATE person SET voided = 1";
+		PreparedStatement mockStatement = mock(PreparedStatement.class);
+		when(mockConnection.prepareStatement(sql)).thenReturn(mockStatement);
+		when(mockStatement.executeUpdate()).thenReturn(3);
+		when(mockStatement.executeBatch()).thenReturn(new int[] { 1, Statement.SUCCESS_NO_INFO, 1 });
+		SqlStatistics stats = SqlStatistics.begin();
+		
+		PreparedStatement statement = dataSource.getConnection().prepareStatement(sql);
+		statement.executeUpdate();
+		statement.addBatch();
+		statement.executeBatch();
+		
+		assertNotSame(mockStatement, statement);
+		SqlStatistics.Counts counts = stats.getCounts().get(NAME);
+		assertEquals(2, counts.getStatements());
+		assertEquals(5, counts.getRows());
+	}
+	
+	@Test
+	public void getConnection_shouldCountRowsReadFromAResultSet() throws Exception {
+		final String sql = "SELECT * FROM person";
+		PreparedStatement mockStatement = mock(PreparedStatement.class);
+		ResultSet mockResultSet = mock(ResultSet.class);
+		when(mockConnection.prepareStatement(sql)).thenReturn(mockStatement);
+		when(mockStatement.executeQuery()).thenReturn(mockResultSet);
+		when(mockResultSet.next()).thenReturn(true, true, false);
+		SqlStatistics stats = SqlStatistics.begin();
+		
+		ResultSet resultSet = dataSource.getConnection().prepareStatement(sql).executeQuery();
+		while (resultSet.next()) {
+			//read all rows
+		}
+		
+		SqlStatistics.Counts counts = stats.getCounts().get(NAME);
+		assertEquals(1, counts.getStatements());
+		assertEquals(2, counts.getRows());
+	}
+	
+	@Test
+	public void getConnection_shouldNotRecordAnythingIfNoStatisticsAreBeingAccumulated() throws Exception {
+		Statement mockStatement = mock(Statement.class);
+		when(mockConnection.createStatement()).thenReturn(mockStatement);
+		
+		dataSource.getConnection().createStatement().execute("DELETE FROM person");
+		
+		assertEquals(null, SqlStatistics.get());
+	}
+	
+	@Test
+	public void getConnection_shouldReturnStatementsThatAreEqualByIdentity() throws Exception {
+		when(mockConnection.createStatement()).thenReturn(mock(Statement.class), mock(Statement.class));
+		Connection connection = dataSource.getConnection();
+		Statement statement = connection.createStatement();
+		Set<Statement> statements = new HashSet();
+		
+		statements.add(statement);
+		
+		assertTrue(statements.contains(statement));
+		assertNotEquals(statement, connection.createStatement());
+	}
+	
+	@Test
+	public void inspect_shouldCountStatementsPreparedByHibernate() {
+		SqlStatistics stats = SqlStatistics.begin();
+		
+		new SqlStatisticsInspector().inspect("SELECT 1");
+		
+		assertEquals(1, stats.getHibernateStatements());
+	}
+	
+}
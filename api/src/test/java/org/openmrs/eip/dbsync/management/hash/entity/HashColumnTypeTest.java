@@ -0,0 +1,102 @@
+package org.openmrs.eip.dbsync.management.hash.entity;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openmrs.eip.dbsync.SyncConstants;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+
+public class HashColumnTypeTest {
+	
+	private static final String UUID = "1a2b3c4d-5e6f-4a8b-9c0d-1e2f3a4b5c6d";
+	
+	@After
+	public void tearDown() {
+		HashColumnType.setBinary(false);
+	}
+	
+	private HashColumnType createType(String kind) {
+		Properties params = new Properties();
+		params.setProperty(HashColumnType.PARAM_KIND, kind);
+		HashColumnType type = new HashColumnType();
+		type.setParameterValues(params);
+		return type;
+	}
+	
+	@Test
+	public void toBytes_shouldStoreAUuidIdentifierAs16Bytes() {
+		byte[] bytes = HashColumnType.toBytes(UUID, true);
+		
+		assertEquals(16, bytes.length);
+		assertEquals(UUID, HashColumnType.fromBytes(bytes, true));
+		assertEquals(UUID, HashColumnType.fromBytes(HashColumnType.toBytes(UUID.toUpperCase(), true), true));
+	}
+	
+	@Test
+	public void toBytes_shouldStoreAnMd5HashAs16Bytes() {
+		final String hash = HashUtils.computeHashForBytes(UUID.getBytes(StandardCharsets.UTF_8));
+		
+		byte[] bytes = HashColumnType.toBytes(hash, false);
+		
+		assertEquals(16, bytes.length);
+		assertEquals(hash, HashColumnType.fromBytes(bytes, false));
+	}
+	
+	@Test
+	public void toBytes_shouldNeverStoreOtherValuesAs16Bytes() {
+		final String identifier = "123456789012345";
+		
+		byte[] bytes = HashColumnType.toBytes(identifier, true);
+		
+		assertEquals(17, bytes.length);
+		assertEquals(identifier, HashColumnType.fromBytes(bytes, true));
+		assertEquals("1234567890123456", HashColumnType.fromBytes(HashColumnType.toBytes("1234567890123456", true), true));
+		assertEquals(SyncConstants.HASH_DELETED,
+		    HashColumnType.fromBytes(HashColumnType.toBytes(SyncConstants.HASH_DELETED, false), false));
+		assertEquals("complex_obs.png", HashColumnType.fromBytes(HashColumnType.toBytes("complex_obs.png", true), true));
+	}
+	
+	@Test
+	public void nullSafeGet_shouldReadValuesInBothStorageModes() throws Exception {
+		HashColumnType type = createType(HashColumnType.KIND_IDENTIFIER);
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.getObject("identifier")).thenReturn(UUID, HashColumnType.toBytes(UUID, true), null);
+		
+		assertEquals(UUID, type.nullSafeGet(rs, new String[] { "identifier" }, null, null));
+		assertEquals(UUID, type.nullSafeGet(rs, new String[] { "identifier" }, null, null));
+		assertEquals(null, type.nullSafeGet(rs, new String[] { "identifier" }, null, null));
+	}
+	
+	@Test
+	public void nullSafeSet_shouldWriteTheValueInTheCurrentStorageMode() throws Exception {
+		HashColumnType type = createType(HashColumnType.KIND_HASH);
+		PreparedStatement st = mock(PreparedStatement.class);
+		final String hash = HashUtils.computeHashForBytes(UUID.getBytes(StandardCharsets.UTF_8));
+		
+		type.nullSafeSet(st, hash, 1, null);
+		HashColumnType.setBinary(true);
+		type.nullSafeSet(st, hash, 2, null);
+		
+		verify(st).setString(1, hash);
+		verify(st).setBytes(2, HashColumnType.toBytes(hash, false));
+	}
+	
+	@Test
+	public void fromBytes_shouldIgnoreTheTerminatorsOfATextValue() {
+		byte[] bytes = "abc".getBytes(StandardCharsets.UTF_8);
+		
+		assertArrayEquals(new byte[] { 'a', 'b', 'c', 0 }, HashColumnType.toBytes("abc", true));
+		assertEquals("abc", HashColumnType.fromBytes(bytes, true));
+	}
+	
+}
@@ -0,0 +1,106 @@
+package org.openmrs.eip.dbsync.service;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.eip.dbsync.BaseDbDrivenTest;
+import org.openmrs.eip.dbsync.SyncModelSamples;
+import org.openmrs.eip.dbsync.common.Address;
+import org.openmrs.eip.dbsync.model.BaseModel;
+import org.openmrs.eip.dbsync.service.facade.EntityServiceFacade;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.test.context.jdbc.Sql;
+
+/**
+ * Asserts the number of SQL statements issued to load an entity of each type and map it to a model,
+ * associations to light entities are lazy and proxies of the same type are loaded together in a
+ * single batch so loading an entity costs one statement for the entity plus at most one per distinct
+ * type of linked entity.
+ * <p>
+ * The statement per linked type loads the light rows rather than just their uuids, the uuid is not
+ * the foreign key so it can't be read from the proxy and the model also needs the concrete class of
+ * the linked entity e.g. PatientLight for a person that is a patient, which is only known once the
+ * row is loaded. A dedicated uuid query would still cost a statement per type and need a second
+ * lookup of the subclass, light rows are narrow so it would not save much.
+ */
+@Sql(scripts = "classpath:test_data.sql")
+public class EntityLoadStatementCountIntegrationTest extends BaseDbDrivenTest {
+	
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	
+	@Autowired
+	private EntityServiceFacade facade;
+	
+	private Statistics statistics;
+	
+	@Before
+	public void setup() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+	}
+	
+	private static Object getValue(Class<?> type) {
+		if (type == String.class) {
+			return "test";
+		} else if (type == LocalDateTime.class) {
+			return LocalDateTime.now();
+		} else if (type == LocalDate.class) {
+			return LocalDate.now();
+		} else if (type == LocalTime.class) {
+			return LocalTime.of(13, 5, 7);
+		} else if (type == Double.class) {
+			return 1.0;
+		} else if (type == Integer.class || type == int.class) {
+			return 1;
+		} else if (type == Long.class) {
+			return 1L;
+		} else if (type == Boolean.class || type == boolean.class) {
+			return false;
+		} else if (type == Address.class) {
+			Address address = new Address();
+			address.setAddress1("test");
+			return address;
+		}
+		
+		return null;
+	}
+	
+	private void assertStatementCount(TableToSyncEnum tableToSync) throws Exception {
+		Set<Class<?>> linkedTypes = new HashSet();
+		BaseModel model = SyncModelSamples.createModel(tableToSync, EntityLoadStatementCountIntegrationTest::getValue,
+		    linkedTypes::add);
+		facade.saveModel(tableToSync, model);
+		EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+		entityManager.flush();
+		entityManager.clear();
+		statistics.clear();
+		
+		assertNotNull(tableToSync + " was not saved", facade.getModel(tableToSync, model.getUuid()));
+		
+		final long count = statistics.getPrepareStatementCount();
+		assertTrue(tableToSync + " load issued " + count + " statements", count <= 1 + linkedTypes.size());
+	}
+	
+	@Test
+	public void getModel_shouldLoadEveryEntityTypeWithOneStatementPerLinkedEntityType() throws Exception {
+		for (TableToSyncEnum tableToSync : TableToSyncEnum.values()) {
+			assertStatementCount(tableToSync);
+		}
+	}
+	
+}
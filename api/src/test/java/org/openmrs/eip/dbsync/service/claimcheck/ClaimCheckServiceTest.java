@@ -0,0 +1,305 @@
+package org.openmrs.eip.dbsync.service.claimcheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.openmrs.eip.dbsync.service.claimcheck.ClaimCheckService.EX_PROP_CHECKED_IN;
+import static org.openmrs.eip.dbsync.service.claimcheck.ClaimCheckService.EX_PROP_SYNC_MODEL;
+import static org.openmrs.eip.dbsync.service.claimcheck.ClaimCheckService.HEADER_CLAIM_CHECK;
+import static org.openmrs.eip.dbsync.service.compression.PayloadCompressionService.HEADER_COMPRESSION;
+import static org.openmrs.eip.dbsync.service.format.PayloadFormatService.HEADER_FORMAT;
+import static org.openmrs.eip.dbsync.service.format.PayloadFormatService.HEADER_SCHEMA;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.zip.Deflater;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.openmrs.eip.dbsync.SyncModelSamples;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.openmrs.eip.dbsync.service.compression.PayloadCompressionService;
+import org.openmrs.eip.dbsync.service.format.PayloadFormatService;
+import org.openmrs.eip.dbsync.utils.JsonUtils;
+
+public class ClaimCheckServiceTest {
+	
+	private static final int THRESHOLD = 50;
+	
+	private static final String OUTPUT_ENDPOINT = "mock:output";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File storeDir;
+	
+	private ClaimCheckStore store;
+	
+	private ProducerTemplate mockProducerTemplate;
+	
+	private PayloadCompressionService compressionService = new PayloadCompressionService(null, Deflater.BEST_COMPRESSION,
+	        PayloadCompressionService.DEFAULT_MAX_INFLATED_SIZE);
+	
+	@Before
+	public void setup() throws Exception {
+		storeDir = folder.newFolder("claim-check");
+		store = new FileClaimCheckStore(storeDir.getAbsolutePath());
+		mockProducerTemplate = mock(ProducerTemplate.class);
+		when(mockProducerTemplate.getCamelContext()).thenReturn(new DefaultCamelContext());
+	}
+	
+	private ClaimCheckService createService(PayloadFormatService formatService, int threshold, boolean relay) {
+		return new ClaimCheckService(store, formatService, compressionService, null, mockProducerTemplate, threshold,
+		        relay, false, OUTPUT_ENDPOINT);
+	}
+	
+	private ClaimCheckService createService(PayloadFormatService formatService) {
+		return createService(formatService, THRESHOLD, false);
+	}
+	
+	private static String read(String json, String pointer) {
+		return JsonUtils.readTree(json).at(pointer).asText();
+	}
+	
+	private Exchange createExchange(SyncModel syncModel, PayloadFormatService formatService, boolean compress) {
+		Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+		exchange.getIn().setBody(syncModel);
+		exchange.setProperty(EX_PROP_SYNC_MODEL, syncModel);
+		formatService.encode(exchange);
+		if (compress) {
+			compressionService.compress(exchange);
+		}
+		
+		return exchange;
+	}
+	
+	private Exchange checkIn(SyncModel syncModel, PayloadFormatService formatService) {
+		Exchange exchange = createExchange(syncModel, formatService, false);
+		createService(formatService).checkIn(exchange);
+		return exchange;
+	}
+	
+	private File getStoredFile(String digest) {
+		return new File(new File(storeDir, digest.substring(0, 2)), digest);
+	}
+	
+	@Test
+	public void checkIn_shouldReplaceALargePayloadWithAReference() throws Exception {
+		PayloadFormatService formatService = new PayloadFormatService("json", false);
+		SyncModel syncModel = SyncModelSamples.create(TableToSyncEnum.PERSON);
+		
+		Exchange exchange = checkIn(syncModel, formatService);
+		
+		String reference = exchange.getIn().getBody(String.class);
+		ClaimCheckService service = createService(formatService);
+		assertTrue(exchange.getProperty(EX_PROP_CHECKED_IN, Boolean.class));
+		assertTrue(service.isReference(reference));
+		assertEquals(syncModel.getTableToSyncModelClass().getName(), read(reference, "/tableToSyncModelClass"));
+		assertEquals(syncModel.getModel().getUuid(), read(reference, "/model/uuid"));
+		assertEquals("c", read(reference, "/metadata/operation"));
+		assertEquals("remote-1", read(reference, "/metadata/sourceIdentifier"));
+		assertEquals("false", read(reference, "/claimCheck/encrypted"));
+		assertEquals(JsonUtils.marshall(syncModel), JsonUtils.marshall(service.unmarshalSyncModel(reference)));
+	}
+	
+	@Test
+	public void checkIn_shouldLeaveASmallPayloadUntouched() throws Exception {
+		PayloadFormatService formatService = new PayloadFormatService("json", false);
+		SyncModel syncModel = SyncModelSamples.create(TableToSyncEnum.PERSON);
+		ClaimCheckService service = createService(formatService, Integer.MAX_VALUE, true);
+		Exchange exchange = createExchange(syncModel, formatService, false);
+		
+		service.checkIn(exchange);
+		
+		String payload = exchange.getIn().getBody(String.class);
+		assertEquals(JsonUtils.marshall(syncModel), payload);
+		assertFalse(service.isReference(payload));
+		assertNull(exchange.getProperty(EX_PROP_CHECKED_IN));
+		assertEquals(0, storeDir.list().length);
+		verify(mockProducerTemplate, never()).sendBodyAndHeader(anyString(), any(), anyString(), any());
+	}
+	
+	@Test
+	public void checkIn_shouldRelayTheCompressedPayloadAndMoveItsHeadersToTheReference() throws Exception {
+		PayloadFormatService formatService = new PayloadFormatService("cbor", true);
+		SyncModel syncModel = SyncModelSamples.create(TableToSyncEnum.OBS);
+		Exchange exchange = createExchange(syncModel, formatService, true);
+		byte[] compressed = exchange.getIn().getBody(byte[].class);
+		final String digest = DigestUtils.sha256Hex(compressed);
+		
+		createService(formatService, THRESHOLD, true).checkIn(exchange);
+		
+		ArgumentCaptor<Object> bodyCaptor = ArgumentCaptor.forClass(Object.class);
+		verify(mockProducerTemplate).sendBodyAndHeader(eq(OUTPUT_ENDPOINT), bodyCaptor.capture(), eq(HEADER_CLAIM_CHECK),
+		    eq(digest));
+		assertArrayEquals(compressed, (byte[]) bodyCaptor.getValue());
+		assertEquals(0, storeDir.list().length);
+		assertNull(exchange.getIn().getHeader(HEADER_FORMAT));
+		assertNull(exchange.getIn().getHeader(HEADER_SCHEMA));
+		assertNull(exchange.getIn().getHeader(HEADER_COMPRESSION));
+		String reference = exchange.getIn().getBody(String.class);
+		assertEquals(digest, read(reference, "/claimCheck/digest"));
+		assertEquals("cbor", read(reference, "/claimCheck/headers/" + HEADER_FORMAT));
+		
+		//Simulates the receiver
+		Exchange relayed = new DefaultExchange(new DefaultCamelContext());
+		relayed.getIn().setHeader(HEADER_CLAIM_CHECK, digest);
+		relayed.getIn().setBody(bodyCaptor.getValue());
+		ClaimCheckService receiverService = createService(new PayloadFormatService("json", false));
+		receiverService.accept(relayed);
+		assertEquals(JsonUtils.marshall(syncModel), JsonUtils.marshall(receiverService.unmarshalSyncModel(reference)));
+	}
+	
+	@Test
+	public void accept_shouldFailIfTheRelayedPayloadDoesNotMatchTheDigest() {
+		Exchange relayed = new DefaultExchange(new DefaultCamelContext());
+		relayed.getIn().setHeader(HEADER_CLAIM_CHECK, DigestUtils.sha256Hex("other"));
+		relayed.getIn().setBody("payload".getBytes());
+		
+		try {
+			createService(new PayloadFormatService("json", false)).accept(relayed);
+		}
+		catch (SyncException e) {
+			assertTrue(e.getMessage().startsWith("Relayed claim check payload does not match its digest"));
+			assertEquals(0, storeDir.list().length);
+			return;
+		}
+		
+		throw new AssertionError("Expected a SyncException");
+	}
+	
+	@Test
+	public void unmarshalSyncModel_shouldFailIfTheStoredPayloadDoesNotMatchTheDigest() throws Exception {
+		PayloadFormatService formatService = new PayloadFormatService("json", false);
+		String reference = checkIn(SyncModelSamples.create(TableToSyncEnum.PERSON), formatService).getIn()
+		        .getBody(String.class);
+		String digest = read(reference, "/claimCheck/digest");
+		Files.write(getStoredFile(digest).toPath(), "{}".getBytes());
+		
+		try {
+			createService(formatService).unmarshalSyncModel(reference);
+		}
+		catch (SyncException e) {
+			assertEquals("Claim check payload " + digest + " does not match its digest or size", e.getMessage());
+			return;
+		}
+		
+		throw new AssertionError("Expected a SyncException");
+	}
+	
+	@Test
+	public void release_shouldDeleteTheStoredPayloadOnlyWhenItIsNoLongerReferenced() throws Exception {
+		PayloadFormatService formatService = new PayloadFormatService("json", false);
+		SyncModel syncModel = SyncModelSamples.create(TableToSyncEnum.PERSON);
+		String reference = checkIn(syncModel, formatService).getIn().getBody(String.class);
+		File stored = getStoredFile(read(reference, "/claimCheck/digest"));
+		ClaimCheckService service = createService(formatService);
+		//Simulates a reference redelivered by the broker
+		service.retain(reference);
+		service.retain(reference);
+		
+		service.release(reference);
+		
+		assertTrue(stored.exists());
+		assertEquals(JsonUtils.marshall(syncModel), JsonUtils.marshall(service.unmarshalSyncModel(reference)));
+		service.release(reference);
+		assertFalse(stored.exists());
+		assertEquals(0, stored.getParentFile().list().length);
+	}
+	
+	@Test
+	public void retain_shouldIgnoreAPayloadThatIsNoLongerStored() throws Exception {
+		PayloadFormatService formatService = new PayloadFormatService("json", false);
+		String reference = checkIn(SyncModelSamples.create(TableToSyncEnum.PERSON), formatService).getIn()
+		        .getBody(String.class);
+		File stored = getStoredFile(read(reference, "/claimCheck/digest"));
+		ClaimCheckService service = createService(formatService);
+		service.retain(reference);
+		service.release(reference);
+		
+		service.retain(reference);
+		
+		assertFalse(stored.exists());
+		assertEquals(0, stored.getParentFile().list().length);
+	}
+	
+	@Test
+	public void release_shouldKeepAPayloadStoredAgainUntilItsNextReferenceIsSaved() {
+		final String digest = store.put("payload".getBytes());
+		File stored = getStoredFile(digest);
+		//The first reference is saved
+		store.retain(digest);
+		//The payload is relayed again for a second reference
+		store.put("payload".getBytes());
+		
+		//The first reference is loaded before the second one is saved
+		store.release(digest);
+		
+		assertTrue(stored.exists());
+		store.retain(digest);
+		store.release(digest);
+		assertFalse(stored.exists());
+		assertEquals(0, stored.getParentFile().list().length);
+	}
+	
+	@Test
+	public void discard_shouldDeleteAStoredPayloadThatIsNotReferencedBySavedMessages() throws Exception {
+		PayloadFormatService formatService = new PayloadFormatService("json", false);
+		String reference = checkIn(SyncModelSamples.create(TableToSyncEnum.PERSON), formatService).getIn()
+		        .getBody(String.class);
+		File stored = getStoredFile(read(reference, "/claimCheck/digest"));
+		
+		createService(formatService).discard(reference);
+		
+		assertFalse(stored.exists());
+		assertEquals(0, stored.getParentFile().list().length);
+	}
+	
+	@Test
+	public void discard_shouldNotDeleteAStoredPayloadReferencedByASavedMessage() throws Exception {
+		PayloadFormatService formatService = new PayloadFormatService("json", false);
+		SyncModel syncModel = SyncModelSamples.create(TableToSyncEnum.PERSON);
+		String reference = checkIn(syncModel, formatService).getIn().getBody(String.class);
+		File stored = getStoredFile(read(reference, "/claimCheck/digest"));
+		ClaimCheckService service = createService(formatService);
+		service.retain(reference);
+		//The same payload is stored again for a reference that is skipped
+		checkIn(syncModel, formatService);
+		
+		service.discard(reference);
+		
+		assertTrue(stored.exists());
+		service.release(reference);
+		assertFalse(stored.exists());
+	}
+	
+	@Test
+	public void put_shouldStoreTheSamePayloadOnce() {
+		String first = store.put("payload".getBytes());
+		String second = store.put("payload".getBytes());
+		
+		assertEquals(first, second);
+		//The payload and its hold marker
+		assertEquals(2, new File(storeDir, first.substring(0, 2)).list().length);
+	}
+	
+}
@@ -0,0 +1,170 @@
+package org.openmrs.eip.dbsync.service.compression;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.openmrs.eip.dbsync.service.compression.PayloadCompressionService.EX_PROP_PAYLOAD_TYPE;
+import static org.openmrs.eip.dbsync.service.compression.PayloadCompressionService.HEADER_COMPRESSION;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.eip.dbsync.SyncModelSamples;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.openmrs.eip.dbsync.service.compression.PayloadCompressionService.CompressionStats;
+import org.openmrs.eip.dbsync.utils.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class PayloadCompressionServiceTest {
+	
+	private static final Logger log = LoggerFactory.getLogger(PayloadCompressionServiceTest.class);
+	
+	private PayloadCompressionService service;
+	
+	@Before
+	public void setup() {
+		service = new PayloadCompressionService(null, Deflater.BEST_COMPRESSION,
+		        PayloadCompressionService.DEFAULT_MAX_INFLATED_SIZE);
+	}
+	
+	private String createPayload(TableToSyncEnum tableToSync) throws Exception {
+		return JsonUtils.marshall(SyncModelSamples.create(tableToSync));
+	}
+	
+	private Exchange createExchange(Object body) {
+		Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+		exchange.getIn().setBody(body);
+		return exchange;
+	}
+	
+	@Test
+	public void compress_shouldCompressThePayloadAndSetTheCompressionHeader() throws Exception {
+		String payload = createPayload(TableToSyncEnum.PERSON);
+		Exchange exchange = createExchange(payload);
+		
+		service.compress(exchange);
+		
+		assertEquals("deflate:" + CompressionDictionary.getBuiltIn().getId(), exchange.getIn().getHeader(HEADER_COMPRESSION));
+		assertTrue(exchange.getIn().getBody(byte[].class).length < payload.getBytes(UTF_8).length);
+		service.decompress(exchange);
+		assertEquals(payload, exchange.getIn().getBody());
+		assertNull(exchange.getIn().getHeader(HEADER_COMPRESSION));
+	}
+	
+	@Test
+	public void decompress_shouldIgnoreAPayloadWithNoCompressionHeader() {
+		Exchange exchange = createExchange("payload");
+		
+		service.decompress(exchange);
+		
+		assertEquals("payload", exchange.getIn().getBody());
+	}
+	
+	@Test
+	public void decompress_shouldFailForAnUnknownDictionary() throws Exception {
+		Exchange exchange = createExchange(createPayload(TableToSyncEnum.PERSON));
+		service.compress(exchange);
+		exchange.getIn().setHeader(HEADER_COMPRESSION, "deflate:unknown");
+		
+		try {
+			service.decompress(exchange);
+			fail();
+		}
+		catch (SyncException e) {
+			assertTrue(e.getMessage().startsWith("No compression dictionary found with id unknown"));
+		}
+	}
+	
+	@Test
+	public void decompress_shouldFailIfTheDecompressedPayloadExceedsTheMaximumSize() {
+		service = new PayloadCompressionService(null, Deflater.BEST_COMPRESSION, 1024);
+		//Highly compressible payload that inflates well beyond the limit
+		Exchange exchange = createExchange(new byte[256 * 1024]);
+		service.compress(exchange);
+		assertTrue(exchange.getIn().getBody(byte[].class).length < 1024);
+		
+		try {
+			service.decompress(exchange);
+			fail();
+		}
+		catch (SyncException e) {
+			assertEquals("Decompressed payload exceeds the maximum allowed size of 1024 bytes", e.getMessage());
+		}
+	}
+	
+	@Test
+	public void train_shouldBuildADictionaryFromRepeatedStringsInTheSamples() throws Exception {
+		List<String> samples = new ArrayList();
+		for (int i = 0; i < 5; i++) {
+			samples.add(createPayload(TableToSyncEnum.OBS));
+			samples.add(createPayload(TableToSyncEnum.ENCOUNTER));
+		}
+		
+		CompressionDictionary dictionary = CompressionDictionary.train(samples, 4096);
+		
+		String contents = new String(dictionary.getBytes(), UTF_8);
+		assertTrue(dictionary.getBytes().length <= 4096);
+		assertTrue(contents.contains("\"tableToSyncModelClass\":"));
+		assertTrue(contents.contains("UserLight("));
+		assertNotEquals(CompressionDictionary.getBuiltIn().getId(), dictionary.getId());
+		assertEquals(dictionary.getId(), CompressionDictionary.train(samples, 4096).getId());
+	}
+	
+	/**
+	 * Measures the payload size and CPU cost of compression for each model type with and without a
+	 * dictionary, the numbers are logged for reference
+	 */
+	@Test
+	public void compress_shouldReducePayloadSizeForAllModelTypes() throws Exception {
+		PayloadCompressionService noDictService = new PayloadCompressionService(null, Deflater.BEST_COMPRESSION,
+		        PayloadCompressionService.DEFAULT_MAX_INFLATED_SIZE) {
+			
+			@Override
+			protected byte[] deflate(byte[] data, CompressionDictionary dict) {
+				return super.deflate(data, null);
+			}
+			
+		};
+		
+		log.info(String.format("%-30s %10s %12s %10s %14s", "type", "json", "deflate", "dict", "dict cpu(us)"));
+		for (TableToSyncEnum e : TableToSyncEnum.values()) {
+			final int runs = 20;
+			String type = e.name().toLowerCase();
+			int jsonSize = 0;
+			for (int i = 0; i < runs; i++) {
+				String payload = createPayload(e);
+				jsonSize += payload.getBytes(UTF_8).length;
+				Exchange exchange = createExchange(payload);
+				exchange.setProperty(EX_PROP_PAYLOAD_TYPE, type);
+				service.compress(exchange);
+				
+				Exchange noDictExchange = createExchange(payload);
+				noDictExchange.setProperty(EX_PROP_PAYLOAD_TYPE, type);
+				noDictService.compress(noDictExchange);
+				
+				service.decompress(exchange);
+				assertEquals(payload, exchange.getIn().getBody());
+			}
+			
+			CompressionStats stats = service.getStats(type);
+			CompressionStats noDictStats = noDictService.getStats(type);
+			assertEquals(runs, stats.getCount());
+			assertTrue(stats.getCompressedBytes() < jsonSize);
+			assertTrue(stats.getCompressedBytes() < noDictStats.getCompressedBytes());
+			log.info(String.format("%-30s %10d %12d %10d %14d", type, jsonSize / runs, noDictStats.getCompressedBytes() / runs,
+			    stats.getCompressedBytes() / runs, stats.getCpuNanos() / runs / 1000));
+		}
+	}
+	
+}
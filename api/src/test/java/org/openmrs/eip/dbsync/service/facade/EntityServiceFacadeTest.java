@@ -1,5 +1,6 @@
 package org.openmrs.eip.dbsync.service.facade;
 
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -11,10 +12,13 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.openmrs.eip.dbsync.entity.Patient;
 import org.openmrs.eip.dbsync.entity.Person;
+import org.openmrs.eip.dbsync.entity.PersonName;
 import org.openmrs.eip.dbsync.model.PatientModel;
 import org.openmrs.eip.dbsync.model.PersonModel;
+import org.openmrs.eip.dbsync.model.PersonNameModel;
 import org.openmrs.eip.dbsync.service.AbstractEntityService;
 import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.openmrs.eip.dbsync.service.upsert.UpsertService;
 
 public class EntityServiceFacadeTest {
 	
@@ -24,13 +28,20 @@ public class EntityServiceFacadeTest {
 	@Mock
 	private AbstractEntityService<Patient, PatientModel> patientService;
 	
+	@Mock
+	private AbstractEntityService<PersonName, PersonNameModel> personNameService;
+	
+	@Mock
+	private UpsertService upsertService;
+	
 	private EntityServiceFacade facade;
 	
 	@Before
 	public void init() {
 		MockitoAnnotations.initMocks(this);
 		
-		facade = new EntityServiceFacade(Arrays.asList(personService, patientService));
+		facade = new EntityServiceFacade(Arrays.asList(personService, patientService, personNameService),
+		    upsertService);
 	}
 	
 	@Test
@@ -81,4 +92,21 @@ public class EntityServiceFacadeTest {
 		// Then
 		verify(personService).save(personModel);
 	}
+	
+	@Test
+	public void saveModel_should_upsert_model_if_upsert_is_enabled_for_the_type() {
+		// Given
+		PersonNameModel nameModel = new PersonNameModel();
+		when(personService.getTableToSync()).thenReturn(TableToSyncEnum.PERSON);
+		when(patientService.getTableToSync()).thenReturn(TableToSyncEnum.PATIENT);
+		when(personNameService.getTableToSync()).thenReturn(TableToSyncEnum.PERSON_NAME);
+		when(upsertService.isEnabled(TableToSyncEnum.PERSON_NAME)).thenReturn(true);
+		
+		// When
+		facade.saveModel(TableToSyncEnum.PERSON_NAME, nameModel);
+		
+		// Then
+		verify(personNameService).upsert(nameModel, upsertService);
+		verify(personNameService, never()).save(nameModel);
+	}
 }
@@ -0,0 +1,183 @@
+package org.openmrs.eip.dbsync.service.format;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.openmrs.eip.dbsync.service.format.PayloadFormatService.HEADER_FORMAT;
+import static org.openmrs.eip.dbsync.service.format.PayloadFormatService.HEADER_SCHEMA;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Test;
+import org.openmrs.eip.dbsync.SyncModelSamples;
+import org.openmrs.eip.dbsync.entity.light.ConceptLight;
+import org.openmrs.eip.dbsync.entity.light.UserLight;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.model.ObservationModel;
+import org.openmrs.eip.dbsync.model.PatientModel;
+import org.openmrs.eip.dbsync.model.SyncMetadata;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.openmrs.eip.dbsync.utils.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class CompactPayloadCodecTest {
+	
+	private static final Logger log = LoggerFactory.getLogger(CompactPayloadCodecTest.class);
+	
+	private static final String NON_CANONICAL_UUID = "5089AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA";
+	
+	private PayloadTypeRegistry registry = PayloadTypeRegistry.getInstance();
+	
+	private Exchange createExchange(Object body) {
+		Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+		exchange.getIn().setBody(body);
+		return exchange;
+	}
+	
+	private SyncModel roundTrip(PayloadFormatService service, SyncModel syncModel) {
+		Exchange exchange = createExchange(syncModel);
+		service.encode(exchange);
+		assertNotNull(exchange.getIn().getHeader(HEADER_SCHEMA));
+		service.decode(exchange);
+		return exchange.getIn().getBody(SyncModel.class);
+	}
+	
+	@Test
+	public void getInstance_shouldRegisterTheModelAndLightEntityClasses() {
+		for (TableToSyncEnum e : TableToSyncEnum.values()) {
+			assertNotNull(registry.getCode(e.getModelClass().getName()));
+		}
+		
+		assertNotNull(registry.getCode(UserLight.class.getName()));
+		assertNotNull(registry.getCode(ConceptLight.class.getName()));
+		assertEquals(ConceptLight.class.getName(), registry.getClassName(registry.getCode(ConceptLight.class.getName())));
+		assertEquals(registry.getId(), PayloadTypeRegistry.getInstance().getId());
+	}
+	
+	@Test
+	public void encode_shouldReplaceClassNamesAndReferencesWithCodesAndOmitNulls() {
+		ObservationModel model = new ObservationModel();
+		model.setUuid("2f4bdbb8-5d5e-4d35-9b0b-0ee2d7f1a6a1");
+		model.setConceptUuid(ConceptLight.class.getName() + "(" + NON_CANONICAL_UUID + ")");
+		model.setCreatorUuid(UserLight.class.getName() + "(1cc6880e-4d46-11e4-9138-a6c5e4d20fb8)");
+		SyncModel syncModel = SyncModel.builder().tableToSyncModelClass(ObservationModel.class).model(model).build();
+		
+		JsonNode compact = new CompactPayloadCodec(registry, true).encode(JsonUtils.toTree(syncModel));
+		
+		assertEquals(registry.getCode(ObservationModel.class.getName()).intValue(),
+		    compact.get("tableToSyncModelClass").intValue());
+		assertFalse(compact.has("metadata"));
+		assertFalse(compact.get("model").has("voidReason"));
+		assertTrue(compact.get("model").get("uuid").isBinary());
+		JsonNode concept = compact.get("model").get("conceptUuid");
+		assertEquals(registry.getCode(ConceptLight.class.getName()).intValue(), concept.get(0).intValue());
+		assertEquals(NON_CANONICAL_UUID, concept.get(1).textValue());
+		assertTrue(compact.get("model").get("creatorUuid").get(1).isBinary());
+		
+		JsonNode decoded = new CompactPayloadCodec(registry, false).decode(compact);
+		assertEquals(ObservationModel.class.getName(), decoded.get("tableToSyncModelClass").textValue());
+		assertEquals(model.getUuid(), decoded.get("model").get("uuid").textValue());
+		assertEquals(model.getConceptUuid(), decoded.get("model").get("conceptUuid").textValue());
+		assertEquals(model.getCreatorUuid(), decoded.get("model").get("creatorUuid").textValue());
+	}
+	
+	@Test
+	public void encode_shouldKeepTheNullFieldsReadByTheReceiverRoute() {
+		SyncMetadata metadata = new SyncMetadata();
+		metadata.setOperation("d");
+		SyncModel syncModel = SyncModel.builder().tableToSyncModelClass(PatientModel.class).model(new PatientModel())
+		        .metadata(metadata).build();
+		
+		JsonNode compact = new CompactPayloadCodec(registry, true).encode(JsonUtils.toTree(syncModel));
+		
+		assertTrue(compact.get("model").get("uuid").isNull());
+		assertFalse(compact.get("model").has("voidReason"));
+		assertEquals("d", compact.get("metadata").get("operation").textValue());
+		assertTrue(compact.get("metadata").get("sourceIdentifier").isNull());
+		JsonNode decoded = new CompactPayloadCodec(registry, true).decode(compact);
+		assertTrue(decoded.get("model").get("uuid").isNull());
+		assertEquals("d", decoded.get("metadata").get("operation").textValue());
+	}
+	
+	@Test
+	public void decode_shouldRestoreAMissingModelUuid() {
+		ObjectNode compact = JsonNodeFactory.instance.objectNode();
+		compact.put("tableToSyncModelClass", registry.getCode(PatientModel.class.getName()));
+		compact.putObject("model");
+		
+		JsonNode decoded = new CompactPayloadCodec(registry, true).decode(compact);
+		
+		assertEquals(PatientModel.class.getName(), decoded.get("tableToSyncModelClass").textValue());
+		assertTrue(decoded.get("model").has("uuid"));
+		assertTrue(decoded.get("model").get("uuid").isNull());
+	}
+	
+	@Test
+	public void decode_shouldProduceTheSameModelsForAllModelTypes() throws Exception {
+		PayloadFormatService jsonService = new PayloadFormatService("json", true);
+		PayloadFormatService cborService = new PayloadFormatService("cbor", true);
+		for (TableToSyncEnum e : TableToSyncEnum.values()) {
+			SyncModel syncModel = SyncModelSamples.create(e);
+			String expected = JsonUtils.marshall(syncModel);
+			
+			assertEquals(expected, JsonUtils.marshall(roundTrip(jsonService, syncModel)));
+			assertEquals(expected, JsonUtils.marshall(roundTrip(cborService, syncModel)));
+		}
+	}
+	
+	@Test
+	public void decode_shouldFailForAPayloadEncodedWithADifferentRegistry() throws Exception {
+		Exchange exchange = createExchange(SyncModelSamples.create(TableToSyncEnum.PERSON));
+		PayloadFormatService service = new PayloadFormatService("cbor", true);
+		service.encode(exchange);
+		exchange.getIn().setHeader(HEADER_SCHEMA, "compact:1:other");
+		
+		try {
+			service.decode(exchange);
+			fail();
+		}
+		catch (SyncException e) {
+			assertTrue(e.getMessage().startsWith("Payload type registry mismatch"));
+		}
+	}
+	
+	/**
+	 * Measures the payload size with and without the compact schema for each model type, the
+	 * numbers are logged for reference
+	 */
+	@Test
+	public void encode_shouldReducePayloadSizeForAllModelTypes() throws Exception {
+		PayloadFormatService compactJsonService = new PayloadFormatService("json", true);
+		PayloadFormatService compactCborService = new PayloadFormatService("cbor", true);
+		log.info(String.format("%-30s %8s %12s %8s %12s %10s", "type", "json", "compact json", "cbor", "compact cbor",
+		    "reduction"));
+		for (TableToSyncEnum e : TableToSyncEnum.values()) {
+			SyncModel syncModel = SyncModelSamples.create(e);
+			final int json = JsonUtils.marshall(syncModel).getBytes(UTF_8).length;
+			final int cbor = JsonUtils.marshallToCbor(syncModel).length;
+			Exchange exchange = createExchange(syncModel);
+			compactJsonService.encode(exchange);
+			final int compactJson = exchange.getIn().getBody(String.class).getBytes(UTF_8).length;
+			exchange = createExchange(syncModel);
+			compactCborService.encode(exchange);
+			assertEquals("cbor", exchange.getIn().getHeader(HEADER_FORMAT));
+			final int compactCbor = ((byte[]) exchange.getIn().getBody()).length;
+			
+			assertTrue(compactJson < json);
+			assertTrue(compactCbor < cbor);
+			log.info(String.format("%-30s %8d %12d %8d %12d %9d%%", e.name().toLowerCase(), json, compactJson, cbor,
+			    compactCbor, 100 - compactCbor * 100 / json));
+		}
+	}
+	
+}
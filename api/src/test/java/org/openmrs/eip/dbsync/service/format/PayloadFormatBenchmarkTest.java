@@ -0,0 +1,82 @@
+package org.openmrs.eip.dbsync.service.format;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.openmrs.eip.dbsync.SyncModelSamples;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.openmrs.eip.dbsync.utils.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmark harness that compares the payload size and the encode and decode times of JSON and CBOR
+ * for each model type, it is ignored by default since timings are meaningless on a shared CI host, to
+ * run it, remove the {@link Ignore} annotation. The numbers are logged at INFO level as a table with
+ * the sizes in bytes and the average times in microseconds.
+ */
+@Ignore
+public class PayloadFormatBenchmarkTest {
+	
+	private static final Logger log = LoggerFactory.getLogger(PayloadFormatBenchmarkTest.class);
+	
+	private static final int WARM_UP_RUNS = 2000;
+	
+	private static final int RUNS = 5000;
+	
+	@Test
+	public void compareJsonAndCborForAllModelTypes() throws Exception {
+		log.info(String.format("%-30s %8s %8s %12s %12s %12s %12s", "type", "json", "cbor", "json enc(us)",
+		    "cbor enc(us)", "json dec(us)", "cbor dec(us)"));
+		long totalJson = 0;
+		long totalCbor = 0;
+		for (TableToSyncEnum e : TableToSyncEnum.values()) {
+			SyncModel syncModel = SyncModelSamples.create(e);
+			final String json = JsonUtils.marshall(syncModel);
+			final byte[] cbor = JsonUtils.marshallToCbor(syncModel);
+			for (int i = 0; i < WARM_UP_RUNS; i++) {
+				JsonUtils.unmarshalSyncModel(JsonUtils.marshall(syncModel));
+				JsonUtils.unmarshalCbor(JsonUtils.marshallToCbor(syncModel), SyncModel.class);
+			}
+			
+			long start = System.nanoTime();
+			for (int i = 0; i < RUNS; i++) {
+				JsonUtils.marshall(syncModel);
+			}
+			final long jsonEncode = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			for (int i = 0; i < RUNS; i++) {
+				JsonUtils.marshallToCbor(syncModel);
+			}
+			final long cborEncode = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			for (int i = 0; i < RUNS; i++) {
+				JsonUtils.unmarshalSyncModel(json);
+			}
+			final long jsonDecode = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			for (int i = 0; i < RUNS; i++) {
+				JsonUtils.unmarshalCbor(cbor, SyncModel.class);
+			}
+			final long cborDecode = System.nanoTime() - start;
+			
+			final int jsonSize = json.getBytes(UTF_8).length;
+			totalJson += jsonSize;
+			totalCbor += cbor.length;
+			log.info(String.format("%-30s %8d %8d %12.2f %12.2f %12.2f %12.2f", e.name().toLowerCase(), jsonSize,
+			    cbor.length, toMicros(jsonEncode), toMicros(cborEncode), toMicros(jsonDecode), toMicros(cborDecode)));
+		}
+		
+		log.info("Total size, json: " + totalJson + " bytes, cbor: " + totalCbor + " bytes");
+	}
+	
+	private static double toMicros(long totalNanos) {
+		return totalNanos / (double) RUNS / 1000;
+	}
+	
+}
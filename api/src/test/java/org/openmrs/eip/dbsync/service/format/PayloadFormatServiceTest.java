@@ -0,0 +1,129 @@
+package org.openmrs.eip.dbsync.service.format;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.openmrs.eip.dbsync.service.format.PayloadFormatService.HEADER_FORMAT;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDateTime;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Test;
+import org.openmrs.eip.dbsync.SyncModelSamples;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.openmrs.eip.dbsync.utils.JsonUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+public class PayloadFormatServiceTest {
+	
+	private Exchange createExchange(Object body) {
+		Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+		exchange.getIn().setBody(body);
+		return exchange;
+	}
+	
+	@Test
+	public void encode_shouldMarshallToJsonAndNotSetTheFormatHeaderForJson() throws Exception {
+		SyncModel syncModel = SyncModelSamples.create(TableToSyncEnum.PERSON);
+		Exchange exchange = createExchange(syncModel);
+		
+		new PayloadFormatService("json", false).encode(exchange);
+		
+		assertEquals(JsonUtils.marshall(syncModel), exchange.getIn().getBody());
+		assertNull(exchange.getIn().getHeader(HEADER_FORMAT));
+	}
+	
+	@Test
+	public void encode_shouldMarshallToCborAndSetTheFormatHeader() throws Exception {
+		SyncModel syncModel = SyncModelSamples.create(TableToSyncEnum.OBS);
+		Exchange exchange = createExchange(syncModel);
+		
+		new PayloadFormatService("cbor", false).encode(exchange);
+		
+		assertEquals("cbor", exchange.getIn().getHeader(HEADER_FORMAT));
+		assertTrue(exchange.getIn().getBody() instanceof byte[]);
+	}
+	
+	@Test
+	public void decode_shouldDecodeACborPayloadToTheSameSyncModelAsTheSender() throws Exception {
+		PayloadFormatService service = new PayloadFormatService("cbor", false);
+		for (TableToSyncEnum e : TableToSyncEnum.values()) {
+			SyncModel syncModel = SyncModelSamples.create(e);
+			Exchange exchange = createExchange(syncModel);
+			service.encode(exchange);
+			
+			service.decode(exchange);
+			
+			assertTrue(exchange.getIn().getBody() instanceof SyncModel);
+			assertEquals(JsonUtils.marshall(syncModel), JsonUtils.marshall(exchange.getIn().getBody()));
+			assertNull(exchange.getIn().getHeader(HEADER_FORMAT));
+		}
+	}
+	
+	@Test
+	public void marshallToCbor_shouldWriteDateTimesAsNumbers() throws Exception {
+		SyncModel syncModel = SyncModelSamples.create(TableToSyncEnum.PERSON);
+		
+		JsonNode tree = JsonUtils.readCborTree(new ByteArrayInputStream(JsonUtils.marshallToCbor(syncModel)));
+		
+		assertTrue(tree.get("metadata").get("dateSent").isIntegralNumber());
+		assertTrue(tree.get("model").get("dateCreated").isIntegralNumber());
+		assertEquals(syncModel.getMetadata().getDateSent(),
+		    JsonUtils.unmarshalCbor(JsonUtils.marshallToCbor(syncModel), SyncModel.class).getMetadata().getDateSent());
+	}
+	
+	@Test
+	public void marshallToCbor_shouldWriteADateTimeWithASubMillisecondPrecisionAsAString() throws Exception {
+		SyncModel syncModel = SyncModelSamples.create(TableToSyncEnum.PERSON);
+		LocalDateTime dateSent = LocalDateTime.of(2020, 1, 1, 10, 30, 15, 123456789);
+		syncModel.getMetadata().setDateSent(dateSent);
+		
+		JsonNode tree = JsonUtils.readCborTree(new ByteArrayInputStream(JsonUtils.marshallToCbor(syncModel)));
+		
+		assertTrue(tree.get("metadata").get("dateSent").isTextual());
+		assertEquals(dateSent,
+		    JsonUtils.unmarshalCbor(JsonUtils.marshallToCbor(syncModel), SyncModel.class).getMetadata().getDateSent());
+	}
+	
+	@Test
+	public void decode_shouldIgnoreAPayloadWithNoFormatHeader() {
+		Exchange exchange = createExchange("payload");
+		
+		new PayloadFormatService("cbor", false).decode(exchange);
+		
+		assertEquals("payload", exchange.getIn().getBody());
+	}
+	
+	@Test(expected = SyncException.class)
+	public void shouldFailForAnUnsupportedFormat() {
+		new PayloadFormatService("xml", false);
+	}
+	
+	@Test
+	public void unmarshalCbor_shouldProduceTheSameSyncModel() throws Exception {
+		SyncModel syncModel = SyncModelSamples.create(TableToSyncEnum.ENCOUNTER);
+		
+		SyncModel result = JsonUtils.unmarshalCbor(JsonUtils.marshallToCbor(syncModel), SyncModel.class);
+		
+		assertEquals(syncModel.getTableToSyncModelClass(), result.getTableToSyncModelClass());
+		assertEquals(syncModel.getModel().getUuid(), result.getModel().getUuid());
+		assertEquals(JsonUtils.marshall(syncModel), JsonUtils.marshall(result));
+	}
+	
+	@Test
+	public void marshallToCbor_shouldProduceSmallerPayloadsForAllModelTypes() throws Exception {
+		for (TableToSyncEnum e : TableToSyncEnum.values()) {
+			SyncModel syncModel = SyncModelSamples.create(e);
+			
+			assertTrue(JsonUtils.marshallToCbor(syncModel).length < JsonUtils.marshall(syncModel).getBytes(UTF_8).length);
+		}
+	}
+	
+}
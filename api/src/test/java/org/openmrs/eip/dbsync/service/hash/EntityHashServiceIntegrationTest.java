@@ -0,0 +1,130 @@
+package org.openmrs.eip.dbsync.service.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.Test;
+import org.openmrs.eip.dbsync.BaseDbDrivenTest;
+import org.openmrs.eip.dbsync.SyncModelSamples;
+import org.openmrs.eip.dbsync.common.Address;
+import org.openmrs.eip.dbsync.entity.Patient;
+import org.openmrs.eip.dbsync.entity.Person;
+import org.openmrs.eip.dbsync.model.BaseModel;
+import org.openmrs.eip.dbsync.model.ObservationModel;
+import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.openmrs.eip.dbsync.service.facade.EntityServiceFacade;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.test.context.jdbc.Sql;
+
+@Sql(scripts = "classpath:test_data.sql")
+public class EntityHashServiceIntegrationTest extends BaseDbDrivenTest {
+	
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	
+	@Autowired
+	private EntityServiceFacade facade;
+	
+	@Autowired
+	private EntityHashService service;
+	
+	/**
+	 * Creates a model of the specified type with all its fields set, strings have trailing spaces and
+	 * linked entities are created as placeholders when the model is saved.
+	 *
+	 * @param tableToSync the entity type
+	 * @return the model
+	 */
+	private BaseModel createModel(TableToSyncEnum tableToSync) throws Exception {
+		return SyncModelSamples.createModel(tableToSync, EntityHashServiceIntegrationTest::getValue, t -> {});
+	}
+	
+	private static Object getValue(Class<?> type) {
+		if (type == String.class) {
+			return "t ";
+		} else if (type == LocalDateTime.class) {
+			return LocalDateTime.now();
+		} else if (type == LocalDate.class) {
+			return LocalDate.now();
+		} else if (type == LocalTime.class) {
+			return LocalTime.of(13, 5, 7);
+		} else if (type == Double.class) {
+			return 12.25;
+		} else if (type == Integer.class || type == int.class) {
+			return 3;
+		} else if (type == Long.class) {
+			return 4L;
+		} else if (type == Boolean.class || type == boolean.class) {
+			return true;
+		} else if (type == Address.class) {
+			Address address = new Address();
+			address.setAddress1("a ");
+			address.setAddress3("c");
+			return address;
+		}
+		
+		return null;
+	}
+	
+	private BaseModel saveAndReload(TableToSyncEnum tableToSync, BaseModel model) {
+		facade.saveModel(tableToSync, model);
+		EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+		entityManager.flush();
+		entityManager.clear();
+		
+		return facade.getModel(tableToSync, model.getUuid());
+	}
+	
+	@Test
+	public void getHash_shouldMatchTheHashComputedInJavaForEveryEntityType() throws Exception {
+		for (TableToSyncEnum tableToSync : TableToSyncEnum.values()) {
+			assertTrue(tableToSync + " is not supported", service.isSupported(tableToSync.getEntityClass()));
+			BaseModel model = saveAndReload(tableToSync, createModel(tableToSync));
+			assertNotNull(tableToSync + " was not saved", model);
+			
+			assertEquals(tableToSync + " hash mismatch", HashUtils.computeHash(model),
+			    service.getHash(tableToSync.getEntityClass(), model.getUuid()));
+		}
+	}
+	
+	@Test
+	public void getHash_shouldReturnNullForADoubleFormattedInScientificNotationInJava() throws Exception {
+		ObservationModel model = (ObservationModel) createModel(TableToSyncEnum.OBS);
+		model.setValueNumeric(1.0E8);
+		
+		assertNotNull(saveAndReload(TableToSyncEnum.OBS, model));
+		
+		assertNull(service.getHash(TableToSyncEnum.OBS.getEntityClass(), model.getUuid()));
+	}
+	
+	@Test
+	public void forEachHash_shouldExcludeRowsOfSubclasses() throws Exception {
+		BaseModel person = saveAndReload(TableToSyncEnum.PERSON, createModel(TableToSyncEnum.PERSON));
+		BaseModel patient = saveAndReload(TableToSyncEnum.PATIENT, createModel(TableToSyncEnum.PATIENT));
+		Set<String> personUuids = new HashSet();
+		Set<String> patientUuids = new HashSet();
+		
+		service.forEachHash(Person.class, (uuid, hash) -> personUuids.add(uuid));
+		service.forEachHash(Patient.class, (uuid, hash) -> patientUuids.add(uuid));
+		
+		assertTrue(personUuids.contains(person.getUuid()));
+		assertFalse(personUuids.contains(patient.getUuid()));
+		assertTrue(patientUuids.contains(patient.getUuid()));
+		assertFalse(patientUuids.contains(person.getUuid()));
+	}
+	
+}
@@ -0,0 +1,187 @@
+package org.openmrs.eip.dbsync.service.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
+import org.openmrs.eip.dbsync.management.hash.entity.PersonHash;
+import org.openmrs.eip.dbsync.management.hash.repository.BaseHashRepository;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+import org.openmrs.eip.dbsync.utils.SyncUtils;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(SyncUtils.class)
+public class HashWriteBufferTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Mock
+	private PlatformTransactionManager mockTxManager;
+	
+	@Mock
+	private BaseHashRepository mockRepo;
+	
+	private final AtomicLong nextId = new AtomicLong(100);
+	
+	private File journal;
+	
+	private HashWriteBuffer buffer;
+	
+	@Before
+	public void setup() throws Exception {
+		PowerMockito.mockStatic(SyncUtils.class);
+		when(SyncUtils.getJpaRepository(PersonHash.class, BaseHashRepository.class)).thenReturn(mockRepo);
+		when(mockRepo.saveAll(anyList())).thenAnswer(invocation -> {
+			List<BaseHashEntity> hashes = invocation.getArgument(0);
+			for (BaseHashEntity hash : hashes) {
+				if (hash.getId() == null) {
+					hash.setId(nextId.getAndIncrement());
+				}
+			}
+			
+			return hashes;
+		});
+		
+		journal = new File(folder.getRoot(), "hash-journal.log");
+	}
+	
+	@After
+	public void tearDown() {
+		if (buffer != null) {
+			buffer.shutdown();
+		}
+		
+		HashUtils.setWriteBuffer(null);
+	}
+	
+	private HashWriteBuffer createBuffer(int batchSize) {
+		buffer = new HashWriteBuffer(mockTxManager, journal.getAbsolutePath(), batchSize, 60000, false);
+		buffer.start();
+		return buffer;
+	}
+	
+	private PersonHash createHash(String identifier, String hash) {
+		PersonHash personHash = new PersonHash();
+		personHash.setIdentifier(identifier);
+		personHash.setHash(hash);
+		personHash.setDateCreated(LocalDateTime.now());
+		return personHash;
+	}
+	
+	@Test
+	public void write_shouldJournalTheHashAndKeepItPending() throws Exception {
+		createBuffer(100);
+		PersonHash hash = createHash("uuid-1", "hash-1");
+		
+		buffer.write(hash);
+		
+		BaseHashEntity pendingHash = buffer.getPendingHash("uuid-1", PersonHash.class);
+		assertNotSame(hash, pendingHash);
+		assertEquals("hash-1", pendingHash.getHash());
+		assertEquals(1, Files.readAllLines(journal.toPath()).size());
+		assertTrue(HashUtils.isWriteBehindEnabled());
+		assertEquals("hash-1", HashUtils.getStoredHash("uuid-1", PersonHash.class).getHash());
+		verify(mockRepo, never()).saveAll(anyList());
+	}
+	
+	@Test
+	public void flush_shouldSaveThePendingHashesInASingleTransaction() {
+		createBuffer(100);
+		buffer.write(createHash("uuid-1", "hash-1"));
+		buffer.write(createHash("uuid-2", "hash-2"));
+		buffer.write(createHash("uuid-1", "hash-3"));
+		
+		buffer.flush();
+		
+		verify(mockRepo).saveAll(anyList());
+		verify(mockTxManager).commit(null);
+		assertEquals(1, buffer.getCommitCount());
+		assertEquals(2, buffer.getSavedCount());
+		assertEquals(0, buffer.getPendingCount());
+		assertNull(buffer.getPendingHash("uuid-1", PersonHash.class));
+		assertFalse(journal.exists());
+		assertEquals(0, folder.getRoot().listFiles().length);
+	}
+	
+	@Test
+	public void flush_shouldUpdateAHashThatWasReadBeforeItWasInserted() {
+		createBuffer(100);
+		buffer.write(createHash("uuid-1", "hash-1"));
+		BaseHashEntity hash = buffer.getPendingHash("uuid-1", PersonHash.class);
+		buffer.flush();
+		hash.setHash("hash-2");
+		
+		buffer.write(hash);
+		buffer.flush();
+		
+		ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+		verify(mockRepo, times(2)).saveAll(captor.capture());
+		BaseHashEntity updated = (BaseHashEntity) captor.getAllValues().get(1).get(0);
+		assertEquals("hash-2", updated.getHash());
+		assertEquals(Long.valueOf(100), updated.getId());
+	}
+	
+	@Test
+	public void start_shouldSaveTheHashesFoundInTheJournal() {
+		createBuffer(100);
+		buffer.write(createHash("uuid-1", "hash-1"));
+		buffer.write(createHash("uuid-2", "hash-2"));
+		//Simulates a crash, the journal is left behind
+		buffer = null;
+		HashUtils.setWriteBuffer(null);
+		
+		HashWriteBuffer recovered = createBuffer(100);
+		
+		verify(mockRepo).findByIdentifier("uuid-1");
+		verify(mockRepo).findByIdentifier("uuid-2");
+		verify(mockRepo).saveAll(anyList());
+		assertEquals(2, recovered.getSavedCount());
+		assertEquals(0, recovered.getPendingCount());
+	}
+	
+	@Test
+	public void flush_shouldKeepTheHashesPendingIfTheSaveFails() {
+		createBuffer(100);
+		buffer.write(createHash("uuid-1", "hash-1"));
+		when(mockRepo.saveAll(anyList())).thenThrow(new RuntimeException("test"));
+		
+		try {
+			buffer.flush();
+		}
+		catch (RuntimeException e) {
+			assertEquals("test", e.getMessage());
+		}
+		
+		assertEquals(1, buffer.getPendingCount());
+		assertEquals("hash-1", buffer.getPendingHash("uuid-1", PersonHash.class).getHash());
+		assertEquals(1, folder.getRoot().listFiles().length);
+	}
+	
+}
@@ -0,0 +1,159 @@
+package org.openmrs.eip.dbsync.service.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openmrs.eip.dbsync.SyncConstants;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
+import org.openmrs.eip.dbsync.management.hash.entity.PatientHash;
+import org.openmrs.eip.dbsync.management.hash.entity.PersonHash;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+
+public class MappedHashStoreTest {
+	
+	private static final String UUID_1 = "1a2b3c4d-5e6f-4a8b-9c0d-1e2f3a4b5c6d";
+	
+	private static final String UUID_2 = "6d5c4b3a-2f1e-4d0c-8b9a-6f5e4d3c2b1a";
+	
+	private static final String HASH_1 = "0123456789abcdef0123456789abcdef";
+	
+	private static final String HASH_2 = "fedcba9876543210fedcba9876543210";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private MappedHashStore store;
+	
+	@After
+	public void tearDown() {
+		if (store != null) {
+			store.shutdown();
+		}
+		
+		HashUtils.setHashStore(null);
+	}
+	
+	private MappedHashStore createStore(int memtableSize, int maxSegments) {
+		store = new MappedHashStore(folder.getRoot().getAbsolutePath(), memtableSize, maxSegments, false, false);
+		store.start();
+		return store;
+	}
+	
+	private <T extends BaseHashEntity> T createHash(T hashEntity, String identifier, String hash) {
+		hashEntity.setIdentifier(identifier);
+		hashEntity.setHash(hash);
+		hashEntity.setDateCreated(LocalDateTime.of(2023, 3, 8, 10, 15, 30, 123000000));
+		return hashEntity;
+	}
+	
+	@Test
+	public void findByIdentifier_shouldReturnTheSavedHash() {
+		createStore(100, 8);
+		
+		store.save(createHash(new PersonHash(), UUID_1, HASH_1));
+		store.save(createHash(new PatientHash(), UUID_1, HASH_2));
+		
+		BaseHashEntity hash = store.findByIdentifier(UUID_1, PersonHash.class);
+		assertEquals(UUID_1, hash.getIdentifier());
+		assertEquals(HASH_1, hash.getHash());
+		assertEquals(LocalDateTime.of(2023, 3, 8, 10, 15, 30, 123000000), hash.getDateCreated());
+		assertNull(hash.getDateChanged());
+		assertEquals(HASH_2, store.findByIdentifier(UUID_1, PatientHash.class).getHash());
+		assertNull(store.findByIdentifier(UUID_2, PersonHash.class));
+		assertTrue(HashUtils.isDirectSaveEnabled());
+		assertEquals(HASH_1, HashUtils.getStoredHash(UUID_1, PersonHash.class).getHash());
+	}
+	
+	@Test
+	public void findByIdentifier_shouldReturnTheLatestHashFromTheSegments() {
+		createStore(1, 8);
+		store.save(createHash(new PersonHash(), UUID_1, HASH_1));
+		store.save(createHash(new PersonHash(), "complex_obs.png", SyncConstants.HASH_DELETED));
+		
+		store.save(createHash(new PersonHash(), UUID_1, HASH_2));
+		
+		assertEquals(3, store.getSegmentCount());
+		assertEquals(HASH_2, store.findByIdentifier(UUID_1, PersonHash.class).getHash());
+		assertEquals(SyncConstants.HASH_DELETED, store.findByIdentifier("complex_obs.png", PersonHash.class).getHash());
+	}
+	
+	@Test
+	public void flush_shouldMergeTheSegmentsWhenThereAreTooMany() {
+		createStore(1, 2);
+		store.save(createHash(new PersonHash(), UUID_1, HASH_1));
+		store.save(createHash(new PersonHash(), UUID_2, HASH_1));
+		
+		store.save(createHash(new PersonHash(), UUID_1, HASH_2));
+		
+		assertEquals(1, store.getSegmentCount());
+		assertEquals(1, folder.getRoot().list((dir, name) -> name.endsWith(".dat")).length);
+		assertEquals(HASH_2, store.findByIdentifier(UUID_1, PersonHash.class).getHash());
+		assertEquals(HASH_1, store.findByIdentifier(UUID_2, PersonHash.class).getHash());
+	}
+	
+	@Test
+	public void start_shouldLoadTheHashesFromTheSegmentsAndTheWriteAheadLog() throws Exception {
+		createStore(2, 8);
+		store.save(createHash(new PersonHash(), UUID_1, HASH_1));
+		store.save(createHash(new PersonHash(), UUID_2, HASH_1));
+		store.save(createHash(new PersonHash(), UUID_1, HASH_2));
+		//Simulates a crash with a partially written entry at the end of the write-ahead log
+		Files.write(new File(folder.getRoot(), "hash-store.wal").toPath(), new byte[] { 0, 0, 1 },
+		    StandardOpenOption.APPEND);
+		store = null;
+		
+		createStore(2, 8);
+		
+		assertEquals(1, store.getSegmentCount());
+		assertEquals(HASH_2, store.findByIdentifier(UUID_1, PersonHash.class).getHash());
+		assertEquals(HASH_1, store.findByIdentifier(UUID_2, PersonHash.class).getHash());
+	}
+	
+	@Test
+	public void forEach_shouldReturnTheLatestHashesOfTheTypeInKeyOrder() {
+		createStore(1, 8);
+		store.save(createHash(new PersonHash(), UUID_2, HASH_1));
+		store.save(createHash(new PatientHash(), UUID_1, HASH_1));
+		store.save(createHash(new PersonHash(), UUID_1, HASH_1));
+		store.save(createHash(new PersonHash(), UUID_2, HASH_2));
+		List<BaseHashEntity> hashes = new ArrayList();
+		
+		store.forEach(PersonHash.class, hashes::add);
+		
+		assertEquals(2, hashes.size());
+		assertEquals(UUID_1, hashes.get(0).getIdentifier());
+		assertEquals(UUID_2, hashes.get(1).getIdentifier());
+		assertEquals(HASH_2, hashes.get(1).getHash());
+		assertTrue(hashes.get(0) instanceof PersonHash);
+	}
+	
+	@Test(expected = SyncException.class)
+	public void start_shouldFailIfHashWriteBehindIsEnabled() {
+		new MappedHashStore(folder.getRoot().getAbsolutePath(), 100, 8, false, true).start();
+	}
+	
+	@Test
+	public void shutdown_shouldRestoreTheDefaultHashStore() {
+		createStore(100, 8);
+		
+		store.shutdown();
+		store = null;
+		
+		assertFalse(HashUtils.isDirectSaveEnabled());
+	}
+	
+}
@@ -0,0 +1,93 @@
+package org.openmrs.eip.dbsync.service.hash;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.eip.dbsync.model.PersonModel;
+import org.openmrs.eip.dbsync.model.SyncMetadata;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+import org.powermock.reflect.Whitebox;
+
+public class SenderHashVerifierTest {
+	
+	private PersonModel model;
+	
+	private SyncModel syncModel;
+	
+	private String expectedHash;
+	
+	@Before
+	public void setup() {
+		model = new PersonModel();
+		model.setUuid("person-uuid");
+		model.setGender("F");
+		SyncMetadata metadata = new SyncMetadata();
+		metadata.setSourceIdentifier("remote-1");
+		metadata.setHashVersion(HashUtils.getHashVersion());
+		syncModel = new SyncModel(PersonModel.class, model, metadata);
+		expectedHash = HashUtils.computeHash(model);
+	}
+	
+	@Test
+	public void getHash_shouldComputeTheHashIfNoneWasSent() {
+		SenderHashVerifier verifier = new SenderHashVerifier(0);
+		
+		assertEquals(expectedHash, verifier.getHash(syncModel, false));
+		assertEquals(0, verifier.getTrustedCount());
+	}
+	
+	@Test
+	public void getHash_shouldReturnTheSenderHashWithoutVerifyingIt() {
+		SenderHashVerifier verifier = new SenderHashVerifier(0);
+		syncModel.getMetadata().setHash("sender-hash");
+		
+		assertEquals("sender-hash", verifier.getHash(syncModel, false));
+		assertEquals(1, verifier.getTrustedCount());
+		assertEquals(0, verifier.getVerifiedCount());
+	}
+	
+	@Test
+	public void getHash_shouldComputeTheHashIfTheSenderHashVersionIsDifferent() {
+		SenderHashVerifier verifier = new SenderHashVerifier(0);
+		syncModel.getMetadata().setHash("sender-hash");
+		syncModel.getMetadata().setHashVersion("0/UTC+14");
+		
+		assertEquals(expectedHash, verifier.getHash(syncModel, false));
+		assertEquals(0, verifier.getTrustedCount());
+	}
+	
+	@Test
+	public void getHash_shouldComputeTheHashIfTheModelWasRewritten() {
+		SenderHashVerifier verifier = new SenderHashVerifier(0);
+		syncModel.getMetadata().setHash("sender-hash");
+		
+		assertEquals(expectedHash, verifier.getHash(syncModel, true));
+		assertEquals(0, verifier.getTrustedCount());
+	}
+	
+	@Test
+	public void getHash_shouldVerifyTheSenderHash() {
+		SenderHashVerifier verifier = new SenderHashVerifier(1);
+		syncModel.getMetadata().setHash(expectedHash);
+		
+		assertEquals(expectedHash, verifier.getHash(syncModel, false));
+		assertEquals(1, verifier.getVerifiedCount());
+		assertEquals(0, verifier.getMismatchCount());
+	}
+	
+	@Test
+	public void getHash_shouldStopTrustingTheSiteAfterAMismatch() {
+		SenderHashVerifier verifier = new SenderHashVerifier(1);
+		syncModel.getMetadata().setHash("sender-hash");
+		
+		assertEquals(expectedHash, verifier.getHash(syncModel, false));
+		assertEquals(1, verifier.getMismatchCount());
+		
+		Whitebox.setInternalState(verifier, "verificationRate", 0.0);
+		assertEquals(expectedHash, verifier.getHash(syncModel, false));
+		assertEquals(0, verifier.getTrustedCount());
+	}
+	
+}
@@ -13,6 +13,7 @@ import org.openmrs.eip.dbsync.exception.SyncException;
 
 import java.io.IOException;
 import java.security.Security;
+import java.util.Base64;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -121,4 +122,37 @@ public class PGPDecryptServiceTest {
         assertNotNull(exchange.getIn().getBody());
         assertEquals(toEncrypt, exchange.getIn().getBody());
     }
+
+    @Test
+    public void verifyAndDecrypt_should_fail_if_a_session_encrypted_message_was_tampered_with() {
+        // Given
+        ReceiverEncryptionProperties receiverProps = new ReceiverEncryptionProperties();
+        receiverProps.setKeysFolderPath("/src/test/resources/keys/receiver");
+        receiverProps.setPassword("testreceiver");
+        pgpDecryptService = new PGPDecryptService(receiverProps);
+
+        SenderEncryptionProperties senderProps = new SenderEncryptionProperties();
+        senderProps.setKeysFolderPath("/src/test/resources/keys/sender");
+        senderProps.setUserId("test-sender@icrc.org");
+        senderProps.setPassword("testsender");
+        senderProps.setReceiverUserId("test-receiver@icrc.org");
+        senderProps.setSessionEnabled(true);
+        pgpEncryptService = new PGPEncryptService(senderProps);
+
+        String[] lines = pgpEncryptService.encryptWithSession("message to encrypt").split("\n", 4);
+        byte[] payload = Base64.getDecoder().decode(lines[2]);
+        payload[payload.length - 1] ^= 1;
+        String tampered = lines[0] + "\n" + lines[1] + "\n" + Base64.getEncoder().encodeToString(payload) + "\n"
+                + lines[3];
+
+        // When
+        try {
+            pgpDecryptService.verifyAndDecrypt(tampered);
+
+            fail();
+        } catch (SyncException e) {
+            // Then
+            assertEquals("Error while decrypting with the session key", e.getMessage());
+        }
+    }
 }
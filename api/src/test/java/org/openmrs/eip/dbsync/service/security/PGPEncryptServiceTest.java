@@ -104,4 +104,83 @@ public class PGPEncryptServiceTest {
         assertNotEquals(toEncrypt, exchange.getIn().getBody());
         assertEquals(toEncrypt, pgpDecryptService.verifyAndDecrypt((String) exchange.getIn().getBody()));
     }
+
+    private PGPEncryptService createSessionEncryptService(final long maxMessages) {
+        SenderEncryptionProperties senderProps = new SenderEncryptionProperties();
+        senderProps.setKeysFolderPath("/src/test/resources/keys/sender");
+        senderProps.setUserId("test-sender@icrc.org");
+        senderProps.setPassword("testsender");
+        senderProps.setReceiverUserId("test-receiver@icrc.org");
+        senderProps.setSessionEnabled(true);
+        senderProps.setSessionMaxMessages(maxMessages);
+
+        return new PGPEncryptService(senderProps);
+    }
+
+    @Test
+    public void process_should_encrypt_with_session_key_if_session_mode_is_enabled() {
+        // Given
+        pgpEncryptService = createSessionEncryptService(10);
+        String toEncrypt = "message to encrypt";
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setBody(toEncrypt);
+
+        // When
+        pgpEncryptService.process(exchange);
+
+        // Then
+        String result = exchange.getIn().getBody(String.class);
+        assertTrue(result.split("\n")[1].startsWith(AbstractSecurityService.HEADER_SESSION_PROP));
+        assertEquals(toEncrypt, pgpDecryptService.verifyAndDecrypt(result));
+    }
+
+    @Test
+    public void encryptWithSession_should_reuse_the_session_key_until_it_is_rotated() {
+        // Given
+        pgpEncryptService = createSessionEncryptService(2);
+
+        // When
+        String first = pgpEncryptService.encryptWithSession("message 1");
+        String second = pgpEncryptService.encryptWithSession("message 2");
+        String third = pgpEncryptService.encryptWithSession("message 3");
+
+        // Then
+        String firstSession = first.split("\n")[1];
+        assertEquals(firstSession, second.split("\n")[1]);
+        assertNotEquals(first.split("\n")[2], second.split("\n")[2]);
+        assertNotEquals(firstSession, third.split("\n")[1]);
+        assertEquals("message 1", pgpDecryptService.verifyAndDecrypt(first));
+        assertEquals("message 2", pgpDecryptService.verifyAndDecrypt(second));
+        assertEquals("message 3", pgpDecryptService.verifyAndDecrypt(third));
+    }
+
+    @Test
+    public void process_should_put_binary_encrypted_message_and_sender_header_if_binary_mode_is_enabled() {
+        // Given
+        SenderEncryptionProperties senderProps = new SenderEncryptionProperties();
+        senderProps.setKeysFolderPath("/src/test/resources/keys/sender");
+        senderProps.setUserId("test-sender@icrc.org");
+        senderProps.setPassword("testsender");
+        senderProps.setReceiverUserId("test-receiver@icrc.org");
+        senderProps.setBinaryOutput(true);
+
+        pgpEncryptService = new PGPEncryptService(senderProps);
+
+        String toEncrypt = "message to encrypt";
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setBody(toEncrypt);
+
+        // When
+        pgpEncryptService.process(exchange);
+
+        // Then
+        assertTrue(exchange.getIn().getBody() instanceof byte[]);
+        assertEquals("test-sender@icrc.org", exchange.getIn().getHeader(AbstractSecurityService.HEADER_SENDER_ID));
+        byte[] encrypted = exchange.getIn().getBody(byte[].class);
+        assertNotEquals("-----BEGIN PGP MESSAGE-----", new String(encrypted, 0, 27));
+
+        pgpDecryptService.process(exchange);
+
+        assertEquals(toEncrypt, exchange.getIn().getBody());
+    }
 }
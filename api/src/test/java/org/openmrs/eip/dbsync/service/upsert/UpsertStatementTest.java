@@ -0,0 +1,77 @@
+package org.openmrs.eip.dbsync.service.upsert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+import org.openmrs.eip.dbsync.entity.Observation;
+import org.openmrs.eip.dbsync.entity.PatientIdentifier;
+import org.openmrs.eip.dbsync.entity.light.PatientIdentifierTypeLight;
+import org.openmrs.eip.dbsync.entity.light.PatientLight;
+import org.openmrs.eip.dbsync.entity.light.UserLight;
+
+public class UpsertStatementTest {
+	
+	@Test
+	public void create_shouldGenerateAnUpsertStatementMatchingRowsByUuid() {
+		final String expected = "INSERT INTO patient_identifier (uuid, creator, date_created, voided, voided_by, "
+		        + "date_voided, void_reason, changed_by, date_changed, patient_id, identifier, identifier_type, "
+		        + "preferred, location_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
+		        + "creator = VALUES(creator), date_created = VALUES(date_created), voided = VALUES(voided), "
+		        + "voided_by = VALUES(voided_by), date_voided = VALUES(date_voided), void_reason = VALUES(void_reason), "
+		        + "changed_by = VALUES(changed_by), date_changed = VALUES(date_changed), patient_id = VALUES(patient_id), "
+		        + "identifier = VALUES(identifier), identifier_type = VALUES(identifier_type), "
+		        + "preferred = VALUES(preferred), location_id = VALUES(location_id)";
+		
+		assertEquals(expected, UpsertStatement.create(PatientIdentifier.class).getSql());
+	}
+	
+	@Test
+	public void create_shouldNotWriteThePrimaryKeyColumn() {
+		String sql = UpsertStatement.create(Observation.class).getSql();
+		
+		assertTrue(sql.startsWith("INSERT INTO obs (uuid, creator, date_created, voided, voided_by, "));
+		assertTrue(sql.contains("obs_group_id = VALUES(obs_group_id)"));
+		assertTrue(!sql.contains("obs_id") && !sql.contains(" id,"));
+	}
+	
+	@Test
+	public void bind_shouldSetTheIdsOfAssociationsAndConvertDates() throws Exception {
+		LocalDateTime dateCreated = LocalDateTime.of(2020, 1, 1, 10, 0);
+		UserLight creator = new UserLight();
+		creator.setId(3L);
+		PatientLight patient = new PatientLight();
+		patient.setId(5L);
+		PatientIdentifierTypeLight type = new PatientIdentifierTypeLight();
+		type.setId(7L);
+		PatientIdentifier identifier = new PatientIdentifier();
+		identifier.setUuid("identifier-uuid");
+		identifier.setCreator(creator);
+		identifier.setDateCreated(dateCreated);
+		identifier.setPatient(patient);
+		identifier.setIdentifier("12345");
+		identifier.setPatientIdentifierType(type);
+		identifier.setPreferred(true);
+		PreparedStatement statement = mock(PreparedStatement.class);
+		
+		UpsertStatement.create(PatientIdentifier.class).bind(statement, identifier);
+		
+		verify(statement).setObject(1, "identifier-uuid");
+		verify(statement).setObject(2, 3L);
+		verify(statement).setObject(3, Timestamp.valueOf(dateCreated));
+		verify(statement).setObject(4, false);
+		verify(statement).setObject(5, null);
+		verify(statement).setObject(10, 5L);
+		verify(statement).setObject(11, "12345");
+		verify(statement).setObject(12, 7L);
+		verify(statement).setObject(13, true);
+		verify(statement).setObject(14, null);
+	}
+	
+}
@@ -0,0 +1,61 @@
+package org.openmrs.eip.dbsync.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.model.PersonModel;
+import org.openmrs.eip.dbsync.model.SyncMetadata;
+import org.openmrs.eip.dbsync.model.SyncModel;
+
+public class BatchEnvelopeUtilsTest {
+	
+	@Test
+	public void wrap_shouldCreateAnEnvelopeThatCanBeUnwrappedInTheSameOrder() {
+		String first = "{\"tableToSyncModelClass\":\"a\",\"model\":{\"uuid\":\"1\",\"value\":1.50}}";
+		String second = "{\"tableToSyncModelClass\":\"b\",\"model\":{\"uuid\":\"2\"}}";
+		
+		String envelope = BatchEnvelopeUtils.wrap(Arrays.asList(first, second));
+		
+		assertTrue(BatchEnvelopeUtils.isBatch(envelope));
+		List<String> payloads = BatchEnvelopeUtils.unwrap(envelope);
+		assertEquals(2, payloads.size());
+		assertEquals(first, payloads.get(0));
+		assertEquals(second, payloads.get(1));
+	}
+	
+	@Test
+	public void unwrap_shouldReturnPayloadsThatCanBeUnmarshalled() {
+		PersonModel model = new PersonModel();
+		model.setUuid("person-uuid");
+		SyncMetadata metadata = new SyncMetadata();
+		metadata.setOperation("c");
+		SyncModel syncModel = SyncModel.builder().tableToSyncModelClass(PersonModel.class).model(model).metadata(metadata)
+		        .build();
+		
+		String envelope = BatchEnvelopeUtils.wrap(Collections.singletonList(JsonUtils.marshall(syncModel)));
+		
+		SyncModel result = JsonUtils.unmarshal(BatchEnvelopeUtils.unwrap(envelope).get(0), SyncModel.class);
+		assertEquals(PersonModel.class, result.getTableToSyncModelClass());
+		assertEquals("person-uuid", result.getModel().getUuid());
+		assertEquals("c", result.getMetadata().getOperation());
+	}
+	
+	@Test
+	public void isBatch_shouldReturnFalseForASingleEntityPayload() {
+		assertFalse(BatchEnvelopeUtils.isBatch("{\"tableToSyncModelClass\":\"a\",\"model\":{\"uuid\":\"1\"}}"));
+		assertFalse(BatchEnvelopeUtils.isBatch(null));
+	}
+	
+	@Test(expected = SyncException.class)
+	public void unwrap_shouldFailForAnInvalidEnvelope() {
+		BatchEnvelopeUtils.unwrap("{\"other\":[]}");
+	}
+	
+}
@@ -0,0 +1,51 @@
+package org.openmrs.eip.dbsync.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Properties;
+
+import org.junit.Test;
+import org.openmrs.eip.dbsync.exception.SyncException;
+
+public class FileChunkUtilsTest {
+	
+	@Test
+	public void parse_shouldReadTheMetadataAndDataOfAFramedChunk() {
+		Properties metadata = new Properties();
+		metadata.setProperty(FileChunkUtils.KEY_FILE_NAME, "scän 1.pdf");
+		metadata.setProperty(FileChunkUtils.KEY_FILE_SIZE, "5");
+		byte[] data = new byte[] { 1, 2, 3, 4, 5, 6, 7 };
+		
+		FileChunk chunk = FileChunkUtils.parse(FileChunkUtils.frame(metadata, data, 5));
+		
+		assertEquals("scän 1.pdf", chunk.getString(FileChunkUtils.KEY_FILE_NAME));
+		assertEquals(5, chunk.getLong(FileChunkUtils.KEY_FILE_SIZE));
+		assertEquals(ByteBuffer.wrap(data, 0, 5), chunk.getData());
+	}
+	
+	@Test
+	public void getLong_shouldFailForAMissingValue() {
+		FileChunk chunk = FileChunkUtils.parse(FileChunkUtils.frame(new Properties(), new byte[0], 0));
+		try {
+			chunk.getLong(FileChunkUtils.KEY_FILE_SIZE);
+			fail();
+		}
+		catch (SyncException e) {
+			assertEquals("Missing file chunk metadata: " + FileChunkUtils.KEY_FILE_SIZE, e.getMessage());
+		}
+	}
+	
+	@Test
+	public void parse_shouldFailForAnInvalidMetadataLength() {
+		try {
+			FileChunkUtils.parse(ByteBuffer.allocate(6).putInt(3).array());
+			fail();
+		}
+		catch (SyncException e) {
+			assertEquals("Invalid file chunk metadata length: 3", e.getMessage());
+		}
+	}
+	
+}
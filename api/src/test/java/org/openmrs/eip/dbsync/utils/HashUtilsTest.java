@@ -11,18 +11,25 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -51,6 +58,9 @@ public class HashUtilsTest {
 	
 	private final String UUID = "818b4ee6-8d68-4849-975d-80ab98016677";
 	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
 	@Mock
 	private BaseHashRepository mockHashRepo;
 	
@@ -116,10 +126,46 @@ public class HashUtilsTest {
 	
 	@Test
 	public void computeHashForFile_shouldCalculateTheHashForTheContentsOfTheSpecifiedFile() throws IOException {
-		PowerMockito.mockStatic(FileUtils.class);
-		File mockFile = Mockito.mock(File.class);
-		when(FileUtils.readFileToByteArray(mockFile)).thenReturn("test".getBytes(UTF_8));
-		assertEquals("098f6bcd4621d373cade4e832627b4f6", HashUtils.computeHashForFile(mockFile));
+		File file = folder.newFile();
+		Files.write(file.toPath(), "test".getBytes(UTF_8));
+		assertEquals("098f6bcd4621d373cade4e832627b4f6", HashUtils.computeHashForFile(file));
+	}
+	
+	@Test
+	public void computeHashForFile_shouldCalculateTheHashOfAMemoryMappedFile() throws IOException {
+		byte[] contents = new byte[100000];
+		new Random(3).nextBytes(contents);
+		File file = folder.newFile();
+		Files.write(file.toPath(), contents);
+		final String expectedHash = HashUtils.computeHashForBytes(contents);
+		
+		assertEquals(expectedHash, HashUtils.computeHashForFile(file, 0, 30000));
+		assertEquals(expectedHash, HashUtils.computeHashForFile(file, 0, contents.length));
+		assertEquals(expectedHash, HashUtils.computeHashForFile(file));
+	}
+	
+	@Test
+	public void computeHashForFile_shouldCalculateTheHashOfAnEmptyFile() throws IOException {
+		File file = folder.newFile();
+		final String expectedHash = HashUtils.computeHashForBytes(new byte[0]);
+		
+		assertEquals(expectedHash, HashUtils.computeHashForFile(file));
+		assertEquals(expectedHash, HashUtils.computeHashForFile(file, 0, 1024));
+	}
+	
+	@Test
+	public void computeHashForStream_shouldCalculateTheHashForTheDataInTheStream() throws IOException {
+		assertEquals("098f6bcd4621d373cade4e832627b4f6",
+		    HashUtils.computeHashForStream(new ByteArrayInputStream("test".getBytes(UTF_8))));
+	}
+	
+	@Test
+	public void createDigest_shouldCreateADigestMatchingComputeHashForBytes() {
+		MessageDigest digest = HashUtils.createDigest();
+		digest.update("te".getBytes(UTF_8));
+		digest.update("st".getBytes(UTF_8));
+		
+		assertEquals(HashUtils.computeHashForBytes("test".getBytes(UTF_8)), Hex.encodeHexString(digest.digest()));
 	}
 	
 	@Test
@@ -47,6 +47,15 @@ public class CamelListener extends EventNotifierSupport implements ApplicationCo
 	@Value("${hashes.update.tables:}")
 	private List<String> hashUpdateTables;
 	
+	@Value("${hashes.update.in.database:false}")
+	private boolean computeHashesInDatabase;
+	
+	@Value("${hashes.storage.migrate.to:}")
+	private String hashStorageMigrateTo;
+	
+	@Value("${hashes.store.transfer:}")
+	private String hashStoreTransfer;
+	
 	@Override
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
 		this.applicationContext = applicationContext;
@@ -56,7 +65,13 @@ public class CamelListener extends EventNotifierSupport implements ApplicationCo
 	public void notify(CamelEvent event) {
 		if (event instanceof CamelContextRoutesStartingEvent) {
 			//TODO Move this logic to a new LifeCycleHandler
-			if (updateHashes) {
+			if (StringUtils.isNotBlank(hashStorageMigrateTo)) {
+				log.info("Disabling all camel routes before running hash storage migration task");
+				SyncContext.getBean(CamelContext.class).setAutoStartup(false);
+			} else if (StringUtils.isNotBlank(hashStoreTransfer)) {
+				log.info("Disabling all camel routes before running hash store transfer task");
+				SyncContext.getBean(CamelContext.class).setAutoStartup(false);
+			} else if (updateHashes) {
 				log.info("Disabling all camel routes before running hash updater task");
 				SyncContext.getBean(CamelContext.class).setAutoStartup(false);
 			}
@@ -68,8 +83,13 @@ public class CamelListener extends EventNotifierSupport implements ApplicationCo
 				throw new EIPException("No value set for application property: " + SyncConstants.PROP_OPENMRS_USER);
 			}
 			
-			if (updateHashes) {
-				executor.execute(new HashBatchUpdaterTask(hashUpdateTables, applicationContext));
+			if (StringUtils.isNotBlank(hashStorageMigrateTo)) {
+				boolean binary = HashStorageMigrator.isBinaryStorage(hashStorageMigrateTo.trim());
+				executor.execute(new HashStorageMigrationTask(SyncContext.getBean(HashStorageMigrator.class), binary));
+			} else if (StringUtils.isNotBlank(hashStoreTransfer)) {
+				executor.execute(new HashStoreTransferTask(hashStoreTransfer.trim(), applicationContext));
+			} else if (updateHashes) {
+				executor.execute(new HashBatchUpdaterTask(hashUpdateTables, applicationContext, computeHashesInDatabase));
 			} else {
 				User exampleUser = new User();
 				exampleUser.setUsername(username);
@@ -0,0 +1,378 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_CHUNK_COUNT;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_CHUNK_INDEX;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_CHUNK_OFFSET;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_CHUNK_SIZE;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_FILE_DIGEST;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_FILE_ID;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_FILE_NAME;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_FILE_SIZE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.eip.dbsync.SyncConstants;
+import org.openmrs.eip.dbsync.camel.utils.BodyUtils;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.utils.FileChunk;
+import org.openmrs.eip.dbsync.utils.FileChunkUtils;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reassembles complex obs files sent in chunks by the sender, see {@link FileChunkUtils}. The chunk
+ * metadata is only read from the framed body which is signed and encrypted by the sender, the file
+ * name is validated to be a plain name with no path before it is used. Each chunk
+ * is written at its offset in a part file in the work directory and the indices of the received
+ * chunks are recorded in a state file next to it, this allows an interrupted transfer to resume
+ * after a restart, chunks that were already received are ignored when they are redelivered or sent
+ * again. The digest of the file is updated as chunks are written in order, chunks received out of
+ * order are read back from the part file when the digest catches up with them.
+ * <p>
+ * When all the chunks are received and the digest matches that of the sender, the exchange body is
+ * set to the part file, the {@link #EX_PROP_FILE_COMPLETE} exchange property to true and the
+ * {@link #EX_PROP_FILE_DIGEST} exchange property to the verified digest, the part
+ * file is then expected to be moved into place by {@link ComplexObsProcessor} after which
+ * {@link #release(Exchange)} must be called to delete the state of the transfer. The work directory
+ * must be on the same file system as the complex obs directory for the move to be atomic.
+ */
+@Component("complexObsChunkAssembler")
+public class ComplexObsChunkAssembler implements Processor {
+	
+	protected static final Logger log = LoggerFactory.getLogger(ComplexObsChunkAssembler.class);
+	
+	public static final String EX_PROP_FILE_COMPLETE = "complex-obs-file-complete";
+	
+	public static final String EX_PROP_FILE_DIGEST = "complex-obs-file-digest";
+	
+	protected static final String EX_PROP_FILE_ID = "complex-obs-file-id";
+	
+	private static final String DEFAULT_WORK_DIR = ".chunks";
+	
+	protected static final String EXT_PART = ".part";
+	
+	protected static final String EXT_STATE = ".state";
+	
+	private static final String STATE_FILE_ID = "fileId";
+	
+	private static final String STATE_FILE_NAME = "fileName";
+	
+	private static final String STATE_RECEIVED = "received";
+	
+	private static final String STATE_COMPLETE = "complete";
+	
+	private final Path workDir;
+	
+	private final Map<String, Assembly> assemblies = new HashMap();
+	
+	public ComplexObsChunkAssembler(@Value("${complex.obs.chunk.work.dir:}") String workDir,
+	    @Value("${" + SyncConstants.PROP_COMPLEX_OBS_DIR + ":}") String complexObsDir) {
+		this.workDir = StringUtils.isBlank(workDir) ? Paths.get(complexObsDir, DEFAULT_WORK_DIR) : Paths.get(workDir);
+	}
+	
+	@Override
+	public synchronized void process(Exchange exchange) throws Exception {
+		Message message = exchange.getIn();
+		FileChunk chunk = FileChunkUtils.parse(BodyUtils.getBodyAsBytes(exchange));
+		final String fileId = chunk.getString(KEY_FILE_ID);
+		final String filename = chunk.getString(KEY_FILE_NAME);
+		final long size = chunk.getLong(KEY_FILE_SIZE);
+		final int index = chunk.getInt(KEY_CHUNK_INDEX);
+		final int count = chunk.getInt(KEY_CHUNK_COUNT);
+		final int chunkSize = chunk.getInt(KEY_CHUNK_SIZE);
+		final long offset = chunk.getLong(KEY_CHUNK_OFFSET);
+		final String digest = chunk.getString(KEY_FILE_DIGEST);
+		final ByteBuffer data = chunk.getData();
+		if (!isValidFileName(filename)) {
+			throw new SyncException("Invalid complex obs file name: " + filename);
+		}
+		
+		if (size < 0 || chunkSize <= 0 || count != FileChunkUtils.getChunkCount(size, chunkSize) || index < 0
+		        || index >= count || offset != (long) index * chunkSize
+		        || data.remaining() != FileChunkUtils.getChunkLength(size, chunkSize, index)) {
+			throw new SyncException("Invalid chunk " + index + " received for complex obs file: " + filename);
+		}
+		
+		exchange.setProperty(EX_PROP_FILE_ID, fileId);
+		Assembly assembly = getAssembly(fileId, filename, size, count, chunkSize, digest);
+		if (assembly.complete && Files.exists(assembly.partFile)) {
+			log.info("All chunks were already received for complex obs file: " + filename);
+		} else if (assembly.complete) {
+			//The part file can only be gone if it was already moved into place before the state was released
+			log.warn("Ignoring chunk for complex obs file: " + filename + " that was already reassembled and saved");
+			discard(assembly);
+			exchange.setProperty(EX_PROP_FILE_COMPLETE, false);
+			return;
+		} else if (assembly.received.get(index)) {
+			if (log.isDebugEnabled()) {
+				log.debug("Ignoring already received chunk " + index + " for complex obs file: " + filename);
+			}
+		} else {
+			try (FileChannel channel = FileChannel.open(assembly.partFile, StandardOpenOption.CREATE,
+			    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				
+				ByteBuffer buffer = data.duplicate();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer, offset + buffer.position());
+				}
+				
+				//The data must be on disk before the chunk is recorded as received
+				channel.force(false);
+				assembly.received.set(index);
+				advanceDigest(assembly, channel, index, data);
+			}
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Received chunk " + (index + 1) + " of " + count + " for complex obs file: " + filename);
+			}
+			
+			if (assembly.received.cardinality() == count) {
+				verifyDigest(assembly);
+				assembly.complete = true;
+			}
+			
+			saveState(assembly);
+		}
+		
+		exchange.setProperty(EX_PROP_FILE_COMPLETE, assembly.complete);
+		if (assembly.complete) {
+			log.info("Reassembled complex obs file: " + filename + " from " + count + " chunk(s)");
+			
+			exchange.setProperty(EX_PROP_FILE_DIGEST, assembly.expectedDigest.toLowerCase());
+			message.setHeader(Exchange.FILE_NAME_ONLY, filename);
+			message.setBody(assembly.partFile.toFile());
+		}
+	}
+	
+	/**
+	 * Deletes the state of the transfer of the file in the specified exchange, should be called after
+	 * the reassembled file is moved into place
+	 *
+	 * @param exchange the exchange
+	 * @throws IOException
+	 */
+	public synchronized void release(Exchange exchange) throws IOException {
+		Assembly assembly = assemblies.remove(exchange.getProperty(EX_PROP_FILE_ID, String.class));
+		if (assembly != null) {
+			Files.deleteIfExists(assembly.partFile);
+			Files.deleteIfExists(assembly.stateFile);
+		}
+	}
+	
+	/**
+	 * Gets the number of transfers currently in progress in memory
+	 *
+	 * @return the count
+	 */
+	protected synchronized int getAssemblyCount() {
+		return assemblies.size();
+	}
+	
+	private Assembly getAssembly(String fileId, String filename, long size, int count, int chunkSize, String digest)
+	    throws IOException {
+		
+		Assembly assembly = assemblies.get(fileId);
+		if (assembly != null) {
+			return assembly;
+		}
+		
+		Files.createDirectories(workDir);
+		final String baseName = DigestUtils.md5Hex(fileId);
+		assembly = new Assembly(fileId, filename, size, count, chunkSize, digest, workDir.resolve(baseName + EXT_PART),
+		        workDir.resolve(baseName + EXT_STATE));
+		
+		if (Files.exists(assembly.stateFile)) {
+			Properties state = new Properties();
+			try (InputStream in = Files.newInputStream(assembly.stateFile)) {
+				state.load(in);
+			}
+			
+			assembly.received = BitSet.valueOf(Base64.getDecoder().decode(state.getProperty(STATE_RECEIVED, "")));
+			assembly.complete = Boolean.parseBoolean(state.getProperty(STATE_COMPLETE));
+			log.info("Resuming transfer of complex obs file: " + filename + " with " + assembly.received.cardinality()
+			        + " of " + count + " chunk(s) already received");
+			
+			if (!assembly.complete && Files.exists(assembly.partFile)) {
+				try (FileChannel channel = FileChannel.open(assembly.partFile, StandardOpenOption.READ)) {
+					advanceDigest(assembly, channel, -1, null);
+				}
+			}
+		} else {
+			discardOtherVersions(filename, fileId);
+			Files.deleteIfExists(assembly.partFile);
+		}
+		
+		assemblies.put(fileId, assembly);
+		
+		return assembly;
+	}
+	
+	/**
+	 * Checks if the specified name is a plain file name that resolves to a file directly in the
+	 * complex obs directory
+	 *
+	 * @param filename the file name
+	 * @return true if the name is valid otherwise false
+	 */
+	protected static boolean isValidFileName(String filename) {
+		if (StringUtils.isBlank(filename) || ".".equals(filename) || "..".equals(filename)
+		        || StringUtils.containsAny(filename, '/', '\\', ':', '\0')) {
+			return false;
+		}
+		
+		try {
+			return filename.equals(Paths.get(filename).getFileName().toString());
+		}
+		catch (InvalidPathException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Updates the digest with the received chunks that follow the data hashed so far
+	 */
+	private void advanceDigest(Assembly assembly, FileChannel channel, int index, ByteBuffer data) throws IOException {
+		while (assembly.hashedLength < assembly.size) {
+			final int next = (int) (assembly.hashedLength / assembly.chunkSize);
+			if (!assembly.received.get(next)) {
+				break;
+			}
+			
+			final int length = FileChunkUtils.getChunkLength(assembly.size, assembly.chunkSize, next);
+			if (next == index) {
+				assembly.digest.update(data.duplicate());
+			} else {
+				ByteBuffer buffer = ByteBuffer.allocate(length);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, assembly.hashedLength + buffer.position()) < 0) {
+						throw new SyncException("Part file is shorter than expected for complex obs file: "
+						        + assembly.filename);
+					}
+				}
+				
+				assembly.digest.update(buffer.array());
+			}
+			
+			assembly.hashedLength += length;
+		}
+	}
+	
+	private void verifyDigest(Assembly assembly) throws IOException {
+		final String actual = Hex.encodeHexString(assembly.digest.digest());
+		if (assembly.hashedLength != assembly.size || !actual.equalsIgnoreCase(assembly.expectedDigest)) {
+			discard(assembly);
+			throw new SyncException("The digest of the reassembled complex obs file: " + assembly.filename
+			        + " does not match that of the sender, the file has to be sent again");
+		}
+	}
+	
+	private void saveState(Assembly assembly) throws IOException {
+		Properties state = new Properties();
+		state.setProperty(STATE_FILE_ID, assembly.fileId);
+		state.setProperty(STATE_FILE_NAME, assembly.filename);
+		state.setProperty(STATE_RECEIVED, Base64.getEncoder().encodeToString(assembly.received.toByteArray()));
+		state.setProperty(STATE_COMPLETE, String.valueOf(assembly.complete));
+		Path tempFile = assembly.stateFile.resolveSibling(assembly.stateFile.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tempFile)) {
+			state.store(out, null);
+		}
+		
+		Files.move(tempFile, assembly.stateFile, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	private void discard(Assembly assembly) throws IOException {
+		assemblies.remove(assembly.fileId);
+		Files.deleteIfExists(assembly.partFile);
+		Files.deleteIfExists(assembly.stateFile);
+	}
+	
+	/**
+	 * Deletes the unfinished transfers of older versions of the file with the specified name
+	 */
+	private void discardOtherVersions(String filename, String fileId) throws IOException {
+		try (DirectoryStream<Path> stateFiles = Files.newDirectoryStream(workDir, "*" + EXT_STATE)) {
+			for (Path stateFile : stateFiles) {
+				Properties state = new Properties();
+				try (InputStream in = Files.newInputStream(stateFile)) {
+					state.load(in);
+				}
+				
+				final String otherFileId = state.getProperty(STATE_FILE_ID);
+				if (filename.equals(state.getProperty(STATE_FILE_NAME)) && !fileId.equals(otherFileId)) {
+					log.info("Discarding unfinished transfer of an older version of complex obs file: " + filename);
+					
+					assemblies.remove(otherFileId);
+					String baseName = stateFile.getFileName().toString();
+					baseName = baseName.substring(0, baseName.length() - EXT_STATE.length());
+					Files.deleteIfExists(workDir.resolve(baseName + EXT_PART));
+					Files.deleteIfExists(stateFile);
+				}
+			}
+		}
+	}
+	
+	private static class Assembly {
+		
+		private final String fileId;
+		
+		private final String filename;
+		
+		private final long size;
+		
+		private final int chunkSize;
+		
+		private final String expectedDigest;
+		
+		private final Path partFile;
+		
+		private final Path stateFile;
+		
+		private final MessageDigest digest = HashUtils.createDigest();
+		
+		private BitSet received;
+		
+		private long hashedLength;
+		
+		private boolean complete;
+		
+		Assembly(String fileId, String filename, long size, int count, int chunkSize, String expectedDigest,
+		    Path partFile, Path stateFile) {
+			this.fileId = fileId;
+			this.filename = filename;
+			this.size = size;
+			this.chunkSize = chunkSize;
+			this.expectedDigest = expectedDigest;
+			this.partFile = partFile;
+			this.stateFile = stateFile;
+			this.received = new BitSet(count);
+		}
+		
+	}
+	
+}
@@ -3,9 +3,13 @@ package org.openmrs.eip.dbsync.receiver;
 import static org.openmrs.eip.dbsync.SyncConstants.PLACEHOLDER_CLASS;
 import static org.openmrs.eip.dbsync.SyncConstants.QUERY_SAVE_HASH;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 
 import org.apache.camel.Exchange;
@@ -31,7 +35,6 @@ public class ComplexObsProcessor implements Processor {
 	
 	@Override
 	public void process(Exchange exchange) throws Exception {
-		InputStream inputStream = exchange.getIn().getBody(InputStream.class);
 		String filename = exchange.getMessage().getHeader(Exchange.FILE_NAME_ONLY, String.class);
 		File complexObsFile = HashUtils.getComplexObsFile(filename);
 		ProducerTemplate producerTemplate = SyncContext.getBean(ProducerTemplate.class);
@@ -75,11 +78,14 @@ public class ComplexObsProcessor implements Processor {
 				}
 			}
 			
-			byte[] contents = IOUtils.toByteArray(inputStream);
-			storedHash.setHash(HashUtils.computeHashForBytes(contents));
+			storedHash.setHash(computeIncomingHash(exchange));
 			
-			producerTemplate.sendBody(QUERY_SAVE_HASH.replace(PLACEHOLDER_CLASS, ComplexObsHash.class.getSimpleName()),
-			    storedHash);
+			if (HashUtils.isDirectSaveEnabled()) {
+				HashUtils.saveHash(storedHash);
+			} else {
+				producerTemplate.sendBody(
+				    QUERY_SAVE_HASH.replace(PLACEHOLDER_CLASS, ComplexObsHash.class.getSimpleName()), storedHash);
+			}
 			
 			if (log.isDebugEnabled()) {
 				log.debug("Successfully saved the hash for the incoming complex obs file contents");
@@ -87,12 +93,7 @@ public class ComplexObsProcessor implements Processor {
 			
 			log.info("Saving complex obs file: " + filename);
 			
-			exchange.getMessage().setBody(new ByteArrayInputStream(contents));
-			producerTemplate.send("file:" + complexObsDir, exchange);
-			if (exchange.getException() != null) {
-				throw new SyncException("An error occurred while saving complex obs file: " + filename,
-				        exchange.getException());
-			}
+			saveFile(exchange, filename, complexObsDir, producerTemplate);
 		} else {
 			if (log.isDebugEnabled()) {
 				log.debug("Handling existing complex obs file -> " + complexObsFile);
@@ -103,11 +104,11 @@ public class ComplexObsProcessor implements Processor {
 				throw new SyncException("Failed to find the existing hash for an existing complex obs file");
 			}
 			
-			byte[] contents = IOUtils.toByteArray(inputStream);
-			String newHash = HashUtils.computeHashForBytes(contents);
+			String newHash = computeIncomingHash(exchange);
 			String currentHash = HashUtils.computeHashForFile(complexObsFile);
 			if (!currentHash.equals(storedHash.getHash())) {
-				log.info("Payload: " + new String(contents));
+				Object body = exchange.getMessage().getBody();
+				log.info("Payload: " + (body instanceof byte[] ? new String((byte[]) body) : body));
 				if (currentHash.equals(newHash)) {
 					//This will typically happen if we update the entity but something goes wrong before or during
 					//update of the hash and the event comes back as a retry item
@@ -120,8 +121,7 @@ public class ComplexObsProcessor implements Processor {
 			
 			log.info("Saving complex obs file: " + filename);
 			
-			exchange.getMessage().setBody(new ByteArrayInputStream(contents));
-			producerTemplate.send("file:" + complexObsDir, exchange);
+			saveFile(exchange, filename, complexObsDir, producerTemplate);
 			
 			storedHash.setHash(newHash);
 			storedHash.setDateChanged(LocalDateTime.now());
@@ -130,7 +130,11 @@ public class ComplexObsProcessor implements Processor {
 				log.debug("Updating hash for the incoming complex obs file contents");
 			}
 			
-			producerTemplate.sendBody("jpa:" + ComplexObsHash.class.getSimpleName(), storedHash);
+			if (HashUtils.isDirectSaveEnabled()) {
+				HashUtils.saveHash(storedHash);
+			} else {
+				producerTemplate.sendBody("jpa:" + ComplexObsHash.class.getSimpleName(), storedHash);
+			}
 			
 			if (log.isDebugEnabled()) {
 				log.debug("Successfully updated the hash for the incoming complex obs file contents");
@@ -138,4 +142,46 @@ public class ComplexObsProcessor implements Processor {
 		}
 	}
 	
+	/**
+	 * Gets the hash of the incoming file contents, for a file reassembled from chunks this is the
+	 * digest already verified by {@link ComplexObsChunkAssembler} otherwise the body is read into
+	 * memory and replaced with the read bytes so that it can be read again when saving the file
+	 */
+	private String computeIncomingHash(Exchange exchange) throws IOException {
+		Object body = exchange.getMessage().getBody();
+		if (body instanceof File) {
+			String digest = exchange.getProperty(ComplexObsChunkAssembler.EX_PROP_FILE_DIGEST, String.class);
+			return digest != null ? digest.toLowerCase() : HashUtils.computeHashForFile((File) body);
+		}
+		
+		byte[] contents = IOUtils.toByteArray(exchange.getMessage().getBody(InputStream.class));
+		exchange.getMessage().setBody(contents);
+		return HashUtils.computeHashForBytes(contents);
+	}
+	
+	/**
+	 * Saves the incoming file contents, a file reassembled from chunks is atomically moved into place
+	 * instead of being copied
+	 */
+	private void saveFile(Exchange exchange, String filename, String complexObsDir, ProducerTemplate producerTemplate)
+	    throws IOException {
+		Object body = exchange.getMessage().getBody();
+		if (body instanceof File) {
+			Path dir = Paths.get(complexObsDir).toAbsolutePath().normalize();
+			Path target = dir.resolve(filename).normalize();
+			if (!dir.equals(target.getParent())) {
+				throw new SyncException("Complex obs file name resolves outside the complex obs directory: " + filename);
+			}
+			
+			Files.move(((File) body).toPath(), target, StandardCopyOption.ATOMIC_MOVE);
+			return;
+		}
+		
+		producerTemplate.send("file:" + complexObsDir, exchange);
+		if (exchange.getException() != null) {
+			throw new SyncException("An error occurred while saving complex obs file: " + filename,
+			        exchange.getException());
+		}
+	}
+	
 }
@@ -4,11 +4,19 @@ import static java.util.Collections.synchronizedList;
 import static org.openmrs.eip.dbsync.utils.SyncUtils.getSyncedTableToSyncEnums;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import org.apache.camel.ProducerTemplate;
 import org.openmrs.eip.dbsync.SyncContext;
@@ -17,9 +25,12 @@ import org.openmrs.eip.dbsync.entity.Order;
 import org.openmrs.eip.dbsync.exception.ConflictsFoundException;
 import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
 import org.openmrs.eip.dbsync.mapper.EntityToModelMapper;
+import org.openmrs.eip.dbsync.model.BaseModel;
 import org.openmrs.eip.dbsync.receiver.management.entity.ConflictQueueItem;
 import org.openmrs.eip.dbsync.repository.SyncEntityRepository;
 import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.openmrs.eip.dbsync.service.facade.EntityServiceFacade;
+import org.openmrs.eip.dbsync.service.hash.EntityHashService;
 import org.openmrs.eip.dbsync.utils.HashUtils;
 import org.openmrs.eip.dbsync.utils.SyncUtils;
 import org.slf4j.Logger;
@@ -29,6 +40,8 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * Helper class for the {@link HashBatchUpdaterTask}
@@ -47,9 +60,16 @@ public class HashBatchUpdater {
 	
 	private List<CompletableFuture<Void>> futures;
 	
+	private boolean computeInDatabase;
+	
 	public HashBatchUpdater(int pageSize, ApplicationContext appContext) {
+		this(pageSize, appContext, false);
+	}
+	
+	public HashBatchUpdater(int pageSize, ApplicationContext appContext, boolean computeInDatabase) {
 		this.pageSize = pageSize;
 		this.appContext = appContext;
+		this.computeInDatabase = computeInDatabase;
 		executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 		futures = synchronizedList(new ArrayList(pageSize));
 	}
@@ -62,54 +82,41 @@ public class HashBatchUpdater {
 		checkForConflicts(tableToSyncEnums);
 		List<TableToSyncEnum> enums = tableToSyncEnums == null ? getSyncedTableToSyncEnums() : tableToSyncEnums;
 		EntityToModelMapper mapper = SyncContext.getBean(EntityToModelMapper.class);
+		TransactionTemplate txTemplate = new TransactionTemplate(SyncContext.getBean(PlatformTransactionManager.class));
+		txTemplate.setReadOnly(true);
 		
-		enums.forEach(syncEnum -> {
+		boolean ordersUpdated = false;
+		for (TableToSyncEnum syncEnum : enums) {
 			final Class<? extends BaseEntity> entityClass = syncEnum.getEntityClass();
-			final String entityClassName = entityClass.getSimpleName();
-			Class<? extends BaseHashEntity> hashClass = TableToSyncEnum.getTableToSyncEnumForType(entityClass)
-			        .getHashClass();
-			
-			log.info("Updating hashes for " + entityClassName + " entities");
-			
-			Class<? extends BaseEntity> entityRepoClass = entityClass;
-			if (SyncUtils.getOrderSubclassEnums().contains(syncEnum)) {
-				entityRepoClass = Order.class;
+			if (Order.class.isAssignableFrom(entityClass)) {
+				//All the order types are stored in the orders table, it is scanned once for all the requested types
+				if (!ordersUpdated) {
+					List<TableToSyncEnum> orderEnums = enums.stream()
+					        .filter(e -> Order.class.isAssignableFrom(e.getEntityClass())).collect(Collectors.toList());
+					updateOrderHashes(orderEnums, mapper, txTemplate);
+					ordersUpdated = true;
+				}
+				
+				continue;
 			}
 			
-			SyncEntityRepository repo = (SyncEntityRepository) SyncUtils.getRepository(entityRepoClass, appContext);
-			Page<BaseEntity> page = null;
+			final Class<? extends BaseHashEntity> hashClass = TableToSyncEnum.getTableToSyncEnumForType(entityClass)
+			        .getHashClass();
 			
-			do {
-				page = getNextPage(repo, page);
-				
-				if (log.isDebugEnabled()) {
-					log.debug("Page -> " + page);
-				}
+			log.info("Updating hashes for " + entityClass.getSimpleName() + " entities");
+			
+			if (computeInDatabase) {
+				Map<TableToSyncEnum, Class<? extends BaseHashEntity>> typeHashClasses = new LinkedHashMap();
+				Arrays.stream(TableToSyncEnum.values()).filter(e -> entityClass.isAssignableFrom(e.getEntityClass()))
+				        .forEach(e -> typeHashClasses.put(e, hashClass));
 				
-				if (page.isFirst()) {
-					log.info("Total Count Of " + entityClassName + "s: " + page.getTotalElements());
-					log.info("Total Page Count Of " + entityClassName + "s: " + page.getTotalPages());
+				if (updateInDatabase(typeHashClasses, txTemplate)) {
+					continue;
 				}
-				
-				page.getContent().forEach(entity -> {
-					futures.add(CompletableFuture.runAsync(() -> {
-						try {
-							HashUtils.createOrUpdateHash(mapper.apply(entity), hashClass);
-						}
-						catch (Throwable t) {
-							log.error("An error occurred while updating hash for " + entity.getClass().getSimpleName()
-							        + " with uuid " + entity.getUuid());
-							throw t;
-						}
-						
-					}, executor));
-				});
-				
-				waitForFutures(futures);
-				futures.clear();
-				
-			} while (!page.isLast());
-		});
+			}
+			
+			updateHashes(entityClass, entity -> true, model -> hashClass, mapper, txTemplate);
+		}
 		
 		log.info("Shutting down executor for hash updater threads");
 		
@@ -127,6 +134,168 @@ public class HashBatchUpdater {
 		}
 	}
 	
+	/**
+	 * Updates the hashes of the specified order types in a single pass over the order repository, each
+	 * row is mapped by the mapper of its concrete type and its hash saved in the matching hash table,
+	 * rows of the order types that were not requested are skipped.
+	 *
+	 * @param orderEnums the {@link TableToSyncEnum}s of the order types to update
+	 * @param mapper the {@link EntityToModelMapper} instance
+	 * @param txTemplate the {@link TransactionTemplate} in which to load the entities
+	 */
+	protected void updateOrderHashes(List<TableToSyncEnum> orderEnums, EntityToModelMapper mapper,
+	    TransactionTemplate txTemplate) {
+		
+		log.info("Updating hashes for " + orderEnums.stream().map(e -> e.getEntityClass().getSimpleName())
+		        .collect(Collectors.joining(", ")) + " entities");
+		
+		if (computeInDatabase) {
+			//The database computes the hashes per concrete type so each row is already dispatched to its hash table
+			Map<TableToSyncEnum, Class<? extends BaseHashEntity>> typeHashClasses = new LinkedHashMap();
+			orderEnums.forEach(e -> typeHashClasses.put(e, e.getHashClass()));
+			if (updateInDatabase(typeHashClasses, txTemplate)) {
+				return;
+			}
+		}
+		
+		Set<Class<? extends BaseEntity>> orderClasses = orderEnums.stream().map(TableToSyncEnum::getEntityClass)
+		        .collect(Collectors.toSet());
+		
+		updateHashes(Order.class, entity -> orderClasses.contains(entity.getClass()),
+		    model -> TableToSyncEnum.getHashClass(model), mapper, txTemplate);
+	}
+	
+	/**
+	 * Pages through all the entities in the repository of the specified entity type, maps them to models
+	 * and updates their hashes in parallel.
+	 *
+	 * @param entityRepoClass the entity type whose repository to page through
+	 * @param filter specifies the entities to hash
+	 * @param hashClassResolver resolves the hash entity type to save for a model
+	 * @param mapper the {@link EntityToModelMapper} instance
+	 * @param txTemplate the {@link TransactionTemplate} in which to load the entities
+	 */
+	protected void updateHashes(Class<? extends BaseEntity> entityRepoClass, Predicate<BaseEntity> filter,
+	    Function<BaseModel, Class<? extends BaseHashEntity>> hashClassResolver, EntityToModelMapper mapper,
+	    TransactionTemplate txTemplate) {
+		
+		final String entityClassName = entityRepoClass.getSimpleName();
+		SyncEntityRepository repo = (SyncEntityRepository) SyncUtils.getRepository(entityRepoClass, appContext);
+		Page<BaseEntity> page = null;
+		
+		do {
+			final Page<BaseEntity> previousPage = page;
+			final List<BaseModel> models = new ArrayList(pageSize);
+			//Entities are mapped in the transaction in which they are loaded so that their lazy linked entities can
+			//be loaded, only the hashes are computed and saved in parallel
+			page = txTemplate.execute(status -> {
+				Page<BaseEntity> nextPage = getNextPage(repo, previousPage);
+				nextPage.getContent().stream().filter(filter)
+				        .forEach(entity -> models.add((BaseModel) mapper.apply(entity)));
+				return nextPage;
+			});
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Page -> " + page);
+			}
+			
+			if (page.isFirst()) {
+				log.info("Total Count Of " + entityClassName + "s: " + page.getTotalElements());
+				log.info("Total Page Count Of " + entityClassName + "s: " + page.getTotalPages());
+			}
+			
+			models.forEach(model -> {
+				final Class<? extends BaseHashEntity> hashClass = hashClassResolver.apply(model);
+				futures.add(CompletableFuture.runAsync(() -> {
+					try {
+						HashUtils.createOrUpdateHash(model, hashClass);
+					}
+					catch (Throwable t) {
+						log.error("An error occurred while updating hash for " + model.getClass().getSimpleName()
+						        + " with uuid " + model.getUuid());
+						throw t;
+					}
+					
+				}, executor));
+			});
+			
+			waitForFutures(futures);
+			futures.clear();
+			
+		} while (!page.isLast());
+	}
+	
+	/**
+	 * Updates the hashes of all the entities of the specified types with hashes computed in the OpenMRS
+	 * database, rows for which the database can't reproduce the hash are mapped and hashed in java.
+	 *
+	 * @param typeHashClasses map of the {@link TableToSyncEnum}s of the entity types to the hash entity
+	 *            types to save
+	 * @param txTemplate the {@link TransactionTemplate} in which to load entities hashed in java
+	 * @return true if the hashes were updated otherwise false if the database can't compute the hashes
+	 *         for any of the entity types
+	 */
+	protected boolean updateInDatabase(Map<TableToSyncEnum, Class<? extends BaseHashEntity>> typeHashClasses,
+	    TransactionTemplate txTemplate) {
+		
+		EntityHashService hashService = SyncContext.getBean(EntityHashService.class);
+		if (!typeHashClasses.keySet().stream().allMatch(e -> hashService.isSupported(e.getEntityClass()))) {
+			log.info("Hashes for " + typeHashClasses.keySet().stream().map(e -> e.getEntityClass().getSimpleName())
+			        .collect(Collectors.joining(", ")) + " entities can't be computed in the database");
+			return false;
+		}
+		
+		EntityServiceFacade facade = SyncContext.getBean(EntityServiceFacade.class);
+		for (Map.Entry<TableToSyncEnum, Class<? extends BaseHashEntity>> entry : typeHashClasses.entrySet()) {
+			final TableToSyncEnum typeEnum = entry.getKey();
+			final Class<? extends BaseHashEntity> hashClass = entry.getValue();
+			final String entityClassName = typeEnum.getEntityClass().getSimpleName();
+			final List<String> uuidsToHashInJava = new ArrayList();
+			final AtomicLong count = new AtomicLong();
+			
+			log.info("Computing hashes for " + entityClassName + " entities in the database");
+			
+			hashService.forEachHash(typeEnum.getEntityClass(), (uuid, hash) -> {
+				count.incrementAndGet();
+				if (hash == null) {
+					uuidsToHashInJava.add(uuid);
+					return;
+				}
+				
+				futures.add(CompletableFuture.runAsync(() -> {
+					try {
+						HashUtils.createOrUpdateHash(uuid, hash, hashClass);
+					}
+					catch (Throwable t) {
+						log.error("An error occurred while updating hash for " + entityClassName + " with uuid " + uuid);
+						throw t;
+					}
+					
+				}, executor));
+				
+				if (futures.size() >= pageSize) {
+					waitForFutures(futures);
+					futures.clear();
+				}
+			});
+			
+			waitForFutures(futures);
+			futures.clear();
+			
+			log.info("Total Count Of " + entityClassName + "s: " + count.get() + ", hashed in java: "
+			        + uuidsToHashInJava.size());
+			
+			for (String uuid : uuidsToHashInJava) {
+				BaseModel model = txTemplate.execute(status -> facade.getModel(typeEnum, uuid));
+				if (model != null) {
+					HashUtils.createOrUpdateHash(model, hashClass);
+				}
+			}
+		}
+		
+		return true;
+	}
+	
 	protected void checkForConflicts(List<TableToSyncEnum> tableToSyncEnums) {
 		ProducerTemplate producerTemplate = SyncContext.getBean(ProducerTemplate.class);
 		final String type = ConflictQueueItem.class.getSimpleName();
@@ -27,9 +27,10 @@ public class HashBatchUpdaterTask implements Runnable {
 	
 	private List<String> tables;
 	
-	public HashBatchUpdaterTask(List<String> hashUpdateTables, ApplicationContext appContext) {
+	public HashBatchUpdaterTask(List<String> hashUpdateTables, ApplicationContext appContext,
+	    boolean computeInDatabase) {
 		this.tables = hashUpdateTables;
-		updater = new HashBatchUpdater(PAGE_SIZE, appContext);
+		updater = new HashBatchUpdater(PAGE_SIZE, appContext, computeInDatabase);
 	}
 	
 	@Override
@@ -0,0 +1,46 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import org.openmrs.eip.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Task that converts the hash tables in the management database to the specified storage mode, see
+ * {@link HashStorageMigrator}
+ */
+public class HashStorageMigrationTask implements Runnable {
+	
+	private static final Logger log = LoggerFactory.getLogger(HashStorageMigrationTask.class);
+	
+	private HashStorageMigrator migrator;
+	
+	private boolean binary;
+	
+	public HashStorageMigrationTask(HashStorageMigrator migrator, boolean binary) {
+		this.migrator = migrator;
+		this.binary = binary;
+	}
+	
+	@Override
+	public void run() {
+		try {
+			log.info("Converting hash tables to " + (binary ? HashStorageMigrator.STORAGE_BINARY
+			        : HashStorageMigrator.STORAGE_TEXT) + " storage");
+			
+			migrator.migrateAll(binary);
+			
+			log.info("Successfully converted hash tables, please remove the hashes.storage.migrate.to property");
+		}
+		catch (Throwable t) {
+			log.error("An error occurred while converting hash tables", t);
+		}
+		finally {
+			migrator = null;
+			
+			log.info("Shutting down the application");
+			
+			Utils.shutdown();
+		}
+	}
+	
+}
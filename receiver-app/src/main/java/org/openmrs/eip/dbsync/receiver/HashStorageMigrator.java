@@ -0,0 +1,289 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import static org.openmrs.eip.Constants.MGT_DATASOURCE_NAME;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Table;
+import javax.sql.DataSource;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
+import org.openmrs.eip.dbsync.management.hash.entity.HashColumnType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Detects and converts the storage mode of the identifier and hash columns of the hash tables in the
+ * management database, in binary mode uuid identifiers and hashes take 16 bytes instead of 36 and 32
+ * characters which makes the unique index on the identifier a lot smaller. A table is converted by
+ * copying its rows in batches into a new table with the target column types and then swapping the
+ * tables, the original table is only read in short transactions until the swap which is a single
+ * atomic rename in MySQL. The storage mode used by {@link HashColumnType} is set from the column
+ * types at startup and conversion is expected to run while the receiver routes are stopped.
+ */
+@Component("hashStorageMigrator")
+public class HashStorageMigrator {
+	
+	protected static final Logger log = LoggerFactory.getLogger(HashStorageMigrator.class);
+	
+	public static final String STORAGE_TEXT = "text";
+	
+	public static final String STORAGE_BINARY = "binary";
+	
+	private static final String SUFFIX_CONVERSION = "_conversion";
+	
+	private static final String SUFFIX_REPLACED = "_replaced";
+	
+	private static final String COLUMNS = "id, identifier, hash, date_created, date_changed";
+	
+	private static final int BENCHMARK_SIZE = 1000;
+	
+	private final JdbcTemplate jdbcTemplate;
+	
+	private final TransactionTemplate txTemplate;
+	
+	private final EntityManagerFactory entityManagerFactory;
+	
+	private final int batchSize;
+	
+	private final String migrateTo;
+	
+	private boolean mysql;
+	
+	public HashStorageMigrator(@Qualifier(MGT_DATASOURCE_NAME) DataSource dataSource,
+	    @Qualifier("mngtEntityManager") EntityManagerFactory entityManagerFactory,
+	    @Value("${hashes.storage.migrate.batch.size:1000}") int batchSize,
+	    @Value("${hashes.storage.migrate.to:}") String migrateTo) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		this.entityManagerFactory = entityManagerFactory;
+		this.batchSize = batchSize;
+		this.migrateTo = migrateTo;
+	}
+	
+	/**
+	 * Checks if the specified storage mode name is binary
+	 *
+	 * @param storage the storage mode name
+	 * @return true for binary, false for text
+	 */
+	public static boolean isBinaryStorage(String storage) {
+		if (STORAGE_BINARY.equalsIgnoreCase(storage)) {
+			return true;
+		} else if (STORAGE_TEXT.equalsIgnoreCase(storage)) {
+			return false;
+		}
+		
+		throw new SyncException("Invalid hash storage mode: " + storage + ", supported values are " + STORAGE_TEXT
+		        + " and " + STORAGE_BINARY);
+	}
+	
+	@PostConstruct
+	public void detectStorageMode() {
+		mysql = jdbcTemplate.execute((Connection c) -> {
+			DatabaseMetaData metadata = c.getMetaData();
+			return metadata.getDatabaseProductName().toLowerCase().contains("mysql");
+		});
+		
+		Map<String, Boolean> modes = getStorageModes();
+		List<String> binaryTables = modes.entrySet().stream().filter(e -> e.getValue()).map(e -> e.getKey())
+		        .collect(Collectors.toList());
+		
+		if (!binaryTables.isEmpty() && binaryTables.size() < modes.size()) {
+			if (StringUtils.isBlank(migrateTo)) {
+				throw new SyncException("Only some of the hash tables use binary storage " + binaryTables
+				        + ", please set the hashes.storage.migrate.to property to complete the conversion");
+			}
+			
+			log.warn("Only some of the hash tables use binary storage " + binaryTables);
+		}
+		
+		HashColumnType.setBinary(!binaryTables.isEmpty() && binaryTables.size() == modes.size());
+		
+		log.info("Hash storage mode: " + (HashColumnType.isBinary() ? STORAGE_BINARY : STORAGE_TEXT));
+	}
+	
+	/**
+	 * Converts all the hash tables to the specified storage mode
+	 *
+	 * @param binary true to convert to binary storage otherwise false
+	 */
+	public void migrateAll(boolean binary) {
+		for (String table : getStorageModes().keySet()) {
+			migrate(table, binary);
+		}
+		
+		HashColumnType.setBinary(binary);
+	}
+	
+	/**
+	 * Converts the specified hash table to the specified storage mode if it is not already using it
+	 *
+	 * @param table the table name
+	 * @param binary true to convert to binary storage otherwise false
+	 * @return true if the table was converted otherwise false
+	 */
+	public boolean migrate(String table, boolean binary) {
+		if (isBinary(table) == binary) {
+			log.info("Skipping " + table + " which is already using " + (binary ? STORAGE_BINARY : STORAGE_TEXT)
+			        + " storage");
+			return false;
+		}
+		
+		log.info("Converting " + table + " to " + (binary ? STORAGE_BINARY : STORAGE_TEXT) + " storage");
+		
+		final long start = System.currentTimeMillis();
+		List<String> sample = jdbcTemplate.queryForList("SELECT identifier FROM " + table + " ORDER BY id LIMIT ?",
+		    Object.class, BENCHMARK_SIZE).stream().map(v -> HashColumnType.fromColumnValue(v, true))
+		        .collect(Collectors.toList());
+		final double lookupBefore = benchmarkLookups(table, sample, !binary);
+		final String conversionTable = table + SUFFIX_CONVERSION;
+		createConversionTable(table, conversionTable, binary);
+		
+		long copied = 0;
+		long lastId = 0;
+		while (true) {
+			final long fromId = lastId;
+			List<Object[]> rows = jdbcTemplate.query(
+			    "SELECT " + COLUMNS + " FROM " + table + " WHERE id > ? ORDER BY id LIMIT ?",
+			    (rs, i) -> new Object[] { rs.getLong(1), convert(rs.getObject(2), true, binary),
+			            convert(rs.getObject(3), false, binary), rs.getTimestamp(4), rs.getTimestamp(5) },
+			    fromId, batchSize);
+			
+			if (rows.isEmpty()) {
+				break;
+			}
+			
+			txTemplate.execute(status -> jdbcTemplate
+			        .batchUpdate("INSERT INTO " + conversionTable + " (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?)", rows));
+			
+			lastId = (Long) rows.get(rows.size() - 1)[0];
+			copied += rows.size();
+			if (log.isDebugEnabled()) {
+				log.debug("Copied " + copied + " rows from " + table);
+			}
+		}
+		
+		Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+		if (count != copied) {
+			throw new SyncException("Copied " + copied + " rows out of " + count + " from " + table
+			        + ", the table was modified during the conversion");
+		}
+		
+		swapTables(table, conversionTable, lastId);
+		
+		final double lookupAfter = benchmarkLookups(table, sample, binary);
+		
+		log.info("Converted " + copied + " rows in " + table + " in " + (System.currentTimeMillis() - start)
+		        + "ms, average lookup time before: " + String.format("%.1f", lookupBefore) + "us, after: "
+		        + String.format("%.1f", lookupAfter) + "us");
+		
+		return true;
+	}
+	
+	/**
+	 * Gets the storage mode of each hash table
+	 *
+	 * @return map of table names to true for binary storage or false for text storage
+	 */
+	protected Map<String, Boolean> getStorageModes() {
+		Map<String, Boolean> modes = new TreeMap();
+		entityManagerFactory.getMetamodel().getEntities().stream()
+		        .filter(e -> BaseHashEntity.class.isAssignableFrom(e.getJavaType()))
+		        .map(e -> e.getJavaType().getAnnotation(Table.class).name()).forEach(t -> modes.put(t, isBinary(t)));
+		
+		return modes;
+	}
+	
+	/**
+	 * Checks if the identifier column of the specified table uses binary storage
+	 *
+	 * @param table the table name
+	 * @return true for binary storage otherwise false
+	 */
+	protected boolean isBinary(String table) {
+		return jdbcTemplate.query("SELECT identifier FROM " + table + " WHERE 1 = 0", rs -> {
+			int type = rs.getMetaData().getColumnType(1);
+			return type == Types.BINARY || type == Types.VARBINARY || type == Types.LONGVARBINARY;
+		});
+	}
+	
+	/**
+	 * Measures the average time in microseconds it takes to look up a row by identifier
+	 *
+	 * @param table the table name
+	 * @param identifiers the identifiers to look up
+	 * @param binary specifies if the table uses binary storage
+	 * @return the average time
+	 */
+	protected double benchmarkLookups(String table, List<String> identifiers, boolean binary) {
+		if (identifiers.isEmpty()) {
+			return 0;
+		}
+		
+		final String sql = "SELECT id FROM " + table + " WHERE identifier = ?";
+		final long start = System.nanoTime();
+		for (String identifier : identifiers) {
+			jdbcTemplate.queryForList(sql, Long.class, convert(identifier, true, binary));
+		}
+		
+		return (System.nanoTime() - start) / 1000.0 / identifiers.size();
+	}
+	
+	private Object convert(Object value, boolean identifier, boolean binary) {
+		String text = HashColumnType.fromColumnValue(value, identifier);
+		if (text == null || !binary) {
+			return text;
+		}
+		
+		return HashColumnType.toBytes(text, identifier);
+	}
+	
+	private void createConversionTable(String table, String conversionTable, boolean binary) {
+		jdbcTemplate.execute("DROP TABLE IF EXISTS " + conversionTable);
+		
+		final String identifierType = binary ? "VARBINARY(255)" : "VARCHAR(255)";
+		final String hashType = binary ? "VARBINARY(32)" : "VARCHAR(32)";
+		if (mysql) {
+			//Keeps the exact column definitions and indexes of the original table
+			jdbcTemplate.execute("CREATE TABLE " + conversionTable + " LIKE " + table);
+			jdbcTemplate.execute("ALTER TABLE " + conversionTable + " MODIFY identifier " + identifierType
+			        + " NOT NULL, MODIFY hash " + hashType + " NOT NULL");
+		} else {
+			jdbcTemplate.execute("CREATE TABLE " + conversionTable + " (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+			        + "identifier " + identifierType + " NOT NULL UNIQUE, hash " + hashType + " NOT NULL, "
+			        + "date_created TIMESTAMP(3) NOT NULL, date_changed TIMESTAMP(3) NULL)");
+		}
+	}
+	
+	private void swapTables(String table, String conversionTable, long maxId) {
+		final String replacedTable = table + SUFFIX_REPLACED;
+		jdbcTemplate.execute("DROP TABLE IF EXISTS " + replacedTable);
+		if (mysql) {
+			jdbcTemplate.execute("RENAME TABLE " + table + " TO " + replacedTable + ", " + conversionTable + " TO " + table);
+		} else {
+			jdbcTemplate.execute("ALTER TABLE " + table + " RENAME TO " + replacedTable);
+			jdbcTemplate.execute("ALTER TABLE " + conversionTable + " RENAME TO " + table);
+			jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id RESTART WITH " + (maxId + 1));
+		}
+		
+		jdbcTemplate.execute("DROP TABLE " + replacedTable);
+	}
+	
+}
@@ -0,0 +1,169 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.openmrs.eip.Utils;
+import org.openmrs.eip.dbsync.SyncConstants;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
+import org.openmrs.eip.dbsync.management.hash.repository.BaseHashRepository;
+import org.openmrs.eip.dbsync.service.hash.MappedHashStore;
+import org.openmrs.eip.dbsync.utils.SyncUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Task that copies all the hashes from the hash tables in the management database to the
+ * {@link MappedHashStore} or the other way round, existing hashes at the destination are replaced.
+ */
+public class HashStoreTransferTask implements Runnable {
+	
+	private static final Logger log = LoggerFactory.getLogger(HashStoreTransferTask.class);
+	
+	public static final String IMPORT = "import";
+	
+	public static final String EXPORT = "export";
+	
+	private static final int BATCH_SIZE = 1000;
+	
+	private final boolean importHashes;
+	
+	private ApplicationContext appContext;
+	
+	public HashStoreTransferTask(String direction, ApplicationContext appContext) {
+		if (IMPORT.equalsIgnoreCase(direction)) {
+			importHashes = true;
+		} else if (EXPORT.equalsIgnoreCase(direction)) {
+			importHashes = false;
+		} else {
+			throw new SyncException(
+			        "Invalid hash store transfer: " + direction + ", supported values are " + IMPORT + " and " + EXPORT);
+		}
+		
+		this.appContext = appContext;
+	}
+	
+	@Override
+	public void run() {
+		try {
+			if (appContext.getBeanNamesForType(MappedHashStore.class).length == 0) {
+				throw new SyncException("Transferring hashes requires " + SyncConstants.PROP_HASH_STORE + "="
+				        + MappedHashStore.NAME);
+			}
+			
+			MappedHashStore store = appContext.getBean(MappedHashStore.class);
+			for (Class<? extends BaseHashEntity> hashClass : getHashClasses()) {
+				final long count = importHashes ? importHashes(store, hashClass) : exportHashes(store, hashClass);
+				log.info((importHashes ? "Imported " : "Exported ") + count + " " + hashClass.getSimpleName() + "(s)");
+			}
+			
+			if (importHashes) {
+				store.flush();
+			}
+			
+			log.info("Successfully transferred hashes, please remove the hashes.store.transfer property");
+		}
+		catch (Throwable t) {
+			log.error("An error occurred while transferring hashes", t);
+		}
+		finally {
+			appContext = null;
+			
+			log.info("Shutting down the application");
+			
+			Utils.shutdown();
+		}
+	}
+	
+	/**
+	 * Copies the hashes of the specified type from the management database to the store
+	 *
+	 * @param store the {@link MappedHashStore} instance
+	 * @param hashClass the hash class
+	 * @return the number of copied hashes
+	 */
+	protected long importHashes(MappedHashStore store, Class<? extends BaseHashEntity> hashClass) {
+		BaseHashRepository<BaseHashEntity> repo = getRepository(hashClass);
+		long count = 0;
+		Page<BaseHashEntity> page = repo.findAll(PageRequest.of(0, BATCH_SIZE, Sort.by("id")));
+		while (page.hasContent()) {
+			store.saveAll(page.getContent());
+			count += page.getNumberOfElements();
+			if (!page.hasNext()) {
+				break;
+			}
+			
+			page = repo.findAll(page.nextPageable());
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Copies the hashes of the specified type from the store to the management database
+	 *
+	 * @param store the {@link MappedHashStore} instance
+	 * @param hashClass the hash class
+	 * @return the number of copied hashes
+	 */
+	protected long exportHashes(MappedHashStore store, Class<? extends BaseHashEntity> hashClass) {
+		BaseHashRepository<BaseHashEntity> repo = getRepository(hashClass);
+		TransactionTemplate txTemplate = new TransactionTemplate(
+		        appContext.getBean("mngtTransactionManager", PlatformTransactionManager.class));
+		List<BaseHashEntity> batch = new ArrayList(BATCH_SIZE);
+		long[] count = new long[1];
+		store.forEach(hashClass, hash -> {
+			batch.add(hash);
+			if (batch.size() == BATCH_SIZE) {
+				count[0] += save(repo, batch, txTemplate);
+			}
+		});
+		
+		count[0] += save(repo, batch, txTemplate);
+		
+		return count[0];
+	}
+	
+	private int save(BaseHashRepository<BaseHashEntity> repo, List<BaseHashEntity> batch,
+	                 TransactionTemplate txTemplate) {
+		final int size = batch.size();
+		if (size > 0) {
+			txTemplate.execute(status -> {
+				for (BaseHashEntity hash : batch) {
+					BaseHashEntity existing = repo.findByIdentifier(hash.getIdentifier());
+					if (existing != null) {
+						hash.setId(existing.getId());
+					}
+				}
+				
+				return repo.saveAll(batch);
+			});
+			
+			batch.clear();
+		}
+		
+		return size;
+	}
+	
+	private List<Class<? extends BaseHashEntity>> getHashClasses() {
+		EntityManagerFactory emf = appContext.getBean("mngtEntityManager", EntityManagerFactory.class);
+		return emf.getMetamodel().getEntities().stream().map(e -> e.getJavaType())
+		        .filter(c -> BaseHashEntity.class.isAssignableFrom(c)).map(c -> (Class<? extends BaseHashEntity>) c)
+		        .sorted((c1, c2) -> c1.getSimpleName().compareTo(c2.getSimpleName())).collect(Collectors.toList());
+	}
+	
+	private static BaseHashRepository<BaseHashEntity> getRepository(Class<? extends BaseHashEntity> hashClass) {
+		return SyncUtils.getJpaRepository((Class) hashClass, BaseHashRepository.class);
+	}
+	
+}
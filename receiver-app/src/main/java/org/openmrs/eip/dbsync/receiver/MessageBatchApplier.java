@@ -0,0 +1,159 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import static org.openmrs.eip.dbsync.SyncConstants.PLACEHOLDER_CLASS;
+import static org.openmrs.eip.dbsync.SyncConstants.QUERY_SAVE_HASH;
+import static org.openmrs.eip.dbsync.receiver.ReceiverConstants.EX_PROP_MSG_PROCESSED;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.openmrs.eip.dbsync.camel.BatchApplyContext;
+import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
+import org.openmrs.eip.dbsync.receiver.management.entity.SyncMessage;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * Applies a group of sync messages for different entities in a single OpenMRS database transaction
+ * so that the group costs a single commit instead of one per message, changes for each message are
+ * flushed when the message is loaded which also allows Hibernate to batch the statements of each
+ * flush when JDBC batching is enabled.
+ * <p>
+ * A savepoint is created before each message, if a message fails, it is moved to the retry or
+ * conflict queue by the route as usual and its changes are rolled back to the savepoint so that the
+ * rest of the group is still committed. Hibernate marks the entire transaction for rollback when a
+ * database statement fails in which case the transaction is rolled back and the messages in the
+ * group are applied one by one instead. Entity hashes and the removal of the messages from the sync
+ * queue are saved after the OpenMRS transaction is committed.
+ */
+public class MessageBatchApplier {
+	
+	protected static final Logger log = LoggerFactory.getLogger(MessageBatchApplier.class);
+	
+	private final PlatformTransactionManager txManager;
+	
+	private final EntityManagerFactory entityManagerFactory;
+	
+	private final ProducerTemplate producerTemplate;
+	
+	public MessageBatchApplier(PlatformTransactionManager txManager, EntityManagerFactory entityManagerFactory,
+	    ProducerTemplate producerTemplate) {
+		this.txManager = txManager;
+		this.entityManagerFactory = entityManagerFactory;
+		this.producerTemplate = producerTemplate;
+	}
+	
+	/**
+	 * Applies the specified messages in a single OpenMRS database transaction
+	 *
+	 * @param messages the messages to apply
+	 * @param applier sends a message through the message processor route
+	 * @param completer moves a message out of the sync queue after it is applied or moved to another
+	 *            queue
+	 * @param individualProcessor applies and completes a message in its own transaction
+	 */
+	public void apply(List<SyncMessage> messages, Function<SyncMessage, Exchange> applier,
+	                  BiConsumer<SyncMessage, Exchange> completer, Consumer<SyncMessage> individualProcessor) {
+		
+		log.info("Applying " + messages.size() + " message(s) in a single transaction");
+		
+		List<SyncMessage> applied = new ArrayList(messages.size());
+		List<Exchange> appliedExchanges = new ArrayList(messages.size());
+		List<BaseHashEntity> hashes = new ArrayList();
+		TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+		EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+		boolean fallback = false;
+		int index = 0;
+		try {
+			for (; index < messages.size(); index++) {
+				SyncMessage msg = messages.get(index);
+				Object savepoint = status.createSavepoint();
+				BatchApplyContext context = BatchApplyContext.begin(entityManager::flush);
+				Exchange exchange;
+				try {
+					exchange = applier.apply(msg);
+				}
+				finally {
+					BatchApplyContext.end();
+				}
+				
+				if (exchange.getProperty(EX_PROP_MSG_PROCESSED, false, Boolean.class)) {
+					status.releaseSavepoint(savepoint);
+					applied.add(msg);
+					appliedExchanges.add(exchange);
+					hashes.addAll(context.getHashes());
+					continue;
+				}
+				
+				//The message was moved to the retry or conflict queue by the route
+				if (status.isRollbackOnly()) {
+					log.info("The transaction was marked for rollback by a failed message, applying the rest of the group "
+					        + "one message at a time");
+					fallback = true;
+					completer.accept(msg, exchange);
+					index++;
+					break;
+				}
+				
+				status.rollbackToSavepoint(savepoint);
+				//Discard any entity loaded or saved for the failed message since its changes were rolled back
+				entityManager.clear();
+				completer.accept(msg, exchange);
+			}
+		}
+		catch (RuntimeException e) {
+			txManager.rollback(status);
+			throw e;
+		}
+		
+		if (fallback) {
+			txManager.rollback(status);
+		} else {
+			try {
+				txManager.commit(status);
+			}
+			catch (TransactionException e) {
+				log.warn("Failed to commit the transaction for the group, applying the messages one at a time", e);
+				fallback = true;
+			}
+		}
+		
+		if (fallback) {
+			applied.forEach(individualProcessor);
+			messages.subList(index, messages.size()).forEach(individualProcessor);
+			return;
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Saving " + hashes.size() + " hash(es) for the applied group");
+		}
+		
+		for (BaseHashEntity hash : hashes) {
+			if (HashUtils.isDirectSaveEnabled()) {
+				HashUtils.saveHash(hash);
+			} else {
+				producerTemplate.sendBody(QUERY_SAVE_HASH.replace(PLACEHOLDER_CLASS, hash.getClass().getSimpleName()),
+				    hash);
+			}
+		}
+		
+		for (int i = 0; i < applied.size(); i++) {
+			completer.accept(applied.get(i), appliedExchanges.get(i));
+		}
+	}
+	
+}
@@ -3,9 +3,15 @@ package org.openmrs.eip.dbsync.receiver;
 import static org.openmrs.eip.dbsync.receiver.ReceiverConstants.EX_PROP_MOVED_TO_CONFLICT_QUEUE;
 import static org.openmrs.eip.dbsync.receiver.ReceiverConstants.EX_PROP_MOVED_TO_ERROR_QUEUE;
 import static org.openmrs.eip.dbsync.receiver.ReceiverConstants.EX_PROP_MSG_PROCESSED;
+import static org.openmrs.eip.dbsync.receiver.ReceiverContext.PROP_REC_BATCH_APPLY_SIZE;
 import static org.openmrs.eip.dbsync.receiver.ReceiverContext.PROP_REC_CONSUMER_DELAY;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManagerFactory;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.ProducerTemplate;
@@ -14,12 +20,15 @@ import org.openmrs.eip.AppContext;
 import org.openmrs.eip.EIPException;
 import org.openmrs.eip.camel.CamelUtils;
 import org.openmrs.eip.dbsync.SyncContext;
+import org.openmrs.eip.dbsync.model.PatientModel;
 import org.openmrs.eip.dbsync.receiver.management.entity.SyncMessage;
 import org.openmrs.eip.dbsync.receiver.management.entity.SyncedMessage;
 import org.openmrs.eip.dbsync.receiver.management.repository.SyncedMessageRepository;
+import org.openmrs.eip.dbsync.service.claimcheck.ClaimCheckService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
+import org.springframework.transaction.PlatformTransactionManager;
 
 /**
  * An instance of this class consumes sync messages and forwards them to the message processor route
@@ -38,16 +47,26 @@ public class MessageConsumer implements Runnable {
 	
 	private SyncedMessageRepository syncedMsgRepo;
 	
+	private ClaimCheckService claimCheckService;
+	
 	private boolean errorEncountered = false;
 	
 	private Long delay;
 	
+	private Integer batchApplySize;
+	
+	private MessageBatchApplier batchApplier;
+	
+	private MessageSqlAccounting sqlAccounting;
+	
 	/**
 	 * @param producerTemplate {@link ProducerTemplate} object
 	 */
 	public MessageConsumer(ProducerTemplate producerTemplate) {
 		this.producerTemplate = producerTemplate;
 		syncedMsgRepo = AppContext.getBean(SyncedMessageRepository.class);
+		claimCheckService = AppContext.getBean(ClaimCheckService.class);
+		sqlAccounting = AppContext.getBean(MessageSqlAccounting.class);
 	}
 	
 	@Override
@@ -114,27 +133,133 @@ public class MessageConsumer implements Runnable {
 	private void processMessages(List<SyncMessage> syncMessages) {
 		log.info("Processing " + syncMessages.size() + " message(s)");
 		
+		final int batchSize = getBatchApplySize();
+		List<SyncMessage> group = new ArrayList();
+		Set<String> groupIdentifiers = new HashSet();
 		for (SyncMessage msg : syncMessages) {
 			if (ReceiverContext.isStopSignalReceived()) {
 				log.info("Sync message consumer has detected a stop signal");
+				group.clear();
 				break;
 			}
 			
-			processMessage(msg);
+			if (batchSize < 2) {
+				processMessage(msg);
+				continue;
+			}
+			
+			if (!canBeGrouped(msg)) {
+				applyGroup(group);
+				groupIdentifiers.clear();
+				processMessage(msg);
+				continue;
+			}
+			
+			//Messages in a group MUST be for different entities
+			if (!groupIdentifiers.add(msg.getIdentifier())) {
+				applyGroup(group);
+				groupIdentifiers.clear();
+				groupIdentifiers.add(msg.getIdentifier());
+			}
+			
+			group.add(msg);
+			if (group.size() >= batchSize) {
+				applyGroup(group);
+				groupIdentifiers.clear();
+			}
 		}
 		
+		applyGroup(group);
+	}
+	
+	/**
+	 * Applies the specified messages in a single OpenMRS transaction and clears the list
+	 *
+	 * @param group the messages to apply
+	 */
+	private void applyGroup(List<SyncMessage> group) {
+		if (group.size() == 1) {
+			processMessage(group.get(0));
+		} else if (group.size() > 1) {
+			if (batchApplier == null) {
+				//The OpenMRS transaction manager and entity manager factory are the primary beans
+				batchApplier = new MessageBatchApplier(SyncContext.getBean(PlatformTransactionManager.class),
+				        SyncContext.getBean(EntityManagerFactory.class), producerTemplate);
+			}
+			
+			//The commit is shared by the group, only the statements executed to apply each message are counted
+			batchApplier.apply(group, msg -> sqlAccounting.account(msg, () -> applyMessage(msg)), this::completeMessage,
+			    this::processMessage);
+		}
+		
+		group.clear();
+	}
+	
+	/**
+	 * Checks if the specified message can be applied as part of a group of messages in a single
+	 * transaction, patient rows are inserted in a separate transaction which can't see the person row
+	 * if it is inserted in the same group.
+	 *
+	 * @param msg the message to check
+	 * @return true if the message can be grouped otherwise false
+	 */
+	private boolean canBeGrouped(SyncMessage msg) {
+		return msg.getIdentifier() != null && !PatientModel.class.getName().equals(msg.getModelClassName());
+	}
+	
+	private int getBatchApplySize() {
+		if (batchApplySize == null) {
+			batchApplySize = SyncContext.getBean(Environment.class).getProperty(PROP_REC_BATCH_APPLY_SIZE, Integer.class,
+			    0);
+			if (batchApplySize > 1) {
+				log.info("Sync messages will be applied in groups of up to " + batchApplySize + " messages");
+			}
+		}
+		
+		return batchApplySize;
 	}
 	
 	private void processMessage(SyncMessage msg) {
+		sqlAccounting.account(msg, () -> {
+			completeMessage(msg, applyMessage(msg));
+			return null;
+		});
+	}
+	
+	/**
+	 * Sends the specified message through the message processor route
+	 *
+	 * @param msg the message to apply
+	 * @return the exchange
+	 */
+	private Exchange applyMessage(SyncMessage msg) {
 		final String originalThreadName = Thread.currentThread().getName();
-		Thread.currentThread()
-		        .setName(Utils.getSimpleName(msg.getModelClassName()) + "-" + msg.getIdentifier() + "-" + msg.getId());
+		setThreadName(msg);
 		
 		try {
 			Exchange exchange = ExchangeBuilder.anExchange(producerTemplate.getCamelContext()).withBody(msg).build();
 			
 			CamelUtils.send(ReceiverConstants.URI_MSG_PROCESSOR, exchange);
 			
+			return exchange;
+		}
+		finally {
+			Thread.currentThread().setName(originalThreadName);
+		}
+	}
+	
+	/**
+	 * Moves the specified message out of the sync queue after it is applied or moved to the retry or
+	 * conflict queue
+	 *
+	 * @param msg the message
+	 * @param exchange the exchange returned by the message processor route
+	 */
+	private void completeMessage(SyncMessage msg, Exchange exchange) {
+		final String originalThreadName = Thread.currentThread().getName();
+		setThreadName(msg);
+		
+		try {
 			boolean movedToConflict = exchange.getProperty(EX_PROP_MOVED_TO_CONFLICT_QUEUE, false, Boolean.class);
 			boolean movedToError = exchange.getProperty(EX_PROP_MOVED_TO_ERROR_QUEUE, false, Boolean.class);
 			boolean msgProcessed = exchange.getProperty(EX_PROP_MSG_PROCESSED, false, Boolean.class);
@@ -168,6 +293,11 @@ public class MessageConsumer implements Runnable {
 				if (log.isDebugEnabled()) {
 					log.debug("Successfully removed the sync message from the queue");
 				}
+				
+				if (msgProcessed) {
+					//The stored payload of a claim check reference is no longer needed
+					claimCheckService.release(msg.getEntityPayload());
+				}
 			} else {
 				throw new EIPException("Something went wrong while processing sync message with id: " + id);
 			}
@@ -177,4 +307,9 @@ public class MessageConsumer implements Runnable {
 		}
 	}
 	
+	private void setThreadName(SyncMessage msg) {
+		Thread.currentThread()
+		        .setName(Utils.getSimpleName(msg.getModelClassName()) + "-" + msg.getIdentifier() + "-" + msg.getId());
+	}
+	
 }
@@ -0,0 +1,111 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import static org.openmrs.eip.dbsync.SyncConstants.PROP_SQL_ACCOUNTING_ENABLED;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openmrs.eip.dbsync.jdbc.SqlStatistics;
+import org.openmrs.eip.dbsync.receiver.management.entity.SyncMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Counts the SQL statements, rows and database time spent to process each sync message, the counts
+ * are reported as distributions tagged by model class and datasource and a message that takes longer
+ * than the configured threshold is logged along with its counts.
+ */
+@Component
+public class MessageSqlAccounting implements MeterBinder {
+	
+	protected static final Logger log = LoggerFactory.getLogger(MessageSqlAccounting.class);
+	
+	public static final String DS_OPENMRS = "openmrs";
+	
+	public static final String DS_MANAGEMENT = "management";
+	
+	private static final String METER_PREFIX = "openmrs_dbsync_receiver_message_";
+	
+	private static final String TAG_MODEL = "model";
+	
+	private static final String TAG_DATASOURCE = "datasource";
+	
+	private final boolean enabled;
+	
+	private final long slowThresholdMillis;
+	
+	private MeterRegistry registry;
+	
+	public MessageSqlAccounting(@Value("${" + PROP_SQL_ACCOUNTING_ENABLED + ":false}") boolean enabled,
+	    @Value("${openmrs.eip.dbsync.sql.accounting.slow.message.threshold:1000}") long slowThresholdMillis) {
+		this.enabled = enabled;
+		this.slowThresholdMillis = slowThresholdMillis;
+	}
+	
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		this.registry = registry;
+	}
+	
+	/**
+	 * Runs the specified work for the specified message and records the statements it executes
+	 *
+	 * @param msg the sync message
+	 * @param work the work to run
+	 * @return the result of the work
+	 */
+	public <T> T account(SyncMessage msg, Supplier<T> work) {
+		if (!enabled) {
+			return work.get();
+		}
+		
+		SqlStatistics stats = SqlStatistics.begin();
+		try {
+			return work.get();
+		}
+		finally {
+			SqlStatistics.end();
+			record(msg, stats);
+		}
+	}
+	
+	protected void record(SyncMessage msg, SqlStatistics stats) {
+		final String model = Utils.getSimpleName(msg.getModelClassName());
+		final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(stats.getElapsedNanos());
+		if (log.isDebugEnabled()) {
+			log.debug("SQL statistics for sync message with id " + msg.getId() + ": " + stats);
+		}
+		
+		if (elapsedMillis >= slowThresholdMillis) {
+			log.warn("Slow sync message -> id: " + msg.getId() + ", model: " + model + ", identifier: "
+			        + msg.getIdentifier() + ", timeMs: " + elapsedMillis + ", sql: " + stats);
+		}
+		
+		if (registry == null) {
+			return;
+		}
+		
+		DistributionSummary.builder(METER_PREFIX + "hibernate_statements").tag(TAG_MODEL, model)
+		        .publishPercentileHistogram().register(registry).record(stats.getHibernateStatements());
+		
+		for (Map.Entry<String, SqlStatistics.Counts> entry : stats.getCounts().entrySet()) {
+			SqlStatistics.Counts counts = entry.getValue();
+			DistributionSummary.builder(METER_PREFIX + "statements").tag(TAG_MODEL, model)
+			        .tag(TAG_DATASOURCE, entry.getKey()).publishPercentileHistogram().register(registry)
+			        .record(counts.getStatements());
+			DistributionSummary.builder(METER_PREFIX + "rows").tag(TAG_MODEL, model).tag(TAG_DATASOURCE, entry.getKey())
+			        .publishPercentileHistogram().register(registry).record(counts.getRows());
+			Timer.builder(METER_PREFIX + "db_time").tag(TAG_MODEL, model).tag(TAG_DATASOURCE, entry.getKey())
+			        .publishPercentileHistogram().register(registry).record(counts.getNanos(), TimeUnit.NANOSECONDS);
+		}
+	}
+	
+}
@@ -23,6 +23,8 @@ public final class ReceiverContext {
 	
 	public static final String PROP_REC_CONSUMER_DELAY = "receiver.consumer.delay";
 	
+	public static final String PROP_REC_BATCH_APPLY_SIZE = "receiver.batch.apply.size";
+	
 	private static boolean isStopping = false;
 	
 	private static Map<String, SiteInfo> siteNameAndInfoMap = null;
@@ -0,0 +1,91 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.receiver.management.entity.SyncMessage;
+import org.openmrs.eip.dbsync.utils.BatchEnvelopeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unpacks a batch envelope received from a remote site into {@link SyncMessage} instances in the
+ * same order as the entities in the batch, the exchange body is replaced with the list of messages
+ * to save so that they are all persisted in a single transaction. The same rules applied by the
+ * receiver route to single entity messages are used to skip entities.
+ */
+@Component("syncBatchProcessor")
+public class SyncBatchProcessor implements Processor {
+	
+	protected static final Logger log = LoggerFactory.getLogger(SyncBatchProcessor.class);
+	
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	
+	@Override
+	public void process(Exchange exchange) {
+		List<String> payloads = BatchEnvelopeUtils.unwrap(exchange.getIn().getBody(String.class));
+		log.info("Received batch of " + payloads.size() + " entities");
+		
+		List<SyncMessage> messages = new ArrayList(payloads.size());
+		for (String payload : payloads) {
+			SyncMessage msg = createMessage(payload);
+			if (msg != null) {
+				messages.add(msg);
+			}
+		}
+		
+		exchange.getIn().setBody(messages);
+	}
+	
+	/**
+	 * Creates a {@link SyncMessage} for the specified entity payload
+	 *
+	 * @param payload the entity payload
+	 * @return the SyncMessage or null if the entity should be skipped
+	 */
+	protected SyncMessage createMessage(String payload) {
+		JsonNode root;
+		try {
+			root = MAPPER.readTree(payload);
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to parse entity payload in batch", e);
+		}
+		
+		final String modelClass = root.path("tableToSyncModelClass").asText(null);
+		final String identifier = root.path("model").path("uuid").asText(null);
+		final String operation = root.path("metadata").path("operation").asText(null);
+		final String sourceId = root.path("metadata").path("sourceIdentifier").asText(null);
+		log.info("Entity: " + modelClass + ", identifier=" + identifier + ", source=" + sourceId);
+		
+		if (Utils.skipSync(modelClass, identifier)) {
+			log.info("Skipping sync of entity: " + modelClass + ", identifier=" + identifier);
+			return null;
+		}
+		
+		if ("d".equals(operation) && identifier == null) {
+			log.info("Skipping sync of a deleted entity with no identifier, this usually happens for a deleted "
+			        + "subclass row with no parent row");
+			return null;
+		}
+		
+		SyncMessage msg = new SyncMessage();
+		msg.setIdentifier(identifier);
+		msg.setModelClassName(modelClass);
+		msg.setEntityPayload(payload);
+		msg.setDateCreated(new Date());
+		msg.setDbSyncVersion(root.path("metadata").path("dbSyncVersion").asText(null));
+		
+		return msg;
+	}
+	
+}
@@ -8,6 +8,7 @@ import org.apache.camel.ProducerTemplate;
 import org.openmrs.eip.dbsync.receiver.management.entity.ConflictQueueItem;
 import org.openmrs.eip.dbsync.receiver.management.entity.ReceiverRetryQueueItem;
 import org.openmrs.eip.dbsync.receiver.management.entity.SyncMessage;
+import org.openmrs.eip.dbsync.service.hash.SenderHashVerifier;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.actuate.health.Status;
@@ -15,6 +16,7 @@ import org.springframework.boot.actuate.jdbc.DataSourceHealthIndicator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import io.micrometer.core.instrument.FunctionCounter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.binder.MeterBinder;
 
@@ -63,6 +65,24 @@ public class ReceiverPrometheusConfig {
 		
 	}
 	
+	@Bean("senderHashMeter")
+	public MeterBinder getSenderHashMeterBinder(@Autowired SenderHashVerifier verifier) {
+		
+		return (registry) -> {
+			FunctionCounter
+			        .builder(METER_PREFIX + "sender_hashes_trusted", verifier, SenderHashVerifier::getTrustedCount)
+			        .description("Incoming entity hashes computed by the sender that were used without rehashing")
+			        .register(registry);
+			FunctionCounter
+			        .builder(METER_PREFIX + "sender_hashes_verified", verifier, SenderHashVerifier::getVerifiedCount)
+			        .register(registry);
+			FunctionCounter
+			        .builder(METER_PREFIX + "sender_hash_mismatches", verifier, SenderHashVerifier::getMismatchCount)
+			        .register(registry);
+		};
+		
+	}
+	
 	@Bean("openmrsDsMeter")
 	public MeterBinder getOpenmrsDbHealth(@Autowired DataSourceHealthIndicator indicator) {
 		
@@ -0,0 +1,55 @@
+package org.openmrs.eip.dbsync.receiver.config;
+
+import static org.openmrs.eip.Constants.MGT_DATASOURCE_NAME;
+import static org.openmrs.eip.dbsync.SyncConstants.OPENMRS_DATASOURCE_NAME;
+import static org.openmrs.eip.dbsync.SyncConstants.PROP_SQL_ACCOUNTING_ENABLED;
+import static org.openmrs.eip.dbsync.receiver.MessageSqlAccounting.DS_MANAGEMENT;
+import static org.openmrs.eip.dbsync.receiver.MessageSqlAccounting.DS_OPENMRS;
+
+import javax.sql.DataSource;
+
+import org.openmrs.eip.dbsync.jdbc.SqlStatisticsDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Wraps the OpenMRS and management datasources so that the statements executed for each sync
+ * message are counted when openmrs.eip.dbsync.sql.accounting.enabled is set to true.
+ */
+@Configuration
+@ConditionalOnProperty(name = PROP_SQL_ACCOUNTING_ENABLED, havingValue = "true")
+public class ReceiverSqlAccountingConfig {
+	
+	private static final Logger log = LoggerFactory.getLogger(ReceiverSqlAccountingConfig.class);
+	
+	@Bean
+	public static BeanPostProcessor getSqlAccountingPostProcessor() {
+		
+		return new BeanPostProcessor() {
+			
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				if (bean instanceof DataSource && !(bean instanceof SqlStatisticsDataSource)) {
+					if (OPENMRS_DATASOURCE_NAME.equals(beanName)) {
+						log.info("Enabling counting of the statements executed against the OpenMRS database");
+						
+						return new SqlStatisticsDataSource((DataSource) bean, DS_OPENMRS);
+					} else if (MGT_DATASOURCE_NAME.equals(beanName)) {
+						log.info("Enabling counting of the statements executed against the management database");
+						
+						return new SqlStatisticsDataSource((DataSource) bean, DS_MANAGEMENT);
+					}
+				}
+				
+				return bean;
+			}
+			
+		};
+		
+	}
+	
+}
@@ -0,0 +1,286 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.openmrs.eip.dbsync.receiver.ComplexObsChunkAssembler.EX_PROP_FILE_COMPLETE;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.HEADER_CHUNK;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_CHUNK_COUNT;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_CHUNK_INDEX;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_CHUNK_OFFSET;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_CHUNK_SIZE;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_FILE_DIGEST;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_FILE_ID;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_FILE_NAME;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_FILE_SIZE;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.utils.FileChunkUtils;
+
+public class ComplexObsChunkAssemblerTest {
+	
+	private static final String FILENAME = "scan.pdf";
+	
+	private static final int CHUNK_SIZE = 1000;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File workDir;
+	
+	private byte[] contents;
+	
+	@Before
+	public void setup() throws Exception {
+		workDir = folder.newFolder("chunks");
+		contents = new byte[CHUNK_SIZE * 3 + 123];
+		new Random(7).nextBytes(contents);
+	}
+	
+	private Properties createMetadata(byte[] data, String fileId, String digest, int index) {
+		Properties metadata = new Properties();
+		metadata.setProperty(KEY_FILE_ID, fileId);
+		metadata.setProperty(KEY_FILE_NAME, FILENAME);
+		metadata.setProperty(KEY_FILE_SIZE, String.valueOf(data.length));
+		metadata.setProperty(KEY_FILE_DIGEST, digest);
+		metadata.setProperty(KEY_CHUNK_INDEX, String.valueOf(index));
+		metadata.setProperty(KEY_CHUNK_COUNT, String.valueOf(FileChunkUtils.getChunkCount(data.length, CHUNK_SIZE)));
+		metadata.setProperty(KEY_CHUNK_SIZE, String.valueOf(CHUNK_SIZE));
+		metadata.setProperty(KEY_CHUNK_OFFSET, String.valueOf((long) index * CHUNK_SIZE));
+		return metadata;
+	}
+	
+	private Exchange createChunk(Properties metadata, byte[] data, int offset, int length) {
+		Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+		exchange.getIn().setHeader(HEADER_CHUNK, FileChunkUtils.FRAME_VERSION);
+		exchange.getIn().setBody(FileChunkUtils.frame(metadata, Arrays.copyOfRange(data, offset, offset + length), length));
+		return exchange;
+	}
+	
+	private List<Exchange> createChunks(byte[] data, String fileId, String digest) {
+		List<Exchange> chunks = new ArrayList();
+		final int count = FileChunkUtils.getChunkCount(data.length, CHUNK_SIZE);
+		for (int i = 0; i < count; i++) {
+			chunks.add(createChunk(createMetadata(data, fileId, digest, i), data, i * CHUNK_SIZE,
+			    FileChunkUtils.getChunkLength(data.length, CHUNK_SIZE, i)));
+		}
+		
+		return chunks;
+	}
+	
+	private List<Exchange> createChunks(byte[] data) {
+		return createChunks(data, FILENAME + "-1", DigestUtils.md5Hex(data));
+	}
+	
+	private void assertReassembled(Exchange exchange, byte[] expected) throws Exception {
+		assertTrue(exchange.getProperty(EX_PROP_FILE_COMPLETE, Boolean.class));
+		assertEquals(FILENAME, exchange.getIn().getHeader(Exchange.FILE_NAME_ONLY));
+		assertArrayEquals(expected, Files.readAllBytes(exchange.getIn().getBody(File.class).toPath()));
+	}
+	
+	@Test
+	public void process_shouldReassembleTheFileFromChunksReceivedInOrder() throws Exception {
+		ComplexObsChunkAssembler assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		List<Exchange> chunks = createChunks(contents);
+		assertEquals(4, chunks.size());
+		
+		for (int i = 0; i < chunks.size() - 1; i++) {
+			assembler.process(chunks.get(i));
+			assertFalse(chunks.get(i).getProperty(EX_PROP_FILE_COMPLETE, Boolean.class));
+		}
+		
+		Exchange last = chunks.get(chunks.size() - 1);
+		assembler.process(last);
+		
+		assertReassembled(last, contents);
+		assembler.release(last);
+		assertEquals(0, workDir.list().length);
+		assertEquals(0, assembler.getAssemblyCount());
+	}
+	
+	@Test
+	public void process_shouldReassembleTheFileFromChunksReceivedOutOfOrder() throws Exception {
+		ComplexObsChunkAssembler assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		List<Exchange> chunks = createChunks(contents);
+		
+		assembler.process(chunks.get(2));
+		assembler.process(chunks.get(0));
+		assembler.process(chunks.get(3));
+		assembler.process(chunks.get(1));
+		
+		assertReassembled(chunks.get(1), contents);
+	}
+	
+	@Test
+	public void process_shouldReassembleAnEmptyFile() throws Exception {
+		ComplexObsChunkAssembler assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		List<Exchange> chunks = createChunks(new byte[0]);
+		assertEquals(1, chunks.size());
+		
+		assembler.process(chunks.get(0));
+		
+		assertReassembled(chunks.get(0), new byte[0]);
+	}
+	
+	@Test
+	public void process_shouldResumeAnInterruptedTransferAndIgnoreChunksAlreadyReceived() throws Exception {
+		List<Exchange> chunks = createChunks(contents);
+		ComplexObsChunkAssembler assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		assembler.process(chunks.get(0));
+		assembler.process(chunks.get(2));
+		
+		//Simulates a restart
+		assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		chunks = createChunks(contents);
+		for (Exchange chunk : chunks) {
+			assembler.process(chunk);
+		}
+		
+		assertReassembled(chunks.get(chunks.size() - 1), contents);
+	}
+	
+	@Test
+	public void process_shouldCompleteAgainWhenTheLastChunkIsRedeliveredBeforeTheFileIsReleased() throws Exception {
+		List<Exchange> chunks = createChunks(contents);
+		ComplexObsChunkAssembler assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		for (Exchange chunk : chunks) {
+			assembler.process(chunk);
+		}
+		
+		assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		Exchange redelivered = createChunks(contents).get(chunks.size() - 1);
+		assembler.process(redelivered);
+		
+		assertReassembled(redelivered, contents);
+	}
+	
+	@Test
+	public void process_shouldIgnoreARedeliveredChunkIfTheReassembledFileWasAlreadyMovedIntoPlace() throws Exception {
+		List<Exchange> chunks = createChunks(contents);
+		ComplexObsChunkAssembler assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		for (Exchange chunk : chunks) {
+			assembler.process(chunk);
+		}
+		
+		Files.delete(chunks.get(chunks.size() - 1).getIn().getBody(File.class).toPath());
+		assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		Exchange redelivered = createChunks(contents).get(chunks.size() - 1);
+		
+		assembler.process(redelivered);
+		
+		assertFalse(redelivered.getProperty(EX_PROP_FILE_COMPLETE, Boolean.class));
+		assertEquals(0, workDir.list().length);
+	}
+	
+	@Test
+	public void process_shouldDiscardTheUnfinishedTransferOfAnOlderVersionOfTheFile() throws Exception {
+		ComplexObsChunkAssembler assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		assembler.process(createChunks(contents).get(0));
+		assertEquals(2, workDir.list().length);
+		byte[] newContents = Arrays.copyOf(contents, 1500);
+		List<Exchange> chunks = createChunks(newContents, FILENAME + "-2", DigestUtils.md5Hex(newContents));
+		
+		assembler.process(chunks.get(0));
+		
+		assertEquals(2, workDir.list().length);
+		assertEquals(1, assembler.getAssemblyCount());
+		assembler.process(chunks.get(1));
+		assertReassembled(chunks.get(1), newContents);
+	}
+	
+	@Test
+	public void process_shouldFailAndDiscardTheTransferIfTheDigestDoesNotMatch() throws Exception {
+		ComplexObsChunkAssembler assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		List<Exchange> chunks = createChunks(contents, FILENAME + "-1", DigestUtils.md5Hex("other"));
+		for (int i = 0; i < chunks.size() - 1; i++) {
+			assembler.process(chunks.get(i));
+		}
+		
+		try {
+			assembler.process(chunks.get(chunks.size() - 1));
+			fail();
+		}
+		catch (SyncException e) {
+			assertTrue(e.getMessage().startsWith("The digest of the reassembled complex obs file"));
+		}
+		
+		assertEquals(0, workDir.list().length);
+		assertEquals(0, assembler.getAssemblyCount());
+	}
+	
+	@Test
+	public void process_shouldFailForAFileNameWithAPath() throws Exception {
+		ComplexObsChunkAssembler assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		for (String filename : new String[] { "../" + FILENAME, "..", ".", "dir/" + FILENAME, "dir\\" + FILENAME, " " }) {
+			Properties metadata = createMetadata(contents, FILENAME + "-1", DigestUtils.md5Hex(contents), 0);
+			metadata.setProperty(KEY_FILE_NAME, filename);
+			
+			try {
+				assembler.process(createChunk(metadata, contents, 0, CHUNK_SIZE));
+				fail();
+			}
+			catch (SyncException e) {
+				assertEquals("Invalid complex obs file name: " + filename, e.getMessage());
+			}
+		}
+		
+		assertEquals(0, workDir.list().length);
+	}
+	
+	@Test
+	public void process_shouldFailForAChunkWithNoFileSize() throws Exception {
+		Properties metadata = createMetadata(contents, FILENAME + "-1", DigestUtils.md5Hex(contents), 0);
+		metadata.remove(KEY_FILE_SIZE);
+		
+		try {
+			new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null)
+			        .process(createChunk(metadata, contents, 0, CHUNK_SIZE));
+			fail();
+		}
+		catch (SyncException e) {
+			assertEquals("Missing file chunk metadata: " + KEY_FILE_SIZE, e.getMessage());
+		}
+	}
+	
+	@Test
+	public void process_shouldIgnoreChunkMetadataSetAsMessageHeaders() throws Exception {
+		ComplexObsChunkAssembler assembler = new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null);
+		List<Exchange> chunks = createChunks(contents);
+		for (Exchange chunk : chunks) {
+			chunk.getIn().setHeader("dbSyncFileName", "../" + FILENAME);
+			chunk.getIn().setHeader("dbSyncFileSize", 1L);
+			assembler.process(chunk);
+		}
+		
+		assertReassembled(chunks.get(chunks.size() - 1), contents);
+		assertEquals(DigestUtils.md5Hex(contents),
+		    chunks.get(chunks.size() - 1).getProperty(ComplexObsChunkAssembler.EX_PROP_FILE_DIGEST));
+	}
+	
+	@Test(expected = SyncException.class)
+	public void process_shouldFailForAChunkWithAnUnexpectedLength() throws Exception {
+		Properties metadata = createMetadata(contents, FILENAME + "-1", DigestUtils.md5Hex(contents), 0);
+		
+		new ComplexObsChunkAssembler(workDir.getAbsolutePath(), null)
+		        .process(createChunk(metadata, contents, 0, CHUNK_SIZE - 1));
+	}
+	
+}
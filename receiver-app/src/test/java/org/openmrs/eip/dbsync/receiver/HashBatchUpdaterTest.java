@@ -20,12 +20,19 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.openmrs.eip.dbsync.SyncContext;
 import org.openmrs.eip.dbsync.entity.BaseEntity;
+import org.openmrs.eip.dbsync.entity.DrugOrder;
+import org.openmrs.eip.dbsync.entity.Order;
 import org.openmrs.eip.dbsync.entity.Person;
+import org.openmrs.eip.dbsync.entity.TestOrder;
 import org.openmrs.eip.dbsync.entity.Visit;
+import org.openmrs.eip.dbsync.management.hash.entity.DrugOrderHash;
+import org.openmrs.eip.dbsync.management.hash.entity.OrderHash;
 import org.openmrs.eip.dbsync.management.hash.entity.PersonHash;
 import org.openmrs.eip.dbsync.management.hash.entity.VisitHash;
 import org.openmrs.eip.dbsync.mapper.EntityToModelMapper;
 import org.openmrs.eip.dbsync.model.BaseModel;
+import org.openmrs.eip.dbsync.model.DrugOrderModel;
+import org.openmrs.eip.dbsync.model.OrderModel;
 import org.openmrs.eip.dbsync.model.PersonModel;
 import org.openmrs.eip.dbsync.model.VisitModel;
 import org.openmrs.eip.dbsync.repository.SyncEntityRepository;
@@ -38,6 +45,8 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import org.springframework.context.ApplicationContext;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({ SyncContext.class, HashUtils.class, SyncUtils.class })
@@ -53,18 +62,29 @@ public class HashBatchUpdaterTest {
 	@Mock
 	private SyncEntityRepository mockVisitRepo;
 	
+	@Mock
+	private SyncEntityRepository mockOrderRepo;
+	
 	@Mock
 	private ApplicationContext mockAppContext;
 	
 	@Mock
 	private EntityToModelMapper mockMapper;
 	
+	@Mock
+	private PlatformTransactionManager mockTxManager;
+	
+	@Mock
+	private TransactionStatus mockTxStatus;
+	
 	@Before
 	public void setup() {
 		PowerMockito.mockStatic(SyncContext.class);
 		PowerMockito.mockStatic(SyncUtils.class);
 		PowerMockito.mockStatic(HashUtils.class);
 		when(SyncContext.getBean(EntityToModelMapper.class)).thenReturn(mockMapper);
+		when(SyncContext.getBean(PlatformTransactionManager.class)).thenReturn(mockTxManager);
+		when(mockTxManager.getTransaction(any())).thenReturn(mockTxStatus);
 		updater = new HashBatchUpdater(BATCH_SIZE, mockAppContext);
 	}
 	
@@ -112,6 +132,7 @@ public class HashBatchUpdaterTest {
 		updater.update(asList(TableToSyncEnum.PERSON, TableToSyncEnum.VISIT));
 		
 		verify(mockMapper, times(BATCH_SIZE * 2)).apply(any(BaseEntity.class));
+		verify(mockTxManager, times(2)).commit(mockTxStatus);
 		for (Person person : persons) {
 			verify(mockMapper).apply(person);
 		}
@@ -134,4 +155,43 @@ public class HashBatchUpdaterTest {
 		}
 	}
 	
+	@Test
+	public void update_shouldScanTheOrderTableOnceAndDispatchEachRowToItsHashClass() {
+		updater = Mockito.spy(updater);
+		Mockito.doNothing().when(updater).checkForConflicts(anyList());
+		when(SyncUtils.getRepository(Order.class, mockAppContext)).thenReturn(mockOrderRepo);
+		Page mockOrderPage = Mockito.mock(Page.class);
+		when(mockOrderPage.isLast()).thenReturn(true);
+		when(mockOrderRepo.findAll(any(Pageable.class))).thenReturn(mockOrderPage);
+		Order order = new Order();
+		order.setUuid("order-uuid");
+		OrderModel orderModel = new OrderModel();
+		orderModel.setUuid(order.getUuid());
+		when(mockMapper.apply(order)).thenReturn(orderModel);
+		DrugOrder drugOrder = new DrugOrder();
+		drugOrder.setUuid("drug-order-uuid");
+		DrugOrderModel drugOrderModel = new DrugOrderModel();
+		drugOrderModel.setUuid(drugOrder.getUuid());
+		when(mockMapper.apply(drugOrder)).thenReturn(drugOrderModel);
+		TestOrder testOrder = new TestOrder();
+		testOrder.setUuid("test-order-uuid");
+		when(mockOrderPage.getContent()).thenReturn(asList(order, drugOrder, testOrder));
+		
+		updater.update(asList(TableToSyncEnum.DRUG_ORDER, TableToSyncEnum.ORDERS));
+		
+		verify(mockOrderRepo).findAll(any(Pageable.class));
+		verify(mockTxManager).commit(mockTxStatus);
+		verify(mockMapper, times(2)).apply(any(BaseEntity.class));
+		verify(mockMapper).apply(order);
+		verify(mockMapper).apply(drugOrder);
+		PowerMockito.verifyStatic(SyncUtils.class);
+		SyncUtils.getRepository(Order.class, mockAppContext);
+		PowerMockito.verifyStatic(HashUtils.class);
+		HashUtils.createOrUpdateHash(orderModel, OrderHash.class);
+		PowerMockito.verifyStatic(HashUtils.class);
+		HashUtils.createOrUpdateHash(drugOrderModel, DrugOrderHash.class);
+		PowerMockito.verifyStatic(HashUtils.class, times(2));
+		HashUtils.createOrUpdateHash(any(BaseModel.class), any(Class.class));
+	}
+	
 }
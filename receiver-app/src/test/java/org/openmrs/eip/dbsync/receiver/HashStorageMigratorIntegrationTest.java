@@ -0,0 +1,81 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openmrs.eip.dbsync.SyncConstants;
+import org.openmrs.eip.dbsync.management.hash.entity.HashColumnType;
+import org.openmrs.eip.dbsync.management.hash.entity.PersonHash;
+import org.openmrs.eip.dbsync.management.hash.repository.PersonHashRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "camel.springboot.routes-collector-enabled=false")
+public class HashStorageMigratorIntegrationTest extends BaseReceiverDbDrivenTest {
+	
+	private static final String TABLE = "person_hash";
+	
+	private static final String UUID = "1a2b3c4d-5e6f-4a8b-9c0d-1e2f3a4b5c6d";
+	
+	private static final String HASH = "0123456789abcdef0123456789abcdef";
+	
+	@Autowired
+	private HashStorageMigrator migrator;
+	
+	@Autowired
+	private PersonHashRepository repo;
+	
+	private final List<PersonHash> hashes = new ArrayList();
+	
+	@After
+	public void tearDown() {
+		migrator.migrate(TABLE, false);
+		HashColumnType.setBinary(false);
+		repo.deleteAll(hashes);
+	}
+	
+	private PersonHash saveHash(String identifier, String hash) {
+		PersonHash personHash = new PersonHash();
+		personHash.setIdentifier(identifier);
+		personHash.setHash(hash);
+		personHash.setDateCreated(LocalDateTime.now());
+		personHash = repo.save(personHash);
+		hashes.add(personHash);
+		return personHash;
+	}
+	
+	@Test
+	public void migrate_shouldConvertTheTableToBinaryStorageAndBack() {
+		PersonHash uuidHash = saveHash(UUID, HASH);
+		PersonHash otherHash = saveHash("123456789012345", SyncConstants.HASH_DELETED);
+		
+		assertTrue(migrator.migrate(TABLE, true));
+		HashColumnType.setBinary(true);
+		
+		assertTrue(migrator.isBinary(TABLE));
+		assertEquals(uuidHash.getId(), repo.findByIdentifier(UUID).getId());
+		assertEquals(HASH, repo.findByIdentifier(UUID.toUpperCase()).getHash());
+		assertEquals(SyncConstants.HASH_DELETED, repo.findByIdentifier("123456789012345").getHash());
+		assertTrue(saveHash("6d5c4b3a-2f1e-4d0c-8b9a-6f5e4d3c2b1a", HASH).getId() > otherHash.getId());
+		
+		assertTrue(migrator.migrate(TABLE, false));
+		HashColumnType.setBinary(false);
+		
+		assertFalse(migrator.isBinary(TABLE));
+		assertEquals(UUID, repo.findByIdentifier(UUID).getIdentifier());
+		assertEquals(HASH, repo.findByIdentifier("6d5c4b3a-2f1e-4d0c-8b9a-6f5e4d3c2b1a").getHash());
+	}
+	
+	@Test
+	public void migrate_shouldSkipATableAlreadyUsingTheStorageMode() {
+		assertFalse(migrator.migrate(TABLE, false));
+	}
+	
+}
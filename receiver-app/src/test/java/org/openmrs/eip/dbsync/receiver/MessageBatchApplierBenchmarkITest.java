@@ -0,0 +1,173 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import static org.junit.Assert.assertNotNull;
+import static org.openmrs.eip.dbsync.receiver.ReceiverConstants.EX_PROP_MSG_PROCESSED;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.openmrs.eip.dbsync.entity.Observation;
+import org.openmrs.eip.dbsync.entity.PersonName;
+import org.openmrs.eip.dbsync.entity.light.ConceptLight;
+import org.openmrs.eip.dbsync.entity.light.PersonLight;
+import org.openmrs.eip.dbsync.entity.light.UserLight;
+import org.openmrs.eip.dbsync.model.BaseModel;
+import org.openmrs.eip.dbsync.model.ObservationModel;
+import org.openmrs.eip.dbsync.model.PersonNameModel;
+import org.openmrs.eip.dbsync.model.SyncMetadata;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.receiver.management.entity.SyncMessage;
+import org.openmrs.eip.dbsync.service.AbstractEntityService;
+import org.openmrs.eip.dbsync.utils.JsonUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Benchmark harness that compares the throughput of applying obs and person_name messages one at a
+ * time against applying them in groups with {@link MessageBatchApplier}, it is ignored by default
+ * since it takes a while and the numbers are only meaningful against a realistic MySQL setup, to run
+ * it, remove the {@link Ignore} annotation and optionally set hibernate.jdbc.batch_size in the test
+ * application.properties. Results are logged at INFO level.
+ */
+@Ignore
+@Sql(scripts = "classpath:test_data_it.sql")
+public class MessageBatchApplierBenchmarkITest extends BaseReceiverDbDrivenTest {
+	
+	private static final int MESSAGE_COUNT = 1000;
+	
+	private static final int WARM_UP_COUNT = 100;
+	
+	private static final int GROUP_SIZE = 50;
+	
+	private static final String PERSON_UUID = "dd279794-76e9-11e9-8cd9-0242ac1c000b";
+	
+	private static final String CONCEPT_UUID = "1e279794-76e9-11e9-9cd8-0242ac1c111f";
+	
+	private static final String CREATOR = UserLight.class.getName() + "(user_uuid)";
+	
+	@Autowired
+	private PlatformTransactionManager txManager;
+	
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	
+	@Autowired
+	private AbstractEntityService<Observation, ObservationModel> obsService;
+	
+	@Autowired
+	private AbstractEntityService<PersonName, PersonNameModel> personNameService;
+	
+	private String lastUuid;
+	
+	@Test
+	public void apply_shouldCompareTheThroughputOfGroupedObsMessages() {
+		compare("obs", this::createObs);
+		assertNotNull(obsService.getModel(lastUuid));
+	}
+	
+	@Test
+	public void apply_shouldCompareTheThroughputOfGroupedPersonNameMessages() {
+		compare("person_name", this::createPersonName);
+		assertNotNull(personNameService.getModel(lastUuid));
+	}
+	
+	private void compare(String table, Function<String, BaseModel> modelCreator) {
+		applyIndividually(createMessages(WARM_UP_COUNT, modelCreator));
+		applyInGroups(createMessages(WARM_UP_COUNT, modelCreator));
+		
+		List<SyncMessage> messages = createMessages(MESSAGE_COUNT, modelCreator);
+		long start = System.nanoTime();
+		applyIndividually(messages);
+		final long individualNanos = System.nanoTime() - start;
+		
+		messages = createMessages(MESSAGE_COUNT, modelCreator);
+		start = System.nanoTime();
+		applyInGroups(messages);
+		final long groupedNanos = System.nanoTime() - start;
+		
+		log.info(table + ": " + MESSAGE_COUNT + " messages, one at a time: " + getRate(individualNanos)
+		        + " msg/s, in groups of " + GROUP_SIZE + ": " + getRate(groupedNanos) + " msg/s");
+	}
+	
+	private static long getRate(long nanos) {
+		return MESSAGE_COUNT * 1_000_000_000L / Math.max(nanos, 1);
+	}
+	
+	private void applyIndividually(List<SyncMessage> messages) {
+		messages.forEach(this::load);
+	}
+	
+	private void applyInGroups(List<SyncMessage> messages) {
+		MessageBatchApplier batchApplier = new MessageBatchApplier(txManager, entityManagerFactory, producerTemplate);
+		for (int i = 0; i < messages.size(); i += GROUP_SIZE) {
+			List<SyncMessage> group = messages.subList(i, Math.min(i + GROUP_SIZE, messages.size()));
+			//Messages are not saved in the sync queue so there is nothing to complete
+			batchApplier.apply(group, this::load, (msg, exchange) -> {}, this::load);
+		}
+	}
+	
+	private Exchange load(SyncMessage msg) {
+		Exchange exchange = new DefaultExchange(camelContext);
+		exchange.getIn().setBody(JsonUtils.unmarshalSyncModel(msg.getEntityPayload()));
+		producerTemplate.send("openmrs:load", exchange);
+		if (exchange.getException() != null) {
+			throw new AssertionError("Failed to load message " + msg.getIdentifier(), exchange.getException());
+		}
+		
+		exchange.setProperty(EX_PROP_MSG_PROCESSED, true);
+		return exchange;
+	}
+	
+	private List<SyncMessage> createMessages(int count, Function<String, BaseModel> modelCreator) {
+		List<SyncMessage> messages = new ArrayList(count);
+		for (int i = 0; i < count; i++) {
+			lastUuid = UUID.randomUUID().toString();
+			BaseModel model = modelCreator.apply(lastUuid);
+			SyncMetadata metadata = new SyncMetadata();
+			metadata.setOperation("c");
+			metadata.setSourceIdentifier("remote-1");
+			SyncMessage msg = new SyncMessage();
+			msg.setIdentifier(lastUuid);
+			msg.setModelClassName(model.getClass().getName());
+			msg.setEntityPayload(JsonUtils.marshall(new SyncModel(model.getClass(), model, metadata)));
+			messages.add(msg);
+		}
+		
+		return messages;
+	}
+	
+	private BaseModel createObs(String uuid) {
+		ObservationModel model = new ObservationModel();
+		model.setUuid(uuid);
+		model.setPersonUuid(PersonLight.class.getName() + "(" + PERSON_UUID + ")");
+		model.setConceptUuid(ConceptLight.class.getName() + "(" + CONCEPT_UUID + ")");
+		model.setObsDatetime(LocalDateTime.now());
+		model.setValueNumeric(37.5);
+		model.setStatus("FINAL");
+		model.setCreatorUuid(CREATOR);
+		model.setDateCreated(LocalDateTime.now());
+		return model;
+	}
+	
+	private BaseModel createPersonName(String uuid) {
+		PersonNameModel model = new PersonNameModel();
+		model.setUuid(uuid);
+		model.setPersonUuid(PersonLight.class.getName() + "(" + PERSON_UUID + ")");
+		model.setGivenName("John");
+		model.setFamilyName("Doe");
+		model.setCreatorUuid(CREATOR);
+		model.setDateCreated(LocalDateTime.now());
+		return model;
+	}
+	
+}
@@ -0,0 +1,174 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.openmrs.eip.dbsync.SyncConstants.PLACEHOLDER_CLASS;
+import static org.openmrs.eip.dbsync.SyncConstants.QUERY_SAVE_HASH;
+import static org.openmrs.eip.dbsync.receiver.ReceiverConstants.EX_PROP_MOVED_TO_ERROR_QUEUE;
+import static org.openmrs.eip.dbsync.receiver.ReceiverConstants.EX_PROP_MSG_PROCESSED;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.openmrs.eip.dbsync.camel.BatchApplyContext;
+import org.openmrs.eip.dbsync.management.hash.entity.BaseHashEntity;
+import org.openmrs.eip.dbsync.management.hash.entity.PersonHash;
+import org.openmrs.eip.dbsync.receiver.management.entity.SyncMessage;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class MessageBatchApplierTest {
+	
+	@Mock
+	private PlatformTransactionManager mockTxManager;
+	
+	@Mock
+	private TransactionStatus mockStatus;
+	
+	@Mock
+	private EntityManagerFactory mockEmf;
+	
+	@Mock
+	private EntityManager mockEm;
+	
+	@Mock
+	private ProducerTemplate mockProducerTemplate;
+	
+	private MessageBatchApplier batchApplier;
+	
+	private List<String> failedIdentifiers;
+	
+	private List<String> completed;
+	
+	private List<String> individuallyProcessed;
+	
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		TransactionSynchronizationManager.bindResource(mockEmf, new EntityManagerHolder(mockEm));
+		when(mockTxManager.getTransaction(any())).thenReturn(mockStatus);
+		failedIdentifiers = new ArrayList();
+		completed = new ArrayList();
+		individuallyProcessed = new ArrayList();
+		batchApplier = new MessageBatchApplier(mockTxManager, mockEmf, mockProducerTemplate);
+	}
+	
+	@After
+	public void tearDown() {
+		TransactionSynchronizationManager.unbindResource(mockEmf);
+	}
+	
+	private List<SyncMessage> createMessages(String... identifiers) {
+		List<SyncMessage> messages = new ArrayList();
+		for (String identifier : identifiers) {
+			SyncMessage msg = new SyncMessage();
+			msg.setIdentifier(identifier);
+			messages.add(msg);
+		}
+		
+		return messages;
+	}
+	
+	private Exchange apply(SyncMessage msg) {
+		Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+		if (failedIdentifiers.contains(msg.getIdentifier())) {
+			exchange.setProperty(EX_PROP_MOVED_TO_ERROR_QUEUE, true);
+		} else {
+			PersonHash hash = new PersonHash();
+			hash.setIdentifier(msg.getIdentifier());
+			BatchApplyContext.get().addHash(hash);
+			BatchApplyContext.get().flush();
+			exchange.setProperty(EX_PROP_MSG_PROCESSED, true);
+		}
+		
+		return exchange;
+	}
+	
+	private void runApply(List<SyncMessage> messages) {
+		batchApplier.apply(messages, this::apply, (msg, exchange) -> completed.add(msg.getIdentifier()),
+		    msg -> individuallyProcessed.add(msg.getIdentifier()));
+	}
+	
+	@Test
+	public void apply_shouldCommitTheGroupBeforeSavingTheHashesAndCompletingTheMessages() {
+		runApply(createMessages("a", "b"));
+		
+		final String uri = QUERY_SAVE_HASH.replace(PLACEHOLDER_CLASS, PersonHash.class.getSimpleName());
+		InOrder inOrder = inOrder(mockEm, mockTxManager, mockProducerTemplate);
+		inOrder.verify(mockEm, Mockito.times(2)).flush();
+		inOrder.verify(mockTxManager).commit(mockStatus);
+		inOrder.verify(mockProducerTemplate, Mockito.times(2)).sendBody(Mockito.eq(uri), any(BaseHashEntity.class));
+		assertEquals(asList("a", "b"), completed);
+		assertEquals(0, individuallyProcessed.size());
+		assertNull(BatchApplyContext.get());
+	}
+	
+	@Test
+	public void apply_shouldRollbackAFailedMessageToItsSavepointAndCommitTheOthers() {
+		Object savepoint1 = new Object();
+		Object savepoint2 = new Object();
+		Object savepoint3 = new Object();
+		when(mockStatus.createSavepoint()).thenReturn(savepoint1, savepoint2, savepoint3);
+		failedIdentifiers.add("b");
+		
+		runApply(createMessages("a", "b", "c"));
+		
+		verify(mockStatus).releaseSavepoint(savepoint1);
+		verify(mockStatus).rollbackToSavepoint(savepoint2);
+		verify(mockStatus).releaseSavepoint(savepoint3);
+		verify(mockEm).clear();
+		verify(mockTxManager).commit(mockStatus);
+		verify(mockProducerTemplate, Mockito.times(2)).sendBody(any(String.class), any(BaseHashEntity.class));
+		assertEquals(asList("b", "a", "c"), completed);
+		assertEquals(0, individuallyProcessed.size());
+	}
+	
+	@Test
+	public void apply_shouldApplyTheMessagesIndividuallyIfTheTransactionIsMarkedForRollback() {
+		failedIdentifiers.add("b");
+		when(mockStatus.isRollbackOnly()).thenReturn(true);
+		
+		runApply(createMessages("a", "b", "c"));
+		
+		verify(mockTxManager).rollback(mockStatus);
+		verify(mockTxManager, never()).commit(mockStatus);
+		verify(mockProducerTemplate, never()).sendBody(any(String.class), any(BaseHashEntity.class));
+		assertEquals(asList("b"), completed);
+		assertEquals(asList("a", "c"), individuallyProcessed);
+	}
+	
+	@Test
+	public void apply_shouldApplyTheMessagesIndividuallyIfTheCommitFails() {
+		Mockito.doThrow(new TransactionSystemException("test")).when(mockTxManager).commit(mockStatus);
+		
+		runApply(createMessages("a", "b"));
+		
+		verify(mockProducerTemplate, never()).sendBody(any(String.class), any(BaseHashEntity.class));
+		assertEquals(0, completed.size());
+		assertEquals(asList("a", "b"), individuallyProcessed);
+	}
+	
+}
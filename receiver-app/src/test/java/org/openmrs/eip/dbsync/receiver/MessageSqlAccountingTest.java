@@ -0,0 +1,96 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.openmrs.eip.dbsync.jdbc.SqlStatistics;
+import org.openmrs.eip.dbsync.model.PersonModel;
+import org.openmrs.eip.dbsync.receiver.management.entity.SyncMessage;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import org.slf4j.Logger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@RunWith(PowerMockRunner.class)
+public class MessageSqlAccountingTest {
+	
+	@Mock
+	private Logger mockLogger;
+	
+	private SimpleMeterRegistry registry;
+	
+	private SyncMessage msg;
+	
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		Whitebox.setInternalState(MessageSqlAccounting.class, Logger.class, mockLogger);
+		registry = new SimpleMeterRegistry();
+		msg = new SyncMessage();
+		msg.setModelClassName(PersonModel.class.getName());
+	}
+	
+	@Test
+	public void account_shouldRecordTheStatementsExecutedForTheMessage() {
+		MessageSqlAccounting accounting = new MessageSqlAccounting(true, 60000);
+		accounting.bindTo(registry);
+		
+		String result = accounting.account(msg, () -> {
+			SqlStatistics.recordHibernateStatement();
+			SqlStatistics.recordStatement(MessageSqlAccounting.DS_OPENMRS, 1, TimeUnit.MILLISECONDS.toNanos(5));
+			SqlStatistics.recordStatement(MessageSqlAccounting.DS_OPENMRS, 2, TimeUnit.MILLISECONDS.toNanos(5));
+			SqlStatistics.recordStatement(MessageSqlAccounting.DS_MANAGEMENT, 1, TimeUnit.MILLISECONDS.toNanos(1));
+			return "done";
+		});
+		
+		assertEquals("done", result);
+		assertNull(SqlStatistics.get());
+		final String model = PersonModel.class.getSimpleName();
+		assertEquals(1.0, registry.get("openmrs_dbsync_receiver_message_hibernate_statements").tag("model", model)
+		        .summary().totalAmount(), 0);
+		assertEquals(2.0, registry.get("openmrs_dbsync_receiver_message_statements").tag("model", model)
+		        .tag("datasource", MessageSqlAccounting.DS_OPENMRS).summary().totalAmount(), 0);
+		assertEquals(3.0, registry.get("openmrs_dbsync_receiver_message_rows").tag("model", model)
+		        .tag("datasource", MessageSqlAccounting.DS_OPENMRS).summary().totalAmount(), 0);
+		assertEquals(10.0, registry.get("openmrs_dbsync_receiver_message_db_time").tag("model", model)
+		        .tag("datasource", MessageSqlAccounting.DS_OPENMRS).timer().totalTime(TimeUnit.MILLISECONDS), 0);
+		assertEquals(1.0, registry.get("openmrs_dbsync_receiver_message_statements").tag("model", model)
+		        .tag("datasource", MessageSqlAccounting.DS_MANAGEMENT).summary().totalAmount(), 0);
+		verify(mockLogger, never()).warn(anyString());
+	}
+	
+	@Test
+	public void account_shouldLogASlowMessage() {
+		MessageSqlAccounting accounting = new MessageSqlAccounting(true, 0);
+		
+		accounting.account(msg, () -> null);
+		
+		verify(mockLogger).warn(anyString());
+	}
+	
+	@Test
+	public void account_shouldNotRecordAnythingIfDisabled() {
+		MessageSqlAccounting accounting = new MessageSqlAccounting(false, 0);
+		accounting.bindTo(registry);
+		
+		accounting.account(msg, () -> {
+			assertNull(SqlStatistics.get());
+			return null;
+		});
+		
+		assertEquals(0, registry.getMeters().size());
+		verify(mockLogger, never()).warn(anyString());
+	}
+	
+}
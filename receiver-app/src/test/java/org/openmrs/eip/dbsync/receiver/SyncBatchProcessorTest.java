@@ -0,0 +1,86 @@
+package org.openmrs.eip.dbsync.receiver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.when;
+import static org.openmrs.eip.dbsync.SyncConstants.PROP_SYNC_EXCLUDE;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.openmrs.eip.dbsync.SyncContext;
+import org.openmrs.eip.dbsync.model.PersonModel;
+import org.openmrs.eip.dbsync.model.VisitModel;
+import org.openmrs.eip.dbsync.receiver.management.entity.SyncMessage;
+import org.openmrs.eip.dbsync.utils.BatchEnvelopeUtils;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import org.springframework.core.env.Environment;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(SyncContext.class)
+public class SyncBatchProcessorTest {
+	
+	private SyncBatchProcessor processor = new SyncBatchProcessor();
+	
+	@Before
+	public void setup() {
+		Whitebox.setInternalState(Utils.class, "typeAndIdsToExcludeMap", (Object) null);
+		Environment mockEnv = Mockito.mock(Environment.class);
+		PowerMockito.mockStatic(SyncContext.class);
+		when(SyncContext.getBean(Environment.class)).thenReturn(mockEnv);
+		when(mockEnv.getProperty(PROP_SYNC_EXCLUDE)).thenReturn("person:excluded-uuid");
+	}
+	
+	private String createPayload(Class<?> modelClass, String uuid, String op) {
+		return "{\"tableToSyncModelClass\":\"" + modelClass.getName() + "\",\"model\":{\"uuid\":"
+		        + (uuid == null ? "null" : "\"" + uuid + "\"") + "},\"metadata\":{\"operation\":\"" + op
+		        + "\",\"sourceIdentifier\":\"remote1\",\"dbSyncVersion\":\"1.0\"}}";
+	}
+	
+	@Test
+	public void process_shouldCreateASyncMessageForEachEntityInTheBatchInOrder() {
+		String person = createPayload(PersonModel.class, "person-uuid", "c");
+		String visit = createPayload(VisitModel.class, "visit-uuid", "u");
+		Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+		exchange.getIn().setBody(BatchEnvelopeUtils.wrap(Arrays.asList(person, visit)));
+		
+		processor.process(exchange);
+		
+		List<SyncMessage> messages = exchange.getIn().getBody(List.class);
+		assertEquals(2, messages.size());
+		assertEquals("person-uuid", messages.get(0).getIdentifier());
+		assertEquals(PersonModel.class.getName(), messages.get(0).getModelClassName());
+		assertEquals(person, messages.get(0).getEntityPayload());
+		assertEquals("1.0", messages.get(0).getDbSyncVersion());
+		assertNotNull(messages.get(0).getDateCreated());
+		assertEquals("visit-uuid", messages.get(1).getIdentifier());
+		assertEquals(VisitModel.class.getName(), messages.get(1).getModelClassName());
+		assertEquals(visit, messages.get(1).getEntityPayload());
+	}
+	
+	@Test
+	public void process_shouldSkipExcludedEntitiesAndDeletedEntitiesWithNoIdentifier() {
+		String person = createPayload(PersonModel.class, "person-uuid", "c");
+		String excluded = createPayload(PersonModel.class, "excluded-uuid", "u");
+		String deleted = createPayload(VisitModel.class, null, "d");
+		Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+		exchange.getIn().setBody(BatchEnvelopeUtils.wrap(Arrays.asList(excluded, person, deleted)));
+		
+		processor.process(exchange);
+		
+		List<SyncMessage> messages = exchange.getIn().getBody(List.class);
+		assertEquals(1, messages.size());
+		assertEquals("person-uuid", messages.get(0).getIdentifier());
+	}
+	
+}
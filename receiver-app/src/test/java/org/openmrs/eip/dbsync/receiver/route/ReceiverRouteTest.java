@@ -0,0 +1,92 @@
+package org.openmrs.eip.dbsync.receiver.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.AdviceWithRouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.eip.dbsync.model.PatientModel;
+import org.openmrs.eip.dbsync.model.SyncMetadata;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.receiver.management.entity.SyncMessage;
+import org.openmrs.eip.dbsync.service.format.PayloadFormatService;
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = { "camel.springboot.xml-routes=classpath:camel/receiver-route.xml",
+        "camel.input.endpoint=direct:receiver" })
+public class ReceiverRouteTest extends BaseReceiverRouteTest {
+	
+	private static final String ROUTE_ID = "receiver";
+	
+	private static final String URI = "direct:" + ROUTE_ID;
+	
+	@EndpointInject("mock:jpa")
+	protected MockEndpoint mockJpaEndpoint;
+	
+	@Before
+	public void setup() throws Exception {
+		mockJpaEndpoint.reset();
+		
+		advise(ROUTE_ID, new AdviceWithRouteBuilder() {
+			
+			@Override
+			public void configure() {
+				interceptSendToEndpoint("jpa:SyncMessage?usePersist=true").skipSendToOriginalEndpoint()
+				        .to(mockJpaEndpoint);
+			}
+			
+		});
+	}
+	
+	private Exchange createCompactDelete(String format, String uuid) {
+		PatientModel model = new PatientModel();
+		model.setUuid(uuid);
+		SyncMetadata metadata = new SyncMetadata();
+		metadata.setOperation("d");
+		metadata.setSourceIdentifier("remote1");
+		SyncModel syncModel = SyncModel.builder().tableToSyncModelClass(PatientModel.class).model(model).metadata(metadata)
+		        .build();
+		Exchange exchange = new DefaultExchange(camelContext);
+		exchange.getIn().setBody(syncModel);
+		new PayloadFormatService(format, true).encode(exchange);
+		return exchange;
+	}
+	
+	@Test
+	public void shouldSkipACompactDeleteWithNoUuid() throws Exception {
+		for (String format : new String[] { "json", "cbor" }) {
+			mockJpaEndpoint.reset();
+			mockJpaEndpoint.expectedMessageCount(0);
+			Exchange exchange = createCompactDelete(format, null);
+			
+			producerTemplate.send(URI, exchange);
+			
+			mockJpaEndpoint.assertIsSatisfied();
+			assertNull(exchange.getException());
+			assertNull(exchange.getProperty(Exchange.EXCEPTION_CAUGHT));
+			assertNull(exchange.getProperty("entity-id"));
+			assertEquals("d", exchange.getProperty("dbOp"));
+		}
+	}
+	
+	@Test
+	public void shouldSaveACompactDeleteWithAUuid() throws Exception {
+		final String uuid = "2f4bdbb8-5d5e-4d35-9b0b-0ee2d7f1a6a1";
+		mockJpaEndpoint.expectedMessageCount(1);
+		Exchange exchange = createCompactDelete("cbor", uuid);
+		
+		producerTemplate.send(URI, exchange);
+		
+		mockJpaEndpoint.assertIsSatisfied();
+		assertNull(exchange.getProperty(Exchange.EXCEPTION_CAUGHT));
+		SyncMessage msg = mockJpaEndpoint.getReceivedExchanges().get(0).getIn().getBody(SyncMessage.class);
+		assertEquals(uuid, msg.getIdentifier());
+		assertEquals(PatientModel.class.getName(), msg.getModelClassName());
+	}
+	
+}
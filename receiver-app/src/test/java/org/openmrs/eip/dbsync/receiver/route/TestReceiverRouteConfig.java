@@ -14,7 +14,7 @@ public class TestReceiverRouteConfig {
 			
 			@Override
 			public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
-				if ("receiverErrorHandler".equals(beanName)) {
+				if ("receiverErrorHandler".equals(beanName) || "receiverShutdownErrorHandler".equals(beanName)) {
 					DeadLetterChannelBuilder builder = (DeadLetterChannelBuilder) bean;
 					builder.setDeadLetterUri(TestConstants.URI_TEST_ERROR_HANDLER);
 				}
@@ -0,0 +1,113 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.HEADER_CHUNK;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_CHUNK_COUNT;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_CHUNK_INDEX;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_CHUNK_OFFSET;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_CHUNK_SIZE;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_FILE_DIGEST;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_FILE_ID;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_FILE_NAME;
+import static org.openmrs.eip.dbsync.utils.FileChunkUtils.KEY_FILE_SIZE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.dbsync.utils.FileChunkUtils;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes a complex obs file picked by the sender-complex-obs-sync route as a sequence of binary
+ * chunks of a fixed size, each chunk is sent as a separate message through the
+ * sender-complex-obs-chunk-send route framed with its metadata as defined in {@link FileChunkUtils}
+ * so that the metadata is signed and encrypted together with the chunk data. The file
+ * is read through a single reusable buffer so that only one chunk is held in memory at a time, the
+ * digest of the file is computed with {@link HashUtils#computeHashForFile(File)} before the chunks
+ * are sent.
+ */
+@Component("complexObsChunkPublisher")
+public class ComplexObsChunkPublisher implements Processor {
+	
+	protected static final Logger log = LoggerFactory.getLogger(ComplexObsChunkPublisher.class);
+	
+	public static final String URI_CHUNK_SEND = "direct:sender-complex-obs-chunk-send";
+	
+	private final ProducerTemplate producerTemplate;
+	
+	private final int chunkSize;
+	
+	public ComplexObsChunkPublisher(ProducerTemplate producerTemplate,
+	    @Value("${complex.obs.chunk.size:1048576}") int chunkSize) {
+		if (chunkSize <= 0) {
+			throw new SyncException("complex.obs.chunk.size must be greater than zero");
+		}
+		
+		this.producerTemplate = producerTemplate;
+		this.chunkSize = chunkSize;
+	}
+	
+	@Override
+	public void process(Exchange exchange) throws Exception {
+		File file = exchange.getIn().getBody(File.class);
+		String filename = exchange.getIn().getHeader(Exchange.FILE_NAME_ONLY, String.class);
+		Long lastModified = exchange.getIn().getHeader(Exchange.FILE_LAST_MODIFIED, Long.class);
+		final String fileId = filename + "-" + lastModified;
+		final long size = file.length();
+		final int count = FileChunkUtils.getChunkCount(size, chunkSize);
+		final String digest = HashUtils.computeHashForFile(file);
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Sending complex obs file: " + filename + " of " + size + " byte(s) in " + count + " chunk(s)");
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			for (int index = 0; index < count; index++) {
+				final long offset = (long) index * chunkSize;
+				final int length = FileChunkUtils.getChunkLength(size, chunkSize, index);
+				buffer.clear();
+				buffer.limit(length);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, offset + buffer.position()) < 0) {
+						throw new SyncException("Complex obs file " + filename + " was truncated while being sent");
+					}
+				}
+				
+				Properties metadata = new Properties();
+				metadata.setProperty(KEY_FILE_ID, fileId);
+				metadata.setProperty(KEY_FILE_NAME, filename);
+				metadata.setProperty(KEY_FILE_SIZE, String.valueOf(size));
+				metadata.setProperty(KEY_FILE_DIGEST, digest);
+				metadata.setProperty(KEY_CHUNK_INDEX, String.valueOf(index));
+				metadata.setProperty(KEY_CHUNK_COUNT, String.valueOf(count));
+				metadata.setProperty(KEY_CHUNK_SIZE, String.valueOf(chunkSize));
+				metadata.setProperty(KEY_CHUNK_OFFSET, String.valueOf(offset));
+				
+				producerTemplate.sendBodyAndHeader(URI_CHUNK_SEND, FileChunkUtils.frame(metadata, buffer.array(), length),
+				    HEADER_CHUNK, FileChunkUtils.FRAME_VERSION);
+				
+				if (log.isDebugEnabled()) {
+					log.debug("Sent chunk " + (index + 1) + " of " + count + " for complex obs file: " + filename);
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to read complex obs file: " + filename, e);
+		}
+		
+		log.info("Sent complex obs file: " + filename + " in " + count + " chunk(s)");
+	}
+	
+}
@@ -0,0 +1,254 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.service.ServiceHelper;
+import org.apache.camel.support.service.ServiceSupport;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Idempotent repository for complex obs files backed by a local journal file, it keeps the last
+ * modified timestamp of each file that was synced in memory so that checking a file does not
+ * require a DB lookup. Keys have the form <code>{file name}-{last modified}</code>, a file is
+ * considered synced if the journal holds the same last modified timestamp for its name.
+ * <p>
+ * Changes are appended to the journal file, it is compacted when it is loaded and whenever the
+ * number of lines grows past twice the number of files. Keys that are not found in the journal are
+ * looked up in the legacy jpaIdempotentRepository and recorded in the journal when found so that
+ * files synced before the journal was introduced are not sent again.
+ */
+@Component("complexObsJournal")
+public class ComplexObsJournal extends ServiceSupport implements IdempotentRepository {
+	
+	protected static final Logger log = LoggerFactory.getLogger(ComplexObsJournal.class);
+	
+	private static final String OP_ADD = "A";
+	
+	private static final String OP_REMOVE = "R";
+	
+	private static final int MIN_COMPACTION_LINES = 1000;
+	
+	private final Path journalFile;
+	
+	private final IdempotentRepository legacyRepository;
+	
+	private Map<String, Long> entries;
+	
+	private Writer writer;
+	
+	private long lineCount;
+	
+	public ComplexObsJournal(@Value("${complex.obs.journal.file:${eip.home:.}/complex-obs-journal.log}") String journalFile,
+	    @Lazy @Qualifier("jpaIdempotentRepository") IdempotentRepository legacyRepository) {
+		this.journalFile = Paths.get(journalFile);
+		this.legacyRepository = legacyRepository;
+	}
+	
+	@Override
+	public synchronized boolean add(String key) {
+		if (contains(key)) {
+			return false;
+		}
+		
+		put(key);
+		return true;
+	}
+	
+	@Override
+	public synchronized boolean contains(String key) {
+		final Long modified = getEntries().get(getName(key));
+		if (modified != null && modified == getModified(key)) {
+			return true;
+		}
+		
+		if (legacyRepository != null && legacyRepository.contains(key)) {
+			if (log.isDebugEnabled()) {
+				log.debug("Recording complex obs file key found in the legacy repository: " + key);
+			}
+			
+			put(key);
+			return true;
+		}
+		
+		return false;
+	}
+	
+	@Override
+	public synchronized boolean remove(String key) {
+		final String name = getName(key);
+		final Long modified = getEntries().get(name);
+		if (modified == null || modified != getModified(key)) {
+			return false;
+		}
+		
+		entries.remove(name);
+		append(OP_REMOVE + " " + name);
+		return true;
+	}
+	
+	@Override
+	public boolean confirm(String key) {
+		return true;
+	}
+	
+	@Override
+	public synchronized void clear() {
+		getEntries().clear();
+		compact();
+	}
+	
+	/**
+	 * Gets the number of files recorded in the journal
+	 *
+	 * @return the count
+	 */
+	public synchronized int size() {
+		return getEntries().size();
+	}
+	
+	@Override
+	protected void doStart() {
+		if (legacyRepository != null) {
+			ServiceHelper.startService(legacyRepository);
+		}
+		
+		synchronized (this) {
+			getEntries();
+		}
+	}
+	
+	@Override
+	protected synchronized void doStop() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+	
+	private void put(String key) {
+		final String name = getName(key);
+		final long modified = getModified(key);
+		getEntries().put(name, modified);
+		append(OP_ADD + " " + modified + " " + name);
+	}
+	
+	private static String getName(String key) {
+		final int index = key.lastIndexOf('-');
+		if (index < 1) {
+			throw new SyncException("Invalid complex obs file key: " + key);
+		}
+		
+		return key.substring(0, index);
+	}
+	
+	private static long getModified(String key) {
+		try {
+			return Long.parseLong(key.substring(key.lastIndexOf('-') + 1));
+		}
+		catch (NumberFormatException e) {
+			throw new SyncException("Invalid complex obs file key: " + key, e);
+		}
+	}
+	
+	private Map<String, Long> getEntries() {
+		if (entries == null) {
+			entries = new HashMap();
+			if (Files.exists(journalFile)) {
+				try (BufferedReader reader = Files.newBufferedReader(journalFile, UTF_8)) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						String[] parts = line.split(" ", 3);
+						if (OP_ADD.equals(parts[0]) && parts.length == 3) {
+							entries.put(parts[2], Long.valueOf(parts[1]));
+						} else if (OP_REMOVE.equals(parts[0]) && parts.length == 2) {
+							entries.remove(parts[1]);
+						} else {
+							//Typically a partially written last line after a crash
+							log.warn("Ignoring invalid line in complex obs journal: " + line);
+						}
+					}
+				}
+				catch (IOException e) {
+					throw new SyncException("Failed to load complex obs journal from " + journalFile, e);
+				}
+			}
+			
+			log.info("Loaded complex obs journal with " + entries.size() + " file(s)");
+			
+			compact();
+		}
+		
+		return entries;
+	}
+	
+	private void append(String line) {
+		try {
+			if (writer == null) {
+				writer = Files.newBufferedWriter(journalFile, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+			
+			writer.write(line);
+			writer.write('\n');
+			writer.flush();
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to write to complex obs journal " + journalFile, e);
+		}
+		
+		lineCount++;
+		if (lineCount > Math.max(MIN_COMPACTION_LINES, 2L * entries.size())) {
+			compact();
+		}
+	}
+	
+	/**
+	 * Rewrites the journal file with a single line per file
+	 */
+	private void compact() {
+		Path tempFile = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+		try {
+			if (writer != null) {
+				writer.close();
+				writer = null;
+			}
+			
+			if (journalFile.getParent() != null) {
+				Files.createDirectories(journalFile.getParent());
+			}
+			
+			try (BufferedWriter out = Files.newBufferedWriter(tempFile, UTF_8)) {
+				for (Map.Entry<String, Long> e : entries.entrySet()) {
+					out.write(OP_ADD + " " + e.getValue() + " " + e.getKey());
+					out.write('\n');
+				}
+			}
+			
+			Files.move(tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to compact complex obs journal " + journalFile, e);
+		}
+		
+		lineCount = entries.size();
+	}
+	
+}
@@ -0,0 +1,232 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.openmrs.eip.dbsync.SyncConstants;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Watches the complex obs directory for new and modified files with a {@link WatchService} so that
+ * they are synced within seconds instead of waiting for the next poll of the directory by the
+ * sender-complex-obs-sync route. A file is sent through the sender-complex-obs-file route once no
+ * event has been received for it for the settle time so that files still being written are not
+ * sent, files are recorded in the {@link ComplexObsJournal} before they are sent and removed from
+ * it if sending fails.
+ *
+ * <pre>
+ * NOTE: Events can be lost e.g. when the watch service overflows or for files written while the
+ * application is stopped, the sender-complex-obs-sync route remains enabled as a safety net that
+ * picks any file missing from the journal, its poll interval can be set to a much higher value.
+ * </pre>
+ */
+@Component("complexObsWatcher")
+public class ComplexObsWatcher {
+	
+	protected static final Logger log = LoggerFactory.getLogger(ComplexObsWatcher.class);
+	
+	public static final String URI_FILE = "direct:sender-complex-obs-file";
+	
+	private static final long MIN_TICK = 100;
+	
+	private final ProducerTemplate producerTemplate;
+	
+	private final ComplexObsJournal journal;
+	
+	private final Path directory;
+	
+	private final long settleTime;
+	
+	private final Map<String, Long> pending = new LinkedHashMap();
+	
+	private WatchService watchService;
+	
+	private Thread watcherThread;
+	
+	private volatile boolean stopped;
+	
+	public ComplexObsWatcher(ProducerTemplate producerTemplate, ComplexObsJournal journal,
+	    @Value("${" + SyncConstants.PROP_COMPLEX_OBS_DIR + ":}") String directory,
+	    @Value("${complex.obs.watch.settle.time:2000}") long settleTime) {
+		this.producerTemplate = producerTemplate;
+		this.journal = journal;
+		this.directory = Paths.get(directory);
+		this.settleTime = settleTime;
+	}
+	
+	/**
+	 * Starts watching the complex obs directory, does nothing if it is already being watched
+	 */
+	public synchronized void start() {
+		if (watcherThread != null) {
+			return;
+		}
+		
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to watch complex obs directory: " + directory, e);
+		}
+		
+		log.info("Watching complex obs directory: " + directory + " with a settle time of " + settleTime + "ms");
+		
+		stopped = false;
+		watcherThread = new Thread(this::run, "complex-obs-watcher");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+	}
+	
+	@PreDestroy
+	public synchronized void stop() {
+		if (watcherThread == null) {
+			return;
+		}
+		
+		log.info("Stopping complex obs directory watcher");
+		
+		stopped = true;
+		try {
+			watchService.close();
+		}
+		catch (IOException e) {
+			log.warn("Failed to close complex obs directory watch service", e);
+		}
+		
+		watcherThread.interrupt();
+		watcherThread = null;
+	}
+	
+	private void run() {
+		final long tick = Math.max(MIN_TICK, settleTime / 2);
+		while (!stopped) {
+			try {
+				WatchKey key = watchService.poll(tick, TimeUnit.MILLISECONDS);
+				if (key != null) {
+					final long now = System.currentTimeMillis();
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == OVERFLOW) {
+							log.warn("Complex obs directory watch events were lost, any missed file will be synced by "
+							        + "the next poll of the directory");
+						} else {
+							onEvent(((Path) event.context()).toString(), now);
+						}
+					}
+					
+					if (!key.reset()) {
+						log.error("Complex obs directory: " + directory + " can no longer be watched");
+						return;
+					}
+				}
+				
+				dispatchSettled(System.currentTimeMillis());
+			}
+			catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+			catch (Throwable t) {
+				log.error("An error occurred in the complex obs directory watcher", t);
+			}
+		}
+	}
+	
+	/**
+	 * Records an event for the file with the specified name, this resets the time the file has to
+	 * settle before it is sent
+	 *
+	 * @param filename the file name
+	 * @param now the current time in milliseconds
+	 */
+	protected synchronized void onEvent(String filename, long now) {
+		pending.remove(filename);
+		pending.put(filename, now);
+	}
+	
+	/**
+	 * Sends the files for which no event has been received for the settle time
+	 *
+	 * @param now the current time in milliseconds
+	 */
+	protected void dispatchSettled(long now) {
+		List<String> settled = new ArrayList();
+		synchronized (this) {
+			Iterator<Map.Entry<String, Long>> it = pending.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<String, Long> entry = it.next();
+				//Entries are ordered by the time of their last event
+				if (now - entry.getValue() < settleTime) {
+					break;
+				}
+				
+				settled.add(entry.getKey());
+				it.remove();
+			}
+		}
+		
+		settled.forEach(this::send);
+	}
+	
+	protected synchronized int getPendingCount() {
+		return pending.size();
+	}
+	
+	private void send(String filename) {
+		File file = directory.resolve(filename).toFile();
+		if (!file.isFile()) {
+			return;
+		}
+		
+		final long lastModified = file.lastModified();
+		final String key = filename + "-" + lastModified;
+		if (!journal.add(key)) {
+			if (log.isDebugEnabled()) {
+				log.debug("Ignoring complex obs file already synced: " + filename);
+			}
+			
+			return;
+		}
+		
+		Map<String, Object> headers = new HashMap();
+		headers.put(Exchange.FILE_NAME_ONLY, filename);
+		headers.put(Exchange.FILE_LAST_MODIFIED, lastModified);
+		headers.put(Exchange.FILE_LENGTH, file.length());
+		try {
+			producerTemplate.sendBodyAndHeaders(URI_FILE, file, headers);
+		}
+		catch (Exception e) {
+			log.error("Failed to sync complex obs file: " + filename + ", it will be synced by the next poll of the "
+			        + "directory",
+			    e);
+			
+			journal.remove(key);
+		}
+	}
+	
+}
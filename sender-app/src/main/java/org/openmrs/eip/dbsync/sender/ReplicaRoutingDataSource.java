@@ -0,0 +1,78 @@
+package org.openmrs.eip.dbsync.sender;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * OpenMRS datasource that hands out connections to the read replica instead of the primary
+ * database when the current thread has been marked to read from the replica, all other connections
+ * are obtained from the primary database.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+	
+	protected static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+	
+	public static final String KEY_PRIMARY = "primary";
+	
+	public static final String KEY_REPLICA = "replica";
+	
+	private static final ThreadLocal<Boolean> USE_REPLICA = new ThreadLocal();
+	
+	private final DataSource primary;
+	
+	public ReplicaRoutingDataSource(DataSource primary, DataSource replica) {
+		this.primary = primary;
+		Map<Object, Object> targets = new HashMap();
+		targets.put(KEY_PRIMARY, primary);
+		targets.put(KEY_REPLICA, replica);
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+		afterPropertiesSet();
+	}
+	
+	/**
+	 * Marks the current thread to read from the replica or the primary database
+	 *
+	 * @param useReplica specifies whether to read from the replica
+	 */
+	public static void setUseReplica(boolean useReplica) {
+		if (useReplica) {
+			USE_REPLICA.set(true);
+		} else {
+			USE_REPLICA.remove();
+		}
+	}
+	
+	/**
+	 * Checks whether the current thread is marked to read from the replica
+	 *
+	 * @return true if reading from the replica otherwise false
+	 */
+	public static boolean isUseReplica() {
+		return Boolean.TRUE.equals(USE_REPLICA.get());
+	}
+	
+	@Override
+	protected Object determineCurrentLookupKey() {
+		return isUseReplica() ? KEY_REPLICA : KEY_PRIMARY;
+	}
+	
+	/**
+	 * Closes the primary datasource since it is no longer registered as a bean, the replica is closed
+	 * by the application context
+	 */
+	@Override
+	public void close() throws Exception {
+		if (primary instanceof AutoCloseable) {
+			log.info("Closing the OpenMRS primary datasource");
+			((AutoCloseable) primary).close();
+		}
+	}
+	
+}
@@ -0,0 +1,365 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static org.openmrs.eip.mysql.watcher.WatcherConstants.PROP_EVENT;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.ExchangeBuilder;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.mysql.watcher.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes entity payloads from the sender-db-sync route to the output endpoint asynchronously so
+ * that the route moves on to the next event without waiting for the broker round trip. The output
+ * endpoint's producer blocks until the broker acknowledges a message, the in-flight window is
+ * therefore made of as many publisher lanes as its size, each lane is a thread that does one
+ * blocking send at a time, this implies the number of messages on the wire is at most the window
+ * size. Events are assigned to a lane based on their identifier so that messages for the same entity
+ * are always sent in the order of their events, the sender-db-sync route blocks when the lane of an
+ * event is still busy with a previous message, no message is queued behind another one.
+ * <p>
+ * Each message is given a sequence number in event order, acknowledgements can complete out of
+ * order across lanes and the acknowledged offset only advances over a contiguous prefix of
+ * acknowledged sequence numbers. If a send fails, the event is sent again synchronously through the
+ * sender-db-sync route so that the failure is handled by the watcher error handler, if that fails
+ * too, the callback of the message is not invoked.
+ *
+ * <p>
+ * When the sender-db-sync route is run by the {@link SenderOutbox}, the outbox sets a callback in
+ * the {@link #EX_PROP_ON_ACKNOWLEDGED} exchange property, the callback is only invoked once the
+ * acknowledged offset has passed the message and the {@link #EX_PROP_PUBLISHING} exchange property
+ * is set to true to tell the outbox not to acknowledge the event when the route returns, this
+ * implies the event stays pending in the outbox until its message is acknowledged by the broker and
+ * is processed again after a crash.
+ *
+ * <pre>
+ * NOTE: Without the outbox, the watcher considers an event processed as soon as its payload is
+ * handed over to this class, this implies up to the in-flight window of messages can be lost if
+ * the application crashes before they are acknowledged, the window is drained when the application
+ * is stopped.
+ * </pre>
+ */
+@Component("senderAsyncPublisher")
+public class SenderAsyncPublisher implements Processor {
+	
+	protected static final Logger log = LoggerFactory.getLogger(SenderAsyncPublisher.class);
+	
+	public static final String URI_DB_SYNC = SenderEventDebouncer.URI_DB_SYNC;
+	
+	public static final String EX_PROP_ASYNC_DISABLED = "asyncDisabled";
+	
+	/**
+	 * A {@link Runnable} to invoke once the acknowledged offset has passed the message
+	 */
+	public static final String EX_PROP_ON_ACKNOWLEDGED = "onAsyncAcknowledged";
+	
+	/**
+	 * Set to true on the exchange when the message was handed over to a publisher thread
+	 */
+	public static final String EX_PROP_PUBLISHING = "asyncPublishing";
+	
+	private static final long SHUTDOWN_TIMEOUT = 30;
+	
+	private final ProducerTemplate producerTemplate;
+	
+	private final SenderHashStore hashStore;
+	
+	private final String endpointUri;
+	
+	private final int maxInFlight;
+	
+	private final boolean hashStoreEnabled;
+	
+	private final AtomicInteger inFlight = new AtomicInteger();
+	
+	private final TreeSet<Long> acknowledged = new TreeSet();
+	
+	private final TreeMap<Long, Runnable> callbacks = new TreeMap();
+	
+	private final AtomicLong sendCount = new AtomicLong();
+	
+	private final AtomicLong sendNanos = new AtomicLong();
+	
+	private final AtomicLong failedCount = new AtomicLong();
+	
+	private ExecutorService[] executors;
+	
+	private Semaphore[] lanes;
+	
+	private long nextSequence = 1;
+	
+	private long ackedOffset;
+	
+	private boolean unsafeWarned;
+	
+	@Autowired
+	public SenderAsyncPublisher(ProducerTemplate producerTemplate, SenderHashStore hashStore,
+	    @Value("${camel.output.endpoint:}") String endpointUri, @Value("${sender.async.max.in.flight:100}") int maxInFlight,
+	    @Value("${sender.hash.store.enabled:false}") boolean hashStoreEnabled) {
+		this.producerTemplate = producerTemplate;
+		this.hashStore = hashStore;
+		this.endpointUri = endpointUri;
+		this.maxInFlight = maxInFlight;
+		this.hashStoreEnabled = hashStoreEnabled;
+	}
+	
+	@Override
+	public void process(Exchange exchange) throws InterruptedException {
+		final int lane = getLane(exchange.getProperty(PROP_EVENT, Event.class));
+		Runnable callback = exchange.getProperty(EX_PROP_ON_ACKNOWLEDGED, Runnable.class);
+		lanes[lane].acquire();
+		inFlight.incrementAndGet();
+		final long sequence;
+		synchronized (this) {
+			sequence = nextSequence++;
+			if (callback != null) {
+				callbacks.put(sequence, callback);
+			} else if (!unsafeWarned) {
+				unsafeWarned = true;
+				log.warn("Asynchronous publishing is used without the sender outbox, up to " + maxInFlight
+				        + " message(s) can be lost if the application crashes");
+			}
+		}
+		
+		try {
+			final Exchange copy = exchange.copy();
+			executors[lane].execute(() -> send(sequence, lane, copy));
+			exchange.setProperty(EX_PROP_PUBLISHING, true);
+		}
+		catch (RuntimeException e) {
+			//The failure is handled by the route's error handler and the event acknowledged by the caller
+			synchronized (this) {
+				callbacks.remove(sequence);
+			}
+			
+			acknowledge(sequence);
+			release(lane);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Records the message with the specified sequence number as acknowledged, advances the
+	 * acknowledged offset over the contiguous prefix of acknowledged messages and invokes the
+	 * callbacks of the messages the offset has passed
+	 *
+	 * @param sequence the sequence number
+	 * @return the acknowledged offset
+	 */
+	protected long acknowledge(long sequence) {
+		final long offset;
+		final List<Runnable> toInvoke = new ArrayList();
+		synchronized (this) {
+			acknowledged.add(sequence);
+			while (!acknowledged.isEmpty() && acknowledged.first() == ackedOffset + 1) {
+				ackedOffset = acknowledged.pollFirst();
+			}
+			
+			offset = ackedOffset;
+			Map<Long, Runnable> passed = callbacks.headMap(offset, true);
+			toInvoke.addAll(passed.values());
+			passed.clear();
+		}
+		
+		if (log.isTraceEnabled()) {
+			log.trace("Acknowledged message " + sequence + ", acknowledged offset: " + offset);
+		}
+		
+		//Invoked outside the lock since callbacks typically write to the outbox log
+		for (Runnable callback : toInvoke) {
+			try {
+				callback.run();
+			}
+			catch (Throwable t) {
+				log.error("An error occurred while invoking the acknowledgement callback of a message", t);
+			}
+		}
+		
+		return offset;
+	}
+	
+	/**
+	 * Gets the sequence number up to which all messages have been acknowledged
+	 *
+	 * @return the acknowledged offset
+	 */
+	public synchronized long getAckedOffset() {
+		return ackedOffset;
+	}
+	
+	/**
+	 * Gets the number of messages being sent i.e. on the wire and not yet acknowledged by the broker
+	 *
+	 * @return the count
+	 */
+	public int getInFlightCount() {
+		return inFlight.get();
+	}
+	
+	/**
+	 * @return the number of completed sends
+	 */
+	public long getSendCount() {
+		return sendCount.get();
+	}
+	
+	/**
+	 * @return the total time in nanoseconds spent on completed sends
+	 */
+	public long getSendNanos() {
+		return sendNanos.get();
+	}
+	
+	/**
+	 * @return the number of failed sends
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+	
+	private void send(long sequence, int lane, Exchange exchange) {
+		boolean delivered = false;
+		try {
+			final long start = System.nanoTime();
+			producerTemplate.send(endpointUri, exchange);
+			sendNanos.addAndGet(System.nanoTime() - start);
+			sendCount.incrementAndGet();
+			if (exchange.getException() == null) {
+				delivered = true;
+				if (hashStoreEnabled) {
+					hashStore.recordSent(exchange);
+				}
+			} else {
+				failedCount.incrementAndGet();
+				Event event = exchange.getProperty(PROP_EVENT, Event.class);
+				log.error("Failed to publish entity payload asynchronously, sending it again synchronously for event: "
+				        + event,
+				    exchange.getException());
+				
+				delivered = resend(exchange.getProperties());
+			}
+		}
+		catch (Throwable t) {
+			log.error("An error occurred while publishing entity payload " + sequence, t);
+		}
+		finally {
+			if (!delivered) {
+				//The message reached neither the broker nor the error handler, the callback is dropped so that the
+				//event stays pending in the outbox and is processed again after a restart
+				synchronized (this) {
+					callbacks.remove(sequence);
+				}
+			}
+			
+			acknowledge(sequence);
+			release(lane);
+		}
+	}
+	
+	private void release(int lane) {
+		inFlight.decrementAndGet();
+		lanes[lane].release();
+	}
+	
+	/**
+	 * Sends the entity payload again synchronously through the sender-db-sync route
+	 *
+	 * @param properties the properties of the failed exchange
+	 * @return true if the route completed without an exception otherwise false
+	 */
+	private boolean resend(Map<String, Object> properties) {
+		Exchange exchange = ExchangeBuilder.anExchange(producerTemplate.getCamelContext()).build();
+		//Camel's internal properties are excluded since the exception would be carried over, the callback is
+		//invoked when the message is acknowledged after the resend
+		properties.forEach((k, v) -> {
+			if (!k.startsWith("Camel") && !EX_PROP_ON_ACKNOWLEDGED.equals(k) && !EX_PROP_PUBLISHING.equals(k)) {
+				exchange.setProperty(k, v);
+			}
+		});
+		
+		exchange.setProperty(EX_PROP_ASYNC_DISABLED, true);
+		producerTemplate.send(URI_DB_SYNC, exchange);
+		if (exchange.getException() != null) {
+			log.error("An error occurred while sending entity synchronously for event: " + properties.get(PROP_EVENT),
+			    exchange.getException());
+			return false;
+		}
+		
+		return true;
+	}
+	
+	private synchronized int getLane(Event event) {
+		if (executors == null) {
+			if (maxInFlight < 1) {
+				throw new SyncException("sender.async.max.in.flight must be greater than 0");
+			}
+			
+			log.info("Starting sender async publisher with an in-flight window of " + maxInFlight + " messages");
+			
+			executors = new ExecutorService[maxInFlight];
+			lanes = new Semaphore[maxInFlight];
+			for (int i = 0; i < maxInFlight; i++) {
+				final String name = "sender-async-publisher-" + i;
+				executors[i] = Executors.newSingleThreadExecutor(r -> new Thread(r, name));
+				lanes[i] = new Semaphore(1, true);
+			}
+		}
+		
+		String key = event == null ? null : event.getIdentifier();
+		if (key == null && event != null) {
+			key = event.getTableName();
+		}
+		
+		return key == null ? 0 : Math.floorMod(key.hashCode(), executors.length);
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		ExecutorService[] toStop;
+		synchronized (this) {
+			toStop = executors;
+		}
+		
+		if (toStop == null) {
+			return;
+		}
+		
+		log.info("Stopping sender async publisher with " + getInFlightCount() + " message(s) in flight");
+		
+		for (ExecutorService executor : toStop) {
+			executor.shutdown();
+		}
+		
+		try {
+			for (ExecutorService executor : toStop) {
+				if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+					log.warn("Timed out waiting for in-flight messages to be published");
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			log.warn("Interrupted while waiting for the sender async publisher to stop");
+		}
+	}
+	
+}
@@ -0,0 +1,255 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static org.openmrs.eip.dbsync.sender.SenderHashStore.EX_PROP_ENTITY_HASH;
+import static org.openmrs.eip.dbsync.sender.SenderHashStore.EX_PROP_ENTITY_HASH_KEY;
+import static org.openmrs.eip.mysql.watcher.WatcherConstants.PROP_EVENT;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.ExchangeBuilder;
+import org.openmrs.eip.dbsync.utils.BatchEnvelopeUtils;
+import org.openmrs.eip.mysql.watcher.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Collects marshalled entity payloads from the sender-db-sync route and publishes them in batch
+ * envelopes, see {@link BatchEnvelopeUtils}, so that a single broker message, encryption and commit
+ * covers many entities. A batch is published when it reaches the maximum number of entities, the
+ * maximum size or when its oldest entity has waited for the linger time, entities are published in
+ * the order they were added. If publishing a batch fails, the events of all the entities in it are
+ * sent again one by one through the sender-db-sync route without batching so that any failures are
+ * handled per event by the watcher error handler.
+ *
+ * <pre>
+ * NOTE: Pending entities only live in memory, the watcher considers an event processed as soon as
+ * its payload is handed over to this class, this implies pending entities are lost if the
+ * application crashes before they are published.
+ * </pre>
+ */
+@Component("senderBatchPublisher")
+public class SenderBatchPublisher implements Processor {
+	
+	protected static final Logger log = LoggerFactory.getLogger(SenderBatchPublisher.class);
+	
+	public static final String URI_BATCH_SEND = "direct:sender-batch-send";
+	
+	public static final String URI_DB_SYNC = SenderEventDebouncer.URI_DB_SYNC;
+	
+	public static final String EX_PROP_BATCH_DISABLED = "batchDisabled";
+	
+	public static final String EX_PROP_BATCH_SIZE = "batchSize";
+	
+	private static final long MIN_TICK = 50;
+	
+	private final ProducerTemplate producerTemplate;
+	
+	private final SenderHashStore hashStore;
+	
+	private final int maxCount;
+	
+	private final long maxBytes;
+	
+	private final long linger;
+	
+	private final boolean hashStoreEnabled;
+	
+	private List<BatchEntry> entries = new ArrayList();
+	
+	private long pendingBytes;
+	
+	private long oldestAdded;
+	
+	private ScheduledExecutorService flusher;
+	
+	@Autowired
+	public SenderBatchPublisher(ProducerTemplate producerTemplate, SenderHashStore hashStore,
+	    @Value("${sender.batch.max.count:100}") int maxCount, @Value("${sender.batch.max.bytes:524288}") long maxBytes,
+	    @Value("${sender.batch.linger:1000}") long linger,
+	    @Value("${sender.hash.store.enabled:false}") boolean hashStoreEnabled) {
+		this.producerTemplate = producerTemplate;
+		this.hashStore = hashStore;
+		this.maxCount = maxCount;
+		this.maxBytes = maxBytes;
+		this.linger = linger;
+		this.hashStoreEnabled = hashStoreEnabled;
+	}
+	
+	@Override
+	public void process(Exchange exchange) {
+		startFlusherIfNecessary();
+		add(exchange.getIn().getBody(String.class), exchange.getProperties(), System.currentTimeMillis());
+	}
+	
+	/**
+	 * Adds the specified payload to the current batch, the batch is published before the payload is
+	 * added if the payload would make it exceed the maximum size and after if it is full.
+	 *
+	 * @param payload the marshalled entity payload
+	 * @param properties the exchange properties of the entity
+	 * @param now the current time in milliseconds
+	 */
+	protected synchronized void add(String payload, Map<String, Object> properties, long now) {
+		if (!entries.isEmpty() && pendingBytes + payload.length() > maxBytes) {
+			flush();
+		}
+		
+		if (entries.isEmpty()) {
+			oldestAdded = now;
+		}
+		
+		entries.add(new BatchEntry(payload, properties));
+		pendingBytes += payload.length();
+		if (entries.size() >= maxCount || pendingBytes >= maxBytes) {
+			flush();
+		}
+	}
+	
+	/**
+	 * Publishes the current batch if its oldest entity was added at or before the specified cutoff
+	 * time
+	 *
+	 * @param cutoff the time in milliseconds
+	 */
+	protected synchronized void flushIfLingered(long cutoff) {
+		if (!entries.isEmpty() && oldestAdded <= cutoff) {
+			flush();
+		}
+	}
+	
+	/**
+	 * Publishes the current batch
+	 */
+	protected synchronized void flush() {
+		if (entries.isEmpty()) {
+			return;
+		}
+		
+		List<BatchEntry> batch = entries;
+		entries = new ArrayList();
+		pendingBytes = 0;
+		publish(batch);
+	}
+	
+	protected synchronized int getPendingCount() {
+		return entries.size();
+	}
+	
+	private void publish(List<BatchEntry> batch) {
+		if (log.isDebugEnabled()) {
+			log.debug("Publishing batch of " + batch.size() + " entities");
+		}
+		
+		Exchange exchange = ExchangeBuilder.anExchange(producerTemplate.getCamelContext()).build();
+		exchange.setProperty(EX_PROP_BATCH_SIZE, batch.size());
+		exchange.getIn().setBody(BatchEnvelopeUtils.wrap(batch.stream().map(e -> e.payload).collect(Collectors.toList())));
+		producerTemplate.send(URI_BATCH_SEND, exchange);
+		if (exchange.getException() != null) {
+			log.error("Failed to publish batch of " + batch.size() + " entities, sending them without batching",
+			    exchange.getException());
+			
+			batch.forEach(e -> resend(e.properties));
+			return;
+		}
+		
+		if (hashStoreEnabled) {
+			batch.forEach(e -> hashStore.put((String) e.properties.get(EX_PROP_ENTITY_HASH_KEY),
+			    (String) e.properties.get(EX_PROP_ENTITY_HASH)));
+		}
+	}
+	
+	private void resend(Map<String, Object> properties) {
+		Exchange exchange = ExchangeBuilder.anExchange(producerTemplate.getCamelContext()).build();
+		exchange.getProperties().putAll(properties);
+		exchange.setProperty(EX_PROP_BATCH_DISABLED, true);
+		producerTemplate.send(URI_DB_SYNC, exchange);
+		if (exchange.getException() != null) {
+			Event event = (Event) properties.get(PROP_EVENT);
+			log.error("An error occurred while sending entity without batching for event: " + event,
+			    exchange.getException());
+		}
+	}
+	
+	private synchronized void startFlusherIfNecessary() {
+		if (flusher != null) {
+			return;
+		}
+		
+		final long tick = Math.max(MIN_TICK, linger / 2);
+		log.info("Starting sender batch publisher with max count: " + maxCount + ", max bytes: " + maxBytes
+		        + ", linger: " + linger + "ms");
+		
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "sender-batch-publisher"));
+		flusher.scheduleWithFixedDelay(() -> {
+			try {
+				flushIfLingered(System.currentTimeMillis() - linger);
+			}
+			catch (Throwable t) {
+				log.error("An error occurred while publishing a batch", t);
+			}
+		}, tick, tick, TimeUnit.MILLISECONDS);
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		ScheduledExecutorService executor;
+		synchronized (this) {
+			executor = flusher;
+		}
+		
+		if (executor == null) {
+			return;
+		}
+		
+		log.info("Stopping sender batch publisher");
+		
+		executor.shutdown();
+		try {
+			executor.awaitTermination(linger + MIN_TICK, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			log.warn("Interrupted while waiting for the sender batch publisher to stop");
+		}
+		
+		int count = getPendingCount();
+		if (count > 0) {
+			log.info("Publishing " + count + " remaining batched entities");
+			flush();
+		}
+	}
+	
+	private static class BatchEntry {
+		
+		private final String payload;
+		
+		private final Map<String, Object> properties;
+		
+		BatchEntry(String payload, Map<String, Object> properties) {
+			this.payload = payload;
+			this.properties = new HashMap();
+			//Camel's internal properties are excluded since the entity may be sent again in a new exchange
+			properties.forEach((k, v) -> {
+				if (!k.startsWith("Camel")) {
+					this.properties.put(k, v);
+				}
+			});
+		}
+		
+	}
+	
+}
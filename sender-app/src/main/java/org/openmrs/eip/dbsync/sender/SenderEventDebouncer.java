@@ -0,0 +1,255 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static org.openmrs.eip.mysql.watcher.WatcherConstants.PROP_EVENT;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.ExchangeBuilder;
+import org.openmrs.eip.mysql.watcher.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds DB events per table and identifier for a configurable window before forwarding them to the
+ * sender-db-sync route so that rows that are written several times in quick succession are only
+ * extracted and sent once, the entity state sent is always the one in the DB at the time the event
+ * is forwarded. Events are forwarded in the order in which their entities were first seen so that
+ * the relative ordering across entities is preserved, delete events are never held, they flush all
+ * the pending events that precede them and are forwarded immediately.
+ *
+ * <pre>
+ * NOTE: Pending events only live in memory, the watcher considers an event processed as soon as it
+ * is handed over to this class, this implies pending events are lost if the application crashes
+ * before they are forwarded.
+ * </pre>
+ */
+@Component("senderEventDebouncer")
+public class SenderEventDebouncer implements Processor {
+	
+	protected static final Logger log = LoggerFactory.getLogger(SenderEventDebouncer.class);
+	
+	public static final String URI_DB_SYNC = "direct:sender-db-sync";
+	
+	private static final long MIN_TICK = 50;
+	
+	private final ProducerTemplate producerTemplate;
+	
+	private final long window;
+	
+	private final Map<String, PendingEvent> pending = new LinkedHashMap();
+	
+	private ScheduledExecutorService flusher;
+	
+	private long coalescedCount;
+	
+	@Autowired
+	public SenderEventDebouncer(ProducerTemplate producerTemplate,
+	    @Value("${sender.debounce.window:3000}") long window) {
+		this.producerTemplate = producerTemplate;
+		this.window = window;
+	}
+	
+	@Override
+	public void process(Exchange exchange) {
+		Event event = exchange.getProperty(PROP_EVENT, Event.class);
+		if (window <= 0) {
+			forward(event, copyProperties(exchange.getProperties()));
+			return;
+		}
+		
+		startFlusherIfNecessary();
+		debounce(event, exchange.getProperties(), System.currentTimeMillis());
+	}
+	
+	/**
+	 * Adds the specified event to the pending events or forwards it immediately if it is a delete.
+	 *
+	 * @param event the event to debounce
+	 * @param properties the exchange properties to forward along with the event
+	 * @param now the current time in milliseconds
+	 */
+	protected synchronized void debounce(Event event, Map<String, Object> properties, long now) {
+		final String key = getKey(event);
+		if ("d".equals(event.getOperation())) {
+			if (pending.remove(key) != null) {
+				coalescedCount++;
+				if (log.isDebugEnabled()) {
+					log.debug("Discarded pending event for deleted entity -> " + key);
+				}
+			}
+			
+			flush(Long.MAX_VALUE);
+			forward(event, copyProperties(properties));
+			return;
+		}
+		
+		PendingEvent existing = pending.get(key);
+		if (existing == null) {
+			pending.put(key, new PendingEvent(event, properties, now));
+		} else {
+			coalescedCount++;
+			if (log.isDebugEnabled()) {
+				log.debug("Coalesced event for " + key + ", total coalesced events: " + coalescedCount);
+			}
+			
+			//Keep the insert operation so the receiver still sees a new entity, the state is loaded at flush time
+			if (!"c".equals(existing.event.getOperation())) {
+				existing.event = event;
+				existing.properties = copyProperties(properties);
+			}
+		}
+	}
+	
+	/**
+	 * Forwards all pending events that were first seen at or before the specified cutoff time in the
+	 * order in which they were first seen
+	 *
+	 * @param cutoff the time in milliseconds
+	 */
+	protected synchronized void flush(long cutoff) {
+		List<PendingEvent> matured = new ArrayList();
+		Iterator<PendingEvent> it = pending.values().iterator();
+		while (it.hasNext()) {
+			PendingEvent pendingEvent = it.next();
+			//Entries are in insertion order, so are their first seen times
+			if (pendingEvent.firstSeen > cutoff) {
+				break;
+			}
+			
+			matured.add(pendingEvent);
+			it.remove();
+		}
+		
+		if (!matured.isEmpty() && log.isDebugEnabled()) {
+			log.debug("Flushing " + matured.size() + " pending event(s), remaining: " + pending.size());
+		}
+		
+		//All the matured events were captured before the flush, see SenderReplicaRouter
+		final long flushedAt = System.nanoTime();
+		for (PendingEvent pendingEvent : matured) {
+			pendingEvent.properties.put(SenderReplicaRouter.EX_PROP_CAPTURED_AT, flushedAt);
+			forward(pendingEvent.event, pendingEvent.properties);
+		}
+	}
+	
+	protected synchronized int getPendingCount() {
+		return pending.size();
+	}
+	
+	protected synchronized long getCoalescedCount() {
+		return coalescedCount;
+	}
+	
+	private void forward(Event event, Map<String, Object> properties) {
+		Exchange exchange = ExchangeBuilder.anExchange(producerTemplate.getCamelContext()).build();
+		exchange.getProperties().putAll(properties);
+		exchange.setProperty(PROP_EVENT, event);
+		producerTemplate.send(URI_DB_SYNC, exchange);
+		if (exchange.getException() != null) {
+			log.error("An error occurred while forwarding debounced event for " + getKey(event),
+			    exchange.getException());
+		}
+	}
+	
+	private synchronized void startFlusherIfNecessary() {
+		if (flusher != null) {
+			return;
+		}
+		
+		final long tick = Math.max(MIN_TICK, window / 2);
+		log.info("Starting sender event debouncer with a window of " + window + "ms");
+		
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "sender-event-debouncer"));
+		flusher.scheduleWithFixedDelay(() -> {
+			try {
+				flush(System.currentTimeMillis() - window);
+			}
+			catch (Throwable t) {
+				log.error("An error occurred while flushing debounced events", t);
+			}
+		}, tick, tick, TimeUnit.MILLISECONDS);
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		ScheduledExecutorService executor;
+		synchronized (this) {
+			executor = flusher;
+		}
+		
+		if (executor == null) {
+			return;
+		}
+		
+		log.info("Stopping sender event debouncer");
+		
+		executor.shutdown();
+		try {
+			executor.awaitTermination(window + MIN_TICK, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			log.warn("Interrupted while waiting for the sender event debouncer to stop");
+		}
+		
+		int count = getPendingCount();
+		if (count > 0) {
+			log.info("Flushing " + count + " remaining debounced event(s)");
+			flush(Long.MAX_VALUE);
+		}
+	}
+	
+	/**
+	 * Copies the exchange properties set by the application routes, camel's internal properties are
+	 * excluded since the event is forwarded in a new exchange
+	 *
+	 * @param properties the exchange properties
+	 * @return a copy of the properties
+	 */
+	private static Map<String, Object> copyProperties(Map<String, Object> properties) {
+		Map<String, Object> copy = new HashMap();
+		properties.forEach((k, v) -> {
+			if (!k.startsWith("Camel")) {
+				copy.put(k, v);
+			}
+		});
+		
+		return copy;
+	}
+	
+	private static String getKey(Event event) {
+		return event.getTableName() + "#" + event.getIdentifier();
+	}
+	
+	private static class PendingEvent {
+		
+		private Event event;
+		
+		private Map<String, Object> properties;
+		
+		private final long firstSeen;
+		
+		PendingEvent(Event event, Map<String, Object> properties, long firstSeen) {
+			this.event = event;
+			this.properties = copyProperties(properties);
+			this.firstSeen = firstSeen;
+		}
+		
+	}
+	
+}
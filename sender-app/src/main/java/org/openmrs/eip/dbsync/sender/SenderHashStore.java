@@ -0,0 +1,162 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static org.openmrs.eip.mysql.watcher.WatcherConstants.PROP_EVENT;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+import org.openmrs.eip.mysql.watcher.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the hashes of the last entity states sent to the receiver, it is used to skip publishing of
+ * entities whose state has not changed since they were last sent e.g. when a binlog event is for a
+ * column that is not mapped in the model or an update writes the same values. Hashes are computed
+ * with {@link HashUtils#computeHash(org.openmrs.eip.dbsync.model.BaseModel)} so the normalization
+ * matches that used by the receiver.
+ *
+ * <pre>
+ * NOTE: The hashes are kept in memory with a maximum number of entries after which the least
+ * recently used entries are evicted, this means entities are always sent after a restart or when
+ * their entries are evicted.
+ * </pre>
+ */
+@Component("senderHashStore")
+public class SenderHashStore {
+	
+	protected static final Logger log = LoggerFactory.getLogger(SenderHashStore.class);
+	
+	public static final String EX_PROP_ENTITY_HASH = "entityHash";
+	
+	public static final String EX_PROP_ENTITY_HASH_KEY = "entityHashKey";
+	
+	public static final String EX_PROP_ENTITY_UNCHANGED = "entityUnchanged";
+	
+	private final Map<String, String> hashes;
+	
+	private final AtomicLong suppressedCount = new AtomicLong();
+	
+	public SenderHashStore(@Value("${sender.hash.store.max.entries:100000}") int maxEntries) {
+		hashes = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > maxEntries;
+			}
+			
+		};
+	}
+	
+	/**
+	 * Computes the hash of the {@link SyncModel} in the exchange body and compares it to that of the
+	 * last state sent for the same entity, the outcome is set as an exchange property. Deletes are
+	 * never skipped, they remove the stored hash of the entity.
+	 *
+	 * @param exchange the current exchange
+	 */
+	public void check(Exchange exchange) {
+		SyncModel syncModel = exchange.getIn().getBody(SyncModel.class);
+		Event event = exchange.getProperty(PROP_EVENT, Event.class);
+		final String key = getKey(syncModel);
+		boolean unchanged = false;
+		if ("d".equals(event.getOperation())) {
+			synchronized (hashes) {
+				hashes.remove(key);
+			}
+		} else {
+			String hash = HashUtils.computeHash(syncModel.getModel());
+			exchange.setProperty(EX_PROP_ENTITY_HASH_KEY, key);
+			exchange.setProperty(EX_PROP_ENTITY_HASH, hash);
+			synchronized (hashes) {
+				unchanged = hash.equals(hashes.get(key));
+			}
+			
+			if (unchanged) {
+				suppressedCount.incrementAndGet();
+				if (log.isDebugEnabled()) {
+					log.debug("Entity state is unchanged since it was last sent -> " + key);
+				}
+			}
+		}
+		
+		exchange.setProperty(EX_PROP_ENTITY_UNCHANGED, unchanged);
+	}
+	
+	/**
+	 * Sets the hash of the entity state in the {@link SyncModel} in the exchange body and the version
+	 * of the hash in the metadata so that the receiver doesn't have to compute it, the hash computed
+	 * by {@link #check(Exchange)} is reused if any.
+	 *
+	 * @param exchange the current exchange
+	 */
+	public void setMetadataHash(Exchange exchange) {
+		SyncModel syncModel = exchange.getIn().getBody(SyncModel.class);
+		String hash = exchange.getProperty(EX_PROP_ENTITY_HASH, String.class);
+		if (hash == null) {
+			hash = HashUtils.computeHash(syncModel.getModel());
+		}
+		
+		syncModel.getMetadata().setHash(hash);
+		syncModel.getMetadata().setHashVersion(HashUtils.getHashVersion());
+	}
+	
+	/**
+	 * Records the hash of the entity state that was sent, should be called only after the message has
+	 * been successfully published.
+	 *
+	 * @param exchange the current exchange
+	 */
+	public void recordSent(Exchange exchange) {
+		String key = exchange.getProperty(EX_PROP_ENTITY_HASH_KEY, String.class);
+		String hash = exchange.getProperty(EX_PROP_ENTITY_HASH, String.class);
+		put(key, hash);
+	}
+	
+	/**
+	 * Records the specified hash as that of the last entity state sent for the specified key
+	 *
+	 * @param key the entity key set as the {@link #EX_PROP_ENTITY_HASH_KEY} exchange property
+	 * @param hash the entity hash set as the {@link #EX_PROP_ENTITY_HASH} exchange property
+	 */
+	public void put(String key, String hash) {
+		if (key == null || hash == null) {
+			return;
+		}
+		
+		synchronized (hashes) {
+			hashes.put(key, hash);
+		}
+	}
+	
+	/**
+	 * Gets the number of messages that have been skipped because the entity state was unchanged
+	 *
+	 * @return the count
+	 */
+	public long getSuppressedCount() {
+		return suppressedCount.get();
+	}
+	
+	/**
+	 * Gets the number of stored hashes
+	 *
+	 * @return the count
+	 */
+	public int getSize() {
+		synchronized (hashes) {
+			return hashes.size();
+		}
+	}
+	
+	private static String getKey(SyncModel syncModel) {
+		return syncModel.getTableToSyncModelClass().getName() + "#" + syncModel.getModel().getUuid();
+	}
+	
+}
@@ -0,0 +1,562 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.openmrs.eip.mysql.watcher.WatcherConstants.PROP_EVENT;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.ExchangeBuilder;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.mysql.watcher.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Durable local outbox in front of the sender-db-sync route, DB events are appended to a log file
+ * on disk and handed over to a pool of workers that run them through the sender-db-sync route i.e.
+ * extract, encode, encrypt and publish the entities. This decouples the speed at which events are
+ * captured from the speed of extraction and publishing and allows extraction to use several
+ * threads, events are assigned to a worker based on their identifier so that events for the same
+ * entity are always processed in order.
+ * <p>
+ * At most {@code sender.outbox.max.dispatched} events are handed over to the workers and kept in
+ * memory at a time, any further event is only appended to the log and read back from it in
+ * sequence order once the workers have caught up, this implies a backlog e.g. during a long broker
+ * outage only grows the log file and not the heap. Note that events that failed unexpectedly stay
+ * handed over until the application is restarted.
+ * <p>
+ * An event is acknowledged in the log once the sender-db-sync route is done with it or, when its
+ * entity is published asynchronously, once the {@link SenderAsyncPublisher} has received the broker
+ * acknowledgement for it and for all the messages published before it, failures are handled by the
+ * route's error handler, the log is compacted to only the pending events whenever the number of
+ * lines grows past twice the number of pending events. Pending events found in the log when the
+ * application starts are processed before any new event, a partially written last line is ignored
+ * but any other invalid line fails the startup since it implies the log is corrupt.
+ */
+@Component("senderOutbox")
+public class SenderOutbox implements Processor {
+	
+	protected static final Logger log = LoggerFactory.getLogger(SenderOutbox.class);
+	
+	public static final String URI_DB_SYNC = SenderEventDebouncer.URI_DB_SYNC;
+	
+	private static final String OP_ENQUEUE = "E";
+	
+	private static final String OP_ACK = "A";
+	
+	private static final int MIN_COMPACTION_LINES = 1000;
+	
+	private static final long SHUTDOWN_TIMEOUT = 30;
+	
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+	        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	
+	private final ProducerTemplate producerTemplate;
+	
+	private final Path logFile;
+	
+	private final int workers;
+	
+	private final boolean fsync;
+	
+	private final int maxDispatched;
+	
+	/**
+	 * The events handed over to the workers and not yet acknowledged
+	 */
+	private final Map<Long, Event> dispatched = new TreeMap();
+	
+	private FileChannel channel;
+	
+	private ExecutorService[] executors;
+	
+	private boolean stopped;
+	
+	private long nextSequence = 1;
+	
+	/**
+	 * The sequence number of the oldest event that is only in the log
+	 */
+	private long nextToDispatch = 1;
+	
+	/**
+	 * The number of events that are only in the log
+	 */
+	private long undispatchedCount;
+	
+	/**
+	 * The position in the log at or after which the line of the oldest event that is only in the log
+	 * is found
+	 */
+	private long dispatchPosition;
+	
+	private long logSize;
+	
+	private long lineCount;
+	
+	@Autowired
+	public SenderOutbox(ProducerTemplate producerTemplate,
+	    @Value("${sender.outbox.file:${eip.home:.}/sender-outbox.log}") String logFile,
+	    @Value("${sender.outbox.workers:4}") int workers, @Value("${sender.outbox.fsync:true}") boolean fsync,
+	    @Value("${sender.outbox.max.dispatched:1000}") int maxDispatched) {
+		this.producerTemplate = producerTemplate;
+		this.logFile = Paths.get(logFile);
+		this.workers = workers;
+		this.fsync = fsync;
+		this.maxDispatched = maxDispatched;
+	}
+	
+	@Override
+	public void process(Exchange exchange) {
+		Event event = exchange.getProperty(PROP_EVENT, Event.class);
+		final long capturedAt = System.nanoTime();
+		synchronized (this) {
+			start();
+			final long sequence = nextSequence++;
+			final long position = logSize;
+			append(OP_ENQUEUE + " " + sequence + " " + toJson(event));
+			if (undispatchedCount == 0 && dispatched.size() < maxDispatched) {
+				nextToDispatch = sequence + 1;
+				dispatched.put(sequence, event);
+				dispatch(sequence, event, capturedAt);
+			} else {
+				//Dispatched in order once the workers catch up, see refill
+				if (undispatchedCount == 0) {
+					dispatchPosition = position;
+				}
+				
+				undispatchedCount++;
+			}
+		}
+	}
+	
+	/**
+	 * Loads the log file, starts the workers and dispatches the pending events found in the log, does
+	 * nothing if the outbox is already started
+	 */
+	public synchronized void start() {
+		if (executors != null) {
+			return;
+		}
+		
+		if (workers < 1 || maxDispatched < 1) {
+			throw new SyncException("sender.outbox.workers and sender.outbox.max.dispatched must be greater than 0");
+		}
+		
+		load();
+		
+		log.info("Starting sender outbox with " + workers + " worker(s) and " + undispatchedCount + " pending event(s)");
+		
+		executors = new ExecutorService[workers];
+		for (int i = 0; i < workers; i++) {
+			final String name = "sender-outbox-worker-" + i;
+			executors[i] = Executors.newSingleThreadExecutor(r -> new Thread(r, name));
+		}
+		
+		refill();
+	}
+	
+	/**
+	 * Starts the outbox if a log file exists so that events left pending when the application was
+	 * stopped are processed without waiting for a new event
+	 */
+	public void recover() {
+		if (Files.exists(logFile)) {
+			start();
+		}
+	}
+	
+	/**
+	 * Gets the number of events that have not yet been processed
+	 *
+	 * @return the count
+	 */
+	public synchronized long getPendingCount() {
+		return dispatched.size() + undispatchedCount;
+	}
+	
+	/**
+	 * Gets the number of events handed over to the workers and not yet processed
+	 *
+	 * @return the count
+	 */
+	public synchronized int getDispatchedCount() {
+		return dispatched.size();
+	}
+	
+	/**
+	 * Records the event with the specified sequence number as processed
+	 *
+	 * @param sequence the sequence number
+	 */
+	protected synchronized void acknowledge(long sequence) {
+		if (dispatched.remove(sequence) == null) {
+			return;
+		}
+		
+		append(OP_ACK + " " + sequence);
+		//Refilled in chunks to limit the number of reads from the log
+		if (undispatchedCount > 0 && dispatched.size() <= maxDispatched / 2) {
+			refill();
+		}
+		
+		if (lineCount > Math.max(MIN_COMPACTION_LINES, 2L * getPendingCount())) {
+			compact();
+		}
+	}
+	
+	/**
+	 * Reads events that are only in the log in sequence order and dispatches them until the maximum
+	 * number of dispatched events is reached
+	 */
+	private void refill() {
+		if (stopped || undispatchedCount == 0 || dispatched.size() >= maxDispatched) {
+			return;
+		}
+		
+		//The events were all captured before they were read
+		final long readAt = System.nanoTime();
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(logFile))) {
+			skipFully(in, dispatchPosition);
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			int length;
+			while (undispatchedCount > 0 && dispatched.size() < maxDispatched && (length = readLine(in, line)) > 0) {
+				if (length == line.size()) {
+					break;
+				}
+				
+				dispatchPosition += length;
+				String[] parts = line.toString(UTF_8.name()).split(" ", 3);
+				if (!OP_ENQUEUE.equals(parts[0])) {
+					continue;
+				}
+				
+				final long sequence = Long.parseLong(parts[1]);
+				if (sequence >= nextToDispatch) {
+					Event event = MAPPER.readValue(parts[2], Event.class);
+					nextToDispatch = sequence + 1;
+					undispatchedCount--;
+					dispatched.put(sequence, event);
+					dispatch(sequence, event, readAt);
+				}
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			throw new SyncException("Failed to read pending events from sender outbox " + logFile, e);
+		}
+	}
+	
+	private void dispatch(long sequence, Event event, long capturedAt) {
+		String key = event.getIdentifier() != null ? event.getIdentifier() : event.getTableName();
+		ExecutorService executor = executors[key == null ? 0 : Math.floorMod(key.hashCode(), executors.length)];
+		executor.execute(() -> forward(sequence, event, capturedAt));
+	}
+	
+	private void forward(long sequence, Event event, long capturedAt) {
+		try {
+			Exchange exchange = ExchangeBuilder.anExchange(producerTemplate.getCamelContext()).build();
+			exchange.setProperty(PROP_EVENT, event);
+			exchange.setProperty(SenderReplicaRouter.EX_PROP_CAPTURED_AT, capturedAt);
+			exchange.setProperty(SenderAsyncPublisher.EX_PROP_ON_ACKNOWLEDGED, (Runnable) () -> acknowledge(sequence));
+			producerTemplate.send(URI_DB_SYNC, exchange);
+			if (exchange.getException() != null) {
+				log.error("An error occurred while processing outbox event: " + event, exchange.getException());
+			}
+			
+			//A message published asynchronously is acknowledged by the publisher once the broker acknowledges it
+			if (!exchange.getProperty(SenderAsyncPublisher.EX_PROP_PUBLISHING, false, Boolean.class)) {
+				acknowledge(sequence);
+			}
+		}
+		catch (Throwable t) {
+			//The event stays in the log and is processed again after a restart
+			log.error("Failed to process outbox event: " + event, t);
+		}
+	}
+	
+	/**
+	 * Rewrites the log file with only the events that are not yet acknowledged, all of them are left
+	 * to be dispatched from the log
+	 */
+	private void load() {
+		BitSet acknowledged = new BitSet();
+		long first = -1;
+		if (Files.exists(logFile)) {
+			try (InputStream in = new BufferedInputStream(Files.newInputStream(logFile))) {
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				int lineNumber = 0;
+				int length;
+				while ((length = readLine(in, buffer)) > 0) {
+					lineNumber++;
+					final String line = buffer.toString(UTF_8.name());
+					if (length == buffer.size()) {
+						//No line terminator, a partially written last line after a crash, the event was never captured
+						log.warn("Ignoring partially written last line in sender outbox: " + line);
+						break;
+					}
+					
+					String[] parts = line.split(" ", 3);
+					try {
+						if (OP_ENQUEUE.equals(parts[0]) && parts.length == 3) {
+							final long sequence = Long.parseLong(parts[1]);
+							MAPPER.readValue(parts[2], Event.class);
+							if (first < 0) {
+								first = sequence;
+							}
+							
+							nextSequence = Math.max(nextSequence, sequence + 1);
+						} else if (OP_ACK.equals(parts[0]) && parts.length == 2) {
+							final long sequence = Long.parseLong(parts[1]);
+							if (first >= 0 && sequence >= first) {
+								acknowledged.set(Math.toIntExact(sequence - first));
+							}
+						} else {
+							throw new IllegalArgumentException("Unknown operation");
+						}
+					}
+					catch (IllegalArgumentException | ArithmeticException | JsonProcessingException e) {
+						throw new SyncException("Sender outbox " + logFile + " is corrupt, invalid line " + lineNumber, e);
+					}
+				}
+			}
+			catch (IOException e) {
+				throw new SyncException("Failed to load sender outbox from " + logFile, e);
+			}
+		}
+		
+		final long base = first;
+		nextToDispatch = nextSequence;
+		undispatchedCount = 0;
+		rewrite(sequence -> sequence >= base && !acknowledged.get(Math.toIntExact(sequence - base)));
+		dispatchPosition = 0;
+	}
+	
+	/**
+	 * Rewrites the log file with only the pending events
+	 */
+	private void compact() {
+		rewrite(sequence -> sequence >= nextToDispatch || dispatched.containsKey(sequence));
+	}
+	
+	/**
+	 * Rewrites the log file with only the enqueued events matching the specified filter, the filtered
+	 * events with a sequence number equal to or greater than {@link #nextToDispatch} are counted as
+	 * only in the log unless the log is being loaded in which case all of them are
+	 *
+	 * @param filter the filter
+	 */
+	private void rewrite(LongPredicate filter) {
+		Path tempFile = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+		final boolean loading = executors == null;
+		long written = 0;
+		long position = 0;
+		boolean positionFound = false;
+		try {
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+			
+			if (logFile.getParent() != null) {
+				Files.createDirectories(logFile.getParent());
+			}
+			
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+				if (Files.exists(logFile)) {
+					try (InputStream in = new BufferedInputStream(Files.newInputStream(logFile))) {
+						ByteArrayOutputStream line = new ByteArrayOutputStream();
+						int length;
+						while ((length = readLine(in, line)) > 0) {
+							if (length == line.size()) {
+								//The partially written last line skipped when loading
+								break;
+							}
+							
+							String[] parts = line.toString(UTF_8.name()).split(" ", 3);
+							if (!OP_ENQUEUE.equals(parts[0]) || parts.length < 3) {
+								continue;
+							}
+							
+							final long sequence = Long.parseLong(parts[1]);
+							if (!filter.test(sequence)) {
+								continue;
+							}
+							
+							if (loading) {
+								nextToDispatch = Math.min(nextToDispatch, sequence);
+								undispatchedCount++;
+							} else if (sequence >= nextToDispatch && !positionFound) {
+								dispatchPosition = position;
+								positionFound = true;
+							}
+							
+							line.writeTo(out);
+							out.write('\n');
+							position += length;
+							written++;
+						}
+					}
+				}
+			}
+			
+			Files.move(tempFile, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to compact sender outbox " + logFile, e);
+		}
+		
+		if (!positionFound) {
+			dispatchPosition = position;
+		}
+		
+		logSize = position;
+		lineCount = written;
+	}
+	
+	private void append(String line) {
+		try {
+			if (channel == null) {
+				channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				    StandardOpenOption.APPEND);
+			}
+			
+			ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(UTF_8));
+			final int length = buffer.remaining();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			
+			logSize += length;
+			
+			if (fsync) {
+				channel.force(false);
+			}
+		}
+		catch (IOException e) {
+			throw new SyncException("Failed to write to sender outbox " + logFile, e);
+		}
+		
+		lineCount++;
+	}
+	
+	/**
+	 * Reads the next line into the specified buffer without the line terminator
+	 *
+	 * @param in the stream to read from
+	 * @param line the buffer
+	 * @return the number of bytes read including the line terminator if any, 0 at the end of the
+	 *         stream
+	 */
+	private static int readLine(InputStream in, ByteArrayOutputStream line) throws IOException {
+		line.reset();
+		int count = 0;
+		int b;
+		while ((b = in.read()) != -1) {
+			count++;
+			if (b == '\n') {
+				break;
+			}
+			
+			line.write(b);
+		}
+		
+		return count;
+	}
+	
+	private static void skipFully(InputStream in, long count) throws IOException {
+		long remaining = count;
+		while (remaining > 0) {
+			final long skipped = in.skip(remaining);
+			if (skipped <= 0) {
+				throw new EOFException("Unexpected end of sender outbox log");
+			}
+			
+			remaining -= skipped;
+		}
+	}
+	
+	private static String toJson(Event event) {
+		try {
+			return MAPPER.writeValueAsString(event);
+		}
+		catch (JsonProcessingException e) {
+			throw new SyncException("Failed to serialize outbox event: " + event, e);
+		}
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		ExecutorService[] toStop;
+		synchronized (this) {
+			toStop = executors;
+			stopped = true;
+		}
+		
+		if (toStop == null) {
+			return;
+		}
+		
+		log.info("Stopping sender outbox with " + getPendingCount() + " pending event(s)");
+		
+		for (ExecutorService executor : toStop) {
+			executor.shutdown();
+		}
+		
+		try {
+			for (ExecutorService executor : toStop) {
+				if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+					log.warn("Timed out waiting for the sender outbox workers to stop, pending events will be processed "
+					        + "after a restart");
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			log.warn("Interrupted while waiting for the sender outbox workers to stop");
+		}
+		
+		synchronized (this) {
+			try {
+				if (channel != null) {
+					channel.close();
+					channel = null;
+				}
+			}
+			catch (IOException e) {
+				log.warn("Failed to close sender outbox " + logFile, e);
+			}
+		}
+	}
+	
+}
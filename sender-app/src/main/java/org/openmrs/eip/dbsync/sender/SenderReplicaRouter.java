@@ -0,0 +1,249 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static org.openmrs.eip.dbsync.SyncConstants.OPENMRS_DATASOURCE_NAME;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.camel.Exchange;
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides whether an entity is extracted from the read replica or the primary OpenMRS database.
+ * Before an entity is extracted, the replica is given up to the configured maximum lag to apply a
+ * binlog position of the primary database that was read after the event was captured, such a
+ * position is at least the position of the event. The entity is read from the replica if it has
+ * caught up otherwise from the primary database, the primary database is also used if the check
+ * fails for any reason.
+ * <p>
+ * The events do not carry their binlog position, instead the last position read from the primary
+ * database is reused for all the events captured before the read started, the time an event was
+ * captured is taken from the {@link #EX_PROP_CAPTURED_AT} exchange property which is set by the
+ * stages that hold events i.e. the outbox and the debouncer, it defaults to the time the event
+ * reaches this class. This implies a backlog of events is checked against a single position read
+ * while events processed as soon as they are captured still need a read each.
+ * <p>
+ * The position is compared by GTID when GTIDs are enabled on the primary database otherwise by
+ * binlog file and position.
+ */
+@Component("senderReplicaRouter")
+public class SenderReplicaRouter {
+	
+	protected static final Logger log = LoggerFactory.getLogger(SenderReplicaRouter.class);
+	
+	public static final String REPLICA_DATASOURCE_NAME = "openmrsReplicaDataSource";
+	
+	/**
+	 * The value of {@link System#nanoTime()} when the event was captured
+	 */
+	public static final String EX_PROP_CAPTURED_AT = "eventCapturedAt";
+	
+	protected static final String QUERY_PRIMARY_POSITION = "SHOW MASTER STATUS";
+	
+	protected static final String QUERY_WAIT_GTID = "SELECT WAIT_FOR_EXECUTED_GTID_SET(?, ?)";
+	
+	protected static final String QUERY_WAIT_POSITION = "SELECT MASTER_POS_WAIT(?, ?, ?)";
+	
+	private final DataSource primary;
+	
+	private final DataSource replica;
+	
+	private final long maxLagMillis;
+	
+	private final AtomicLong replicaReads = new AtomicLong();
+	
+	private final AtomicLong primaryReads = new AtomicLong();
+	
+	private final AtomicLong positionReads = new AtomicLong();
+	
+	private PrimaryPosition lastPosition;
+	
+	@Autowired
+	public SenderReplicaRouter(@Qualifier(OPENMRS_DATASOURCE_NAME) DataSource primary,
+	    @Qualifier(REPLICA_DATASOURCE_NAME) ObjectProvider<DataSource> replica,
+	    @Value("${sender.replica.max.lag.ms:1000}") long maxLagMillis) {
+		this(primary, replica.getIfAvailable(), maxLagMillis);
+	}
+	
+	protected SenderReplicaRouter(DataSource primary, DataSource replica, long maxLagMillis) {
+		this.primary = primary;
+		this.replica = replica;
+		this.maxLagMillis = maxLagMillis;
+	}
+	
+	/**
+	 * Marks the current thread to read from the replica if it has applied the binlog position of the
+	 * primary database for the event within the maximum lag otherwise to read from the primary
+	 * database.
+	 *
+	 * @param exchange the exchange
+	 */
+	public void route(Exchange exchange) {
+		Long capturedAt = exchange.getProperty(EX_PROP_CAPTURED_AT, Long.class);
+		route(capturedAt != null ? capturedAt : System.nanoTime());
+	}
+	
+	/**
+	 * Marks the current thread to read from the replica if it has applied a binlog position of the
+	 * primary database read after the specified time within the maximum lag otherwise to read from the
+	 * primary database.
+	 *
+	 * @param capturedAt the value of {@link System#nanoTime()} when the event was captured
+	 */
+	protected void route(long capturedAt) {
+		if (replica == null) {
+			throw new SyncException("No read replica datasource is configured");
+		}
+		
+		if (maxLagMillis < 1) {
+			throw new SyncException("sender.replica.max.lag.ms must be greater than 0");
+		}
+		
+		boolean useReplica;
+		try {
+			useReplica = isReplicaCaughtUp(getPrimaryPosition(capturedAt));
+		}
+		catch (SQLException | RuntimeException e) {
+			log.warn("Failed to check the position of the read replica, reading from the primary database", e);
+			useReplica = false;
+		}
+		
+		if (useReplica) {
+			replicaReads.incrementAndGet();
+		} else {
+			primaryReads.incrementAndGet();
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Reading entity from the " + (useReplica ? "read replica" : "primary database"));
+		}
+		
+		ReplicaRoutingDataSource.setUseReplica(useReplica);
+	}
+	
+	/**
+	 * Marks the current thread to read from the primary database
+	 */
+	public void clear() {
+		ReplicaRoutingDataSource.setUseReplica(false);
+	}
+	
+	/**
+	 * @return the number of entity reads served by the read replica
+	 */
+	public long getReplicaReads() {
+		return replicaReads.get();
+	}
+	
+	/**
+	 * @return the number of entity reads served by the primary database
+	 */
+	public long getPrimaryReads() {
+		return primaryReads.get();
+	}
+	
+	/**
+	 * @return the number of times the binlog position of the primary database was read
+	 */
+	public long getPositionReads() {
+		return positionReads.get();
+	}
+	
+	/**
+	 * Gets a binlog position of the primary database read after the specified time, the last position
+	 * read is reused if its read started after that time
+	 *
+	 * @param capturedAt the value of {@link System#nanoTime()} when the event was captured
+	 * @return the position
+	 * @throws SQLException
+	 */
+	private PrimaryPosition getPrimaryPosition(long capturedAt) throws SQLException {
+		synchronized (this) {
+			if (lastPosition != null && lastPosition.readAt - capturedAt >= 0) {
+				return lastPosition;
+			}
+		}
+		
+		final long readAt = System.nanoTime();
+		PrimaryPosition position;
+		//This relies on the thread not being marked to read from the replica yet
+		try (Connection conn = primary.getConnection(); Statement statement = conn.createStatement();
+		        ResultSet rs = statement.executeQuery(QUERY_PRIMARY_POSITION)) {
+			if (!rs.next()) {
+				throw new SyncException("Binary logging is not enabled on the primary database");
+			}
+			
+			String gtidSet = rs.getMetaData().getColumnCount() >= 5 ? rs.getString(5) : null;
+			position = new PrimaryPosition(rs.getString(1), rs.getLong(2), gtidSet, readAt);
+		}
+		
+		positionReads.incrementAndGet();
+		synchronized (this) {
+			if (lastPosition == null || position.readAt - lastPosition.readAt > 0) {
+				lastPosition = position;
+			}
+		}
+		
+		return position;
+	}
+	
+	private boolean isReplicaCaughtUp(PrimaryPosition position) throws SQLException {
+		final double timeout = maxLagMillis / 1000.0;
+		try (Connection conn = replica.getConnection()) {
+			if (StringUtils.isNotBlank(position.gtidSet)) {
+				try (PreparedStatement statement = conn.prepareStatement(QUERY_WAIT_GTID)) {
+					statement.setString(1, position.gtidSet);
+					statement.setDouble(2, timeout);
+					try (ResultSet rs = statement.executeQuery()) {
+						//Returns 0 if the GTID set was applied and 1 on timeout
+						return rs.next() && rs.getObject(1) != null && rs.getInt(1) == 0;
+					}
+				}
+			}
+			
+			try (PreparedStatement statement = conn.prepareStatement(QUERY_WAIT_POSITION)) {
+				statement.setString(1, position.file);
+				statement.setLong(2, position.position);
+				statement.setDouble(3, timeout);
+				try (ResultSet rs = statement.executeQuery()) {
+					//Returns -1 on timeout and NULL if the replica SQL thread is not running
+					return rs.next() && rs.getObject(1) != null && rs.getLong(1) >= 0;
+				}
+			}
+		}
+	}
+	
+	private static class PrimaryPosition {
+		
+		private final String file;
+		
+		private final long position;
+		
+		private final String gtidSet;
+		
+		private final long readAt;
+		
+		PrimaryPosition(String file, long position, String gtidSet, long readAt) {
+			this.file = file;
+			this.position = position;
+			this.gtidSet = gtidSet;
+			this.readAt = readAt;
+		}
+		
+	}
+	
+}
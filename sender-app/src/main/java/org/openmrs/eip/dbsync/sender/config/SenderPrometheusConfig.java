@@ -0,0 +1,97 @@
+package org.openmrs.eip.dbsync.sender.config;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openmrs.eip.dbsync.sender.SenderAsyncPublisher;
+import org.openmrs.eip.dbsync.sender.SenderHashStore;
+import org.openmrs.eip.dbsync.sender.SenderReplicaRouter;
+import org.openmrs.eip.dbsync.service.TableToSyncEnum;
+import org.openmrs.eip.dbsync.service.compression.PayloadCompressionService;
+import org.openmrs.eip.dbsync.service.compression.PayloadCompressionService.CompressionStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+@Configuration
+public class SenderPrometheusConfig {
+	
+	private static final String METER_PREFIX = "openmrs_dbsync_sender_";
+	
+	@Bean("senderSuppressedMsgMeter")
+	public MeterBinder getSuppressedMessagesMeterBinder(@Autowired SenderHashStore hashStore) {
+		
+		return (registry) -> FunctionCounter
+		        .builder(METER_PREFIX + "suppressed_messages", hashStore, SenderHashStore::getSuppressedCount)
+		        .description("Messages skipped because the entity state was unchanged since it was last sent")
+		        .register(registry);
+		
+	}
+	
+	@Bean("senderHashStoreMeter")
+	public MeterBinder getHashStoreSizeMeterBinder(@Autowired SenderHashStore hashStore) {
+		
+		return (registry) -> Gauge.builder(METER_PREFIX + "hash_store_size", hashStore, SenderHashStore::getSize)
+		        .register(registry);
+		
+	}
+	
+	@Bean("senderCompressionMeter")
+	public MeterBinder getCompressionMeterBinder(@Autowired PayloadCompressionService compressionService) {
+		
+		return (registry) -> {
+			for (TableToSyncEnum e : TableToSyncEnum.values()) {
+				String type = e.name().toLowerCase();
+				CompressionStats stats = compressionService.getStats(type);
+				FunctionCounter.builder(METER_PREFIX + "compression_uncompressed_bytes", stats,
+				    CompressionStats::getUncompressedBytes).tag("type", type).baseUnit("bytes").register(registry);
+				FunctionCounter.builder(METER_PREFIX + "compression_compressed_bytes", stats,
+				    CompressionStats::getCompressedBytes).tag("type", type).baseUnit("bytes").register(registry);
+				FunctionTimer.builder(METER_PREFIX + "compression_cpu", stats, CompressionStats::getCount,
+				    CompressionStats::getCpuNanos, TimeUnit.NANOSECONDS).tag("type", type).register(registry);
+			}
+		};
+		
+	}
+	
+	@Bean("senderAsyncPublisherMeter")
+	public MeterBinder getAsyncPublisherMeterBinder(@Autowired SenderAsyncPublisher publisher) {
+		
+		return (registry) -> {
+			Gauge.builder(METER_PREFIX + "async_in_flight", publisher, SenderAsyncPublisher::getInFlightCount)
+			        .description("Messages being sent asynchronously and not yet acknowledged by the broker")
+			        .register(registry);
+			Gauge.builder(METER_PREFIX + "async_acked_offset", publisher, SenderAsyncPublisher::getAckedOffset)
+			        .description("Sequence number up to which all asynchronously published messages are acknowledged")
+			        .register(registry);
+			FunctionTimer.builder(METER_PREFIX + "async_send", publisher, SenderAsyncPublisher::getSendCount,
+			    SenderAsyncPublisher::getSendNanos, TimeUnit.NANOSECONDS).register(registry);
+			FunctionCounter
+			        .builder(METER_PREFIX + "async_failed_sends", publisher, SenderAsyncPublisher::getFailedCount)
+			        .register(registry);
+		};
+		
+	}
+	
+	@Bean("senderReplicaReadsMeter")
+	public MeterBinder getReplicaReadsMeterBinder(@Autowired SenderReplicaRouter router) {
+		
+		return (registry) -> {
+			FunctionCounter.builder(METER_PREFIX + "extract_reads", router, SenderReplicaRouter::getReplicaReads)
+			        .description("Entity reads served by each OpenMRS datasource").tag("datasource", "replica")
+			        .register(registry);
+			FunctionCounter.builder(METER_PREFIX + "extract_reads", router, SenderReplicaRouter::getPrimaryReads)
+			        .description("Entity reads served by each OpenMRS datasource").tag("datasource", "primary")
+			        .register(registry);
+			FunctionCounter
+			        .builder(METER_PREFIX + "replica_primary_position_reads", router, SenderReplicaRouter::getPositionReads)
+			        .description("Binlog position reads from the primary OpenMRS database").register(registry);
+		};
+		
+	}
+	
+}
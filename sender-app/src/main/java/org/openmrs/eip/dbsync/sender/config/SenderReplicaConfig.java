@@ -0,0 +1,56 @@
+package org.openmrs.eip.dbsync.sender.config;
+
+import static org.openmrs.eip.dbsync.SyncConstants.OPENMRS_DATASOURCE_NAME;
+import static org.openmrs.eip.dbsync.sender.SenderReplicaRouter.REPLICA_DATASOURCE_NAME;
+
+import javax.sql.DataSource;
+
+import org.openmrs.eip.dbsync.sender.ReplicaRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configures the read replica datasource and wraps the OpenMRS datasource so that entities can be
+ * extracted from the replica when sender.replica.enabled is set to true.
+ */
+@Configuration
+@ConditionalOnProperty(name = "sender.replica.enabled", havingValue = "true")
+public class SenderReplicaConfig {
+	
+	private static final Logger log = LoggerFactory.getLogger(SenderReplicaConfig.class);
+	
+	@Bean(REPLICA_DATASOURCE_NAME)
+	@ConfigurationProperties(prefix = "spring.openmrs-replica-datasource")
+	public DataSource getReplicaDataSource() {
+		return DataSourceBuilder.create().build();
+	}
+	
+	@Bean
+	public static BeanPostProcessor getReplicaRoutingPostProcessor(BeanFactory beanFactory) {
+		
+		return new BeanPostProcessor() {
+			
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				if (OPENMRS_DATASOURCE_NAME.equals(beanName) && bean instanceof DataSource) {
+					log.info("Enabling extraction of entities from the OpenMRS read replica");
+					
+					DataSource replica = beanFactory.getBean(REPLICA_DATASOURCE_NAME, DataSource.class);
+					return new ReplicaRoutingDataSource((DataSource) bean, replica);
+				}
+				
+				return bean;
+			}
+			
+		};
+		
+	}
+	
+}
@@ -0,0 +1,112 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.camel.spi.IdempotentRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class ComplexObsJournalTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File journalFile;
+	
+	private IdempotentRepository mockLegacyRepository;
+	
+	@Before
+	public void setup() {
+		journalFile = new File(folder.getRoot(), "journal.log");
+		mockLegacyRepository = Mockito.mock(IdempotentRepository.class);
+	}
+	
+	private ComplexObsJournal createJournal() {
+		return new ComplexObsJournal(journalFile.getAbsolutePath(), mockLegacyRepository);
+	}
+	
+	@Test
+	public void add_shouldRecordTheFileAndMatchOnlyTheSameLastModifiedTimestamp() {
+		ComplexObsJournal journal = createJournal();
+		
+		assertTrue(journal.add("my-scan.pdf-1000"));
+		assertFalse(journal.add("my-scan.pdf-1000"));
+		
+		assertTrue(journal.contains("my-scan.pdf-1000"));
+		assertFalse(journal.contains("my-scan.pdf-2000"));
+		assertTrue(journal.add("my-scan.pdf-2000"));
+		assertFalse(journal.contains("my-scan.pdf-1000"));
+		assertEquals(1, journal.size());
+	}
+	
+	@Test
+	public void remove_shouldOnlyRemoveAMatchingKey() {
+		ComplexObsJournal journal = createJournal();
+		journal.add("scan.pdf-1000");
+		
+		assertFalse(journal.remove("scan.pdf-2000"));
+		assertTrue(journal.contains("scan.pdf-1000"));
+		assertTrue(journal.remove("scan.pdf-1000"));
+		assertFalse(journal.contains("scan.pdf-1000"));
+	}
+	
+	@Test
+	public void shouldReloadTheFilesFromTheJournalFile() throws Exception {
+		ComplexObsJournal journal = createJournal();
+		journal.add("a.pdf-1000");
+		journal.add("b.pdf-1000");
+		journal.add("c.pdf-1000");
+		journal.remove("b.pdf-1000");
+		journal.add("a.pdf-3000");
+		//Simulates a partially written line after a crash
+		Files.write(journalFile.toPath(), "A 12".getBytes(UTF_8), StandardOpenOption.APPEND);
+		
+		journal = createJournal();
+		
+		assertEquals(2, journal.size());
+		assertTrue(journal.contains("a.pdf-3000"));
+		assertTrue(journal.contains("c.pdf-1000"));
+		assertFalse(journal.contains("b.pdf-1000"));
+		//The journal is compacted when it is loaded
+		assertEquals(2, Files.readAllLines(journalFile.toPath(), UTF_8).size());
+	}
+	
+	@Test
+	public void contains_shouldRecordAKeyFoundInTheLegacyRepository() {
+		when(mockLegacyRepository.contains("old.pdf-1000")).thenReturn(true);
+		ComplexObsJournal journal = createJournal();
+		
+		assertTrue(journal.contains("old.pdf-1000"));
+		assertFalse(journal.contains("new.pdf-1000"));
+		
+		journal = createJournal();
+		Mockito.reset(mockLegacyRepository);
+		assertTrue(journal.contains("old.pdf-1000"));
+		verify(mockLegacyRepository, never()).contains("old.pdf-1000");
+	}
+	
+	@Test
+	public void add_shouldCompactTheJournalFileWhenItGrowsTooLarge() throws Exception {
+		ComplexObsJournal journal = createJournal();
+		for (int i = 0; i < 1500; i++) {
+			journal.add("scan.pdf-" + i);
+		}
+		
+		assertEquals(1, journal.size());
+		assertTrue(Files.readAllLines(journalFile.toPath(), UTF_8).size() < 1000);
+	}
+	
+}
@@ -0,0 +1,100 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.openmrs.eip.dbsync.sender.ComplexObsWatcher.URI_FILE;
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class ComplexObsWatcherTest {
+	
+	private static final long SETTLE_TIME = 2000;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private ProducerTemplate mockProducerTemplate;
+	
+	private ComplexObsJournal journal;
+	
+	private ComplexObsWatcher watcher;
+	
+	@Before
+	public void setup() throws Exception {
+		mockProducerTemplate = Mockito.mock(ProducerTemplate.class);
+		File dataDir = folder.newFolder("data");
+		journal = new ComplexObsJournal(new File(folder.getRoot(), "journal.log").getAbsolutePath(), null);
+		watcher = new ComplexObsWatcher(mockProducerTemplate, journal, dataDir.getAbsolutePath(), SETTLE_TIME);
+		File file = new File(dataDir, "scan.pdf");
+		file.createNewFile();
+		file.setLastModified(1000000);
+	}
+	
+	@Test
+	public void dispatchSettled_shouldSendAFileOnlyAfterItHasSettled() {
+		watcher.onEvent("scan.pdf", 1000);
+		watcher.onEvent("scan.pdf", 2000);
+		
+		watcher.dispatchSettled(3999);
+		verify(mockProducerTemplate, never()).sendBodyAndHeaders(any(String.class), any(), anyMap());
+		assertEquals(1, watcher.getPendingCount());
+		
+		watcher.dispatchSettled(4000);
+		ArgumentCaptor<Map<String, Object>> headers = ArgumentCaptor.forClass(Map.class);
+		verify(mockProducerTemplate).sendBodyAndHeaders(eq(URI_FILE), any(File.class), headers.capture());
+		assertEquals("scan.pdf", headers.getValue().get(Exchange.FILE_NAME_ONLY));
+		assertEquals(1000000L, headers.getValue().get(Exchange.FILE_LAST_MODIFIED));
+		assertEquals(0, watcher.getPendingCount());
+		assertTrue(journal.contains("scan.pdf-1000000"));
+	}
+	
+	@Test
+	public void dispatchSettled_shouldNotSendAFileAlreadyInTheJournal() {
+		journal.add("scan.pdf-1000000");
+		watcher.onEvent("scan.pdf", 1000);
+		
+		watcher.dispatchSettled(5000);
+		
+		verify(mockProducerTemplate, never()).sendBodyAndHeaders(any(String.class), any(), anyMap());
+	}
+	
+	@Test
+	public void dispatchSettled_shouldIgnoreAFileThatNoLongerExists() {
+		watcher.onEvent("deleted.pdf", 1000);
+		
+		watcher.dispatchSettled(5000);
+		
+		verify(mockProducerTemplate, never()).sendBodyAndHeaders(any(String.class), any(), anyMap());
+		assertEquals(0, watcher.getPendingCount());
+	}
+	
+	@Test
+	public void dispatchSettled_shouldRemoveTheFileFromTheJournalIfSendingFails() {
+		doThrow(new CamelExecutionException("test", null)).when(mockProducerTemplate).sendBodyAndHeaders(eq(URI_FILE),
+		    any(), anyMap());
+		watcher.onEvent("scan.pdf", 1000);
+		
+		watcher.dispatchSettled(5000);
+		
+		assertFalse(journal.contains("scan.pdf-1000000"));
+	}
+	
+}
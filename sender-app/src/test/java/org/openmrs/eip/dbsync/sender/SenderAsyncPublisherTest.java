@@ -0,0 +1,254 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.openmrs.eip.dbsync.sender.SenderAsyncPublisher.EX_PROP_ASYNC_DISABLED;
+import static org.openmrs.eip.dbsync.sender.SenderAsyncPublisher.EX_PROP_ON_ACKNOWLEDGED;
+import static org.openmrs.eip.dbsync.sender.SenderAsyncPublisher.EX_PROP_PUBLISHING;
+import static org.openmrs.eip.dbsync.sender.SenderAsyncPublisher.URI_DB_SYNC;
+import static org.openmrs.eip.dbsync.sender.SenderHashStore.EX_PROP_ENTITY_HASH;
+import static org.openmrs.eip.dbsync.sender.SenderHashStore.EX_PROP_ENTITY_HASH_KEY;
+import static org.openmrs.eip.mysql.watcher.WatcherConstants.PROP_EVENT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openmrs.eip.mysql.watcher.Event;
+
+public class SenderAsyncPublisherTest {
+	
+	private static final String URI_OUTPUT = "mock:output";
+	
+	private ProducerTemplate mockProducerTemplate;
+	
+	private DefaultCamelContext camelContext;
+	
+	private SenderHashStore hashStore;
+	
+	private SenderAsyncPublisher publisher;
+	
+	private Map<String, List<Integer>> sentPerEntity;
+	
+	private List<Exchange> resent;
+	
+	@Before
+	public void setup() {
+		camelContext = new DefaultCamelContext();
+		hashStore = new SenderHashStore(100);
+		sentPerEntity = new ConcurrentHashMap();
+		resent = Collections.synchronizedList(new ArrayList());
+		mockProducerTemplate = Mockito.mock(ProducerTemplate.class);
+		when(mockProducerTemplate.getCamelContext()).thenReturn(camelContext);
+		when(mockProducerTemplate.send(eq(URI_OUTPUT), any(Exchange.class))).thenAnswer(invocation -> {
+			Exchange exchange = invocation.getArgument(1);
+			String body = exchange.getIn().getBody(String.class);
+			if (body.startsWith("fail")) {
+				exchange.setException(new Exception("test"));
+			} else {
+				String[] parts = body.split(":");
+				sentPerEntity.computeIfAbsent(parts[0], k -> Collections.synchronizedList(new ArrayList()))
+				        .add(Integer.valueOf(parts[1]));
+			}
+			
+			return exchange;
+		});
+		when(mockProducerTemplate.send(eq(URI_DB_SYNC), any(Exchange.class))).thenAnswer(invocation -> {
+			Exchange exchange = invocation.getArgument(1);
+			resent.add(exchange);
+			return exchange;
+		});
+		
+		publisher = new SenderAsyncPublisher(mockProducerTemplate, hashStore, URI_OUTPUT, 5, true);
+	}
+	
+	@After
+	public void tearDown() {
+		publisher.shutdown();
+	}
+	
+	private Exchange createExchange(String identifier, String body) {
+		Event event = Mockito.mock(Event.class);
+		when(event.getTableName()).thenReturn("person");
+		when(event.getIdentifier()).thenReturn(identifier);
+		Exchange exchange = new DefaultExchange(camelContext);
+		exchange.setProperty(PROP_EVENT, event);
+		exchange.getIn().setBody(body);
+		return exchange;
+	}
+	
+	@Test
+	public void process_shouldPublishMessagesForTheSameEntityInOrder() throws Exception {
+		for (int i = 0; i < 50; i++) {
+			for (String entity : new String[] { "a", "b", "c", "d" }) {
+				publisher.process(createExchange(entity, entity + ":" + i));
+			}
+		}
+		
+		publisher.shutdown();
+		
+		assertEquals(4, sentPerEntity.size());
+		for (List<Integer> sent : sentPerEntity.values()) {
+			assertEquals(50, sent.size());
+			for (int i = 0; i < sent.size(); i++) {
+				assertEquals(Integer.valueOf(i), sent.get(i));
+			}
+		}
+		
+		assertEquals(200, publisher.getAckedOffset());
+		assertEquals(200, publisher.getSendCount());
+		assertEquals(0, publisher.getInFlightCount());
+	}
+	
+	@Test
+	public void process_shouldNotSendMoreMessagesConcurrentlyThanTheInFlightWindow() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger sending = new AtomicInteger();
+		AtomicInteger maxSending = new AtomicInteger();
+		when(mockProducerTemplate.send(eq(URI_OUTPUT), any(Exchange.class))).thenAnswer(invocation -> {
+			maxSending.accumulateAndGet(sending.incrementAndGet(), Math::max);
+			release.await(10, TimeUnit.SECONDS);
+			sending.decrementAndGet();
+			return invocation.getArgument(1);
+		});
+		Thread producer = new Thread(() -> {
+			try {
+				for (int i = 0; i < 20; i++) {
+					publisher.process(createExchange("e" + i, "e" + i + ":0"));
+				}
+			}
+			catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		producer.start();
+		
+		Thread.sleep(500);
+		assertTrue(producer.isAlive());
+		//Every message counted as in flight is on the wire, none is waiting in a queue
+		assertTrue(sending.get() > 0);
+		assertEquals(sending.get(), publisher.getInFlightCount());
+		
+		release.countDown();
+		producer.join(10000);
+		publisher.shutdown();
+		assertTrue(maxSending.get() <= 5);
+		assertEquals(20, publisher.getAckedOffset());
+		assertEquals(0, publisher.getInFlightCount());
+	}
+	
+	@Test
+	public void acknowledge_shouldOnlyAdvanceTheOffsetOverAContiguousPrefix() {
+		assertEquals(0, publisher.acknowledge(2));
+		assertEquals(0, publisher.acknowledge(4));
+		assertEquals(2, publisher.acknowledge(1));
+		assertEquals(4, publisher.acknowledge(3));
+		assertEquals(4, publisher.getAckedOffset());
+	}
+	
+	@Test
+	public void acknowledge_shouldInvokeTheCallbacksOfTheMessagesTheOffsetHasPassed() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		when(mockProducerTemplate.send(eq(URI_OUTPUT), any(Exchange.class))).thenAnswer(invocation -> {
+			Exchange exchange = invocation.getArgument(1);
+			if (exchange.getIn().getBody(String.class).startsWith("a")) {
+				release.await(10, TimeUnit.SECONDS);
+			}
+			
+			return exchange;
+		});
+		List<String> acknowledged = Collections.synchronizedList(new ArrayList());
+		Exchange first = createExchange("a", "a:0");
+		first.setProperty(EX_PROP_ON_ACKNOWLEDGED, (Runnable) () -> acknowledged.add("a"));
+		Exchange second = createExchange("b", "b:0");
+		second.setProperty(EX_PROP_ON_ACKNOWLEDGED, (Runnable) () -> acknowledged.add("b"));
+		
+		publisher.process(first);
+		publisher.process(second);
+		
+		assertEquals(true, first.getProperty(EX_PROP_PUBLISHING));
+		assertEquals(true, second.getProperty(EX_PROP_PUBLISHING));
+		Thread.sleep(500);
+		//The second message is acknowledged by the broker but the offset is held by the first one
+		assertEquals(1, publisher.getInFlightCount());
+		assertEquals(0, publisher.getAckedOffset());
+		assertTrue(acknowledged.isEmpty());
+		
+		release.countDown();
+		publisher.shutdown();
+		assertEquals(Arrays.asList("a", "b"), acknowledged);
+	}
+	
+	@Test
+	public void process_shouldSendAFailedMessageAgainSynchronously() throws Exception {
+		Exchange exchange = createExchange("a", "fail");
+		exchange.setProperty(EX_PROP_ENTITY_HASH_KEY, "person#a");
+		exchange.setProperty(EX_PROP_ENTITY_HASH, "hash");
+		AtomicInteger acknowledged = new AtomicInteger();
+		exchange.setProperty(EX_PROP_ON_ACKNOWLEDGED, (Runnable) () -> acknowledged.incrementAndGet());
+		
+		publisher.process(exchange);
+		publisher.shutdown();
+		
+		assertEquals(1, acknowledged.get());
+		assertEquals(1, resent.size());
+		assertEquals(true, resent.get(0).getProperty(EX_PROP_ASYNC_DISABLED));
+		assertEquals(exchange.getProperty(PROP_EVENT), resent.get(0).getProperty(PROP_EVENT));
+		assertEquals(1, publisher.getFailedCount());
+		assertEquals(1, publisher.getAckedOffset());
+		assertEquals(0, hashStore.getSize());
+	}
+	
+	@Test
+	public void process_shouldNotInvokeTheCallbackOfAMessageThatFailedToBeSentAgain() throws Exception {
+		when(mockProducerTemplate.send(eq(URI_DB_SYNC), any(Exchange.class))).thenAnswer(invocation -> {
+			Exchange exchange = invocation.getArgument(1);
+			exchange.setException(new Exception("test"));
+			return exchange;
+		});
+		List<String> acknowledged = Collections.synchronizedList(new ArrayList());
+		Exchange failed = createExchange("a", "fail");
+		failed.setProperty(EX_PROP_ON_ACKNOWLEDGED, (Runnable) () -> acknowledged.add("a"));
+		Exchange next = createExchange("b", "b:0");
+		next.setProperty(EX_PROP_ON_ACKNOWLEDGED, (Runnable) () -> acknowledged.add("b"));
+		
+		publisher.process(failed);
+		publisher.process(next);
+		publisher.shutdown();
+		
+		assertEquals(Collections.singletonList("b"), acknowledged);
+		assertEquals(1, publisher.getFailedCount());
+		assertEquals(2, publisher.getAckedOffset());
+		assertEquals(0, publisher.getInFlightCount());
+	}
+	
+	@Test
+	public void process_shouldRecordTheHashOfAPublishedEntity() throws Exception {
+		Exchange exchange = createExchange("a", "a:0");
+		exchange.setProperty(EX_PROP_ENTITY_HASH_KEY, "person#a");
+		exchange.setProperty(EX_PROP_ENTITY_HASH, "hash");
+		
+		publisher.process(exchange);
+		publisher.shutdown();
+		
+		assertEquals(1, hashStore.getSize());
+	}
+	
+}
@@ -0,0 +1,156 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.openmrs.eip.dbsync.sender.SenderBatchPublisher.EX_PROP_BATCH_DISABLED;
+import static org.openmrs.eip.dbsync.sender.SenderBatchPublisher.URI_BATCH_SEND;
+import static org.openmrs.eip.dbsync.sender.SenderBatchPublisher.URI_DB_SYNC;
+import static org.openmrs.eip.dbsync.sender.SenderHashStore.EX_PROP_ENTITY_HASH;
+import static org.openmrs.eip.dbsync.sender.SenderHashStore.EX_PROP_ENTITY_HASH_KEY;
+import static org.openmrs.eip.mysql.watcher.WatcherConstants.PROP_EVENT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openmrs.eip.dbsync.utils.BatchEnvelopeUtils;
+import org.openmrs.eip.mysql.watcher.Event;
+
+public class SenderBatchPublisherTest {
+	
+	private static final long LINGER = 1000;
+	
+	private ProducerTemplate mockProducerTemplate;
+	
+	private SenderHashStore hashStore;
+	
+	private List<List<String>> published;
+	
+	private List<Exchange> resent;
+	
+	private boolean failPublishing;
+	
+	@Before
+	public void setup() {
+		published = new ArrayList();
+		resent = new ArrayList();
+		failPublishing = false;
+		hashStore = new SenderHashStore(100);
+		mockProducerTemplate = Mockito.mock(ProducerTemplate.class);
+		when(mockProducerTemplate.getCamelContext()).thenReturn(new DefaultCamelContext());
+		when(mockProducerTemplate.send(eq(URI_BATCH_SEND), any(Exchange.class))).thenAnswer(invocation -> {
+			Exchange exchange = invocation.getArgument(1);
+			if (failPublishing) {
+				exchange.setException(new Exception("test"));
+			} else {
+				published.add(BatchEnvelopeUtils.unwrap(exchange.getIn().getBody(String.class)));
+			}
+			
+			return exchange;
+		});
+		when(mockProducerTemplate.send(eq(URI_DB_SYNC), any(Exchange.class))).thenAnswer(invocation -> {
+			Exchange exchange = invocation.getArgument(1);
+			resent.add(exchange);
+			return exchange;
+		});
+	}
+	
+	private SenderBatchPublisher createPublisher(int maxCount, long maxBytes) {
+		return new SenderBatchPublisher(mockProducerTemplate, hashStore, maxCount, maxBytes, LINGER, true);
+	}
+	
+	private String createPayload(String uuid) {
+		return "{\"model\":{\"uuid\":\"" + uuid + "\"}}";
+	}
+	
+	@Test
+	public void add_shouldPublishTheBatchInOrderWhenItReachesTheMaxCount() {
+		SenderBatchPublisher publisher = createPublisher(3, Long.MAX_VALUE);
+		publisher.add(createPayload("1"), Collections.emptyMap(), 0);
+		publisher.add(createPayload("2"), Collections.emptyMap(), 0);
+		assertEquals(0, published.size());
+		
+		publisher.add(createPayload("3"), Collections.emptyMap(), 0);
+		
+		assertEquals(1, published.size());
+		assertEquals(Arrays.asList(createPayload("1"), createPayload("2"), createPayload("3")), published.get(0));
+		assertEquals(0, publisher.getPendingCount());
+	}
+	
+	@Test
+	public void add_shouldPublishTheBatchBeforeAddingAPayloadThatWouldExceedTheMaxBytes() {
+		final String payload = createPayload("1");
+		SenderBatchPublisher publisher = createPublisher(100, payload.length() * 2 + 1);
+		publisher.add(payload, Collections.emptyMap(), 0);
+		publisher.add(createPayload("2"), Collections.emptyMap(), 0);
+		
+		publisher.add(createPayload("3"), Collections.emptyMap(), 0);
+		
+		assertEquals(1, published.size());
+		assertEquals(2, published.get(0).size());
+		assertEquals(1, publisher.getPendingCount());
+	}
+	
+	@Test
+	public void flushIfLingered_shouldOnlyPublishTheBatchIfTheOldestEntityHasWaitedForTheLingerTime() {
+		SenderBatchPublisher publisher = createPublisher(100, Long.MAX_VALUE);
+		publisher.add(createPayload("1"), Collections.emptyMap(), 100);
+		publisher.add(createPayload("2"), Collections.emptyMap(), 500);
+		
+		publisher.flushIfLingered(99);
+		assertEquals(0, published.size());
+		
+		publisher.flushIfLingered(100);
+		assertEquals(1, published.size());
+		assertEquals(2, published.get(0).size());
+	}
+	
+	@Test
+	public void flush_shouldRecordTheHashesOfTheEntitiesInAPublishedBatch() {
+		SenderBatchPublisher publisher = createPublisher(100, Long.MAX_VALUE);
+		Map<String, Object> props = new HashMap();
+		props.put(EX_PROP_ENTITY_HASH_KEY, "person#1");
+		props.put(EX_PROP_ENTITY_HASH, "hash");
+		publisher.add(createPayload("1"), props, 0);
+		
+		publisher.flush();
+		
+		assertEquals(1, hashStore.getSize());
+	}
+	
+	@Test
+	public void flush_shouldSendEachEntityWithoutBatchingIfPublishingTheBatchFails() {
+		failPublishing = true;
+		SenderBatchPublisher publisher = createPublisher(100, Long.MAX_VALUE);
+		Event event1 = Mockito.mock(Event.class);
+		Event event2 = Mockito.mock(Event.class);
+		Map<String, Object> props = new HashMap();
+		props.put(PROP_EVENT, event1);
+		props.put(EX_PROP_ENTITY_HASH_KEY, "person#1");
+		props.put(EX_PROP_ENTITY_HASH, "hash");
+		publisher.add(createPayload("1"), props, 0);
+		publisher.add(createPayload("2"), Collections.singletonMap(PROP_EVENT, event2), 0);
+		
+		publisher.flush();
+		
+		assertEquals(0, published.size());
+		assertEquals(2, resent.size());
+		assertEquals(event1, resent.get(0).getProperty(PROP_EVENT));
+		assertEquals(event2, resent.get(1).getProperty(PROP_EVENT));
+		assertTrue((Boolean) resent.get(0).getProperty(EX_PROP_BATCH_DISABLED));
+		assertEquals(0, hashStore.getSize());
+	}
+	
+}
@@ -0,0 +1,127 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.openmrs.eip.dbsync.sender.SenderEventDebouncer.URI_DB_SYNC;
+import static org.openmrs.eip.mysql.watcher.WatcherConstants.PROP_EVENT;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openmrs.eip.mysql.watcher.Event;
+
+public class SenderEventDebouncerTest {
+	
+	private static final long WINDOW = 1000;
+	
+	private ProducerTemplate mockProducerTemplate;
+	
+	private SenderEventDebouncer debouncer;
+	
+	private List<Event> forwarded;
+	
+	@Before
+	public void setup() {
+		forwarded = new ArrayList();
+		mockProducerTemplate = Mockito.mock(ProducerTemplate.class);
+		when(mockProducerTemplate.getCamelContext()).thenReturn(new DefaultCamelContext());
+		when(mockProducerTemplate.send(eq(URI_DB_SYNC), any(Exchange.class))).thenAnswer(invocation -> {
+			Exchange exchange = invocation.getArgument(1);
+			forwarded.add(exchange.getProperty(PROP_EVENT, Event.class));
+			return exchange;
+		});
+		
+		debouncer = new SenderEventDebouncer(mockProducerTemplate, WINDOW);
+	}
+	
+	private Event createEvent(String table, String identifier, String op) {
+		Event event = Mockito.mock(Event.class);
+		when(event.getTableName()).thenReturn(table);
+		when(event.getIdentifier()).thenReturn(identifier);
+		when(event.getOperation()).thenReturn(op);
+		return event;
+	}
+	
+	@Test
+	public void debounce_shouldForwardOnlyOneEventForTheSameRowWithinTheWindow() {
+		Event insert = createEvent("person", "uuid-1", "c");
+		debouncer.debounce(insert, Collections.emptyMap(), 0);
+		debouncer.debounce(createEvent("person", "uuid-1", "u"), Collections.emptyMap(), 100);
+		debouncer.debounce(createEvent("person", "uuid-1", "u"), Collections.emptyMap(), 200);
+		
+		debouncer.flush(-1);
+		assertEquals(0, forwarded.size());
+		
+		debouncer.flush(0);
+		assertEquals(1, forwarded.size());
+		assertEquals(insert, forwarded.get(0));
+		assertEquals(2, debouncer.getCoalescedCount());
+		assertEquals(0, debouncer.getPendingCount());
+	}
+	
+	@Test
+	public void debounce_shouldKeepTheLatestEventIfTheFirstIsNotAnInsert() {
+		debouncer.debounce(createEvent("person", "uuid-1", "u"), Collections.emptyMap(), 0);
+		Event latest = createEvent("person", "uuid-1", "u");
+		debouncer.debounce(latest, Collections.emptyMap(), 100);
+		
+		debouncer.flush(Long.MAX_VALUE);
+		
+		assertEquals(1, forwarded.size());
+		assertEquals(latest, forwarded.get(0));
+	}
+	
+	@Test
+	public void debounce_shouldForwardEventsInTheOrderTheRowsWereFirstSeen() {
+		Event encounter = createEvent("encounter", "uuid-1", "c");
+		Event obs = createEvent("obs", "uuid-2", "c");
+		debouncer.debounce(encounter, Collections.emptyMap(), 0);
+		debouncer.debounce(obs, Collections.emptyMap(), 10);
+		debouncer.debounce(createEvent("encounter", "uuid-1", "u"), Collections.emptyMap(), 20);
+		
+		debouncer.flush(Long.MAX_VALUE);
+		
+		assertEquals(2, forwarded.size());
+		assertEquals(encounter, forwarded.get(0));
+		assertEquals(obs, forwarded.get(1));
+	}
+	
+	@Test
+	public void flush_shouldOnlyForwardEventsWhoseWindowHasElapsed() {
+		Event first = createEvent("person", "uuid-1", "c");
+		debouncer.debounce(first, Collections.emptyMap(), 0);
+		debouncer.debounce(createEvent("person", "uuid-2", "c"), Collections.emptyMap(), 500);
+		
+		debouncer.flush(100);
+		
+		assertEquals(1, forwarded.size());
+		assertEquals(first, forwarded.get(0));
+		assertEquals(1, debouncer.getPendingCount());
+	}
+	
+	@Test
+	public void debounce_shouldFlushPendingEventsAndForwardADeleteImmediately() {
+		Event other = createEvent("obs", "uuid-2", "c");
+		Event delete = createEvent("person", "uuid-1", "d");
+		debouncer.debounce(createEvent("person", "uuid-1", "u"), Collections.emptyMap(), 0);
+		debouncer.debounce(other, Collections.emptyMap(), 10);
+		
+		debouncer.debounce(delete, Collections.emptyMap(), 20);
+		
+		assertEquals(2, forwarded.size());
+		assertEquals(other, forwarded.get(0));
+		assertEquals(delete, forwarded.get(1));
+		assertEquals(0, debouncer.getPendingCount());
+		assertEquals(1, debouncer.getCoalescedCount());
+	}
+	
+}
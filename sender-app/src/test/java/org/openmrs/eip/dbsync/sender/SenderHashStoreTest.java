@@ -0,0 +1,115 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.openmrs.eip.dbsync.sender.SenderHashStore.EX_PROP_ENTITY_HASH;
+import static org.openmrs.eip.dbsync.sender.SenderHashStore.EX_PROP_ENTITY_UNCHANGED;
+import static org.openmrs.eip.mysql.watcher.WatcherConstants.PROP_EVENT;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openmrs.eip.dbsync.model.PersonModel;
+import org.openmrs.eip.dbsync.model.SyncMetadata;
+import org.openmrs.eip.dbsync.model.SyncModel;
+import org.openmrs.eip.dbsync.utils.HashUtils;
+import org.openmrs.eip.mysql.watcher.Event;
+
+public class SenderHashStoreTest {
+	
+	private SenderHashStore store;
+	
+	@Before
+	public void setup() {
+		store = new SenderHashStore(2);
+	}
+	
+	private Exchange createExchange(String uuid, String gender, String op) {
+		PersonModel model = new PersonModel();
+		model.setUuid(uuid);
+		model.setGender(gender);
+		Event event = Mockito.mock(Event.class);
+		when(event.getOperation()).thenReturn(op);
+		Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+		exchange.getIn().setBody(SyncModel.builder().tableToSyncModelClass(PersonModel.class).model(model).build());
+		exchange.setProperty(PROP_EVENT, event);
+		return exchange;
+	}
+	
+	private boolean checkAndSend(String uuid, String gender, String op) {
+		Exchange exchange = createExchange(uuid, gender, op);
+		store.check(exchange);
+		boolean unchanged = exchange.getProperty(EX_PROP_ENTITY_UNCHANGED, Boolean.class);
+		if (!unchanged) {
+			store.recordSent(exchange);
+		}
+		
+		return unchanged;
+	}
+	
+	@Test
+	public void check_shouldFlagAnEntityWhoseStateMatchesTheLastSentState() {
+		assertFalse(checkAndSend("uuid-1", "F", "c"));
+		assertTrue(checkAndSend("uuid-1", "F", "u"));
+		assertFalse(checkAndSend("uuid-1", "M", "u"));
+		assertEquals(1, store.getSuppressedCount());
+	}
+	
+	@Test
+	public void check_shouldNotFlagAnEntityIfTheStateWasNeverRecordedAsSent() {
+		store.check(createExchange("uuid-1", "F", "c"));
+		
+		assertFalse(checkAndSend("uuid-1", "F", "u"));
+		assertEquals(0, store.getSuppressedCount());
+	}
+	
+	@Test
+	public void setMetadataHash_shouldSetTheHashAndHashVersionInTheMetadata() {
+		Exchange exchange = createExchange("uuid-1", "F", "c");
+		SyncModel syncModel = exchange.getIn().getBody(SyncModel.class);
+		syncModel.setMetadata(new SyncMetadata());
+		
+		store.setMetadataHash(exchange);
+		
+		assertEquals(HashUtils.computeHash(syncModel.getModel()), syncModel.getMetadata().getHash());
+		assertEquals(HashUtils.getHashVersion(), syncModel.getMetadata().getHashVersion());
+	}
+	
+	@Test
+	public void setMetadataHash_shouldReuseTheHashComputedByTheCheck() {
+		Exchange exchange = createExchange("uuid-1", "F", "c");
+		SyncModel syncModel = exchange.getIn().getBody(SyncModel.class);
+		syncModel.setMetadata(new SyncMetadata());
+		exchange.setProperty(EX_PROP_ENTITY_HASH, "checked-hash");
+		
+		store.setMetadataHash(exchange);
+		
+		assertEquals("checked-hash", syncModel.getMetadata().getHash());
+	}
+	
+	@Test
+	public void check_shouldNeverFlagADeleteAndShouldRemoveTheStoredHash() {
+		assertFalse(checkAndSend("uuid-1", "F", "c"));
+		
+		assertFalse(checkAndSend("uuid-1", null, "d"));
+		
+		assertEquals(0, store.getSize());
+		assertFalse(checkAndSend("uuid-1", "F", "c"));
+	}
+	
+	@Test
+	public void recordSent_shouldEvictTheLeastRecentlyUsedEntryWhenTheStoreIsFull() {
+		checkAndSend("uuid-1", "F", "c");
+		checkAndSend("uuid-2", "F", "c");
+		checkAndSend("uuid-3", "F", "c");
+		
+		assertEquals(2, store.getSize());
+		assertFalse(checkAndSend("uuid-1", "F", "u"));
+	}
+	
+}
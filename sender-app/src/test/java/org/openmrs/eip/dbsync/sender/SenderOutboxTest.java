@@ -0,0 +1,237 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.openmrs.eip.dbsync.sender.SenderOutbox.URI_DB_SYNC;
+import static org.openmrs.eip.mysql.watcher.WatcherConstants.PROP_EVENT;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.openmrs.eip.dbsync.exception.SyncException;
+import org.openmrs.eip.mysql.watcher.Event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SenderOutboxTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private ProducerTemplate mockProducerTemplate;
+	
+	private DefaultCamelContext camelContext;
+	
+	private File logFile;
+	
+	private List<String> forwarded;
+	
+	private boolean failForwarding;
+	
+	@Before
+	public void setup() {
+		camelContext = new DefaultCamelContext();
+		logFile = new File(folder.getRoot(), "outbox.log");
+		forwarded = Collections.synchronizedList(new ArrayList());
+		failForwarding = false;
+		mockProducerTemplate = Mockito.mock(ProducerTemplate.class);
+		when(mockProducerTemplate.getCamelContext()).thenReturn(camelContext);
+		when(mockProducerTemplate.send(eq(URI_DB_SYNC), any(Exchange.class))).thenAnswer(invocation -> {
+			if (failForwarding) {
+				throw new RuntimeException("test");
+			}
+			
+			Exchange exchange = invocation.getArgument(1);
+			Event event = exchange.getProperty(PROP_EVENT, Event.class);
+			forwarded.add(event.getIdentifier() + ":" + event.getOperation());
+			return exchange;
+		});
+	}
+	
+	private SenderOutbox createOutbox(int maxDispatched) {
+		return new SenderOutbox(mockProducerTemplate, logFile.getAbsolutePath(), 3, true, maxDispatched);
+	}
+	
+	private SenderOutbox createOutbox() {
+		return createOutbox(100);
+	}
+	
+	private Event createEvent(String identifier, String op) {
+		Event event = new Event();
+		event.setTableName("person");
+		event.setIdentifier(identifier);
+		event.setOperation(op);
+		return event;
+	}
+	
+	private void add(SenderOutbox outbox, Event event) {
+		Exchange exchange = new DefaultExchange(camelContext);
+		exchange.setProperty(PROP_EVENT, event);
+		outbox.process(exchange);
+	}
+	
+	@Test
+	public void process_shouldForwardEventsForTheSameEntityInOrder() {
+		SenderOutbox outbox = createOutbox();
+		for (String op : new String[] { "c", "u", "d" }) {
+			for (String uuid : new String[] { "a", "b", "c", "d" }) {
+				add(outbox, createEvent(uuid, op));
+			}
+		}
+		
+		outbox.shutdown();
+		
+		assertEquals(12, forwarded.size());
+		for (String uuid : new String[] { "a", "b", "c", "d" }) {
+			List<String> ops = new ArrayList();
+			forwarded.stream().filter(f -> f.startsWith(uuid + ":")).forEach(f -> ops.add(f.substring(2)));
+			assertEquals(Arrays.asList("c", "u", "d"), ops);
+		}
+		
+		assertEquals(0, outbox.getPendingCount());
+	}
+	
+	@Test
+	public void recover_shouldProcessThePendingEventsFoundInTheLog() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		List<String> lines = Arrays.asList("E 1 " + mapper.writeValueAsString(createEvent("a", "c")),
+		    "E 2 " + mapper.writeValueAsString(createEvent("b", "u")), "A 1");
+		Files.write(logFile.toPath(), lines, UTF_8);
+		//Simulates a partially written last line after a crash
+		Files.write(logFile.toPath(), "E 3 {\"tableN".getBytes(UTF_8), StandardOpenOption.APPEND);
+		SenderOutbox outbox = createOutbox();
+		
+		outbox.recover();
+		outbox.shutdown();
+		
+		assertEquals(Collections.singletonList("b:u"), forwarded);
+		assertEquals(0, outbox.getPendingCount());
+	}
+	
+	@Test
+	public void recover_shouldFailIfALineOtherThanAPartiallyWrittenLastLineIsInvalid() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		List<String> lines = Arrays.asList("E 1 " + mapper.writeValueAsString(createEvent("a", "c")), "E 2 {\"tableN",
+		    "E 3 " + mapper.writeValueAsString(createEvent("b", "u")));
+		Files.write(logFile.toPath(), lines, UTF_8);
+		SenderOutbox outbox = createOutbox();
+		
+		try {
+			outbox.recover();
+		}
+		catch (SyncException e) {
+			assertEquals("Sender outbox " + logFile.getAbsolutePath() + " is corrupt, invalid line 2", e.getMessage());
+			assertTrue(forwarded.isEmpty());
+			assertEquals(lines, Files.readAllLines(logFile.toPath(), UTF_8));
+			return;
+		}
+		
+		throw new AssertionError("Expected a SyncException");
+	}
+	
+	@Test
+	public void recover_shouldDoNothingIfThereIsNoLog() {
+		SenderOutbox outbox = createOutbox();
+		
+		outbox.recover();
+		
+		assertTrue(!logFile.exists());
+	}
+	
+	@Test
+	public void process_shouldKeepAnAsynchronouslyPublishedEventPendingUntilItIsAcknowledged() {
+		List<Runnable> callbacks = Collections.synchronizedList(new ArrayList());
+		when(mockProducerTemplate.send(eq(URI_DB_SYNC), any(Exchange.class))).thenAnswer(invocation -> {
+			Exchange exchange = invocation.getArgument(1);
+			callbacks.add(exchange.getProperty(SenderAsyncPublisher.EX_PROP_ON_ACKNOWLEDGED, Runnable.class));
+			exchange.setProperty(SenderAsyncPublisher.EX_PROP_PUBLISHING, true);
+			return exchange;
+		});
+		SenderOutbox outbox = createOutbox();
+		add(outbox, createEvent("a", "c"));
+		outbox.shutdown();
+		assertEquals(1, callbacks.size());
+		assertEquals(1, outbox.getPendingCount());
+		
+		callbacks.get(0).run();
+		
+		assertEquals(0, outbox.getPendingCount());
+	}
+	
+	@Test
+	public void process_shouldNotDispatchMoreEventsThanTheMaximumAndReadTheOthersBackFromTheLog() throws Exception {
+		List<Runnable> callbacks = Collections.synchronizedList(new ArrayList());
+		when(mockProducerTemplate.send(eq(URI_DB_SYNC), any(Exchange.class))).thenAnswer(invocation -> {
+			Exchange exchange = invocation.getArgument(1);
+			forwarded.add(exchange.getProperty(PROP_EVENT, Event.class).getIdentifier());
+			callbacks.add(exchange.getProperty(SenderAsyncPublisher.EX_PROP_ON_ACKNOWLEDGED, Runnable.class));
+			exchange.setProperty(SenderAsyncPublisher.EX_PROP_PUBLISHING, true);
+			return exchange;
+		});
+		SenderOutbox outbox = createOutbox(2);
+		for (int i = 0; i < 7; i++) {
+			add(outbox, createEvent("e" + i, "c"));
+		}
+		
+		assertEquals(2, outbox.getDispatchedCount());
+		assertEquals(7, outbox.getPendingCount());
+		
+		for (int acknowledged = 0; acknowledged < 7; acknowledged++) {
+			waitFor(callbacks, acknowledged + 1);
+			callbacks.get(acknowledged).run();
+			assertTrue(outbox.getDispatchedCount() <= 2);
+		}
+		
+		outbox.shutdown();
+		//The first 2 events are processed by different workers, the others are read back one at a time in order
+		assertEquals(new HashSet(Arrays.asList("e0", "e1")), new HashSet(forwarded.subList(0, 2)));
+		assertEquals(Arrays.asList("e2", "e3", "e4", "e5", "e6"), forwarded.subList(2, 7));
+		assertEquals(0, outbox.getPendingCount());
+	}
+	
+	private static void waitFor(List<?> list, int size) throws InterruptedException {
+		final long timeout = System.currentTimeMillis() + 10000;
+		while (list.size() < size && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		
+		assertEquals(size, list.size());
+	}
+	
+	@Test
+	public void process_shouldKeepAnEventThatFailedUnexpectedlyInTheLog() {
+		failForwarding = true;
+		SenderOutbox outbox = createOutbox();
+		add(outbox, createEvent("a", "c"));
+		outbox.shutdown();
+		assertEquals(1, outbox.getPendingCount());
+		
+		failForwarding = false;
+		outbox = createOutbox();
+		add(outbox, createEvent("b", "c"));
+		outbox.shutdown();
+		
+		assertEquals(Arrays.asList("a:c", "b:c"), forwarded);
+		assertEquals(0, outbox.getPendingCount());
+	}
+	
+}
@@ -0,0 +1,199 @@
+package org.openmrs.eip.dbsync.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.openmrs.eip.dbsync.sender.SenderReplicaRouter.EX_PROP_CAPTURED_AT;
+import static org.openmrs.eip.dbsync.sender.SenderReplicaRouter.QUERY_PRIMARY_POSITION;
+import static org.openmrs.eip.dbsync.sender.SenderReplicaRouter.QUERY_WAIT_GTID;
+import static org.openmrs.eip.dbsync.sender.SenderReplicaRouter.QUERY_WAIT_POSITION;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class SenderReplicaRouterTest {
+	
+	private static final String GTID_SET = "3E11FA47-71CA-11E1-9E33-C80AA9429562:1-5";
+	
+	@Mock
+	private DataSource mockPrimary;
+	
+	@Mock
+	private DataSource mockReplica;
+	
+	@Mock
+	private Connection mockPrimaryConn;
+	
+	@Mock
+	private Connection mockReplicaConn;
+	
+	@Mock
+	private Statement mockStatement;
+	
+	@Mock
+	private ResultSet mockPositionRs;
+	
+	@Mock
+	private ResultSetMetaData mockMetadata;
+	
+	@Mock
+	private PreparedStatement mockWaitStatement;
+	
+	@Mock
+	private ResultSet mockWaitRs;
+	
+	private SenderReplicaRouter router;
+	
+	@Before
+	public void setup() throws Exception {
+		when(mockPrimary.getConnection()).thenReturn(mockPrimaryConn);
+		when(mockPrimaryConn.createStatement()).thenReturn(mockStatement);
+		when(mockStatement.executeQuery(QUERY_PRIMARY_POSITION)).thenReturn(mockPositionRs);
+		when(mockPositionRs.next()).thenReturn(true);
+		when(mockPositionRs.getString(1)).thenReturn("binlog.000012");
+		when(mockPositionRs.getLong(2)).thenReturn(1024L);
+		when(mockPositionRs.getMetaData()).thenReturn(mockMetadata);
+		when(mockMetadata.getColumnCount()).thenReturn(5);
+		when(mockReplica.getConnection()).thenReturn(mockReplicaConn);
+		when(mockReplicaConn.prepareStatement(QUERY_WAIT_GTID)).thenReturn(mockWaitStatement);
+		when(mockReplicaConn.prepareStatement(QUERY_WAIT_POSITION)).thenReturn(mockWaitStatement);
+		when(mockWaitStatement.executeQuery()).thenReturn(mockWaitRs);
+		when(mockWaitRs.next()).thenReturn(true);
+		router = new SenderReplicaRouter(mockPrimary, mockReplica, 500);
+	}
+	
+	@After
+	public void tearDown() {
+		router.clear();
+	}
+	
+	@Test
+	public void route_shouldReadFromTheReplicaIfItHasAppliedTheGtidSetOfThePrimary() throws Exception {
+		when(mockPositionRs.getString(5)).thenReturn(GTID_SET);
+		when(mockWaitRs.getObject(1)).thenReturn(0);
+		when(mockWaitRs.getInt(1)).thenReturn(0);
+		
+		router.route(System.nanoTime());
+		
+		assertTrue(ReplicaRoutingDataSource.isUseReplica());
+		verify(mockWaitStatement).setString(1, GTID_SET);
+		verify(mockWaitStatement).setDouble(2, 0.5);
+		assertEquals(1, router.getReplicaReads());
+		assertEquals(0, router.getPrimaryReads());
+	}
+	
+	@Test
+	public void route_shouldReadFromThePrimaryIfTheReplicaLagsBehind() throws Exception {
+		when(mockPositionRs.getString(5)).thenReturn(GTID_SET);
+		when(mockWaitRs.getObject(1)).thenReturn(1);
+		when(mockWaitRs.getInt(1)).thenReturn(1);
+		
+		router.route(System.nanoTime());
+		
+		assertFalse(ReplicaRoutingDataSource.isUseReplica());
+		assertEquals(0, router.getReplicaReads());
+		assertEquals(1, router.getPrimaryReads());
+	}
+	
+	@Test
+	public void route_shouldCompareTheBinlogFileAndPositionIfGtidsAreDisabled() throws Exception {
+		when(mockPositionRs.getString(5)).thenReturn("");
+		when(mockWaitRs.getObject(1)).thenReturn(3L);
+		when(mockWaitRs.getLong(1)).thenReturn(3L);
+		
+		router.route(System.nanoTime());
+		
+		assertTrue(ReplicaRoutingDataSource.isUseReplica());
+		verify(mockWaitStatement).setString(1, "binlog.000012");
+		verify(mockWaitStatement).setLong(2, 1024L);
+		verify(mockWaitStatement).setDouble(3, 0.5);
+	}
+	
+	@Test
+	public void route_shouldReadFromThePrimaryIfTheReplicationIsNotRunning() throws Exception {
+		when(mockPositionRs.getString(5)).thenReturn(null);
+		when(mockWaitRs.getObject(1)).thenReturn(null);
+		
+		router.route(System.nanoTime());
+		
+		assertFalse(ReplicaRoutingDataSource.isUseReplica());
+		assertEquals(1, router.getPrimaryReads());
+	}
+	
+	@Test
+	public void route_shouldReadFromThePrimaryIfTheReplicaCannotBeReached() throws Exception {
+		when(mockReplica.getConnection()).thenThrow(new SQLException("test"));
+		
+		router.route(System.nanoTime());
+		
+		assertFalse(ReplicaRoutingDataSource.isUseReplica());
+		assertEquals(1, router.getPrimaryReads());
+	}
+	
+	@Test
+	public void route_shouldReuseThePrimaryPositionForEventsCapturedBeforeItWasRead() throws Exception {
+		when(mockPositionRs.getString(5)).thenReturn(GTID_SET);
+		when(mockWaitRs.getObject(1)).thenReturn(0);
+		when(mockWaitRs.getInt(1)).thenReturn(0);
+		final long capturedAt = System.nanoTime();
+		
+		router.route(capturedAt);
+		router.route(capturedAt);
+		
+		assertEquals(1, router.getPositionReads());
+		assertEquals(2, router.getReplicaReads());
+		verify(mockStatement, times(1)).executeQuery(QUERY_PRIMARY_POSITION);
+		
+		router.route(System.nanoTime());
+		
+		assertEquals(2, router.getPositionReads());
+	}
+	
+	@Test
+	public void route_shouldUseTheCaptureTimeOfTheEventFromTheExchange() throws Exception {
+		when(mockPositionRs.getString(5)).thenReturn(GTID_SET);
+		when(mockWaitRs.getObject(1)).thenReturn(0);
+		when(mockWaitRs.getInt(1)).thenReturn(0);
+		Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+		exchange.setProperty(EX_PROP_CAPTURED_AT, System.nanoTime());
+		router.route(exchange);
+		
+		router.route(exchange);
+		
+		assertEquals(1, router.getPositionReads());
+		
+		router.route(new DefaultExchange(new DefaultCamelContext()));
+		
+		assertEquals(2, router.getPositionReads());
+	}
+	
+	@Test
+	public void clear_shouldMarkTheThreadToReadFromThePrimary() {
+		ReplicaRoutingDataSource.setUseReplica(true);
+		
+		router.clear();
+		
+		assertFalse(ReplicaRoutingDataSource.isUseReplica());
+	}
+	
+}